@@ -0,0 +1,371 @@
+////////////////////////////////////////////////////////////////////////////////
+// Copyright 2013 Michael Schmalle - Teoti Graphix, LLC
+// 
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+// 
+// http://www.apache.org/licenses/LICENSE-2.0 
+// 
+// Unless required by applicable law or agreed to in writing, software 
+// distributed under the License is distributed on an "AS IS" BASIS, 
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and 
+// limitations under the License
+// 
+// Author: Michael Schmalle, Principal Architect
+// mschmalle at teotigraphix dot com
+////////////////////////////////////////////////////////////////////////////////
+
+package com.teotigraphix.caustic.core;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.androidtransfuse.event.EventObserver;
+
+import com.teotigraphix.caustic.engine.LatencyHistogram;
+
+/**
+ * Delivers the events of an observer on an {@link Executor} through a bounded
+ * queue, so a slow observer does not hold up the thread that triggers.
+ * <p>
+ * Events are delivered one at a time in the order queued. When the queue is
+ * full the {@link Overflow} policy decides what gives. The queue depth and the
+ * lag from trigger to delivery are measured.
+ * 
+ * @author Michael Schmalle
+ * @copyright Teoti Graphix, LLC
+ * @since 1.0
+ * @see IDispatcher#registerAsync(Class, EventObserver, Executor, int, Overflow)
+ */
+public class AsyncObserver<T> implements EventObserver<T> {
+
+    /**
+     * The most events delivered before the executor's other tasks get a turn.
+     */
+    private static final int BURST = 64;
+
+    /**
+     * Set while the thread delivers the events of any async observer.
+     */
+    private static final ThreadLocal<Boolean> DELIVERING = new ThreadLocal<Boolean>();
+
+    /**
+     * What a trigger does when the queue is full.
+     */
+    public enum Overflow {
+
+        /**
+         * The oldest queued event is dropped.
+         */
+        DROP_OLDEST,
+
+        /**
+         * The newest queued event of the same class is replaced, keeping its
+         * place and taking the new trigger time; the oldest event is dropped
+         * when none is queued. For state events where only the latest matters.
+         */
+        COALESCE,
+
+        /**
+         * The triggering thread waits for room. A trigger made while any
+         * async observer delivers on the thread drops the oldest event
+         * instead, that thread may be the one the wait depends on. Give a
+         * blocking observer an executor of its own so its triggers can wait.
+         */
+        BLOCK;
+    }
+
+    private final EventObserver<T> mObserver;
+
+    private final Executor mExecutor;
+
+    private final int mCapacity;
+
+    private final Overflow mOverflow;
+
+    private final ArrayDeque<Pending<T>> mQueue = new ArrayDeque<Pending<T>>();
+
+    private boolean mScheduled;
+
+    private boolean mClosed;
+
+    private int mMaxQueueDepth;
+
+    private final AtomicLong mDeliveredCount = new AtomicLong();
+
+    private final AtomicLong mDroppedCount = new AtomicLong();
+
+    private final AtomicLong mCoalescedCount = new AtomicLong();
+
+    private final LatencyHistogram mLag = new LatencyHistogram();
+
+    private final Runnable mDelivery = new Runnable() {
+        @Override
+        public void run() {
+            deliver();
+        }
+    };
+
+    //--------------------------------------------------------------------------
+    //
+    // Public :: Properties
+    //
+    //--------------------------------------------------------------------------
+
+    /**
+     * Returns the observer the events are delivered to.
+     */
+    public EventObserver<T> getObserver() {
+        return mObserver;
+    }
+
+    /**
+     * Returns the overflow policy.
+     */
+    public Overflow getOverflow() {
+        return mOverflow;
+    }
+
+    /**
+     * Returns the number of events the queue holds.
+     */
+    public int getCapacity() {
+        return mCapacity;
+    }
+
+    /**
+     * Returns the number of events waiting for delivery.
+     */
+    public int getQueueDepth() {
+        synchronized (mQueue) {
+            return mQueue.size();
+        }
+    }
+
+    /**
+     * Returns the largest number of events that waited at once.
+     */
+    public int getMaxQueueDepth() {
+        synchronized (mQueue) {
+            return mMaxQueueDepth;
+        }
+    }
+
+    /**
+     * Returns the number of events delivered.
+     */
+    public long getDeliveredCount() {
+        return mDeliveredCount.get();
+    }
+
+    /**
+     * Returns the number of events dropped by a full queue or a closed
+     * observer.
+     */
+    public long getDroppedCount() {
+        return mDroppedCount.get();
+    }
+
+    /**
+     * Returns the number of events replaced by a later event of their class.
+     */
+    public long getCoalescedCount() {
+        return mCoalescedCount.get();
+    }
+
+    /**
+     * Returns the nanoseconds from trigger to delivery of the delivered
+     * events.
+     */
+    public LatencyHistogram getLag() {
+        return mLag;
+    }
+
+    //--------------------------------------------------------------------------
+    //
+    // Constructor
+    //
+    //--------------------------------------------------------------------------
+
+    /**
+     * Constructor.
+     * 
+     * @param observer The observer the events are delivered to.
+     * @param executor The executor the events are delivered on.
+     * @param capacity The number of events the queue holds, above
+     *            <code>0</code>.
+     * @param overflow What a trigger does when the queue is full.
+     */
+    public AsyncObserver(EventObserver<T> observer, Executor executor, int capacity,
+            Overflow overflow) {
+        if (observer == null || executor == null || overflow == null)
+            throw new IllegalArgumentException("Null observer, executor or overflow");
+        if (capacity <= 0)
+            throw new IllegalArgumentException("capacity <= 0");
+        mObserver = observer;
+        mExecutor = executor;
+        mCapacity = capacity;
+        mOverflow = overflow;
+    }
+
+    //--------------------------------------------------------------------------
+    //
+    // Public :: Methods
+    //
+    //--------------------------------------------------------------------------
+
+    /**
+     * Queues the event for delivery.
+     */
+    @Override
+    public void trigger(T event) {
+        final long now = System.nanoTime();
+        boolean schedule = false;
+        synchronized (mQueue) {
+            if (mClosed) {
+                mDroppedCount.incrementAndGet();
+                return;
+            }
+            if (mQueue.size() >= mCapacity && !makeRoom(event, now))
+                return;
+            mQueue.add(new Pending<T>(event, now));
+            mMaxQueueDepth = Math.max(mMaxQueueDepth, mQueue.size());
+            if (!mScheduled) {
+                mScheduled = true;
+                schedule = true;
+            }
+        }
+        if (schedule)
+            schedule();
+    }
+
+    /**
+     * Drops the queued events and every later one, called when the observer
+     * is unregistered.
+     */
+    public void close() {
+        synchronized (mQueue) {
+            mClosed = true;
+            mDroppedCount.addAndGet(mQueue.size());
+            mQueue.clear();
+            mQueue.notifyAll();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "AsyncObserver[" + mObserver + ", depth=" + getQueueDepth() + ", p99 lag="
+                + mLag.getValueAtPercentile(99) + "ns]";
+    }
+
+    //--------------------------------------------------------------------------
+    //
+    // Private :: Methods
+    //
+    //--------------------------------------------------------------------------
+
+    /**
+     * Makes room for the event in the full queue, returns <code>false</code>
+     * when the event was coalesced into a queued one or the observer closed.
+     */
+    private boolean makeRoom(T event, long now) {
+        switch (mOverflow) {
+            case COALESCE:
+                // the newest of the class, older ones keep their order
+                Iterator<Pending<T>> i = mQueue.descendingIterator();
+                while (i.hasNext()) {
+                    Pending<T> pending = i.next();
+                    if (pending.event.getClass() == event.getClass()) {
+                        pending.event = event;
+                        pending.time = now;
+                        mCoalescedCount.incrementAndGet();
+                        return false;
+                    }
+                }
+                break;
+            case BLOCK:
+                // a shared executor's thread could be the one to make room
+                if (DELIVERING.get() != null)
+                    break;
+                while (mQueue.size() >= mCapacity && !mClosed) {
+                    try {
+                        mQueue.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        mDroppedCount.incrementAndGet();
+                        return false;
+                    }
+                }
+                if (mClosed) {
+                    mDroppedCount.incrementAndGet();
+                    return false;
+                }
+                return true;
+            default:
+                break;
+        }
+        mQueue.poll();
+        mDroppedCount.incrementAndGet();
+        return true;
+    }
+
+    private void schedule() {
+        try {
+            mExecutor.execute(mDelivery);
+        } catch (RejectedExecutionException e) {
+            synchronized (mQueue) {
+                mScheduled = false;
+                mDroppedCount.addAndGet(mQueue.size());
+                mQueue.clear();
+                mQueue.notifyAll();
+            }
+        }
+    }
+
+    private void deliver() {
+        final Boolean delivering = DELIVERING.get();
+        DELIVERING.set(Boolean.TRUE);
+        try {
+            for (int i = 0; i < BURST; i++) {
+                final Pending<T> pending;
+                synchronized (mQueue) {
+                    pending = mQueue.poll();
+                    if (pending == null) {
+                        mScheduled = false;
+                        return;
+                    }
+                    mQueue.notifyAll();
+                }
+                mLag.record(System.nanoTime() - pending.time);
+                try {
+                    mObserver.trigger(pending.event);
+                } catch (RuntimeException e) {
+                    // one failed delivery must not stop the later ones
+                    e.printStackTrace();
+                }
+                mDeliveredCount.incrementAndGet();
+            }
+        } finally {
+            DELIVERING.set(delivering);
+        }
+        // more events wait, give the executor's other tasks a turn
+        schedule();
+    }
+
+    private static final class Pending<T> {
+
+        T event;
+
+        long time;
+
+        Pending(T event, long time) {
+            this.event = event;
+            this.time = time;
+        }
+    }
+}
@@ -1,11 +1,72 @@
 
 package com.teotigraphix.caustic.core;
 
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+
 import org.androidtransfuse.event.EventManager;
+import org.androidtransfuse.event.EventObserver;
+
+import com.teotigraphix.caustic.core.AsyncObserver.Overflow;
 
 public class Dispatcher extends EventManager implements IDispatcher {
 
+    /**
+     * The async registrations of each observer, closed when it is
+     * unregistered.
+     */
+    private final ConcurrentMap<EventObserver<?>, List<AsyncObserver<?>>> asyncObservers =
+            new ConcurrentHashMap<EventObserver<?>, List<AsyncObserver<?>>>();
+
     public Dispatcher() {
     }
 
+    @Override
+    public EventScope createScope() {
+        return new EventScope(this);
+    }
+
+    @Override
+    public <T> AsyncObserver<T> registerAsync(Class<T> event, EventObserver<T> observer,
+            Executor executor, int capacity, Overflow overflow) {
+        AsyncObserver<T> result = new AsyncObserver<T>(observer, executor, capacity, overflow);
+        List<AsyncObserver<?>> list = asyncObservers.get(observer);
+        if (list == null) {
+            List<AsyncObserver<?>> created = new CopyOnWriteArrayList<AsyncObserver<?>>();
+            list = asyncObservers.putIfAbsent(observer, created);
+            if (list == null)
+                list = created;
+        }
+        list.add(result);
+        register(event, result);
+        return result;
+    }
+
+    /**
+     * Unregisters an EventObserver by equality, with its async registrations,
+     * or a single async registration.
+     * 
+     * @param observer Event Observer or {@link AsyncObserver}
+     */
+    @Override
+    public void unregister(EventObserver<?> observer) {
+        super.unregister(observer);
+        if (observer instanceof AsyncObserver) {
+            AsyncObserver<?> async = (AsyncObserver<?>)observer;
+            async.close();
+            List<AsyncObserver<?>> list = asyncObservers.get(async.getObserver());
+            if (list != null)
+                list.remove(async);
+        }
+        List<AsyncObserver<?>> list = asyncObservers.remove(observer);
+        if (list != null) {
+            for (AsyncObserver<?> async : list) {
+                super.unregister(async);
+                async.close();
+            }
+        }
+    }
 }
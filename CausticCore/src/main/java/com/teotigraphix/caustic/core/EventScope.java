@@ -0,0 +1,162 @@
+////////////////////////////////////////////////////////////////////////////////
+// Copyright 2013 Michael Schmalle - Teoti Graphix, LLC
+// 
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+// 
+// http://www.apache.org/licenses/LICENSE-2.0 
+// 
+// Unless required by applicable law or agreed to in writing, software 
+// distributed under the License is distributed on an "AS IS" BASIS, 
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and 
+// limitations under the License
+// 
+// Author: Michael Schmalle, Principal Architect
+// mschmalle at teotigraphix dot com
+////////////////////////////////////////////////////////////////////////////////
+
+package com.teotigraphix.caustic.core;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.androidtransfuse.event.EventObserver;
+
+/**
+ * A group of observer registrations on a dispatcher that end together.
+ * <p>
+ * An owner with a shorter life than its dispatcher registers through a scope
+ * and closes it when it goes away; closing visits only the scope's own
+ * registrations.
+ * 
+ * <pre>
+ * scope = dispatcher.createScope();
+ * scope.register(OnTrackPhraseAdd.class, addHandler);
+ * scope.register(OnTrackPhraseRemove.class, removeHandler);
+ * // later
+ * scope.close();
+ * </pre>
+ * 
+ * @author Michael Schmalle
+ * @copyright Teoti Graphix, LLC
+ * @since 1.0
+ * @see IDispatcher#createScope()
+ */
+public class EventScope {
+
+    private final IDispatcher mDispatcher;
+
+    private final List<Registration> mRegistrations = new ArrayList<Registration>();
+
+    private boolean mClosed;
+
+    //--------------------------------------------------------------------------
+    //
+    // Public :: Properties
+    //
+    //--------------------------------------------------------------------------
+
+    /**
+     * Returns the number of registrations in the scope.
+     */
+    public synchronized int size() {
+        return mRegistrations.size();
+    }
+
+    /**
+     * Returns whether the scope was closed.
+     */
+    public synchronized boolean isClosed() {
+        return mClosed;
+    }
+
+    //--------------------------------------------------------------------------
+    //
+    // Constructor
+    //
+    //--------------------------------------------------------------------------
+
+    /**
+     * Constructor.
+     * 
+     * @param dispatcher The dispatcher the observers are registered with.
+     */
+    public EventScope(IDispatcher dispatcher) {
+        mDispatcher = dispatcher;
+    }
+
+    //--------------------------------------------------------------------------
+    //
+    // Public :: Methods
+    //
+    //--------------------------------------------------------------------------
+
+    /**
+     * Registers an observer until the scope is closed.
+     * 
+     * @param event The event type.
+     * @param observer The observer.
+     * @return This scope.
+     * @throws IllegalStateException the scope is closed
+     */
+    public synchronized <T> EventScope register(Class<T> event, EventObserver<T> observer) {
+        checkOpen();
+        mDispatcher.register(event, observer);
+        mRegistrations.add(new Registration(event, observer));
+        return this;
+    }
+
+    /**
+     * Registers an observer weakly until the scope is closed or the observer
+     * is collected.
+     * 
+     * @param event The event type.
+     * @param observer The observer, held by its owner.
+     * @return This scope.
+     * @throws IllegalStateException the scope is closed
+     */
+    public synchronized <T> EventScope registerWeak(Class<T> event, EventObserver<T> observer) {
+        checkOpen();
+        mDispatcher.registerWeak(event, observer);
+        mRegistrations.add(new Registration(event, observer));
+        return this;
+    }
+
+    /**
+     * Unregisters every observer of the scope, later registrations fail.
+     */
+    public synchronized void close() {
+        if (mClosed)
+            return;
+        mClosed = true;
+        for (Registration registration : mRegistrations) {
+            mDispatcher.unregister(registration.event, registration.observer);
+        }
+        mRegistrations.clear();
+    }
+
+    //--------------------------------------------------------------------------
+    //
+    // Private :: Methods
+    //
+    //--------------------------------------------------------------------------
+
+    private void checkOpen() {
+        if (mClosed)
+            throw new IllegalStateException("EventScope is closed");
+    }
+
+    private static final class Registration {
+
+        final Class<?> event;
+
+        final EventObserver<?> observer;
+
+        Registration(Class<?> event, EventObserver<?> observer) {
+            this.event = event;
+            this.observer = observer;
+        }
+    }
+}
@@ -59,6 +59,18 @@ public interface ICausticEngine {
      */
     String queryMessage(String message);
 
+    /**
+     * Sends all messages of the batch to the Caustic core, in order, in as few
+     * native crossings as the engine supports.
+     * <p>
+     * Engines that cannot take a real batch send the messages one by one using
+     * {@link MessageBatch#sendEach(ICausticEngine, MessageBatch)}.
+     * 
+     * @param batch The {@link MessageBatch} to send.
+     * @since 1.0
+     */
+    void sendMessages(MessageBatch batch);
+
     /**
      * Dispatches an OSC message to the Caustic core.
      * <p>
@@ -1,8 +1,14 @@
 
 package com.teotigraphix.caustic.core;
 
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
 import org.androidtransfuse.event.EventObserver;
 
+import com.teotigraphix.caustic.core.AsyncObserver.Overflow;
+
 public interface IDispatcher {
     /**
      * Register the given observer to be triggered if the given event type is
@@ -15,12 +21,57 @@ public interface IDispatcher {
     <T> void register(Class<T> event, EventObserver<T> observer);
 
     /**
-     * Unregisters an EventObserver by equality.
+     * Register the given observer without keeping it from being garbage
+     * collected, the registration ends with the observer.
+     * 
+     * @param event type
+     * @param observer event observer, held by its owner
+     * @param <T> relating type
+     */
+    <T> void registerWeak(Class<T> event, EventObserver<T> observer);
+
+    /**
+     * Returns a new scope whose registrations are unregistered together.
+     */
+    EventScope createScope();
+
+    /**
+     * Register the given observer to be triggered on the executor through a
+     * bounded queue, so it does not hold up the triggering thread.
+     * 
+     * @param event type
+     * @param observer event observer
+     * @param executor the executor the events are delivered on
+     * @param capacity the number of events the queue holds
+     * @param overflow what a trigger does when the queue is full
+     * @param <T> relating type
+     * @return the registration, its queue depth and lag are read from it
+     */
+    <T> AsyncObserver<T> registerAsync(Class<T> event, EventObserver<T> observer,
+            Executor executor, int capacity, Overflow overflow);
+
+    /**
+     * Unregisters an EventObserver by equality, with its async
+     * registrations.
      * 
      * @param observer Event Observer
      */
     void unregister(EventObserver<?> observer);
 
+    /**
+     * Unregisters an EventObserver by equality from one event type.
+     * 
+     * @param event type
+     * @param observer Event Observer
+     */
+    void unregister(Class<?> event, EventObserver<?> observer);
+
+    /**
+     * Returns a snapshot of the live observers of each event type, for
+     * finding observers that were never unregistered.
+     */
+    Map<Class<?>, List<EventObserver<?>>> getObservers();
+
     /**
      * Triggers an event through the EventManager. This will call the registered
      * EventObservers with the provided event.
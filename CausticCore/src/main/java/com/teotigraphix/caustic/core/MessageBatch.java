@@ -0,0 +1,263 @@
+////////////////////////////////////////////////////////////////////////////////
+// Copyright 2013 Michael Schmalle - Teoti Graphix, LLC
+// 
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+// 
+// http://www.apache.org/licenses/LICENSE-2.0 
+// 
+// Unless required by applicable law or agreed to in writing, software 
+// distributed under the License is distributed on an "AS IS" BASIS, 
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and 
+// limitations under the License
+// 
+// Author: Michael Schmalle, Principal Architect
+// mschmalle at teotigraphix dot com
+////////////////////////////////////////////////////////////////////////////////
+
+package com.teotigraphix.caustic.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.teotigraphix.caustic.osc.CausticMessage;
+
+/**
+ * An ordered list of OSC messages handed to the {@link ICausticEngine} in one
+ * {@link ICausticEngine#sendMessages(MessageBatch)} call.
+ * <p>
+ * A batch can be filled by hand with {@link #add(String)} or captured from a
+ * block of code using {@link #begin(ICausticEngine)} and {@link #end()}. While
+ * a batch is open on a thread, every {@link CausticMessage} send with
+ * arguments to the batch's engine on that thread is appended to the batch
+ * instead of crossing into the engine and returns <code>NaN</code>; the
+ * outermost {@link #end()} hands the whole batch to the engine the batch was
+ * opened with.
+ * 
+ * <pre>
+ * MessageBatch.begin(getEngine());
+ * try {
+ *     // setters that send messages
+ * } finally {
+ *     MessageBatch.end();
+ * }
+ * </pre>
+ * <p>
+ * Queries, address only sends and sends to another engine made while a batch
+ * is open first flush the pending messages so the engine state they read is
+ * current.
+ * 
+ * @author Michael Schmalle
+ * @copyright Teoti Graphix, LLC
+ * @since 1.0
+ */
+public class MessageBatch {
+
+    private static final ThreadLocal<Scope> SCOPE = new ThreadLocal<Scope>();
+
+    private final List<String> mMessages = new ArrayList<String>();
+
+    //--------------------------------------------------------------------------
+    //
+    // Public :: Properties
+    //
+    //--------------------------------------------------------------------------
+
+    /**
+     * Returns the number of messages in the batch.
+     */
+    public int size() {
+        return mMessages.size();
+    }
+
+    /**
+     * Returns whether the batch contains no messages.
+     */
+    public boolean isEmpty() {
+        return mMessages.isEmpty();
+    }
+
+    /**
+     * Returns the message at the index in the order it was added.
+     * 
+     * @param index The message index.
+     */
+    public String get(int index) {
+        return mMessages.get(index);
+    }
+
+    /**
+     * Returns an unmodifiable view of the batched messages.
+     */
+    public List<String> getMessages() {
+        return Collections.unmodifiableList(mMessages);
+    }
+
+    //--------------------------------------------------------------------------
+    //
+    // Constructor
+    //
+    //--------------------------------------------------------------------------
+
+    /**
+     * Constructor.
+     */
+    public MessageBatch() {
+    }
+
+    //--------------------------------------------------------------------------
+    //
+    // Public :: Methods
+    //
+    //--------------------------------------------------------------------------
+
+    /**
+     * Appends a message to the end of the batch.
+     * 
+     * @param message The String OSC message.
+     */
+    public void add(String message) {
+        mMessages.add(message);
+    }
+
+    /**
+     * Removes all messages from the batch.
+     */
+    public void clear() {
+        mMessages.clear();
+    }
+
+    /**
+     * Sends each message of the batch with
+     * {@link ICausticEngine#sendMessage(String)}, in order.
+     * <p>
+     * Engines that cannot take a real batch implement
+     * {@link ICausticEngine#sendMessages(MessageBatch)} with this method.
+     * 
+     * @param engine The engine to send the messages to.
+     * @param batch The batch to send.
+     */
+    public static void sendEach(ICausticEngine engine, MessageBatch batch) {
+        final int size = batch.mMessages.size();
+        for (int i = 0; i < size; i++) {
+            engine.sendMessage(batch.mMessages.get(i));
+        }
+    }
+
+    //--------------------------------------------------------------------------
+    //
+    // Public Static :: Scope Methods
+    //
+    //--------------------------------------------------------------------------
+
+    /**
+     * Opens a batch on the calling thread.
+     * <p>
+     * Nested calls join the open batch, only the outermost {@link #end()}
+     * sends it.
+     * <p>
+     * Until then the captured sends return <code>NaN</code> instead of the
+     * engine's result, only open a batch around code that does not read the
+     * results of its sends with arguments; address only reads are not
+     * captured and return the engine's value.
+     * 
+     * @param engine The engine the batch will be sent to.
+     */
+    public static void begin(ICausticEngine engine) {
+        Scope scope = SCOPE.get();
+        if (scope == null) {
+            scope = new Scope(engine);
+            SCOPE.set(scope);
+        }
+        scope.depth++;
+    }
+
+    /**
+     * Closes the batch opened with {@link #begin(ICausticEngine)}, the
+     * outermost call sends the captured messages to the engine.
+     * 
+     * @throws IllegalStateException no batch is open on the calling thread
+     */
+    public static void end() {
+        Scope scope = SCOPE.get();
+        if (scope == null)
+            throw new IllegalStateException("MessageBatch.end() called without begin()");
+        scope.depth--;
+        if (scope.depth > 0)
+            return;
+        SCOPE.remove();
+        scope.flush();
+    }
+
+    /**
+     * Returns whether a batch is open on the calling thread.
+     */
+    public static boolean isOpen() {
+        return SCOPE.get() != null;
+    }
+
+    /**
+     * Appends the message to the batch open on the calling thread.
+     * <p>
+     * Only messages with arguments sent to the engine the batch was opened
+     * with are captured. An address only message reads a value the caller may
+     * use and a message for another engine would be sent to the wrong one, in
+     * both cases the pending messages are flushed so order is kept and the
+     * caller sends the message itself.
+     * 
+     * @param engine The engine the message is sent to.
+     * @param message The String OSC message.
+     * @return <code>true</code> if the message was captured,
+     *         <code>false</code> if the caller has to send the message itself.
+     */
+    public static boolean capture(ICausticEngine engine, String message) {
+        Scope scope = SCOPE.get();
+        if (scope == null)
+            return false;
+        if (scope.engine != engine || message.indexOf(' ') == -1) {
+            scope.flush();
+            return false;
+        }
+        scope.batch.add(message);
+        return true;
+    }
+
+    /**
+     * Sends the messages captured so far by the batch open on the calling
+     * thread, the batch stays open.
+     * <p>
+     * Called before a query so the query sees the state of all messages sent
+     * before it.
+     */
+    public static void flush() {
+        Scope scope = SCOPE.get();
+        if (scope == null)
+            return;
+        scope.flush();
+    }
+
+    private static final class Scope {
+
+        private final ICausticEngine engine;
+
+        private MessageBatch batch = new MessageBatch();
+
+        private int depth;
+
+        Scope(ICausticEngine engine) {
+            this.engine = engine;
+        }
+
+        void flush() {
+            if (batch.isEmpty())
+                return;
+            // the engine owns the sent batch, it may still be queued
+            MessageBatch sent = batch;
+            batch = new MessageBatch();
+            engine.sendMessages(sent);
+        }
+    }
+}
@@ -0,0 +1,363 @@
+////////////////////////////////////////////////////////////////////////////////
+// Copyright 2013 Michael Schmalle - Teoti Graphix, LLC
+// 
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+// 
+// http://www.apache.org/licenses/LICENSE-2.0 
+// 
+// Unless required by applicable law or agreed to in writing, software 
+// distributed under the License is distributed on an "AS IS" BASIS, 
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and 
+// limitations under the License
+// 
+// Author: Michael Schmalle, Principal Architect
+// mschmalle at teotigraphix dot com
+////////////////////////////////////////////////////////////////////////////////
+
+package com.teotigraphix.caustic.engine;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import com.teotigraphix.caustic.core.ICausticEngine;
+import com.teotigraphix.caustic.core.MessageBatch;
+import com.teotigraphix.caustic.osc.CausticMessage;
+import com.teotigraphix.caustic.osc.OutputPanelMessage;
+import com.teotigraphix.caustic.osc.SynthMessage;
+
+/**
+ * An {@link ICausticEngine} decorator that coalesces parameter sends with last
+ * write wins semantics.
+ * <p>
+ * Sends of a coalesced parameter message are keyed by their resolved address,
+ * eg <code>/caustic/mixer/3/volume</code>. Only the newest value per address is
+ * kept and all pending values are sent at the next {@link #flush()}, either
+ * called by the client on an audio block boundary or by the control rate
+ * scheduler. A flushed value equal to the last value flushed for the address
+ * is dropped.
+ * <p>
+ * Messages are handled by kind:
+ * <ul>
+ * <li><strong>immediate</strong>: note and transport messages are sent at
+ * once; only the pending parameters they can hear are flushed first, those of
+ * the note's machine and the global ones, all of them before a transport
+ * message.</li>
+ * <li><strong>coalesced</strong>: single value parameter messages wait for the
+ * next flush.</li>
+ * <li><strong>reads</strong>: the address only form of a coalesced parameter
+ * flushes that address only.</li>
+ * <li>everything else, queries and batches first flush the pending
+ * parameters so the engine sees all messages in order.</li>
+ * </ul>
+ * Sends that are coalesced return <code>NaN</code>.
+ * 
+ * @author Michael Schmalle
+ * @copyright Teoti Graphix, LLC
+ * @since 1.0
+ */
+public class CoalescingEngine implements ICausticEngine {
+
+    private final ICausticEngine mEngine;
+
+    private final MessageRegistry mImmediateMessages = new MessageRegistry();
+
+    private final MessageRegistry mCoalescedMessages = MessageRegistry.createParameters();
+
+    /**
+     * Resolved address to the newest pending message.
+     */
+    private final Map<String, String> mPending = new LinkedHashMap<String, String>();
+
+    /**
+     * Resolved address to the value last sent to the engine.
+     */
+    private final Map<String, String> mFlushed = new HashMap<String, String>();
+
+    private ScheduledExecutorService mScheduler;
+
+    //--------------------------------------------------------------------------
+    //
+    // Public :: Properties
+    //
+    //--------------------------------------------------------------------------
+
+    //----------------------------------
+    // engine
+    //----------------------------------
+
+    /**
+     * Returns the decorated engine.
+     */
+    public final ICausticEngine getEngine() {
+        return mEngine;
+    }
+
+    //----------------------------------
+    // coalescedCount
+    //----------------------------------
+
+    private long mCoalescedCount;
+
+    /**
+     * Returns the number of sends replaced by a newer value before a flush.
+     */
+    public synchronized long getCoalescedCount() {
+        return mCoalescedCount;
+    }
+
+    //----------------------------------
+    // droppedCount
+    //----------------------------------
+
+    private long mDroppedCount;
+
+    /**
+     * Returns the number of sends dropped because their value equaled the last
+     * flushed value.
+     */
+    public synchronized long getDroppedCount() {
+        return mDroppedCount;
+    }
+
+    //--------------------------------------------------------------------------
+    //
+    // Constructor
+    //
+    //--------------------------------------------------------------------------
+
+    /**
+     * Constructor, coalesces the default parameter messages and passes the
+     * note and transport messages through immediately.
+     * <p>
+     * No flushes are scheduled, the client calls {@link #flush()} on its
+     * block boundary or {@link #start(long)} to flush at a control rate.
+     * 
+     * @param engine The engine to decorate.
+     */
+    public CoalescingEngine(ICausticEngine engine) {
+        mEngine = engine;
+
+        addImmediate(SynthMessage.NOTE);
+        addImmediate(SynthMessage.NOTE_PREVIEW);
+        addImmediate(OutputPanelMessage.PLAY);
+    }
+
+    //--------------------------------------------------------------------------
+    //
+    // Public :: Methods
+    //
+    //--------------------------------------------------------------------------
+
+    /**
+     * Adds a message that is sent at once without flushing the pending
+     * parameters.
+     * 
+     * @param message The message to pass through.
+     */
+    public void addImmediate(CausticMessage message) {
+        mImmediateMessages.add(message);
+    }
+
+    /**
+     * Adds a single value parameter message that is coalesced by address, the
+     * {@link MessageRegistry#createParameters()} messages are coalesced by
+     * default.
+     * 
+     * @param message The parameter message.
+     */
+    public void addCoalesced(CausticMessage message) {
+        mCoalescedMessages.add(message);
+    }
+
+    /**
+     * Starts flushing the pending parameters at a control rate.
+     * 
+     * @param period The flush period in milliseconds.
+     */
+    public synchronized void start(long period) {
+        stop();
+        mScheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "CoalescingEngine");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        mScheduler.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                flush();
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the control rate flushes, pending parameters stay pending.
+     */
+    public synchronized void stop() {
+        if (mScheduler == null)
+            return;
+        mScheduler.shutdown();
+        mScheduler = null;
+    }
+
+    /**
+     * Stops the control rate flushes and sends all pending parameters.
+     */
+    public synchronized void close() {
+        stop();
+        flush();
+    }
+
+    /**
+     * Sends the newest pending value of each address to the engine, values
+     * equal to the last value flushed for the address are dropped.
+     */
+    public synchronized void flush() {
+        if (mPending.isEmpty())
+            return;
+        for (Entry<String, String> entry : mPending.entrySet()) {
+            send(entry.getKey(), entry.getValue());
+        }
+        mPending.clear();
+    }
+
+    //--------------------------------------------------------------------------
+    //
+    // ICausticEngine API :: Methods
+    //
+    //--------------------------------------------------------------------------
+
+    @Override
+    public synchronized float sendMessage(String message) {
+        if (mImmediateMessages.contains(message)) {
+            flushMachine(getMachine(message));
+            return mEngine.sendMessage(message);
+        }
+
+        int space = message.indexOf(' ');
+        if (space != -1 && message.indexOf(' ', space + 1) == -1
+                && mCoalescedMessages.contains(message)) {
+            if (mPending.put(message.substring(0, space), message) != null)
+                mCoalescedCount++;
+            return Float.NaN;
+        }
+
+        if (space == -1 && mCoalescedMessages.contains(message)) {
+            // a parameter read changes nothing, only its own value must be sent
+            String pending = mPending.remove(message);
+            if (pending != null)
+                send(message, pending);
+            return mEngine.sendMessage(message);
+        }
+
+        // anything else may depend on or change the coalesced state
+        flush();
+        mFlushed.clear();
+        return mEngine.sendMessage(message);
+    }
+
+    @Override
+    public synchronized String queryMessage(String message) {
+        flush();
+        return mEngine.queryMessage(message);
+    }
+
+    @Override
+    public synchronized void sendMessages(MessageBatch batch) {
+        flush();
+        mFlushed.clear();
+        mEngine.sendMessages(batch);
+    }
+
+    //--------------------------------------------------------------------------
+    //
+    // Private :: Methods
+    //
+    //--------------------------------------------------------------------------
+
+    /**
+     * Sends a pending value unless it equals the last value flushed for the
+     * address.
+     */
+    private void send(String address, String message) {
+        String value = message.substring(address.length() + 1);
+        if (value.equals(mFlushed.get(address))) {
+            mDroppedCount++;
+            return;
+        }
+        mEngine.sendMessage(message);
+        mFlushed.put(address, value);
+    }
+
+    /**
+     * Flushes the pending values of a machine and the global ones, all of
+     * them for <code>-1</code>.
+     */
+    private void flushMachine(int machine) {
+        if (machine == -1) {
+            flush();
+            return;
+        }
+        Iterator<Entry<String, String>> iterator = mPending.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Entry<String, String> entry = iterator.next();
+            int owner = getMachine(entry.getKey());
+            if (owner == machine || owner == -1) {
+                send(entry.getKey(), entry.getValue());
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Returns the machine index of a message, the segment after
+     * <code>/caustic/</code>, <code>/caustic/mixer/</code> or
+     * <code>/caustic/effects_rack/</code>; <code>-1</code> for a global
+     * message.
+     */
+    private static int getMachine(String message) {
+        final String root = "/caustic/";
+        if (!message.startsWith(root))
+            return -1;
+        int start = root.length();
+        int result = parseIndex(message, start);
+        if (result != -1)
+            return result;
+        if (message.startsWith("mixer/", start))
+            return parseIndex(message, start + 6);
+        if (message.startsWith("effects_rack/", start))
+            return parseIndex(message, start + 13);
+        return -1;
+    }
+
+    /**
+     * Returns the digits from the start up to a <code>/</code>,
+     * <code>-1</code> if the segment is not a number.
+     */
+    private static int parseIndex(String message, int start) {
+        final int length = message.length();
+        int result = 0;
+        int i = start;
+        for (; i < length; i++) {
+            char c = message.charAt(i);
+            if (c == '/')
+                break;
+            if (c < '0' || c > '9' || i - start > 3)
+                return -1;
+            result = result * 10 + c - '0';
+        }
+        return i > start && i < length ? result : -1;
+    }
+}
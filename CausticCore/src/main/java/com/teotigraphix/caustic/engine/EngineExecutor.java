@@ -0,0 +1,804 @@
+////////////////////////////////////////////////////////////////////////////////
+// Copyright 2013 Michael Schmalle - Teoti Graphix, LLC
+// 
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+// 
+// http://www.apache.org/licenses/LICENSE-2.0 
+// 
+// Unless required by applicable law or agreed to in writing, software 
+// distributed under the License is distributed on an "AS IS" BASIS, 
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and 
+// limitations under the License
+// 
+// Author: Michael Schmalle, Principal Architect
+// mschmalle at teotigraphix dot com
+////////////////////////////////////////////////////////////////////////////////
+
+package com.teotigraphix.caustic.engine;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+import com.teotigraphix.caustic.core.ICausticEngine;
+import com.teotigraphix.caustic.core.MessageBatch;
+import com.teotigraphix.caustic.osc.CausticMessage;
+
+/**
+ * An {@link ICausticEngine} decorator that makes all calls to the decorated
+ * engine on a single I/O thread, so the native engine is never entered by two
+ * threads at once.
+ * <p>
+ * Callers publish their calls into a lock free multi producer ring buffer of
+ * preallocated slots, the I/O thread takes them in publish order. A send
+ * returns <code>NaN</code> as soon as it is published, a batch is published
+ * whole and is owned by the executor until it has been sent. Messages that
+ * return a value, queries, address only parameter reads and the registered
+ * reads, wait for the I/O thread's result; {@link #submitRead(String)} and
+ * {@link #submitQuery(String)} return it as an {@link EngineFuture} instead.
+ * <p>
+ * Each {@link EngineLane} has its own ring. The I/O thread drains the
+ * realtime lane first, then the interactive lane, and makes a bulk call only
+ * when both are empty; bulk calls may use {@link #getBulkShare()} of every
+ * {@link #getSliceTime()} at most. Each lane's depth and wait time are
+ * measured.
+ * <p>
+ * The calls of one thread are made in the order the thread made them, in
+ * whatever lanes: every call is fenced behind the calls its thread published
+ * before in the other lanes, which the I/O thread makes first, ignoring the
+ * bulk share. A later realtime note of a thread therefore waits for that
+ * thread's pending bulk restore, a bulk call never overtakes its thread's
+ * earlier interactive ones, and a read sees every send its thread made
+ * before.
+ * Calls of different threads keep their order within a lane only, a higher
+ * lane overtakes the other threads' lower lane calls.
+ * <p>
+ * Calls made on the I/O thread itself, from engine callbacks, go to the
+ * decorated engine directly.
+ * <p>
+ * A read or query published while the executor is not running, before the
+ * first {@link #start()} or after a {@link #stop()}, fails with an
+ * {@link IllegalStateException}. Sends published then wait in the ring for the
+ * start, once their lane's ring is full later ones are dropped and counted by
+ * {@link #getDroppedCount()} instead of blocking the caller.
+ * <p>
+ * The {@link WaitStrategy} sets how the I/O thread waits for calls and how a
+ * caller waits for a free slot when the buffer is full. Errors thrown by the
+ * decorated engine fail the call's future, errors of sends nobody waits for
+ * are counted by {@link #getErrorCount()}.
+ * <p>
+ * Install it innermost, around the sound generator, and {@link #stop()} it
+ * when the controller is closed:
+ * 
+ * <pre>
+ * controller.setEngine(new EngineExecutor(controller.getSoundGenerator()).start());
+ * </pre>
+ * 
+ * @author Michael Schmalle
+ * @copyright Teoti Graphix, LLC
+ * @since 1.0
+ */
+public class EngineExecutor implements ICausticEngine {
+
+    /**
+     * The default number of slots in each lane's ring buffer.
+     */
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    /**
+     * The default length of a scheduling time slice, 1 millisecond.
+     */
+    public static final long DEFAULT_SLICE_TIME = 1000000L;
+
+    /**
+     * The default share of a time slice bulk calls may use.
+     */
+    public static final float DEFAULT_BULK_SHARE = 0.5f;
+
+    private static final int SEND = 0;
+
+    private static final int READ = 1;
+
+    private static final int QUERY = 2;
+
+    private static final int BATCH = 3;
+
+    private static final int SPIN_TRIES = 100;
+
+    private static final long PARK_NANOS = 1000000L;
+
+    /**
+     * How a thread waits for the ring buffer.
+     */
+    public enum WaitStrategy {
+
+        /**
+         * The I/O thread busy spins, the lowest latency at the cost of a core.
+         */
+        SPIN,
+
+        /**
+         * Spins briefly, then yields the processor between checks.
+         */
+        YIELD,
+
+        /**
+         * Spins briefly, then parks until a call is published; the I/O thread
+         * uses no processor while idle.
+         */
+        PARK
+    }
+
+    private final ICausticEngine mEngine;
+
+    private final WaitStrategy mWaitStrategy;
+
+    private final MessageRegistry mReads = new MessageRegistry();
+
+    /**
+     * The ring of each {@link EngineLane}, by ordinal.
+     */
+    private final Ring[] mLanes;
+
+    private final AtomicLong mErrorCount = new AtomicLong();
+
+    /**
+     * The calling thread's fence of each lane, the sequence after the last
+     * call it published there.
+     */
+    private final ThreadLocal<long[]> mFences = new ThreadLocal<long[]>() {
+        @Override
+        protected long[] initialValue() {
+            return new long[mLanes.length];
+        }
+    };
+
+    private volatile Thread mThread;
+
+    private volatile boolean mRunning;
+
+    private volatile boolean mIdle;
+
+    //--------------------------------------------------------------------------
+    //
+    // Public :: Properties
+    //
+    //--------------------------------------------------------------------------
+
+    //----------------------------------
+    // engine
+    //----------------------------------
+
+    /**
+     * Returns the decorated engine.
+     */
+    public final ICausticEngine getEngine() {
+        return mEngine;
+    }
+
+    //----------------------------------
+    // waitStrategy
+    //----------------------------------
+
+    /**
+     * Returns how threads wait for the ring buffer.
+     */
+    public final WaitStrategy getWaitStrategy() {
+        return mWaitStrategy;
+    }
+
+    //----------------------------------
+    // capacity
+    //----------------------------------
+
+    /**
+     * Returns the number of slots in each lane's ring buffer.
+     */
+    public final int getCapacity() {
+        return mLanes[0].slots.length;
+    }
+
+    //----------------------------------
+    // sliceTime
+    //----------------------------------
+
+    private volatile long mSliceTime = DEFAULT_SLICE_TIME;
+
+    /**
+     * Returns the length of a scheduling time slice in nanoseconds.
+     */
+    public long getSliceTime() {
+        return mSliceTime;
+    }
+
+    /**
+     * Sets the length of a scheduling time slice.
+     * 
+     * @param value The length in nanoseconds.
+     */
+    public void setSliceTime(long value) {
+        if (value <= 0)
+            throw new IllegalArgumentException("sliceTime <= 0");
+        mSliceTime = value;
+    }
+
+    //----------------------------------
+    // bulkShare
+    //----------------------------------
+
+    private volatile float mBulkShare = DEFAULT_BULK_SHARE;
+
+    /**
+     * Returns the share of each time slice bulk calls may use.
+     */
+    public float getBulkShare() {
+        return mBulkShare;
+    }
+
+    /**
+     * Sets the share of each time slice bulk calls may use, once it is used
+     * up pending bulk calls wait for the next slice, which leaves the rest of
+     * the slice to the engine's own audio thread. A bulk call is never split,
+     * so a slice can run over by one call.
+     * 
+     * @param value The share, above <code>0</code> up to <code>1</code>.
+     */
+    public void setBulkShare(float value) {
+        if (value <= 0f || value > 1f)
+            throw new IllegalArgumentException("bulkShare not in (0..1]");
+        mBulkShare = value;
+    }
+
+    //----------------------------------
+    // pendingCount
+    //----------------------------------
+
+    /**
+     * Returns the number of calls published and not yet taken by the I/O
+     * thread, of all lanes.
+     */
+    public int getPendingCount() {
+        int result = 0;
+        for (Ring ring : mLanes) {
+            result += ring.getPendingCount();
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of calls published in a lane and not yet taken by
+     * the I/O thread, the lane's queue depth.
+     * 
+     * @param lane The lane.
+     */
+    public int getPendingCount(EngineLane lane) {
+        return mLanes[lane.ordinal()].getPendingCount();
+    }
+
+    //----------------------------------
+    // completedCount
+    //----------------------------------
+
+    /**
+     * Returns the number of calls of a lane the I/O thread has made.
+     * 
+     * @param lane The lane.
+     */
+    public long getCompletedCount(EngineLane lane) {
+        return mLanes[lane.ordinal()].waitTime.getCount();
+    }
+
+    //----------------------------------
+    // waitTime
+    //----------------------------------
+
+    /**
+     * Returns the live histogram of the time the calls of a lane waited from
+     * their publish to the start of their call, in nanoseconds.
+     * 
+     * @param lane The lane.
+     */
+    public LatencyHistogram getWaitTime(EngineLane lane) {
+        return mLanes[lane.ordinal()].waitTime;
+    }
+
+    //----------------------------------
+    // errorCount
+    //----------------------------------
+
+    /**
+     * Returns the number of sends and batches the decorated engine threw on.
+     */
+    public long getErrorCount() {
+        return mErrorCount.get();
+    }
+
+    //----------------------------------
+    // droppedCount
+    //----------------------------------
+
+    private final AtomicLong mDroppedCount = new AtomicLong();
+
+    /**
+     * Returns the number of sends and batches dropped because their lane's
+     * ring was full while the executor was not running.
+     */
+    public long getDroppedCount() {
+        return mDroppedCount.get();
+    }
+
+    //----------------------------------
+    // running
+    //----------------------------------
+
+    /**
+     * Returns whether the I/O thread is running.
+     */
+    public boolean isRunning() {
+        return mRunning;
+    }
+
+    //--------------------------------------------------------------------------
+    //
+    // Constructor
+    //
+    //--------------------------------------------------------------------------
+
+    /**
+     * Constructor, {@link #DEFAULT_CAPACITY} slots a lane parked when idle.
+     * 
+     * @param engine The engine to decorate.
+     */
+    public EngineExecutor(ICausticEngine engine) {
+        this(engine, DEFAULT_CAPACITY, WaitStrategy.PARK);
+    }
+
+    /**
+     * Constructor.
+     * 
+     * @param engine The engine to decorate.
+     * @param capacity The number of slots of each lane, rounded up to a power
+     *            of two.
+     * @param waitStrategy How threads wait for the ring buffer.
+     */
+    public EngineExecutor(ICausticEngine engine, int capacity, WaitStrategy waitStrategy) {
+        if (capacity < 2)
+            throw new IllegalArgumentException("capacity < 2");
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity)
+            size <<= 1;
+        mEngine = engine;
+        mWaitStrategy = waitStrategy;
+        EngineLane[] lanes = EngineLane.values();
+        mLanes = new Ring[lanes.length];
+        for (int i = 0; i < lanes.length; i++) {
+            mLanes[i] = new Ring(i, size, lanes.length);
+        }
+    }
+
+    //--------------------------------------------------------------------------
+    //
+    // Public :: Methods
+    //
+    //--------------------------------------------------------------------------
+
+    /**
+     * Registers a message whose arguments select what is read, its sends wait
+     * for the value like an address only read.
+     * 
+     * @param message The read message.
+     */
+    public void addRead(CausticMessage message) {
+        mReads.add(message);
+    }
+
+    /**
+     * Starts the I/O thread, calls published before are made first.
+     * 
+     * @return This executor.
+     */
+    public synchronized EngineExecutor start() {
+        if (mThread != null)
+            return this;
+        mRunning = true;
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                runLoop();
+            }
+        }, "EngineExecutor");
+        thread.setDaemon(true);
+        mThread = thread;
+        thread.start();
+        return this;
+    }
+
+    /**
+     * Stops the I/O thread once the calls already published have been made,
+     * and waits for it to finish.
+     * <p>
+     * Sends published after the stop wait for a restart until their ring is
+     * full, reads and queries fail.
+     */
+    public void stop() {
+        Thread thread;
+        synchronized (this) {
+            thread = mThread;
+            if (thread == null)
+                return;
+            // flagged before the loop's last check, see publish()
+            mRunning = false;
+        }
+        LockSupport.unpark(thread);
+        if (thread != Thread.currentThread()) {
+            boolean interrupted = false;
+            while (thread.isAlive()) {
+                try {
+                    thread.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted)
+                Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            if (mThread == thread)
+                mThread = null;
+        }
+    }
+
+    /**
+     * Publishes a read of a float value in the calling thread's lane.
+     * 
+     * @param message The read message.
+     * @return The value, completed by the I/O thread.
+     */
+    public EngineFuture<Float> submitRead(String message) {
+        EngineFuture<Float> result = new EngineFuture<Float>();
+        if (isIOThread())
+            callRead(message, result);
+        else
+            publish(getLane(), READ, message, null, result);
+        return result;
+    }
+
+    /**
+     * Publishes a query in the calling thread's lane.
+     * 
+     * @param message The query message.
+     * @return The query's result, completed by the I/O thread.
+     */
+    public EngineFuture<String> submitQuery(String message) {
+        EngineFuture<String> result = new EngineFuture<String>();
+        if (isIOThread())
+            callQuery(message, result);
+        else
+            publish(getLane(), QUERY, message, null, result);
+        return result;
+    }
+
+    //--------------------------------------------------------------------------
+    //
+    // ICausticEngine API :: Methods
+    //
+    //--------------------------------------------------------------------------
+
+    @Override
+    public float sendMessage(String message) {
+        if (isIOThread())
+            return mEngine.sendMessage(message);
+        if (message.indexOf(' ') == -1 || mReads.contains(message))
+            return submitRead(message).join();
+        publish(EngineLane.of(message), SEND, message, null, null);
+        return Float.NaN;
+    }
+
+    @Override
+    public String queryMessage(String message) {
+        if (isIOThread())
+            return mEngine.queryMessage(message);
+        return submitQuery(message).join();
+    }
+
+    @Override
+    public void sendMessages(MessageBatch batch) {
+        if (isIOThread())
+            mEngine.sendMessages(batch);
+        else
+            publish(getLane(), BATCH, null, batch, null);
+    }
+
+    //--------------------------------------------------------------------------
+    //
+    // Private :: Methods
+    //
+    //--------------------------------------------------------------------------
+
+    private boolean isIOThread() {
+        return Thread.currentThread() == mThread;
+    }
+
+    private static EngineLane getLane() {
+        EngineLane lane = EngineLane.current();
+        return lane != null ? lane : EngineLane.INTERACTIVE;
+    }
+
+    private void publish(EngineLane lane, int kind, String message, MessageBatch batch,
+            EngineFuture<?> result) {
+        if (result != null && !mRunning) {
+            result.fail(new IllegalStateException("EngineExecutor stopped"));
+            return;
+        }
+        final int ordinal = lane.ordinal();
+        final Ring ring = mLanes[ordinal];
+        final long[] fences = mFences.get();
+        // a sequence is claimed only once its slot is free, a lap behind
+        long sequence;
+        int tries = 0;
+        while (true) {
+            sequence = ring.claimed.get();
+            if (sequence - ring.consumed.get() >= ring.slots.length) {
+                if (!mRunning) {
+                    // nothing frees the slot until a start
+                    if (result != null)
+                        result.fail(new IllegalStateException("EngineExecutor stopped"));
+                    else
+                        mDroppedCount.incrementAndGet();
+                    return;
+                }
+                tries = idle(tries, false, false, 0);
+            } else if (ring.claimed.compareAndSet(sequence, sequence + 1)) {
+                break;
+            }
+        }
+        final int index = (int)sequence & ring.mask;
+        Slot slot = ring.slots[index];
+        slot.kind = kind;
+        slot.message = message;
+        slot.batch = batch;
+        slot.result = result;
+        slot.time = System.nanoTime();
+        // the other lanes this thread published in before this call
+        for (int i = 0; i < fences.length; i++) {
+            slot.fences[i] = fences[i];
+        }
+        fences[ordinal] = sequence + 1;
+        ring.published.set(index, sequence);
+        if (mIdle) {
+            Thread thread = mThread;
+            if (thread != null)
+                LockSupport.unpark(thread);
+        }
+        // the loop checks the lanes again after it sees the stop, a call it
+        // missed sees the flag here
+        if (result != null && !mRunning)
+            result.fail(new IllegalStateException("EngineExecutor stopped"));
+    }
+
+    private void runLoop() {
+        final Ring realtime = mLanes[EngineLane.REALTIME.ordinal()];
+        final Ring interactive = mLanes[EngineLane.INTERACTIVE.ordinal()];
+        final Ring bulk = mLanes[EngineLane.BULK.ordinal()];
+        long sliceStart = System.nanoTime();
+        long bulkUsed = 0;
+        int tries = 0;
+        while (true) {
+            // a higher lane is drained before every bulk call
+            if (take(realtime) || take(interactive)) {
+                tries = 0;
+                continue;
+            }
+            long now = System.nanoTime();
+            final long sliceTime = mSliceTime;
+            if (now - sliceStart >= sliceTime) {
+                sliceStart = now;
+                bulkUsed = 0;
+            }
+            boolean bulkPending = bulk.hasNext();
+            if (bulkPending && bulkUsed < (long)(sliceTime * mBulkShare)) {
+                take(bulk);
+                bulkUsed += System.nanoTime() - now;
+                tries = 0;
+                continue;
+            }
+            if (!bulkPending && !mRunning) {
+                if (realtime.hasNext() || interactive.hasNext() || bulk.hasNext())
+                    continue;
+                break;
+            }
+            // throttled bulk calls wait at most for the next slice
+            tries = idle(tries, true, bulkPending, bulkPending ? sliceStart + sliceTime - now
+                    : PARK_NANOS);
+        }
+    }
+
+    /**
+     * Makes the next call of a lane.
+     * 
+     * @return Whether the lane had a call.
+     */
+    private boolean take(Ring ring) {
+        final long next = ring.consumed.get();
+        final int index = (int)next & ring.mask;
+        if (ring.published.get(index) != next)
+            return false;
+        Slot slot = ring.slots[index];
+        // a fenced call was claimed before this one, its own fence on this
+        // lane is behind this slot so the drains never wait on each other
+        for (int i = 0; i < mLanes.length; i++) {
+            if (i != ring.ordinal)
+                drainTo(mLanes[i], slot.fences[i]);
+        }
+        ring.waitTime.record(System.nanoTime() - slot.time);
+        call(slot);
+        slot.message = null;
+        slot.batch = null;
+        slot.result = null;
+        ring.published.set(index, -1);
+        ring.consumed.lazySet(next + 1);
+        return true;
+    }
+
+    /**
+     * Makes the calls of another lane up to a fence, waiting for the calls
+     * claimed before the fence to be published.
+     */
+    private void drainTo(Ring ring, long fence) {
+        int tries = 0;
+        while (ring.consumed.get() < fence) {
+            if (take(ring))
+                tries = 0;
+            else
+                tries = idle(tries, false, false, 0);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void call(Slot slot) {
+        switch (slot.kind) {
+            case SEND:
+                try {
+                    mEngine.sendMessage(slot.message);
+                } catch (RuntimeException e) {
+                    mErrorCount.incrementAndGet();
+                }
+                break;
+            case BATCH:
+                try {
+                    mEngine.sendMessages(slot.batch);
+                } catch (RuntimeException e) {
+                    mErrorCount.incrementAndGet();
+                }
+                break;
+            case READ:
+                callRead(slot.message, (EngineFuture<Float>)slot.result);
+                break;
+            case QUERY:
+                callQuery(slot.message, (EngineFuture<String>)slot.result);
+                break;
+        }
+    }
+
+    private void callRead(String message, EngineFuture<Float> result) {
+        try {
+            result.complete(mEngine.sendMessage(message));
+        } catch (Throwable e) {
+            result.fail(e);
+        }
+    }
+
+    private void callQuery(String message, EngineFuture<String> result) {
+        try {
+            result.complete(mEngine.queryMessage(message));
+        } catch (Throwable e) {
+            result.fail(e);
+        }
+    }
+
+    /**
+     * Waits once by the wait strategy.
+     * 
+     * @param tries The number of waits so far.
+     * @param consumer Whether the I/O thread waits for a call; callers
+     *            waiting on a full buffer yield, they never spin a core away
+     *            from the I/O thread nor park since slots free up without a
+     *            signal.
+     * @param throttled Whether the pending bulk calls wait for the next slice.
+     * @param parkNanos The longest the I/O thread parks.
+     * @return The number of waits, <code>tries + 1</code>.
+     */
+    private int idle(int tries, boolean consumer, boolean throttled, long parkNanos) {
+        if (tries < SPIN_TRIES || mWaitStrategy == WaitStrategy.SPIN && consumer)
+            return tries + 1;
+        if (mWaitStrategy == WaitStrategy.PARK && consumer) {
+            mIdle = true;
+            // recheck after flagging so a publish in between is not missed
+            if (parkNanos > 0 && mRunning && !mLanes[0].hasNext() && !mLanes[1].hasNext()
+                    && (throttled || !mLanes[2].hasNext()))
+                LockSupport.parkNanos(this, parkNanos);
+            mIdle = false;
+        } else {
+            Thread.yield();
+        }
+        return tries + 1;
+    }
+
+    /**
+     * The lock free multi producer ring buffer of one lane.
+     */
+    private static final class Ring {
+
+        final Slot[] slots;
+
+        /**
+         * The sequence published in each slot, <code>-1</code> when free.
+         */
+        final AtomicLongArray published;
+
+        final int mask;
+
+        /**
+         * The ordinal of the ring's lane.
+         */
+        final int ordinal;
+
+        /**
+         * The next sequence to claim.
+         */
+        final AtomicLong claimed = new AtomicLong();
+
+        /**
+         * The next sequence the I/O thread takes, written by the I/O thread
+         * only.
+         */
+        final AtomicLong consumed = new AtomicLong();
+
+        final LatencyHistogram waitTime = new LatencyHistogram();
+
+        Ring(int ordinal, int size, int lanes) {
+            this.ordinal = ordinal;
+            slots = new Slot[size];
+            published = new AtomicLongArray(size);
+            for (int i = 0; i < size; i++) {
+                slots[i] = new Slot(lanes);
+                published.set(i, -1);
+            }
+            mask = size - 1;
+        }
+
+        boolean hasNext() {
+            final long next = consumed.get();
+            return published.get((int)next & mask) == next;
+        }
+
+        int getPendingCount() {
+            return (int)Math.max(0, claimed.get() - consumed.get());
+        }
+    }
+
+    private static final class Slot {
+
+        int kind;
+
+        String message;
+
+        MessageBatch batch;
+
+        EngineFuture<?> result;
+
+        long time;
+
+        /**
+         * The sequence each other lane must be drained to before this call.
+         */
+        final long[] fences;
+
+        Slot(int lanes) {
+            fences = new long[lanes];
+        }
+    }
+}
@@ -0,0 +1,152 @@
+////////////////////////////////////////////////////////////////////////////////
+// Copyright 2013 Michael Schmalle - Teoti Graphix, LLC
+// 
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+// 
+// http://www.apache.org/licenses/LICENSE-2.0 
+// 
+// Unless required by applicable law or agreed to in writing, software 
+// distributed under the License is distributed on an "AS IS" BASIS, 
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and 
+// limitations under the License
+// 
+// Author: Michael Schmalle, Principal Architect
+// mschmalle at teotigraphix dot com
+////////////////////////////////////////////////////////////////////////////////
+
+package com.teotigraphix.caustic.engine;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * The result of an engine call made on another thread, completed once by the
+ * thread that made the call.
+ * <p>
+ * A failed call rethrows its cause wrapped in an {@link ExecutionException}
+ * from {@link #get()}. Engine calls cannot be cancelled once submitted.
+ * 
+ * @author Michael Schmalle
+ * @copyright Teoti Graphix, LLC
+ * @since 1.0
+ */
+public class EngineFuture<V> implements Future<V> {
+
+    private final CountDownLatch mDone = new CountDownLatch(1);
+
+    private volatile V mValue;
+
+    private volatile Throwable mError;
+
+    /**
+     * Constructor.
+     */
+    public EngineFuture() {
+    }
+
+    /**
+     * Completes the future with the call's result, later completions are
+     * ignored.
+     * 
+     * @param value The result.
+     */
+    public void complete(V value) {
+        if (mDone.getCount() == 0)
+            return;
+        mValue = value;
+        mDone.countDown();
+    }
+
+    /**
+     * Completes the future with the error the call threw, later completions
+     * are ignored.
+     * 
+     * @param error The error.
+     */
+    public void fail(Throwable error) {
+        if (mDone.getCount() == 0)
+            return;
+        mError = error;
+        mDone.countDown();
+    }
+
+    /**
+     * Waits for the result without throwing checked exceptions, for callers
+     * implementing the synchronous {@link com.teotigraphix.caustic.core.ICausticEngine}
+     * API.
+     * 
+     * @throws RuntimeException the call failed, runtime errors are rethrown
+     *             as is
+     */
+    public V join() {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    mDone.await();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } finally {
+            if (interrupted)
+                Thread.currentThread().interrupt();
+        }
+        Throwable error = mError;
+        if (error instanceof RuntimeException)
+            throw (RuntimeException)error;
+        if (error instanceof Error)
+            throw (Error)error;
+        if (error != null)
+            throw new IllegalStateException(error);
+        return mValue;
+    }
+
+    //--------------------------------------------------------------------------
+    //
+    // Future API :: Methods
+    //
+    //--------------------------------------------------------------------------
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        return false;
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return false;
+    }
+
+    @Override
+    public boolean isDone() {
+        return mDone.getCount() == 0;
+    }
+
+    @Override
+    public V get() throws InterruptedException, ExecutionException {
+        mDone.await();
+        return getResult();
+    }
+
+    @Override
+    public V get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException,
+            TimeoutException {
+        if (!mDone.await(timeout, unit))
+            throw new TimeoutException();
+        return getResult();
+    }
+
+    private V getResult() throws ExecutionException {
+        if (mError != null)
+            throw new ExecutionException(mError);
+        return mValue;
+    }
+}
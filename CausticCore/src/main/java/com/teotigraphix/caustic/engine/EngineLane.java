@@ -0,0 +1,126 @@
+////////////////////////////////////////////////////////////////////////////////
+// Copyright 2013 Michael Schmalle - Teoti Graphix, LLC
+// 
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+// 
+// http://www.apache.org/licenses/LICENSE-2.0 
+// 
+// Unless required by applicable law or agreed to in writing, software 
+// distributed under the License is distributed on an "AS IS" BASIS, 
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and 
+// limitations under the License
+// 
+// Author: Michael Schmalle, Principal Architect
+// mschmalle at teotigraphix dot com
+////////////////////////////////////////////////////////////////////////////////
+
+package com.teotigraphix.caustic.engine;
+
+/**
+ * The priority classes of engine traffic scheduled by the
+ * {@link EngineExecutor}, highest first.
+ * <p>
+ * A send is classed by its address unless the calling thread opened a lane
+ * with {@link #begin(EngineLane)}, reads, queries and batches are
+ * {@link #INTERACTIVE} unless a lane is open. Code that floods the engine
+ * marks itself as bulk:
+ * 
+ * <pre>
+ * EngineLane.begin(EngineLane.BULK);
+ * try {
+ *     // restore, upload or import
+ * } finally {
+ *     EngineLane.end();
+ * }
+ * </pre>
+ * 
+ * @author Michael Schmalle
+ * @copyright Teoti Graphix, LLC
+ * @since 1.0
+ */
+public enum EngineLane {
+
+    /**
+     * Notes and transport, players hear any delay.
+     */
+    REALTIME,
+
+    /**
+     * Parameter changes and reads made by the user.
+     */
+    INTERACTIVE,
+
+    /**
+     * Restores, uploads and imports, their share of the engine is capped.
+     */
+    BULK;
+
+    private static final ThreadLocal<Scope> SCOPE = new ThreadLocal<Scope>();
+
+    /**
+     * Opens a lane on the calling thread, the engine calls the thread makes
+     * until the matching {@link #end()} are in the lane. Lanes nest, the
+     * innermost is used.
+     * 
+     * @param lane The lane.
+     */
+    public static void begin(EngineLane lane) {
+        SCOPE.set(new Scope(lane, SCOPE.get()));
+    }
+
+    /**
+     * Closes the lane last opened on the calling thread.
+     * 
+     * @throws IllegalStateException no lane is open
+     */
+    public static void end() {
+        Scope scope = SCOPE.get();
+        if (scope == null)
+            throw new IllegalStateException("No EngineLane is open");
+        if (scope.parent == null)
+            SCOPE.remove();
+        else
+            SCOPE.set(scope.parent);
+    }
+
+    /**
+     * Returns the lane open on the calling thread, <code>null</code> when
+     * none is open.
+     */
+    public static EngineLane current() {
+        Scope scope = SCOPE.get();
+        return scope != null ? scope.lane : null;
+    }
+
+    /**
+     * Returns the lane of a send made on the calling thread, the open lane or
+     * else the lane of its address; notes, note previews and transport are
+     * {@link #REALTIME}.
+     * 
+     * @param message The resolved String OSC message.
+     */
+    public static EngineLane of(String message) {
+        EngineLane lane = current();
+        if (lane != null)
+            return lane;
+        if (message.indexOf("/note/") != -1 || message.startsWith("/caustic/outputpanel/play")
+                || message.startsWith("/caustic/sequencer/play_position"))
+            return REALTIME;
+        return INTERACTIVE;
+    }
+
+    private static final class Scope {
+
+        final EngineLane lane;
+
+        final Scope parent;
+
+        Scope(EngineLane lane, Scope parent) {
+            this.lane = lane;
+            this.parent = parent;
+        }
+    }
+}
@@ -0,0 +1,144 @@
+////////////////////////////////////////////////////////////////////////////////
+// Copyright 2013 Michael Schmalle - Teoti Graphix, LLC
+// 
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+// 
+// http://www.apache.org/licenses/LICENSE-2.0 
+// 
+// Unless required by applicable law or agreed to in writing, software 
+// distributed under the License is distributed on an "AS IS" BASIS, 
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and 
+// limitations under the License
+// 
+// Author: Michael Schmalle, Principal Architect
+// mschmalle at teotigraphix dot com
+////////////////////////////////////////////////////////////////////////////////
+
+package com.teotigraphix.caustic.engine;
+
+/**
+ * An immutable snapshot of the calls made to one address family of the
+ * engine, taken by {@link InstrumentedEngine#getStatistics()}.
+ * <p>
+ * Latencies are in nanoseconds.
+ * 
+ * @author Michael Schmalle
+ * @copyright Teoti Graphix, LLC
+ * @since 1.0
+ */
+public final class EngineStatistic {
+
+    /**
+     * The kind of calls made with <code>sendMessage()</code> and
+     * <code>sendMessages()</code>.
+     */
+    public static final String SEND = "send";
+
+    /**
+     * The kind of calls made with <code>queryMessage()</code>.
+     */
+    public static final String QUERY = "query";
+
+    private final String mFamily;
+
+    private final String mKind;
+
+    private final long mCount;
+
+    private final double mMean;
+
+    private final long mP50;
+
+    private final long mP99;
+
+    private final long mP999;
+
+    private final long mMax;
+
+    private final double mCallsPerSecond;
+
+    /**
+     * Returns the address family, numeric path segments are replaced by
+     * <code>#</code>, eg <code>/caustic/mixer/#/volume</code>.
+     */
+    public String getFamily() {
+        return mFamily;
+    }
+
+    /**
+     * Returns {@link #SEND} or {@link #QUERY}.
+     */
+    public String getKind() {
+        return mKind;
+    }
+
+    /**
+     * Returns the number of calls.
+     */
+    public long getCount() {
+        return mCount;
+    }
+
+    /**
+     * Returns the mean latency.
+     */
+    public double getMean() {
+        return mMean;
+    }
+
+    /**
+     * Returns the median latency.
+     */
+    public long getP50() {
+        return mP50;
+    }
+
+    /**
+     * Returns the 99th percentile latency.
+     */
+    public long getP99() {
+        return mP99;
+    }
+
+    /**
+     * Returns the 99.9th percentile latency.
+     */
+    public long getP999() {
+        return mP999;
+    }
+
+    /**
+     * Returns the largest latency.
+     */
+    public long getMax() {
+        return mMax;
+    }
+
+    /**
+     * Returns the calls per second since the statistics were reset.
+     */
+    public double getCallsPerSecond() {
+        return mCallsPerSecond;
+    }
+
+    EngineStatistic(String family, String kind, LatencyHistogram histogram, long elapsed) {
+        mFamily = family;
+        mKind = kind;
+        mCount = histogram.getCount();
+        mMean = histogram.getMean();
+        mP50 = histogram.getValueAtPercentile(50d);
+        mP99 = histogram.getValueAtPercentile(99d);
+        mP999 = histogram.getValueAtPercentile(99.9d);
+        mMax = histogram.getMax();
+        mCallsPerSecond = elapsed <= 0 ? 0d : mCount * 1e9d / elapsed;
+    }
+
+    @Override
+    public String toString() {
+        return mKind + " " + mFamily + " count=" + mCount + " p50=" + mP50 + " p99=" + mP99
+                + " p999=" + mP999 + " max=" + mMax + " calls/s=" + (long)mCallsPerSecond;
+    }
+}
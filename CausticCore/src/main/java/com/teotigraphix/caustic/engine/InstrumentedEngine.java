@@ -0,0 +1,364 @@
+////////////////////////////////////////////////////////////////////////////////
+// Copyright 2013 Michael Schmalle - Teoti Graphix, LLC
+// 
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+// 
+// http://www.apache.org/licenses/LICENSE-2.0 
+// 
+// Unless required by applicable law or agreed to in writing, software 
+// distributed under the License is distributed on an "AS IS" BASIS, 
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and 
+// limitations under the License
+// 
+// Author: Michael Schmalle, Principal Architect
+// mschmalle at teotigraphix dot com
+////////////////////////////////////////////////////////////////////////////////
+
+package com.teotigraphix.caustic.engine;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.teotigraphix.caustic.core.ICausticEngine;
+import com.teotigraphix.caustic.core.MessageBatch;
+
+/**
+ * An {@link ICausticEngine} decorator that measures the time spent in every
+ * engine call.
+ * <p>
+ * Calls are counted and timed in a {@link LatencyHistogram} per address family
+ * and kind, sends and queries are kept apart. The family of an address replaces
+ * its numeric path segments with <code>#</code>, so
+ * <code>/caustic/mixer/3/volume 0.5</code> and
+ * <code>/caustic/mixer/7/volume</code> both count as
+ * <code>/caustic/mixer/#/volume</code>. Batches count as the {@link #BATCH}
+ * family, the totals of all calls as the {@link #ALL} family.
+ * <p>
+ * Recording takes two <code>nanoTime()</code> calls, a table lookup of the
+ * address in place and a few atomic increments per call; once an address has
+ * been seen no locks are taken and nothing is allocated.
+ * 
+ * @author Michael Schmalle
+ * @copyright Teoti Graphix, LLC
+ * @since 1.0
+ */
+public class InstrumentedEngine implements ICausticEngine {
+
+    /**
+     * The family of <code>sendMessages()</code> calls.
+     */
+    public static final String BATCH = "batch";
+
+    /**
+     * The family of the totals of all calls.
+     */
+    public static final String ALL = "*";
+
+    private final ICausticEngine mEngine;
+
+    /**
+     * Address to its family's histograms, replaced when an address is added.
+     */
+    private volatile AddressTable mAddresses = new AddressTable(64);
+
+    /**
+     * Family name to its histograms.
+     */
+    private final ConcurrentMap<String, Family> mFamilies =
+            new ConcurrentHashMap<String, Family>();
+
+    private final Family mAll = new Family(ALL);
+
+    private final Family mBatch = new Family(BATCH);
+
+    private volatile long mStartTime = System.nanoTime();
+
+    //--------------------------------------------------------------------------
+    //
+    // Public :: Properties
+    //
+    //--------------------------------------------------------------------------
+
+    //----------------------------------
+    // engine
+    //----------------------------------
+
+    /**
+     * Returns the decorated engine.
+     */
+    public final ICausticEngine getEngine() {
+        return mEngine;
+    }
+
+    //--------------------------------------------------------------------------
+    //
+    // Constructor
+    //
+    //--------------------------------------------------------------------------
+
+    /**
+     * Constructor.
+     * 
+     * @param engine The engine to decorate.
+     */
+    public InstrumentedEngine(ICausticEngine engine) {
+        mEngine = engine;
+        mFamilies.put(ALL, mAll);
+        mFamilies.put(BATCH, mBatch);
+    }
+
+    //--------------------------------------------------------------------------
+    //
+    // Public :: Methods
+    //
+    //--------------------------------------------------------------------------
+
+    /**
+     * Returns a snapshot of every family and kind that has calls, the totals
+     * first and then by call count, highest first.
+     */
+    public List<EngineStatistic> getStatistics() {
+        final long elapsed = System.nanoTime() - mStartTime;
+        List<EngineStatistic> result = new ArrayList<EngineStatistic>();
+        for (Family family : mFamilies.values()) {
+            if (family.send.getCount() > 0)
+                result.add(new EngineStatistic(family.name, EngineStatistic.SEND, family.send,
+                        elapsed));
+            if (family.query.getCount() > 0)
+                result.add(new EngineStatistic(family.name, EngineStatistic.QUERY,
+                        family.query, elapsed));
+        }
+        Collections.sort(result, new Comparator<EngineStatistic>() {
+            @Override
+            public int compare(EngineStatistic a, EngineStatistic b) {
+                boolean allA = ALL.equals(a.getFamily());
+                boolean allB = ALL.equals(b.getFamily());
+                if (allA != allB)
+                    return allA ? -1 : 1;
+                return a.getCount() < b.getCount() ? 1 : a.getCount() > b.getCount() ? -1 : 0;
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Clears all histograms and restarts the calls per second period.
+     */
+    public void reset() {
+        for (Family family : mFamilies.values()) {
+            family.send.reset();
+            family.query.reset();
+        }
+        mStartTime = System.nanoTime();
+    }
+
+    /**
+     * Returns the statistics of all families as text, one line each.
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (EngineStatistic statistic : getStatistics()) {
+            sb.append(statistic).append('\n');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Returns the family of a resolved message, the address with its numeric
+     * path segments replaced by <code>#</code>.
+     * 
+     * @param message The resolved String OSC message.
+     */
+    public static String toFamily(String message) {
+        int end = message.indexOf(' ');
+        if (end == -1)
+            end = message.length();
+        StringBuilder sb = new StringBuilder(end);
+        int start = 0;
+        while (start < end) {
+            int slash = message.indexOf('/', start);
+            if (slash == -1 || slash > end)
+                slash = end;
+            if (isNumber(message, start, slash))
+                sb.append('#');
+            else
+                sb.append(message, start, slash);
+            if (slash < end)
+                sb.append('/');
+            start = slash + 1;
+        }
+        return sb.toString();
+    }
+
+    //--------------------------------------------------------------------------
+    //
+    // ICausticEngine API :: Methods
+    //
+    //--------------------------------------------------------------------------
+
+    @Override
+    public float sendMessage(String message) {
+        final long start = System.nanoTime();
+        try {
+            return mEngine.sendMessage(message);
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            getFamily(message).send.record(elapsed);
+            mAll.send.record(elapsed);
+        }
+    }
+
+    @Override
+    public String queryMessage(String message) {
+        final long start = System.nanoTime();
+        try {
+            return mEngine.queryMessage(message);
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            getFamily(message).query.record(elapsed);
+            mAll.query.record(elapsed);
+        }
+    }
+
+    @Override
+    public void sendMessages(MessageBatch batch) {
+        final long start = System.nanoTime();
+        try {
+            mEngine.sendMessages(batch);
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            mBatch.send.record(elapsed);
+            mAll.send.record(elapsed);
+        }
+    }
+
+    //--------------------------------------------------------------------------
+    //
+    // Private :: Methods
+    //
+    //--------------------------------------------------------------------------
+
+    private Family getFamily(String message) {
+        int end = message.indexOf(' ');
+        if (end == -1)
+            end = message.length();
+        Family family = mAddresses.get(message, end);
+        if (family != null)
+            return family;
+        return addFamily(message.substring(0, end));
+    }
+
+    private synchronized Family addFamily(String address) {
+        AddressTable table = mAddresses;
+        Family family = table.get(address, address.length());
+        if (family != null)
+            return family;
+        String name = toFamily(address);
+        family = mFamilies.get(name);
+        if (family == null) {
+            family = new Family(name);
+            mFamilies.put(name, family);
+        }
+        mAddresses = table.put(address, family);
+        return family;
+    }
+
+    private static boolean isNumber(String message, int start, int end) {
+        if (start == end)
+            return false;
+        for (int i = start; i < end; i++) {
+            char c = message.charAt(i);
+            if (c < '0' || c > '9')
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * An open addressing table of addresses that is looked up with a message
+     * and the end of its address, without cutting the address out. A table is
+     * never changed once published, {@link #put(String, Family)} returns a
+     * copy.
+     */
+    private static final class AddressTable {
+
+        private final String[] mKeys;
+
+        private final Family[] mValues;
+
+        private final int mSize;
+
+        AddressTable(int capacity) {
+            this(new String[capacity], new Family[capacity], 0);
+        }
+
+        private AddressTable(String[] keys, Family[] values, int size) {
+            mKeys = keys;
+            mValues = values;
+            mSize = size;
+        }
+
+        Family get(String message, int end) {
+            final int mask = mKeys.length - 1;
+            for (int i = hash(message, end) & mask;; i = (i + 1) & mask) {
+                String key = mKeys[i];
+                if (key == null)
+                    return null;
+                if (key.length() == end && key.regionMatches(0, message, 0, end))
+                    return mValues[i];
+            }
+        }
+
+        AddressTable put(String address, Family family) {
+            // kept at most half full so a probe always ends on an empty slot
+            int capacity = (mSize + 1) * 2 > mKeys.length ? mKeys.length * 2 : mKeys.length;
+            AddressTable result = new AddressTable(new String[capacity],
+                    new Family[capacity], mSize + 1);
+            for (int i = 0; i < mKeys.length; i++) {
+                if (mKeys[i] != null)
+                    result.insert(mKeys[i], mValues[i]);
+            }
+            result.insert(address, family);
+            return result;
+        }
+
+        private void insert(String address, Family family) {
+            final int mask = mKeys.length - 1;
+            int i = hash(address, address.length()) & mask;
+            while (mKeys[i] != null) {
+                i = (i + 1) & mask;
+            }
+            mKeys[i] = address;
+            mValues[i] = family;
+        }
+
+        private static int hash(String message, int end) {
+            int h = 0;
+            for (int i = 0; i < end; i++) {
+                h = 31 * h + message.charAt(i);
+            }
+            return h ^ (h >>> 16);
+        }
+    }
+
+    private static final class Family {
+
+        final String name;
+
+        final LatencyHistogram send = new LatencyHistogram();
+
+        final LatencyHistogram query = new LatencyHistogram();
+
+        Family(String name) {
+            this.name = name;
+        }
+    }
+}
@@ -0,0 +1,446 @@
+////////////////////////////////////////////////////////////////////////////////
+// Copyright 2013 Michael Schmalle - Teoti Graphix, LLC
+// 
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+// 
+// http://www.apache.org/licenses/LICENSE-2.0 
+// 
+// Unless required by applicable law or agreed to in writing, software 
+// distributed under the License is distributed on an "AS IS" BASIS, 
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and 
+// limitations under the License
+// 
+// Author: Michael Schmalle, Principal Architect
+// mschmalle at teotigraphix dot com
+////////////////////////////////////////////////////////////////////////////////
+
+package com.teotigraphix.caustic.engine;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.teotigraphix.caustic.core.ICausticEngine;
+import com.teotigraphix.caustic.core.MessageBatch;
+
+/**
+ * An {@link ICausticEngine} decorator that records every message sent to the
+ * engine in a binary journal.
+ * <p>
+ * The journal is a directory of memory mapped segment files,
+ * <code>engine-00000.journal</code>, <code>engine-00001.journal</code> and so
+ * on. A record is appended in place to the mapped segment, a new segment is
+ * mapped when the current one is full. Each record holds the sequence number
+ * taken before the call, the {@link System#nanoTime()} the call started, the
+ * time the engine took, the calling thread's id, the message and the engine's
+ * result. Records are written once the call returns, so the records of
+ * concurrent calls can be out of sequence in the file.
+ * <p>
+ * Segment layout, all values big-endian:
+ * 
+ * <pre>
+ * header  int magic, int version, long wall clock millis, long nanoTime
+ * record  int size, byte kind, long sequence, long nanoTime, long elapsed,
+ *         long thread, kind data
+ * end     int 0
+ * </pre>
+ * 
+ * The kind data is the message and float result of a {@link #SEND}, the
+ * message and String result of a {@link #QUERY}, or the message count and
+ * messages of a {@link #BATCH}. Strings are an int length followed by the
+ * chars, <code>-1</code> for <code>null</code>.
+ * <p>
+ * A journal is read back with {@link JournalReplayer}, in sequence order.
+ * <p>
+ * A journal failure never fails a call: when a new segment can not be mapped
+ * the journal is closed and counted by {@link #getErrorCount()}, messages are
+ * still passed to the engine.
+ * <p>
+ * The segments of a previous journal in the directory are kept, they are
+ * moved to a subdirectory named by the previous journal's start time, eg
+ * <code>session-20131018-143000-125</code>.
+ * 
+ * @author Michael Schmalle
+ * @copyright Teoti Graphix, LLC
+ * @since 1.0
+ */
+public class JournalEngine implements ICausticEngine {
+
+    /**
+     * The default size of a journal segment, 16 MB.
+     */
+    public static final int DEFAULT_SEGMENT_SIZE = 16 * 1024 * 1024;
+
+    public static final int MAGIC = 0x434A524E;
+
+    public static final int VERSION = 2;
+
+    public static final byte SEND = 1;
+
+    public static final byte QUERY = 2;
+
+    public static final byte BATCH = 3;
+
+    static final String PREFIX = "engine-";
+
+    static final String EXTENSION = ".journal";
+
+    static final String SESSION_PREFIX = "session-";
+
+    static final int HEADER_SIZE = 24;
+
+    /**
+     * size, kind, sequence, nanoTime, elapsed, thread.
+     */
+    static final int RECORD_HEADER_SIZE = 4 + 1 + 8 + 8 + 8 + 8;
+
+    private final ICausticEngine mEngine;
+
+    private final File mDirectory;
+
+    private final int mSegmentSize;
+
+    private MappedByteBuffer mSegment;
+
+    private FileChannel mChannel;
+
+    private int mSegmentIndex = -1;
+
+    private final AtomicLong mSequence = new AtomicLong();
+
+    //--------------------------------------------------------------------------
+    //
+    // Public :: Properties
+    //
+    //--------------------------------------------------------------------------
+
+    //----------------------------------
+    // engine
+    //----------------------------------
+
+    /**
+     * Returns the decorated engine.
+     */
+    public final ICausticEngine getEngine() {
+        return mEngine;
+    }
+
+    //----------------------------------
+    // directory
+    //----------------------------------
+
+    /**
+     * Returns the directory the segments are written to.
+     */
+    public final File getDirectory() {
+        return mDirectory;
+    }
+
+    //----------------------------------
+    // recordCount
+    //----------------------------------
+
+    private long mRecordCount;
+
+    /**
+     * Returns the number of records written.
+     */
+    public synchronized long getRecordCount() {
+        return mRecordCount;
+    }
+
+    //----------------------------------
+    // errorCount
+    //----------------------------------
+
+    private long mErrorCount;
+
+    /**
+     * Returns the number of segments that could not be mapped, the first
+     * failure closes the journal.
+     */
+    public synchronized long getErrorCount() {
+        return mErrorCount;
+    }
+
+    //--------------------------------------------------------------------------
+    //
+    // Constructors
+    //
+    //--------------------------------------------------------------------------
+
+    /**
+     * Constructor, segments are {@link #DEFAULT_SEGMENT_SIZE} bytes.
+     * 
+     * @param engine The engine to decorate.
+     * @param directory The journal directory, created if it does not exist.
+     * @throws IOException the first segment could not be mapped
+     */
+    public JournalEngine(ICausticEngine engine, File directory) throws IOException {
+        this(engine, directory, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Constructor.
+     * <p>
+     * Segments of a previous journal in the directory are moved to a
+     * <code>session-</code> subdirectory.
+     * 
+     * @param engine The engine to decorate.
+     * @param directory The journal directory, created if it does not exist.
+     * @param segmentSize The size of a segment in bytes.
+     * @throws IOException the first segment could not be mapped
+     */
+    public JournalEngine(ICausticEngine engine, File directory, int segmentSize)
+            throws IOException {
+        mEngine = engine;
+        mDirectory = directory;
+        mSegmentSize = segmentSize;
+        if (!directory.isDirectory() && !directory.mkdirs())
+            throw new IOException("Journal directory " + directory.getAbsolutePath()
+                    + " was not created.");
+        File[] previous = JournalReplayer.listSegments(directory);
+        if (previous.length > 0) {
+            File session = getSessionDirectory(directory, previous[0]);
+            if (!session.mkdirs())
+                throw new IOException("Journal session " + session.getAbsolutePath()
+                        + " was not created.");
+            for (File file : previous) {
+                if (!file.renameTo(new File(session, file.getName())))
+                    throw new IOException("Journal segment " + file.getAbsolutePath()
+                            + " was not moved.");
+            }
+        }
+        rotate(0);
+    }
+
+    //--------------------------------------------------------------------------
+    //
+    // Public :: Methods
+    //
+    //--------------------------------------------------------------------------
+
+    /**
+     * Forces the written records of the current segment to the storage
+     * device.
+     */
+    public synchronized void force() {
+        if (mSegment != null)
+            mSegment.force();
+    }
+
+    /**
+     * Forces the current segment and closes the journal, messages are still
+     * passed to the engine but no longer recorded.
+     */
+    public synchronized void close() {
+        if (mSegment == null)
+            return;
+        mSegment.force();
+        try {
+            mChannel.close();
+        } catch (IOException e) {
+            // the mapping stays valid until collected
+        }
+        mSegment = null;
+        mChannel = null;
+    }
+
+    //--------------------------------------------------------------------------
+    //
+    // ICausticEngine API :: Methods
+    //
+    //--------------------------------------------------------------------------
+
+    @Override
+    public float sendMessage(String message) {
+        // taken before the call, the calls' order is the order they started
+        final long sequence = mSequence.getAndIncrement();
+        final long start = System.nanoTime();
+        float result = Float.NaN;
+        try {
+            result = mEngine.sendMessage(message);
+        } finally {
+            // a failed call is recorded too, the replay waits for no gap
+            final long elapsed = System.nanoTime() - start;
+            synchronized (this) {
+                if (begin(SEND, sequence, start, elapsed, sizeOf(message) + 4)) {
+                    putString(mSegment, message);
+                    mSegment.putFloat(result);
+                    mRecordCount++;
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public String queryMessage(String message) {
+        final long sequence = mSequence.getAndIncrement();
+        final long start = System.nanoTime();
+        String result = null;
+        try {
+            result = mEngine.queryMessage(message);
+        } finally {
+            final long elapsed = System.nanoTime() - start;
+            synchronized (this) {
+                if (begin(QUERY, sequence, start, elapsed, sizeOf(message) + sizeOf(result))) {
+                    putString(mSegment, message);
+                    putString(mSegment, result);
+                    mRecordCount++;
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void sendMessages(MessageBatch batch) {
+        final long sequence = mSequence.getAndIncrement();
+        final long start = System.nanoTime();
+        try {
+            mEngine.sendMessages(batch);
+        } finally {
+            final long elapsed = System.nanoTime() - start;
+            final int count = batch.size();
+            int size = 4;
+            for (int i = 0; i < count; i++)
+                size += sizeOf(batch.get(i));
+            synchronized (this) {
+                if (begin(BATCH, sequence, start, elapsed, size)) {
+                    mSegment.putInt(count);
+                    for (int i = 0; i < count; i++)
+                        putString(mSegment, batch.get(i));
+                    mRecordCount++;
+                }
+            }
+        }
+    }
+
+    //--------------------------------------------------------------------------
+    //
+    // Private :: Methods
+    //
+    //--------------------------------------------------------------------------
+
+    /**
+     * Writes the record header, rotating the segment when the record and the
+     * end marker do not fit.
+     * 
+     * @return <code>false</code> if the journal is closed or was closed by a
+     *         failed rotation
+     */
+    private boolean begin(byte kind, long sequence, long start, long elapsed, int dataSize) {
+        if (mSegment == null)
+            return false;
+        final int size = RECORD_HEADER_SIZE + dataSize;
+        if (mSegment.remaining() < size + 4) {
+            try {
+                rotate(size);
+            } catch (IOException e) {
+                // the call went through, only the journal ends
+                mErrorCount++;
+                e.printStackTrace();
+                return false;
+            }
+        }
+        mSegment.putInt(size);
+        mSegment.put(kind);
+        mSegment.putLong(sequence);
+        mSegment.putLong(start);
+        mSegment.putLong(elapsed);
+        mSegment.putLong(Thread.currentThread().getId());
+        return true;
+    }
+
+    private void rotate(int recordSize) throws IOException {
+        if (mSegment != null) {
+            // the mapped file is zero filled, the end marker is already there
+            mSegment.force();
+            FileChannel channel = mChannel;
+            // a failure below leaves the journal closed
+            mSegment = null;
+            mChannel = null;
+            channel.close();
+        }
+        mSegmentIndex++;
+        final int size = Math.max(mSegmentSize, HEADER_SIZE + recordSize + 4);
+        File file = getSegmentFile(mDirectory, mSegmentIndex);
+        RandomAccessFile access = new RandomAccessFile(file, "rw");
+        FileChannel channel = access.getChannel();
+        MappedByteBuffer segment;
+        try {
+            segment = channel.map(MapMode.READ_WRITE, 0, size);
+        } catch (IOException e) {
+            access.close();
+            throw e;
+        }
+        mChannel = channel;
+        mSegment = segment;
+        mSegment.putInt(MAGIC);
+        mSegment.putInt(VERSION);
+        mSegment.putLong(System.currentTimeMillis());
+        mSegment.putLong(System.nanoTime());
+    }
+
+    /**
+     * Returns the subdirectory a previous journal is moved to, named by the
+     * wall clock time in its first segment's header.
+     */
+    private static File getSessionDirectory(File directory, File first) {
+        long time = first.lastModified();
+        try {
+            RandomAccessFile access = new RandomAccessFile(first, "r");
+            try {
+                if (access.length() >= HEADER_SIZE && access.readInt() == MAGIC) {
+                    access.readInt(); // version
+                    time = access.readLong();
+                }
+            } finally {
+                access.close();
+            }
+        } catch (IOException e) {
+            // named by the file's time
+        }
+        SimpleDateFormat format = new SimpleDateFormat("yyyyMMdd-HHmmss-SSS");
+        String name = SESSION_PREFIX + format.format(new Date(time));
+        File result = new File(directory, name);
+        // a journal started in the same millisecond
+        for (int i = 1; result.exists(); i++)
+            result = new File(directory, name + "-" + i);
+        return result;
+    }
+
+    static File getSegmentFile(File directory, int index) {
+        String name = Integer.toString(index);
+        StringBuilder sb = new StringBuilder(PREFIX);
+        for (int i = name.length(); i < 5; i++)
+            sb.append('0');
+        sb.append(name).append(EXTENSION);
+        return new File(directory, sb.toString());
+    }
+
+    private static int sizeOf(String value) {
+        return value == null ? 4 : 4 + value.length() * 2;
+    }
+
+    private static void putString(MappedByteBuffer buffer, String value) {
+        if (value == null) {
+            buffer.putInt(-1);
+            return;
+        }
+        final int length = value.length();
+        buffer.putInt(length);
+        for (int i = 0; i < length; i++)
+            buffer.putChar(value.charAt(i));
+    }
+}
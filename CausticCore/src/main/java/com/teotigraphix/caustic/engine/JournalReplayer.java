@@ -0,0 +1,369 @@
+////////////////////////////////////////////////////////////////////////////////
+// Copyright 2013 Michael Schmalle - Teoti Graphix, LLC
+// 
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+// 
+// http://www.apache.org/licenses/LICENSE-2.0 
+// 
+// Unless required by applicable law or agreed to in writing, software 
+// distributed under the License is distributed on an "AS IS" BASIS, 
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and 
+// limitations under the License
+// 
+// Author: Michael Schmalle, Principal Architect
+// mschmalle at teotigraphix dot com
+////////////////////////////////////////////////////////////////////////////////
+
+package com.teotigraphix.caustic.engine;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.Arrays;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.LockSupport;
+
+import com.teotigraphix.caustic.core.ICausticEngine;
+import com.teotigraphix.caustic.core.MessageBatch;
+
+/**
+ * Feeds the records of a {@link JournalEngine} journal back into an
+ * {@link ICausticEngine}.
+ * <p>
+ * A replay either keeps the original timing, each message is sent at the same
+ * offset from the first record as it was recorded, or sends the messages as
+ * fast as possible. A full speed replay measures the throughput of the
+ * message layer and the engine with a real workload.
+ * <p>
+ * Records are replayed in sequence order, the order their calls started; the
+ * few records concurrent calls wrote out of sequence are held back until the
+ * records before them have been read. A sequence that never shows up, a call
+ * still running when the journal was cut off, is skipped once more than
+ * {@link #getWindow()} records wait behind it.
+ * 
+ * <pre>
+ * JournalReplayer replayer = new JournalReplayer(directory);
+ * replayer.replay(engine, false);
+ * float rate = replayer.getMessagesPerSecond();
+ * </pre>
+ * 
+ * @author Michael Schmalle
+ * @copyright Teoti Graphix, LLC
+ * @since 1.0
+ */
+public class JournalReplayer {
+
+    /**
+     * The default number of records held back behind a missing sequence.
+     */
+    public static final int DEFAULT_WINDOW = 1024;
+
+    private final File mDirectory;
+
+    /**
+     * The nanoTime the running replay started at.
+     */
+    private long mStart;
+
+    /**
+     * The recorded nanoTime of the running replay's first record.
+     */
+    private long mFirst;
+
+    //----------------------------------
+    // window
+    //----------------------------------
+
+    private int mWindow = DEFAULT_WINDOW;
+
+    /**
+     * Returns the most records held back behind a missing sequence.
+     */
+    public int getWindow() {
+        return mWindow;
+    }
+
+    /**
+     * Sets the most records held back behind a missing sequence, one more
+     * skips the gap.
+     * 
+     * @param value The window, above <code>0</code>.
+     */
+    public void setWindow(int value) {
+        if (value <= 0)
+            throw new IllegalArgumentException("window <= 0");
+        mWindow = value;
+    }
+
+    //----------------------------------
+    // gapCount
+    //----------------------------------
+
+    private long mGapCount;
+
+    /**
+     * Returns the number of missing sequences the last replay skipped.
+     */
+    public long getGapCount() {
+        return mGapCount;
+    }
+
+    //----------------------------------
+    // messageCount
+    //----------------------------------
+
+    private long mMessageCount;
+
+    /**
+     * Returns the number of messages sent by the last replay, each message of
+     * a batch counts.
+     */
+    public long getMessageCount() {
+        return mMessageCount;
+    }
+
+    //----------------------------------
+    // recordCount
+    //----------------------------------
+
+    private long mRecordCount;
+
+    /**
+     * Returns the number of records replayed by the last replay.
+     */
+    public long getRecordCount() {
+        return mRecordCount;
+    }
+
+    //----------------------------------
+    // elapsed
+    //----------------------------------
+
+    private long mElapsed;
+
+    /**
+     * Returns the nanoseconds the last replay took.
+     */
+    public long getElapsed() {
+        return mElapsed;
+    }
+
+    /**
+     * Returns the messages per second of the last replay.
+     */
+    public float getMessagesPerSecond() {
+        return mElapsed == 0 ? 0f : mMessageCount * 1e9f / mElapsed;
+    }
+
+    //--------------------------------------------------------------------------
+    //
+    // Constructor
+    //
+    //--------------------------------------------------------------------------
+
+    /**
+     * Constructor.
+     * 
+     * @param directory The journal directory written by a
+     *            {@link JournalEngine}.
+     */
+    public JournalReplayer(File directory) {
+        mDirectory = directory;
+    }
+
+    //--------------------------------------------------------------------------
+    //
+    // Public :: Methods
+    //
+    //--------------------------------------------------------------------------
+
+    /**
+     * Sends every journaled message to the engine in sequence order.
+     * 
+     * @param engine The engine to replay to.
+     * @param realTime <code>true</code> to keep the recorded timing,
+     *            <code>false</code> to send as fast as possible.
+     * @throws IOException a segment could not be read or is not a journal
+     */
+    public void replay(ICausticEngine engine, boolean realTime) throws IOException {
+        mMessageCount = 0;
+        mRecordCount = 0;
+        mGapCount = 0;
+
+        mStart = System.nanoTime();
+        mFirst = Long.MIN_VALUE;
+        final PriorityQueue<Record> pending = new PriorityQueue<Record>();
+        long next = 0;
+        for (File file : listSegments(mDirectory)) {
+            ByteBuffer segment = map(file);
+            while (segment.remaining() >= 4) {
+                int size = segment.getInt();
+                if (size == 0)
+                    break;
+                Record record = new Record();
+                record.kind = segment.get();
+                record.sequence = segment.getLong();
+                record.time = segment.getLong();
+                segment.getLong(); // elapsed
+                segment.getLong(); // thread
+
+                switch (record.kind) {
+                    case JournalEngine.SEND:
+                        record.message = getString(segment);
+                        segment.getFloat();
+                        break;
+                    case JournalEngine.QUERY:
+                        record.message = getString(segment);
+                        getString(segment);
+                        break;
+                    case JournalEngine.BATCH:
+                        int count = segment.getInt();
+                        record.batch = new MessageBatch();
+                        for (int i = 0; i < count; i++)
+                            record.batch.add(getString(segment));
+                        break;
+                    default:
+                        throw new IOException("Unknown journal record kind " + record.kind
+                                + " in " + file.getName());
+                }
+
+                pending.add(record);
+                if (pending.size() > mWindow) {
+                    // the missing records are not coming, go on from the
+                    // oldest one read
+                    long sequence = pending.peek().sequence;
+                    mGapCount += Math.max(0, sequence - next);
+                    next = sequence;
+                }
+                while (!pending.isEmpty() && pending.peek().sequence == next) {
+                    send(engine, pending.poll(), realTime);
+                    next++;
+                }
+            }
+        }
+        // the records after a gap, a call not recorded once the journal closed
+        while (!pending.isEmpty()) {
+            Record record = pending.poll();
+            mGapCount += Math.max(0, record.sequence - next);
+            next = record.sequence + 1;
+            send(engine, record, realTime);
+        }
+        mElapsed = System.nanoTime() - mStart;
+    }
+
+    /**
+     * Returns the journal segment files of the directory in write order.
+     * 
+     * @param directory The journal directory.
+     */
+    public static File[] listSegments(File directory) {
+        File[] files = directory.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                String name = file.getName();
+                return name.startsWith(JournalEngine.PREFIX)
+                        && name.endsWith(JournalEngine.EXTENSION);
+            }
+        });
+        if (files == null)
+            return new File[0];
+        // zero padded indexes sort by name
+        Arrays.sort(files);
+        return files;
+    }
+
+    //--------------------------------------------------------------------------
+    //
+    // Private :: Methods
+    //
+    //--------------------------------------------------------------------------
+
+    private void send(ICausticEngine engine, Record record, boolean realTime) {
+        if (realTime) {
+            if (mFirst == Long.MIN_VALUE)
+                mFirst = record.time;
+            waitUntil(mStart + (record.time - mFirst));
+        }
+        switch (record.kind) {
+            case JournalEngine.SEND:
+                engine.sendMessage(record.message);
+                mMessageCount++;
+                break;
+            case JournalEngine.QUERY:
+                engine.queryMessage(record.message);
+                mMessageCount++;
+                break;
+            default:
+                engine.sendMessages(record.batch);
+                mMessageCount += record.batch.size();
+        }
+        mRecordCount++;
+    }
+
+    private static ByteBuffer map(File file) throws IOException {
+        RandomAccessFile access = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = access.getChannel();
+            ByteBuffer segment = channel.map(MapMode.READ_ONLY, 0, channel.size());
+            if (segment.remaining() < JournalEngine.HEADER_SIZE
+                    || segment.getInt() != JournalEngine.MAGIC)
+                throw new IOException(file.getName() + " is not an engine journal");
+            int version = segment.getInt();
+            if (version != JournalEngine.VERSION)
+                throw new IOException(file.getName() + " has unsupported version " + version);
+            segment.getLong(); // wall clock
+            segment.getLong(); // nanoTime
+            return segment;
+        } finally {
+            access.close();
+        }
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length == -1)
+            return null;
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++)
+            chars[i] = buffer.getChar();
+        return new String(chars);
+    }
+
+    private static void waitUntil(long deadline) {
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > 0) {
+            if (remaining > 2000000L)
+                LockSupport.parkNanos(remaining - 1000000L);
+            else
+                Thread.yield();
+        }
+    }
+
+    /**
+     * A record read ahead of the replay.
+     */
+    private static final class Record implements Comparable<Record> {
+
+        long sequence;
+
+        byte kind;
+
+        long time;
+
+        String message;
+
+        MessageBatch batch;
+
+        @Override
+        public int compareTo(Record other) {
+            return sequence < other.sequence ? -1 : sequence == other.sequence ? 0 : 1;
+        }
+    }
+}
@@ -0,0 +1,193 @@
+////////////////////////////////////////////////////////////////////////////////
+// Copyright 2013 Michael Schmalle - Teoti Graphix, LLC
+// 
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+// 
+// http://www.apache.org/licenses/LICENSE-2.0 
+// 
+// Unless required by applicable law or agreed to in writing, software 
+// distributed under the License is distributed on an "AS IS" BASIS, 
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and 
+// limitations under the License
+// 
+// Author: Michael Schmalle, Principal Architect
+// mschmalle at teotigraphix dot com
+////////////////////////////////////////////////////////////////////////////////
+
+package com.teotigraphix.caustic.engine;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock free latency histogram with log-linear buckets, in the style of an
+ * HDR histogram.
+ * <p>
+ * Values below 64 nanoseconds have a bucket each, above that every power of
+ * two is split into 32 linear buckets, so a recorded value is reported within
+ * about 3% of its real value. Values up to about 73 minutes are tracked, larger
+ * values count in the last bucket.
+ * <p>
+ * Recording is a few atomic increments and never allocates or blocks.
+ * Percentiles read while other threads record are a close approximation.
+ * 
+ * @author Michael Schmalle
+ * @copyright Teoti Graphix, LLC
+ * @since 1.0
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BITS = 5;
+
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+
+    private static final int LINEAR_COUNT = SUB_COUNT * 2;
+
+    private static final int MAX_SHIFT = 36;
+
+    private static final int BUCKET_COUNT = LINEAR_COUNT + MAX_SHIFT * SUB_COUNT;
+
+    private final AtomicLongArray mBuckets = new AtomicLongArray(BUCKET_COUNT);
+
+    private final AtomicLong mCount = new AtomicLong();
+
+    private final AtomicLong mTotal = new AtomicLong();
+
+    private final AtomicLong mMax = new AtomicLong();
+
+    //--------------------------------------------------------------------------
+    //
+    // Public :: Properties
+    //
+    //--------------------------------------------------------------------------
+
+    /**
+     * Returns the number of values recorded.
+     */
+    public long getCount() {
+        return mCount.get();
+    }
+
+    /**
+     * Returns the sum of all values recorded.
+     */
+    public long getTotal() {
+        return mTotal.get();
+    }
+
+    /**
+     * Returns the largest value recorded.
+     */
+    public long getMax() {
+        return mMax.get();
+    }
+
+    /**
+     * Returns the mean of the values recorded, <code>0</code> when empty.
+     */
+    public double getMean() {
+        long count = mCount.get();
+        return count == 0 ? 0d : (double)mTotal.get() / count;
+    }
+
+    //--------------------------------------------------------------------------
+    //
+    // Constructor
+    //
+    //--------------------------------------------------------------------------
+
+    /**
+     * Constructor.
+     */
+    public LatencyHistogram() {
+    }
+
+    //--------------------------------------------------------------------------
+    //
+    // Public :: Methods
+    //
+    //--------------------------------------------------------------------------
+
+    /**
+     * Records a value.
+     * 
+     * @param value The latency in nanoseconds, negative values count as
+     *            <code>0</code>.
+     */
+    public void record(long value) {
+        if (value < 0)
+            value = 0;
+        mBuckets.incrementAndGet(indexOf(value));
+        mCount.incrementAndGet();
+        mTotal.addAndGet(value);
+        long max;
+        while (value > (max = mMax.get())) {
+            if (mMax.compareAndSet(max, value))
+                break;
+        }
+    }
+
+    /**
+     * Returns the value below which the percentage of the recorded values
+     * fall, the upper bound of the bucket the percentile lands in.
+     * 
+     * @param percentile The percentile, <code>0</code> to <code>100</code>.
+     */
+    public long getValueAtPercentile(double percentile) {
+        long count = mCount.get();
+        if (count == 0)
+            return 0;
+        long rank = (long)Math.ceil(percentile / 100d * count);
+        if (rank < 1)
+            rank = 1;
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += mBuckets.get(i);
+            if (seen >= rank)
+                return Math.min(upperBoundOf(i), mMax.get());
+        }
+        return mMax.get();
+    }
+
+    /**
+     * Removes all recorded values.
+     * <p>
+     * Values recorded during the reset may be partly kept.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            mBuckets.set(i, 0);
+        }
+        mCount.set(0);
+        mTotal.set(0);
+        mMax.set(0);
+    }
+
+    //--------------------------------------------------------------------------
+    //
+    // Private :: Methods
+    //
+    //--------------------------------------------------------------------------
+
+    static int indexOf(long value) {
+        if (value < LINEAR_COUNT)
+            return (int)value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BITS;
+        if (shift > MAX_SHIFT)
+            return BUCKET_COUNT - 1;
+        int sub = (int)(value >>> shift) - SUB_COUNT;
+        return LINEAR_COUNT + (shift - 1) * SUB_COUNT + sub;
+    }
+
+    static long upperBoundOf(int index) {
+        if (index < LINEAR_COUNT)
+            return index;
+        int shift = (index - LINEAR_COUNT) / SUB_COUNT + 1;
+        long sub = (index - LINEAR_COUNT) % SUB_COUNT + SUB_COUNT;
+        return ((sub + 1) << shift) - 1;
+    }
+}
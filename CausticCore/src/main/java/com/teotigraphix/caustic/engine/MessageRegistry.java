@@ -0,0 +1,264 @@
+////////////////////////////////////////////////////////////////////////////////
+// Copyright 2013 Michael Schmalle - Teoti Graphix, LLC
+// 
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+// 
+// http://www.apache.org/licenses/LICENSE-2.0 
+// 
+// Unless required by applicable law or agreed to in writing, software 
+// distributed under the License is distributed on an "AS IS" BASIS, 
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and 
+// limitations under the License
+// 
+// Author: Michael Schmalle, Principal Architect
+// mschmalle at teotigraphix dot com
+////////////////////////////////////////////////////////////////////////////////
+
+package com.teotigraphix.caustic.engine;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.teotigraphix.caustic.osc.BasslineDistortionMessage;
+import com.teotigraphix.caustic.osc.BasslineLFOMessage;
+import com.teotigraphix.caustic.osc.BasslineOscMessage;
+import com.teotigraphix.caustic.osc.BeatboxSamplerMessage;
+import com.teotigraphix.caustic.osc.CausticMessage;
+import com.teotigraphix.caustic.osc.EffectRackMessage;
+import com.teotigraphix.caustic.osc.FilterMessage;
+import com.teotigraphix.caustic.osc.MixerMessage;
+import com.teotigraphix.caustic.osc.OutputPanelMessage;
+import com.teotigraphix.caustic.osc.PCMSynthLFOMessage;
+import com.teotigraphix.caustic.osc.PitchMessage;
+import com.teotigraphix.caustic.osc.SubSynthLFOMessage;
+import com.teotigraphix.caustic.osc.SubSynthOscMessage;
+import com.teotigraphix.caustic.osc.VolumeMessage;
+
+/**
+ * A set of {@link CausticMessage} templates that resolved String messages are
+ * matched against by address.
+ * <p>
+ * The match result of each distinct address is remembered, the templates are
+ * only walked the first time an address is seen. A remembered address is found
+ * without a lock and without cutting the address out of the message.
+ * 
+ * @author Michael Schmalle
+ * @copyright Teoti Graphix, LLC
+ * @since 1.0
+ */
+public class MessageRegistry {
+
+    private final List<CausticMessage> mMessages = new ArrayList<CausticMessage>();
+
+    /**
+     * Address to its match, replaced when an address is seen first or a
+     * template is added.
+     */
+    private volatile AddressTable mMatches = new AddressTable(16);
+
+    /**
+     * Constructor.
+     */
+    public MessageRegistry() {
+    }
+
+    /**
+     * Returns a new registry of the single value parameter messages.
+     * <p>
+     * A parameter message sets one value at its address and reading the
+     * address back returns that value, the state of a parameter does not depend
+     * on any other message, eg <code>/caustic/mixer/3/volume 0.5</code>.
+     */
+    public static MessageRegistry createParameters() {
+        MessageRegistry registry = new MessageRegistry();
+        registry.add(MixerMessage.class);
+        registry.add(FilterMessage.class);
+        registry.add(VolumeMessage.class);
+        registry.add(PitchMessage.class);
+        registry.add(BasslineDistortionMessage.class);
+        registry.add(BasslineLFOMessage.class);
+        registry.add(BasslineOscMessage.class);
+        registry.add(PCMSynthLFOMessage.class);
+        registry.add(SubSynthLFOMessage.class);
+        registry.add(SubSynthOscMessage.class);
+        registry.add(EffectRackMessage.SET);
+        registry.add(OutputPanelMessage.BPM);
+        registry.add(BeatboxSamplerMessage.CHANNEL_TUNE);
+        registry.add(BeatboxSamplerMessage.CHANNEL_PUNCH);
+        registry.add(BeatboxSamplerMessage.CHANNEL_DECAY);
+        registry.add(BeatboxSamplerMessage.CHANNEL_PAN);
+        registry.add(BeatboxSamplerMessage.CHANNEL_VOLUME);
+        return registry;
+    }
+
+    //--------------------------------------------------------------------------
+    //
+    // Public :: Methods
+    //
+    //--------------------------------------------------------------------------
+
+    /**
+     * Adds a message template to the registry.
+     * 
+     * @param message The message template.
+     */
+    public synchronized void add(CausticMessage message) {
+        mMessages.add(message);
+        mMatches = new AddressTable(16);
+    }
+
+    /**
+     * Adds all public message constants declared by the message class.
+     * 
+     * @param type The {@link CausticMessage} subclass.
+     */
+    public void add(Class<? extends CausticMessage> type) {
+        for (Field field : type.getDeclaredFields()) {
+            int modifiers = field.getModifiers();
+            if (!Modifier.isStatic(modifiers) || !Modifier.isPublic(modifiers)
+                    || !CausticMessage.class.isAssignableFrom(field.getType()))
+                continue;
+            try {
+                add((CausticMessage)field.get(null));
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    /**
+     * Returns the registered template the message's address was rendered from,
+     * <code>null</code> if none matches.
+     * 
+     * @param message The resolved String OSC message.
+     */
+    public CausticMessage find(String message) {
+        int end = message.indexOf(' ');
+        if (end == -1)
+            end = message.length();
+        AddressTable table = mMatches;
+        int index = table.indexOf(message, end);
+        if (index != -1)
+            return table.valueAt(index);
+        return addMatch(message, end);
+    }
+
+    /**
+     * Returns whether the message's address was rendered from one of the
+     * registered templates.
+     * 
+     * @param message The resolved String OSC message.
+     */
+    public boolean contains(String message) {
+        return find(message) != null;
+    }
+
+    /**
+     * Returns the address part of a resolved message, the characters before
+     * the first space.
+     * 
+     * @param message The resolved String OSC message.
+     */
+    public static String getAddress(String message) {
+        int space = message.indexOf(' ');
+        return space == -1 ? message : message.substring(0, space);
+    }
+
+    //--------------------------------------------------------------------------
+    //
+    // Private :: Methods
+    //
+    //--------------------------------------------------------------------------
+
+    private synchronized CausticMessage addMatch(String message, int end) {
+        AddressTable table = mMatches;
+        int index = table.indexOf(message, end);
+        if (index != -1)
+            return table.valueAt(index);
+        CausticMessage result = null;
+        for (CausticMessage candidate : mMessages) {
+            if (candidate.matches(message)) {
+                result = candidate;
+                break;
+            }
+        }
+        mMatches = table.put(message.substring(0, end), result);
+        return result;
+    }
+
+    /**
+     * An open addressing table of addresses that is looked up with a message
+     * and the end of its address, a <code>null</code> value remembers an
+     * address without a match. A table is never changed once published,
+     * {@link #put(String, CausticMessage)} returns a copy.
+     */
+    private static final class AddressTable {
+
+        private final String[] mKeys;
+
+        private final CausticMessage[] mValues;
+
+        private final int mSize;
+
+        AddressTable(int capacity) {
+            this(new String[capacity], new CausticMessage[capacity], 0);
+        }
+
+        private AddressTable(String[] keys, CausticMessage[] values, int size) {
+            mKeys = keys;
+            mValues = values;
+            mSize = size;
+        }
+
+        int indexOf(String message, int end) {
+            final int mask = mKeys.length - 1;
+            for (int i = hash(message, end) & mask;; i = (i + 1) & mask) {
+                String key = mKeys[i];
+                if (key == null)
+                    return -1;
+                if (key.length() == end && key.regionMatches(0, message, 0, end))
+                    return i;
+            }
+        }
+
+        CausticMessage valueAt(int index) {
+            return mValues[index];
+        }
+
+        AddressTable put(String address, CausticMessage message) {
+            // kept at most half full so a probe always ends on an empty slot
+            int capacity = (mSize + 1) * 2 > mKeys.length ? mKeys.length * 2 : mKeys.length;
+            AddressTable result = new AddressTable(new String[capacity],
+                    new CausticMessage[capacity], mSize + 1);
+            for (int i = 0; i < mKeys.length; i++) {
+                if (mKeys[i] != null)
+                    result.insert(mKeys[i], mValues[i]);
+            }
+            result.insert(address, message);
+            return result;
+        }
+
+        private void insert(String address, CausticMessage message) {
+            final int mask = mKeys.length - 1;
+            int i = hash(address, address.length()) & mask;
+            while (mKeys[i] != null) {
+                i = (i + 1) & mask;
+            }
+            mKeys[i] = address;
+            mValues[i] = message;
+        }
+
+        private static int hash(String message, int end) {
+            int h = 0;
+            for (int i = 0; i < end; i++) {
+                h = 31 * h + message.charAt(i);
+            }
+            return h ^ (h >>> 16);
+        }
+    }
+}
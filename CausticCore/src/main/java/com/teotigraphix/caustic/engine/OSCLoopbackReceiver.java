@@ -0,0 +1,300 @@
+////////////////////////////////////////////////////////////////////////////////
+// Copyright 2013 Michael Schmalle - Teoti Graphix, LLC
+// 
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+// 
+// http://www.apache.org/licenses/LICENSE-2.0 
+// 
+// Unless required by applicable law or agreed to in writing, software 
+// distributed under the License is distributed on an "AS IS" BASIS, 
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and 
+// limitations under the License
+// 
+// Author: Michael Schmalle, Principal Architect
+// mschmalle at teotigraphix dot com
+////////////////////////////////////////////////////////////////////////////////
+
+package com.teotigraphix.caustic.engine;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+
+import com.teotigraphix.caustic.core.ICausticEngine;
+import com.teotigraphix.caustic.core.MessageBatch;
+
+/**
+ * A stand-in OSC host that receives binary {@link OSCPacket} messages on a
+ * local UDP port and hands them to an {@link ICausticEngine} as String
+ * messages.
+ * <p>
+ * Bundles are handed over as one {@link MessageBatch},
+ * {@link OSCPacket#READ_ADDRESS} requests are answered with the engine's
+ * result. The receiver lets an OSC
+ * transport be driven without a real Caustic host, the engine can be any
+ * implementation including a recording fake.
+ * 
+ * <pre>
+ * OSCLoopbackReceiver receiver = new OSCLoopbackReceiver(engine);
+ * receiver.open(0);
+ * // point the transport at localhost:receiver.getPort()
+ * </pre>
+ * 
+ * @author Michael Schmalle
+ * @copyright Teoti Graphix, LLC
+ * @since 1.0
+ */
+public class OSCLoopbackReceiver {
+
+    private static final int PACKET_SIZE = 65536;
+
+    private final ICausticEngine mEngine;
+
+    private final ByteBuffer mReceiveBuffer = ByteBuffer.allocate(PACKET_SIZE);
+
+    private final ByteBuffer mSendBuffer = ByteBuffer.allocate(PACKET_SIZE);
+
+    private final OSCPacket mPacket = new OSCPacket();
+
+    private final StringBuilder mMessage = new StringBuilder(128);
+
+    private MessageBatch mBatch;
+
+    private DatagramChannel mChannel;
+
+    private Thread mThread;
+
+    private volatile SocketAddress mClient;
+
+    private final OSCPacket.Handler mHandler = new OSCPacket.Handler() {
+        @Override
+        public void handleMessage(OSCPacket message) {
+            receive(message);
+        }
+    };
+
+    //--------------------------------------------------------------------------
+    //
+    // Public :: Properties
+    //
+    //--------------------------------------------------------------------------
+
+    //----------------------------------
+    // port
+    //----------------------------------
+
+    /**
+     * Returns the local port the receiver is bound to, <code>-1</code> when
+     * it is not open.
+     */
+    public int getPort() {
+        DatagramChannel channel = mChannel;
+        if (channel == null)
+            return -1;
+        return channel.socket().getLocalPort();
+    }
+
+    //----------------------------------
+    // messageCount
+    //----------------------------------
+
+    private volatile long mMessageCount;
+
+    /**
+     * Returns the number of OSC messages received.
+     */
+    public long getMessageCount() {
+        return mMessageCount;
+    }
+
+    //----------------------------------
+    // errorCount
+    //----------------------------------
+
+    private volatile long mErrorCount;
+
+    /**
+     * Returns the number of malformed packets dropped.
+     */
+    public long getErrorCount() {
+        return mErrorCount;
+    }
+
+    //--------------------------------------------------------------------------
+    //
+    // Constructor
+    //
+    //--------------------------------------------------------------------------
+
+    /**
+     * Constructor.
+     * 
+     * @param engine The engine the received messages are handed to.
+     */
+    public OSCLoopbackReceiver(ICausticEngine engine) {
+        mEngine = engine;
+    }
+
+    //--------------------------------------------------------------------------
+    //
+    // Public :: Methods
+    //
+    //--------------------------------------------------------------------------
+
+    /**
+     * Binds the receiver to the loopback address and starts receiving.
+     * 
+     * @param port The local port, <code>0</code> for any free port.
+     * @throws IOException the port could not be bound
+     */
+    public synchronized void open(int port) throws IOException {
+        if (mChannel != null)
+            throw new IllegalStateException("OSCLoopbackReceiver is already open");
+        mChannel = DatagramChannel.open();
+        mChannel.socket().bind(new InetSocketAddress(InetAddress.getByName(null), port));
+        mThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                loop();
+            }
+        }, "OSCLoopbackReceiver");
+        mThread.setDaemon(true);
+        mThread.start();
+    }
+
+    /**
+     * Stops receiving and releases the port.
+     */
+    public synchronized void close() {
+        if (mChannel == null)
+            return;
+        try {
+            mChannel.close();
+        } catch (IOException e) {
+            // closing, nothing to recover
+        }
+        mChannel = null;
+        mThread = null;
+    }
+
+    /**
+     * Sends a {@link OSCPacket#BEAT_ADDRESS} event to the last client heard
+     * from.
+     * 
+     * @param beat The new beat.
+     */
+    public void sendBeat(int beat) {
+        sendEvent(OSCPacket.BEAT_ADDRESS, beat);
+    }
+
+    /**
+     * Sends a {@link OSCPacket#MEASURE_ADDRESS} event to the last client heard
+     * from.
+     * 
+     * @param measure The new measure.
+     */
+    public void sendMeasure(int measure) {
+        sendEvent(OSCPacket.MEASURE_ADDRESS, measure);
+    }
+
+    //--------------------------------------------------------------------------
+    //
+    // Private :: Methods
+    //
+    //--------------------------------------------------------------------------
+
+    private void loop() {
+        final DatagramChannel channel = mChannel;
+        while (channel.isOpen()) {
+            try {
+                mReceiveBuffer.clear();
+                SocketAddress source = channel.receive(mReceiveBuffer);
+                if (source == null)
+                    continue;
+                mClient = source;
+                mReceiveBuffer.flip();
+                if (OSCPacket.isBundle(mReceiveBuffer))
+                    mBatch = new MessageBatch();
+                try {
+                    OSCPacket.decode(mReceiveBuffer, mPacket, mHandler);
+                } catch (IllegalArgumentException e) {
+                    mErrorCount++;
+                } catch (BufferUnderflowException e) {
+                    mErrorCount++;
+                }
+                flushBatch();
+                mBatch = null;
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException e) {
+                mErrorCount++;
+            }
+        }
+    }
+
+    private void receive(OSCPacket message) {
+        mMessageCount++;
+        mMessage.setLength(0);
+        if (!OSCPacket.READ_ADDRESS.equals(message.getAddress())) {
+            String text = message.toMessage(mMessage, 0).toString();
+            if (mBatch != null)
+                mBatch.add(text);
+            else
+                mEngine.sendMessage(text);
+            return;
+        }
+
+        // the read sees every message before it
+        flushBatch();
+        int id = message.getInt(0);
+        int kind = message.getInt(1);
+        String text = message.toMessage(mMessage, 2).toString();
+        synchronized (mSendBuffer) {
+            mSendBuffer.clear();
+            if (kind == OSCPacket.READ_STRING)
+                OSCPacket.encodeReply(mSendBuffer, id, mEngine.queryMessage(text));
+            else
+                OSCPacket.encodeReply(mSendBuffer, id, mEngine.sendMessage(text));
+            send(mClient);
+        }
+    }
+
+    private void flushBatch() {
+        if (mBatch == null || mBatch.isEmpty())
+            return;
+        MessageBatch batch = mBatch;
+        mBatch = new MessageBatch();
+        mEngine.sendMessages(batch);
+    }
+
+    private void sendEvent(String address, int value) {
+        SocketAddress client = mClient;
+        if (client == null)
+            return;
+        synchronized (mSendBuffer) {
+            mSendBuffer.clear();
+            OSCPacket.encodeEvent(mSendBuffer, address, value);
+            send(client);
+        }
+    }
+
+    private void send(SocketAddress target) {
+        DatagramChannel channel = mChannel;
+        if (channel == null)
+            return;
+        mSendBuffer.flip();
+        try {
+            channel.send(mSendBuffer, target);
+        } catch (IOException e) {
+            mErrorCount++;
+        }
+    }
+}
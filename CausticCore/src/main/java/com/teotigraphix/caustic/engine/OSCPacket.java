@@ -0,0 +1,721 @@
+////////////////////////////////////////////////////////////////////////////////
+// Copyright 2013 Michael Schmalle - Teoti Graphix, LLC
+// 
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+// 
+// http://www.apache.org/licenses/LICENSE-2.0 
+// 
+// Unless required by applicable law or agreed to in writing, software 
+// distributed under the License is distributed on an "AS IS" BASIS, 
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and 
+// limitations under the License
+// 
+// Author: Michael Schmalle, Principal Architect
+// mschmalle at teotigraphix dot com
+////////////////////////////////////////////////////////////////////////////////
+
+package com.teotigraphix.caustic.engine;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+import com.teotigraphix.caustic.core.MessageBatch;
+import com.teotigraphix.caustic.internal.utils.FormatUtils;
+
+/**
+ * Binary OSC 1.0 encoding of the String OSC messages and a reusable decoded
+ * message.
+ * <p>
+ * A String message <code>/caustic/mixer/3/volume 0.5</code> is encoded as the
+ * address <code>/caustic/mixer/3/volume</code>, the type tags <code>,f</code>
+ * and the big-endian float argument. Space separated arguments are typed as
+ * <code>i</code> when they are whole numbers, <code>f</code> when they are
+ * decimals and <code>s</code> otherwise; arguments that are names or paths are
+ * passed as a mask of string arguments so a name such as <code>808</code>
+ * stays a string. Strings are UTF-8. A {@link MessageBatch} is encoded as an
+ * OSC bundle.
+ * <p>
+ * OSC has no replies, messages that return a value are wrapped in a
+ * {@link #READ_ADDRESS} message carrying a request id and answered by the host
+ * with a {@link #REPLY_ADDRESS} message carrying the same id:
+ * 
+ * <pre>
+ * /caustk/read  ,iis[args]  id kind address [args]
+ * /caustk/reply ,if         id value     (kind READ_FLOAT)
+ * /caustk/reply ,is         id value     (kind READ_STRING, ,i for null)
+ * </pre>
+ * 
+ * Transport events from the host are {@link #BEAT_ADDRESS} and
+ * {@link #MEASURE_ADDRESS} messages with a single int argument.
+ * <p>
+ * A decoding instance is not thread safe, each reader owns one.
+ * 
+ * @author Michael Schmalle
+ * @copyright Teoti Graphix, LLC
+ * @since 1.0
+ */
+public final class OSCPacket {
+
+    public static final String READ_ADDRESS = "/caustk/read";
+
+    public static final String REPLY_ADDRESS = "/caustk/reply";
+
+    public static final String BEAT_ADDRESS = "/caustk/beat";
+
+    public static final String MEASURE_ADDRESS = "/caustk/measure";
+
+    /**
+     * The read kind of a message sent with <code>sendMessage()</code>, the
+     * reply is a float.
+     */
+    public static final int READ_FLOAT = 0;
+
+    /**
+     * The read kind of a message sent with <code>queryMessage()</code>, the
+     * reply is a String.
+     */
+    public static final int READ_STRING = 1;
+
+    /**
+     * The OSC time tag of a bundle to process immediately.
+     */
+    public static final long IMMEDIATELY = 1L;
+
+    private static final byte[] BUNDLE = {
+            '#', 'b', 'u', 'n', 'd', 'l', 'e', 0
+    };
+
+    private static final int MAX_INT_DIGITS = 9;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private byte[] mBytes = new byte[64];
+
+    private String mAddress;
+
+    private int mCount;
+
+    private char[] mTypes = new char[8];
+
+    private int[] mInts = new int[8];
+
+    private float[] mFloats = new float[8];
+
+    private String[] mStrings = new String[8];
+
+    //--------------------------------------------------------------------------
+    //
+    // Public :: Properties
+    //
+    //--------------------------------------------------------------------------
+
+    /**
+     * Returns the address of the last decoded message.
+     */
+    public String getAddress() {
+        return mAddress;
+    }
+
+    /**
+     * Returns the number of arguments of the last decoded message.
+     */
+    public int getArgumentCount() {
+        return mCount;
+    }
+
+    /**
+     * Returns the OSC type tag of the argument, <code>i</code>, <code>f</code>
+     * or <code>s</code>.
+     * 
+     * @param index The argument index.
+     */
+    public char getType(int index) {
+        return mTypes[index];
+    }
+
+    /**
+     * Returns the argument as an int, floats are truncated.
+     * 
+     * @param index The argument index.
+     */
+    public int getInt(int index) {
+        return mTypes[index] == 'f' ? (int)mFloats[index] : mInts[index];
+    }
+
+    /**
+     * Returns the argument as a float.
+     * 
+     * @param index The argument index.
+     */
+    public float getFloat(int index) {
+        return mTypes[index] == 'i' ? mInts[index] : mFloats[index];
+    }
+
+    /**
+     * Returns a String argument, <code>null</code> for a number.
+     * 
+     * @param index The argument index.
+     */
+    public String getString(int index) {
+        return mStrings[index];
+    }
+
+    //--------------------------------------------------------------------------
+    //
+    // Constructor
+    //
+    //--------------------------------------------------------------------------
+
+    /**
+     * Constructor.
+     */
+    public OSCPacket() {
+    }
+
+    //--------------------------------------------------------------------------
+    //
+    // Public :: Methods
+    //
+    //--------------------------------------------------------------------------
+
+    /**
+     * Decodes the message between the buffer's position and limit, the
+     * position is left at the limit.
+     * 
+     * @param buffer The buffer holding one OSC message.
+     * @throws IllegalArgumentException the message uses a type tag other than
+     *             <code>i</code>, <code>f</code> or <code>s</code>
+     */
+    public void read(ByteBuffer buffer) {
+        mAddress = readString(buffer);
+        mCount = 0;
+        if (!buffer.hasRemaining())
+            return;
+
+        String tags = readString(buffer);
+        final int count = tags.length() - 1;
+        ensureCapacity(count);
+        for (int i = 0; i < count; i++) {
+            char type = tags.charAt(i + 1);
+            mTypes[i] = type;
+            mStrings[i] = null;
+            switch (type) {
+                case 'i':
+                    mInts[i] = buffer.getInt();
+                    break;
+                case 'f':
+                    mFloats[i] = buffer.getFloat();
+                    break;
+                case 's':
+                    mStrings[i] = readString(buffer);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unsupported OSC type tag [" + type
+                            + "] in " + mAddress);
+            }
+        }
+        mCount = count;
+    }
+
+    /**
+     * Appends the decoded message as a String OSC message,
+     * <code>address arg arg</code>.
+     * 
+     * @param buffer The buffer to append to.
+     * @param from The first argument to append, arguments before it and the
+     *            address are skipped when <code>from</code> is greater than
+     *            <code>0</code>, the argument at <code>from</code> is then the
+     *            address.
+     * @return The buffer passed.
+     */
+    public StringBuilder toMessage(StringBuilder buffer, int from) {
+        if (from == 0)
+            buffer.append(mAddress);
+        for (int i = from; i < mCount; i++) {
+            if (from == 0 || i > from)
+                buffer.append(' ');
+            switch (mTypes[i]) {
+                case 'i':
+                    buffer.append(mInts[i]);
+                    break;
+                case 'f':
+                    FormatUtils.appendFloat(buffer, mFloats[i]);
+                    break;
+                default:
+                    buffer.append(mStrings[i]);
+            }
+        }
+        return buffer;
+    }
+
+    @Override
+    public String toString() {
+        return toMessage(new StringBuilder(), 0).toString();
+    }
+
+    //--------------------------------------------------------------------------
+    //
+    // Public Static :: Encoding
+    //
+    //--------------------------------------------------------------------------
+
+    /**
+     * Returns an upper bound of the encoded size of a String message.
+     * 
+     * @param message The String OSC message.
+     */
+    public static int getMaxSize(CharSequence message) {
+        // a char is at most 3 UTF-8 bytes, every token gains at most a tag, a
+        // terminator and 3 pad bytes
+        return message.length() * 4 + 32;
+    }
+
+    /**
+     * Encodes a String OSC message.
+     * 
+     * @param buffer The buffer to write to.
+     * @param message The String OSC message, <code>address arg arg</code>.
+     */
+    public static void encodeMessage(ByteBuffer buffer, CharSequence message) {
+        encodeMessage(buffer, message, 0);
+    }
+
+    /**
+     * Encodes a String OSC message whose arguments in the mask are strings
+     * whatever they look like.
+     * 
+     * @param buffer The buffer to write to.
+     * @param message The String OSC message, <code>address arg arg</code>.
+     * @param strings The string arguments, bit <code>n</code> for argument
+     *            <code>n</code>.
+     */
+    public static void encodeMessage(ByteBuffer buffer, CharSequence message, int strings) {
+        int end = indexOf(message, ' ', 0);
+        writeString(buffer, message, 0, end);
+        writeTags(buffer, null, message, end, strings);
+        writeArguments(buffer, message, end, strings);
+    }
+
+    /**
+     * Encodes a message that expects a {@link #REPLY_ADDRESS} reply.
+     * 
+     * @param buffer The buffer to write to.
+     * @param id The request id the reply is matched with.
+     * @param kind {@link #READ_FLOAT} or {@link #READ_STRING}.
+     * @param message The String OSC message.
+     */
+    public static void encodeRead(ByteBuffer buffer, int id, int kind, CharSequence message) {
+        int end = indexOf(message, ' ', 0);
+        writeString(buffer, READ_ADDRESS, 0, READ_ADDRESS.length());
+        writeTags(buffer, "iis", message, end, 0);
+        buffer.putInt(id);
+        buffer.putInt(kind);
+        writeString(buffer, message, 0, end);
+        writeArguments(buffer, message, end, 0);
+    }
+
+    /**
+     * Encodes a float reply.
+     * 
+     * @param buffer The buffer to write to.
+     * @param id The request id.
+     * @param value The result.
+     */
+    public static void encodeReply(ByteBuffer buffer, int id, float value) {
+        writeString(buffer, REPLY_ADDRESS, 0, REPLY_ADDRESS.length());
+        writeString(buffer, ",if", 0, 3);
+        buffer.putInt(id);
+        buffer.putFloat(value);
+    }
+
+    /**
+     * Encodes a String reply, a <code>null</code> result is sent without a
+     * value.
+     * 
+     * @param buffer The buffer to write to.
+     * @param id The request id.
+     * @param value The result.
+     */
+    public static void encodeReply(ByteBuffer buffer, int id, String value) {
+        writeString(buffer, REPLY_ADDRESS, 0, REPLY_ADDRESS.length());
+        if (value == null) {
+            writeString(buffer, ",i", 0, 2);
+            buffer.putInt(id);
+            return;
+        }
+        writeString(buffer, ",is", 0, 3);
+        buffer.putInt(id);
+        writeString(buffer, value, 0, value.length());
+    }
+
+    /**
+     * Encodes a message with a single int argument, such as a
+     * {@link #BEAT_ADDRESS} event.
+     * 
+     * @param buffer The buffer to write to.
+     * @param address The message address.
+     * @param value The argument.
+     */
+    public static void encodeEvent(ByteBuffer buffer, String address, int value) {
+        writeString(buffer, address, 0, address.length());
+        writeString(buffer, ",i", 0, 2);
+        buffer.putInt(value);
+    }
+
+    /**
+     * Writes the header of a bundle, elements follow.
+     * 
+     * @param buffer The buffer to write to.
+     * @param timeTag The OSC time tag, {@link #IMMEDIATELY} for none.
+     */
+    public static void beginBundle(ByteBuffer buffer, long timeTag) {
+        buffer.put(BUNDLE);
+        buffer.putLong(timeTag);
+    }
+
+    /**
+     * Starts a bundle element, the element size is written by
+     * {@link #endElement(ByteBuffer, int)}.
+     * 
+     * @param buffer The buffer to write to.
+     * @return The position of the element size.
+     */
+    public static int beginElement(ByteBuffer buffer) {
+        int mark = buffer.position();
+        buffer.putInt(0);
+        return mark;
+    }
+
+    /**
+     * Writes the size of the element started at the mark.
+     * 
+     * @param buffer The buffer written to.
+     * @param mark The mark returned by {@link #beginElement(ByteBuffer)}.
+     */
+    public static void endElement(ByteBuffer buffer, int mark) {
+        buffer.putInt(mark, buffer.position() - mark - 4);
+    }
+
+    //--------------------------------------------------------------------------
+    //
+    // Public Static :: Decoding
+    //
+    //--------------------------------------------------------------------------
+
+    /**
+     * Handles the messages of a decoded packet.
+     */
+    public interface Handler {
+        /**
+         * Called for each message of the packet, in order.
+         * 
+         * @param message The decoded message, only valid during the call.
+         */
+        void handleMessage(OSCPacket message);
+    }
+
+    /**
+     * Returns whether the packet at the buffer's position is a bundle.
+     * 
+     * @param buffer The packet buffer.
+     */
+    public static boolean isBundle(ByteBuffer buffer) {
+        if (buffer.remaining() < 16)
+            return false;
+        final int position = buffer.position();
+        for (int i = 0; i < BUNDLE.length; i++) {
+            if (buffer.get(position + i) != BUNDLE[i])
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Decodes the packet between the buffer's position and limit, nested
+     * bundles are walked depth first.
+     * 
+     * @param buffer The packet buffer.
+     * @param message The reusable message decoded into.
+     * @param handler The handler called with each message.
+     */
+    public static void decode(ByteBuffer buffer, OSCPacket message, Handler handler) {
+        if (!isBundle(buffer)) {
+            message.read(buffer);
+            handler.handleMessage(message);
+            return;
+        }
+        final int limit = buffer.limit();
+        buffer.position(buffer.position() + 16);
+        while (buffer.remaining() >= 4) {
+            int size = buffer.getInt();
+            int end = buffer.position() + size;
+            if (size < 0 || end > limit)
+                throw new IllegalArgumentException("Malformed OSC bundle element");
+            buffer.limit(end);
+            decode(buffer, message, handler);
+            buffer.limit(limit);
+            buffer.position(end);
+        }
+    }
+
+    //--------------------------------------------------------------------------
+    //
+    // Private :: Methods
+    //
+    //--------------------------------------------------------------------------
+
+    private void ensureCapacity(int count) {
+        if (count <= mTypes.length)
+            return;
+        int size = Math.max(count, mTypes.length * 2);
+        char[] types = new char[size];
+        int[] ints = new int[size];
+        float[] floats = new float[size];
+        String[] strings = new String[size];
+        System.arraycopy(mTypes, 0, types, 0, mTypes.length);
+        System.arraycopy(mInts, 0, ints, 0, mInts.length);
+        System.arraycopy(mFloats, 0, floats, 0, mFloats.length);
+        System.arraycopy(mStrings, 0, strings, 0, mStrings.length);
+        mTypes = types;
+        mInts = ints;
+        mFloats = floats;
+        mStrings = strings;
+    }
+
+    private String readString(ByteBuffer buffer) {
+        final int start = buffer.position();
+        int length = 0;
+        byte b;
+        while ((b = buffer.get()) != 0) {
+            if (length == mBytes.length) {
+                byte[] bytes = new byte[length * 2];
+                System.arraycopy(mBytes, 0, bytes, 0, length);
+                mBytes = bytes;
+            }
+            mBytes[length++] = b;
+        }
+        align(buffer, start);
+        return new String(mBytes, 0, length, UTF_8);
+    }
+
+    private static void align(ByteBuffer buffer, int start) {
+        int length = buffer.position() - start;
+        int padded = (length + 3) & ~3;
+        buffer.position(start + padded);
+    }
+
+    /**
+     * Writes the chars as UTF-8 without a temporary array, an unpaired
+     * surrogate is written as <code>?</code>.
+     */
+    private static void writeString(ByteBuffer buffer, CharSequence value, int start, int end) {
+        final int position = buffer.position();
+        for (int i = start; i < end; i++) {
+            final char c = value.charAt(i);
+            if (c < 0x80) {
+                buffer.put((byte)c);
+            } else if (c < 0x800) {
+                buffer.put((byte)(0xC0 | c >> 6));
+                buffer.put((byte)(0x80 | c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < end
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                final int code = Character.toCodePoint(c, value.charAt(++i));
+                buffer.put((byte)(0xF0 | code >> 18));
+                buffer.put((byte)(0x80 | code >> 12 & 0x3F));
+                buffer.put((byte)(0x80 | code >> 6 & 0x3F));
+                buffer.put((byte)(0x80 | code & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                buffer.put((byte)'?');
+            } else {
+                buffer.put((byte)(0xE0 | c >> 12));
+                buffer.put((byte)(0x80 | c >> 6 & 0x3F));
+                buffer.put((byte)(0x80 | c & 0x3F));
+            }
+        }
+        pad(buffer, position);
+    }
+
+    /**
+     * Writes the null terminator and the zero bytes up to the next 4 byte
+     * boundary.
+     */
+    private static void pad(ByteBuffer buffer, int start) {
+        buffer.put((byte)0);
+        while (((buffer.position() - start) & 3) != 0) {
+            buffer.put((byte)0);
+        }
+    }
+
+    private static void writeTags(ByteBuffer buffer, String prefix, CharSequence message,
+            int from, int strings) {
+        final int position = buffer.position();
+        buffer.put((byte)',');
+        if (prefix != null) {
+            for (int i = 0; i < prefix.length(); i++)
+                buffer.put((byte)prefix.charAt(i));
+        }
+        final int length = message.length();
+        int start = from;
+        int index = 0;
+        while (start < length) {
+            if (message.charAt(start) == ' ') {
+                start++;
+                continue;
+            }
+            int end = indexOf(message, ' ', start);
+            buffer.put((byte)getType(message, start, end, strings, index++));
+            start = end;
+        }
+        pad(buffer, position);
+    }
+
+    private static void writeArguments(ByteBuffer buffer, CharSequence message, int from,
+            int strings) {
+        final int length = message.length();
+        int start = from;
+        int index = 0;
+        while (start < length) {
+            if (message.charAt(start) == ' ') {
+                start++;
+                continue;
+            }
+            int end = indexOf(message, ' ', start);
+            switch (getType(message, start, end, strings, index++)) {
+                case 'i':
+                    buffer.putInt((int)parseWhole(message, start, end));
+                    break;
+                case 'f':
+                    buffer.putFloat(parseDecimal(message, start, end));
+                    break;
+                default:
+                    writeString(buffer, message, start, end);
+            }
+            start = end;
+        }
+    }
+
+    private static char getType(CharSequence message, int start, int end, int strings,
+            int index) {
+        if (index < 32 && (strings & 1 << index) != 0)
+            return 's';
+        return getType(message, start, end);
+    }
+
+    /**
+     * Returns the OSC type of the argument token, <code>i</code> for a whole
+     * number, <code>f</code> for a decimal and <code>s</code> for anything
+     * else.
+     */
+    static char getType(CharSequence message, int start, int end) {
+        int i = start;
+        if (message.charAt(i) == '-')
+            i++;
+        if (i == end)
+            return 's';
+        int digits = 0;
+        boolean point = false;
+        for (; i < end; i++) {
+            char c = message.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digits++;
+            } else if (c == '.' && !point) {
+                point = true;
+            } else {
+                return isFloatNotation(message, start, end) ? 'f' : 's';
+            }
+        }
+        if (digits == 0)
+            return 's';
+        if (point)
+            return 'f';
+        return digits <= MAX_INT_DIGITS ? 'i' : 's';
+    }
+
+    /**
+     * Returns whether the token is {@link Float#toString(float)} notation that
+     * the plain decimal parse does not read, an exponent, NaN or Infinity.
+     */
+    private static boolean isFloatNotation(CharSequence message, int start, int end) {
+        int exponent = indexOf(message, 'E', start);
+        if (exponent < end) {
+            int i = start;
+            if (message.charAt(i) == '-')
+                i++;
+            for (; i < exponent; i++) {
+                char c = message.charAt(i);
+                if ((c < '0' || c > '9') && c != '.')
+                    return false;
+            }
+            i = exponent + 1;
+            if (i < end && message.charAt(i) == '-')
+                i++;
+            if (i == end)
+                return false;
+            for (; i < end; i++) {
+                char c = message.charAt(i);
+                if (c < '0' || c > '9')
+                    return false;
+            }
+            return true;
+        }
+        return regionEquals(message, start, end, "NaN")
+                || regionEquals(message, start, end, "Infinity")
+                || regionEquals(message, start, end, "-Infinity");
+    }
+
+    private static long parseWhole(CharSequence message, int start, int end) {
+        boolean negative = message.charAt(start) == '-';
+        long result = 0;
+        for (int i = negative ? start + 1 : start; i < end; i++) {
+            result = result * 10 + (message.charAt(i) - '0');
+        }
+        return negative ? -result : result;
+    }
+
+    private static float parseDecimal(CharSequence message, int start, int end) {
+        int point = indexOf(message, '.', start);
+        if (indexOf(message, 'E', start) < end || indexOf(message, 'N', start) < end
+                || indexOf(message, 'I', start) < end)
+            return Float.parseFloat(message.subSequence(start, end).toString());
+        if (point >= end)
+            return parseWhole(message, start, end);
+
+        boolean negative = message.charAt(start) == '-';
+        if (end - start > 18)
+            return Float.parseFloat(message.subSequence(start, end).toString());
+        long whole = 0;
+        for (int i = negative ? start + 1 : start; i < point; i++) {
+            whole = whole * 10 + (message.charAt(i) - '0');
+        }
+        long fraction = 0;
+        double scale = 1d;
+        for (int i = point + 1; i < end; i++) {
+            fraction = fraction * 10 + (message.charAt(i) - '0');
+            scale *= 10d;
+        }
+        double result = whole + fraction / scale;
+        return (float)(negative ? -result : result);
+    }
+
+    private static boolean regionEquals(CharSequence message, int start, int end, String value) {
+        if (end - start != value.length())
+            return false;
+        for (int i = 0; i < value.length(); i++) {
+            if (message.charAt(start + i) != value.charAt(i))
+                return false;
+        }
+        return true;
+    }
+
+    private static int indexOf(CharSequence message, char c, int from) {
+        final int length = message.length();
+        for (int i = from; i < length; i++) {
+            if (message.charAt(i) == c)
+                return i;
+        }
+        return length;
+    }
+}
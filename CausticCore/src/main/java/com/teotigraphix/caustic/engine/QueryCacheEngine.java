@@ -0,0 +1,337 @@
+////////////////////////////////////////////////////////////////////////////////
+// Copyright 2013 Michael Schmalle - Teoti Graphix, LLC
+// 
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+// 
+// http://www.apache.org/licenses/LICENSE-2.0 
+// 
+// Unless required by applicable law or agreed to in writing, software 
+// distributed under the License is distributed on an "AS IS" BASIS, 
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and 
+// limitations under the License
+// 
+// Author: Michael Schmalle, Principal Architect
+// mschmalle at teotigraphix dot com
+////////////////////////////////////////////////////////////////////////////////
+
+package com.teotigraphix.caustic.engine;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import com.teotigraphix.caustic.core.ICausticEngine;
+import com.teotigraphix.caustic.core.MessageBatch;
+import com.teotigraphix.caustic.osc.CausticMessage;
+import com.teotigraphix.caustic.osc.EffectRackMessage;
+import com.teotigraphix.caustic.osc.MachineMessage;
+import com.teotigraphix.caustic.osc.OutputPanelMessage;
+import com.teotigraphix.caustic.osc.PatternSequencerMessage;
+import com.teotigraphix.caustic.osc.RackMessage;
+import com.teotigraphix.caustic.osc.SequencerMessage;
+import com.teotigraphix.caustic.osc.SynthMessage;
+
+/**
+ * An {@link ICausticEngine} decorator that caches the results of engine reads.
+ * <p>
+ * The <code>restore()</code> implementations read every parameter back from
+ * the core, the same values are read again on each scene import. This cache
+ * answers repeated reads without a native round-trip.
+ * <ul>
+ * <li>A parameter read, eg <code>/caustic/mixer/3/volume</code>, is cached by
+ * its resolved address and invalidated by the next send to that address.</li>
+ * <li>Registered reads, eg <code>/caustic/effects_rack/type 3 0</code> or
+ * <code>/caustic/machine_name 3</code>, are cached by the whole message.</li>
+ * <li>Passive messages such as notes, transport and pattern data do not touch
+ * the cache.</li>
+ * <li>Other messages without arguments, eg <code>/caustic/3/polyphony</code>,
+ * are reads and pass through.</li>
+ * <li>Structural messages, <code>/caustic/load_song</code>,
+ * <code>/caustic/blankrack</code>, a preset load or a machine or effect
+ * create or remove, can change any value and clear the whole cache; more are
+ * added with {@link #addStructural(CausticMessage)}.</li>
+ * <li>Any other send invalidates the value cached for its address.</li>
+ * </ul>
+ * The hit count is the number of native round-trips the cache saved.
+ * 
+ * @author Michael Schmalle
+ * @copyright Teoti Graphix, LLC
+ * @since 1.0
+ */
+public class QueryCacheEngine implements ICausticEngine {
+
+    private final ICausticEngine mEngine;
+
+    private final MessageRegistry mParameters = MessageRegistry.createParameters();
+
+    private final MessageRegistry mReads = new MessageRegistry();
+
+    private final MessageRegistry mPassives = new MessageRegistry();
+
+    private final MessageRegistry mStructurals = new MessageRegistry();
+
+    /**
+     * Parameter address to the float value read.
+     */
+    private final Map<String, Float> mValues = new HashMap<String, Float>();
+
+    /**
+     * Read message to the result of a read made with a send.
+     */
+    private final Map<String, Float> mResults = new HashMap<String, Float>();
+
+    /**
+     * Read message to the result of a read made with a query.
+     */
+    private final Map<String, String> mQueries = new HashMap<String, String>();
+
+    //--------------------------------------------------------------------------
+    //
+    // Public :: Properties
+    //
+    //--------------------------------------------------------------------------
+
+    //----------------------------------
+    // engine
+    //----------------------------------
+
+    /**
+     * Returns the decorated engine.
+     */
+    public final ICausticEngine getEngine() {
+        return mEngine;
+    }
+
+    //----------------------------------
+    // hitCount
+    //----------------------------------
+
+    private long mHitCount;
+
+    /**
+     * Returns the number of reads answered from the cache.
+     */
+    public synchronized long getHitCount() {
+        return mHitCount;
+    }
+
+    //----------------------------------
+    // missCount
+    //----------------------------------
+
+    private long mMissCount;
+
+    /**
+     * Returns the number of cacheable reads that went to the engine.
+     */
+    public synchronized long getMissCount() {
+        return mMissCount;
+    }
+
+    //----------------------------------
+    // invalidationCount
+    //----------------------------------
+
+    private long mInvalidationCount;
+
+    /**
+     * Returns the number of cached values removed by sends.
+     */
+    public synchronized long getInvalidationCount() {
+        return mInvalidationCount;
+    }
+
+    /**
+     * Returns the hits as a ratio of all cacheable reads, <code>0</code> when
+     * nothing has been read.
+     */
+    public synchronized float getHitRatio() {
+        long total = mHitCount + mMissCount;
+        return total == 0 ? 0f : (float)mHitCount / total;
+    }
+
+    //--------------------------------------------------------------------------
+    //
+    // Constructor
+    //
+    //--------------------------------------------------------------------------
+
+    /**
+     * Constructor.
+     * 
+     * @param engine The engine to decorate.
+     */
+    public QueryCacheEngine(ICausticEngine engine) {
+        mEngine = engine;
+
+        mReads.add(EffectRackMessage.TYPE);
+        mReads.add(RackMessage.QUERY_MACHINE_NAME);
+        mReads.add(RackMessage.QUERY_MACHINE_TYPE);
+
+        mPassives.add(SynthMessage.NOTE);
+        mPassives.add(SynthMessage.NOTE_PREVIEW);
+        mPassives.add(OutputPanelMessage.PLAY);
+        mPassives.add(OutputPanelMessage.MODE);
+        mPassives.add(PatternSequencerMessage.class);
+        mPassives.add(SequencerMessage.class);
+        mPassives.add(RackMessage.SAVE_SONG);
+
+        mStructurals.add(RackMessage.CREATE);
+        mStructurals.add(RackMessage.REMOVE);
+        mStructurals.add(RackMessage.LOAD_SONG);
+        mStructurals.add(RackMessage.BLANKRACK);
+        mStructurals.add(MachineMessage.LOAD_PRESET);
+        mStructurals.add(EffectRackMessage.CREATE);
+        mStructurals.add(EffectRackMessage.REMOVE);
+    }
+
+    //--------------------------------------------------------------------------
+    //
+    // Public :: Methods
+    //
+    //--------------------------------------------------------------------------
+
+    /**
+     * Adds a read message that is cached by its whole resolved message.
+     * 
+     * @param message The read message.
+     */
+    public void addRead(CausticMessage message) {
+        mReads.add(message);
+    }
+
+    /**
+     * Adds a message that changes no cached value.
+     * 
+     * @param message The passive message.
+     */
+    public void addPassive(CausticMessage message) {
+        mPassives.add(message);
+    }
+
+    /**
+     * Adds a message that can change any value, its send clears the cache.
+     * 
+     * @param message The structural message.
+     */
+    public void addStructural(CausticMessage message) {
+        mStructurals.add(message);
+    }
+
+    /**
+     * Removes all cached values.
+     */
+    public synchronized void clear() {
+        mInvalidationCount += mValues.size() + mResults.size() + mQueries.size();
+        mValues.clear();
+        mResults.clear();
+        mQueries.clear();
+    }
+
+    /**
+     * Removes the cached value of a parameter address, for a value changed in
+     * the engine behind the cache's back.
+     * 
+     * @param address The resolved parameter address, eg
+     *            <code>/caustic/mixer/3/volume</code>.
+     */
+    public synchronized void evict(String address) {
+        if (mValues.remove(address) != null)
+            mInvalidationCount++;
+    }
+
+    /**
+     * Resets the hit, miss and invalidation counts.
+     */
+    public synchronized void resetStatistics() {
+        mHitCount = 0;
+        mMissCount = 0;
+        mInvalidationCount = 0;
+    }
+
+    //--------------------------------------------------------------------------
+    //
+    // ICausticEngine API :: Methods
+    //
+    //--------------------------------------------------------------------------
+
+    @Override
+    public synchronized float sendMessage(String message) {
+        if (message.indexOf(' ') == -1 && mParameters.contains(message)) {
+            Float value = mValues.get(message);
+            if (value != null) {
+                mHitCount++;
+                return value;
+            }
+            mMissCount++;
+            float result = mEngine.sendMessage(message);
+            mValues.put(message, result);
+            return result;
+        }
+
+        if (mReads.contains(message)) {
+            Float value = mResults.get(message);
+            if (value != null) {
+                mHitCount++;
+                return value;
+            }
+            mMissCount++;
+            float result = mEngine.sendMessage(message);
+            mResults.put(message, result);
+            return result;
+        }
+
+        invalidate(message);
+        return mEngine.sendMessage(message);
+    }
+
+    @Override
+    public synchronized String queryMessage(String message) {
+        if (!mReads.contains(message))
+            return mEngine.queryMessage(message);
+
+        if (mQueries.containsKey(message)) {
+            mHitCount++;
+            return mQueries.get(message);
+        }
+        mMissCount++;
+        String result = mEngine.queryMessage(message);
+        mQueries.put(message, result);
+        return result;
+    }
+
+    @Override
+    public synchronized void sendMessages(MessageBatch batch) {
+        final int size = batch.size();
+        for (int i = 0; i < size; i++) {
+            invalidate(batch.get(i));
+        }
+        mEngine.sendMessages(batch);
+    }
+
+    //--------------------------------------------------------------------------
+    //
+    // Private :: Methods
+    //
+    //--------------------------------------------------------------------------
+
+    private void invalidate(String message) {
+        if (mPassives.contains(message))
+            return;
+
+        // load_song, blankrack, create, remove, load_preset etc.
+        if (mStructurals.contains(message)) {
+            clear();
+            return;
+        }
+
+        // a read that is not cached, eg /caustic/3/polyphony
+        if (message.indexOf(' ') == -1)
+            return;
+
+        if (mValues.remove(MessageRegistry.getAddress(message)) != null)
+            mInvalidationCount++;
+    }
+}
@@ -0,0 +1,531 @@
+////////////////////////////////////////////////////////////////////////////////
+// Copyright 2013 Michael Schmalle - Teoti Graphix, LLC
+// 
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+// 
+// http://www.apache.org/licenses/LICENSE-2.0 
+// 
+// Unless required by applicable law or agreed to in writing, software 
+// distributed under the License is distributed on an "AS IS" BASIS, 
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and 
+// limitations under the License
+// 
+// Author: Michael Schmalle, Principal Architect
+// mschmalle at teotigraphix dot com
+////////////////////////////////////////////////////////////////////////////////
+
+package com.teotigraphix.caustic.engine;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.teotigraphix.caustic.core.ICausticEngine;
+import com.teotigraphix.caustic.core.MessageBatch;
+
+/**
+ * Keeps the Java model's cached values true to the engine in the background.
+ * <p>
+ * The model skips sends of values that did not change, which goes wrong once
+ * the engine is changed elsewhere, by a preset or song load or the native UI.
+ * The reconciler sweeps the {@link ShadowValue}s of its
+ * {@link IShadowState} sources, reading a small batch of engine values every
+ * period, in the {@link EngineLane#BULK} lane when the engine is an
+ * {@link EngineExecutor}. It must read the undecorated engine or the executor
+ * around it, a cache or coalescing decorator would answer or disturb its
+ * reads. A value that
+ * differs from the model's by more than the tolerance on two samples in a
+ * row, with the model unchanged in between, is a drift; the engine's value is
+ * written into the model, nothing is sent, and the value's entry in the
+ * {@link #setQueryCache(QueryCacheEngine) query cache} is evicted.
+ * <p>
+ * The model's sends are reported with {@link #noteSend(String)}; an address
+ * written while it is sampled is skipped until the next sweep, so a user's
+ * write is never overwritten by the value it replaced.
+ * <p>
+ * Drifts are counted in total and by address family, eg
+ * <code>/caustic/#/filter_cutoff</code>.
+ * 
+ * @author Michael Schmalle
+ * @copyright Teoti Graphix, LLC
+ * @since 1.0
+ */
+public class ShadowReconciler {
+
+    /**
+     * The default milliseconds between two batches.
+     */
+    public static final long DEFAULT_PERIOD = 250;
+
+    /**
+     * The default number of values read in a batch.
+     */
+    public static final int DEFAULT_BATCH_SIZE = 8;
+
+    /**
+     * The default largest difference that is not a drift.
+     */
+    public static final float DEFAULT_TOLERANCE = 0.0001f;
+
+    private final List<IShadowState> mSources = new CopyOnWriteArrayList<IShadowState>();
+
+    /**
+     * The values of the current sweep.
+     */
+    private final List<ShadowValue> mValues = new ArrayList<ShadowValue>();
+
+    private int mCursor;
+
+    /**
+     * Address to the mismatch seen on its last sample.
+     */
+    private final Map<String, Mismatch> mMismatches = new HashMap<String, Mismatch>();
+
+    private final ConcurrentMap<String, AtomicLong> mDrifts =
+            new ConcurrentHashMap<String, AtomicLong>();
+
+    private final AtomicLong mSampleCount = new AtomicLong();
+
+    private final AtomicLong mDriftCount = new AtomicLong();
+
+    private final AtomicLong mSweepCount = new AtomicLong();
+
+    private Thread mThread;
+
+    private static final int WRITE_BUCKETS = 256;
+
+    /**
+     * Sends counted by a hash of their address, a changed count means the
+     * address may have been written.
+     */
+    private final AtomicLongArray mWrites = new AtomicLongArray(WRITE_BUCKETS);
+
+    //--------------------------------------------------------------------------
+    //
+    // Public :: Properties
+    //
+    //--------------------------------------------------------------------------
+
+    //----------------------------------
+    // engine
+    //----------------------------------
+
+    private volatile ICausticEngine mEngine;
+
+    /**
+     * Returns the engine the values are read from.
+     */
+    public ICausticEngine getEngine() {
+        return mEngine;
+    }
+
+    /**
+     * Sets the engine the values are read from, the undecorated engine or the
+     * {@link EngineExecutor} that makes its calls.
+     * 
+     * @param value The engine.
+     */
+    public void setEngine(ICausticEngine value) {
+        if (value == null)
+            throw new IllegalArgumentException("Null engine");
+        mEngine = value;
+    }
+
+    //----------------------------------
+    // period
+    //----------------------------------
+
+    private volatile long mPeriod = DEFAULT_PERIOD;
+
+    /**
+     * Returns the milliseconds between two batches.
+     */
+    public long getPeriod() {
+        return mPeriod;
+    }
+
+    /**
+     * Sets the milliseconds between two batches.
+     * 
+     * @param value The period, above <code>0</code>.
+     */
+    public void setPeriod(long value) {
+        if (value <= 0)
+            throw new IllegalArgumentException("period <= 0");
+        mPeriod = value;
+    }
+
+    //----------------------------------
+    // batchSize
+    //----------------------------------
+
+    private volatile int mBatchSize = DEFAULT_BATCH_SIZE;
+
+    /**
+     * Returns the number of values read in a batch.
+     */
+    public int getBatchSize() {
+        return mBatchSize;
+    }
+
+    /**
+     * Sets the number of values read in a batch.
+     * 
+     * @param value The batch size, above <code>0</code>.
+     */
+    public void setBatchSize(int value) {
+        if (value <= 0)
+            throw new IllegalArgumentException("batchSize <= 0");
+        mBatchSize = value;
+    }
+
+    //----------------------------------
+    // tolerance
+    //----------------------------------
+
+    private volatile float mTolerance = DEFAULT_TOLERANCE;
+
+    /**
+     * Returns the largest difference between the model and engine values
+     * that is not a drift.
+     */
+    public float getTolerance() {
+        return mTolerance;
+    }
+
+    /**
+     * Sets the largest difference that is not a drift.
+     * 
+     * @param value The tolerance.
+     */
+    public void setTolerance(float value) {
+        mTolerance = value;
+    }
+
+    //----------------------------------
+    // queryCache
+    //----------------------------------
+
+    private volatile QueryCacheEngine mQueryCache;
+
+    /**
+     * Returns the query cache whose entries are evicted on a drift,
+     * <code>null</code> when none.
+     */
+    public QueryCacheEngine getQueryCache() {
+        return mQueryCache;
+    }
+
+    /**
+     * Sets the query cache of the model's engine chain, a drifted value's
+     * cached read is evicted.
+     * 
+     * @param value The cache, <code>null</code> when none.
+     */
+    public void setQueryCache(QueryCacheEngine value) {
+        mQueryCache = value;
+    }
+
+    //----------------------------------
+    // sampleCount
+    //----------------------------------
+
+    /**
+     * Returns the number of engine values read.
+     */
+    public long getSampleCount() {
+        return mSampleCount.get();
+    }
+
+    //----------------------------------
+    // sweepCount
+    //----------------------------------
+
+    /**
+     * Returns the number of sweeps through all values started.
+     */
+    public long getSweepCount() {
+        return mSweepCount.get();
+    }
+
+    //----------------------------------
+    // driftCount
+    //----------------------------------
+
+    /**
+     * Returns the number of drifts fixed.
+     */
+    public long getDriftCount() {
+        return mDriftCount.get();
+    }
+
+    /**
+     * Returns a snapshot of the drifts fixed by address family, sorted by
+     * family.
+     */
+    public Map<String, Long> getDriftCounts() {
+        Map<String, Long> result = new TreeMap<String, Long>();
+        for (Map.Entry<String, AtomicLong> entry : mDrifts.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().get());
+        }
+        return result;
+    }
+
+    //----------------------------------
+    // running
+    //----------------------------------
+
+    /**
+     * Returns whether the background thread is running.
+     */
+    public synchronized boolean isRunning() {
+        return mThread != null;
+    }
+
+    //--------------------------------------------------------------------------
+    //
+    // Constructor
+    //
+    //--------------------------------------------------------------------------
+
+    /**
+     * Constructor.
+     * 
+     * @param engine The engine the values are read from.
+     * @see #setEngine(ICausticEngine)
+     */
+    public ShadowReconciler(ICausticEngine engine) {
+        mEngine = engine;
+    }
+
+    //--------------------------------------------------------------------------
+    //
+    // Public :: Methods
+    //
+    //--------------------------------------------------------------------------
+
+    /**
+     * Adds a source of shadow values, used from the next sweep on.
+     * 
+     * @param source The source.
+     */
+    public void addSource(IShadowState source) {
+        if (!mSources.contains(source))
+            mSources.add(source);
+    }
+
+    /**
+     * Removes a source of shadow values, its values are dropped on the next
+     * sweep.
+     * 
+     * @param source The source.
+     */
+    public void removeSource(IShadowState source) {
+        mSources.remove(source);
+    }
+
+    /**
+     * Reports a send of the model, called on the model's write path before
+     * the message reaches the engine. Does not allocate.
+     * 
+     * @param message The resolved String OSC message.
+     */
+    public void noteSend(String message) {
+        mWrites.incrementAndGet(toBucket(message));
+    }
+
+    /**
+     * Reports the sends of a batch.
+     * 
+     * @param batch The batch.
+     */
+    public void noteSends(MessageBatch batch) {
+        final int size = batch.size();
+        for (int i = 0; i < size; i++) {
+            noteSend(batch.get(i));
+        }
+    }
+
+    /**
+     * Starts reading a batch every period on a background thread.
+     */
+    public synchronized void start() {
+        if (mThread != null)
+            return;
+        mThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    while (!Thread.currentThread().isInterrupted()) {
+                        runBatch();
+                        Thread.sleep(mPeriod);
+                    }
+                } catch (InterruptedException e) {
+                    // stopped
+                }
+            }
+        }, "ShadowReconciler");
+        mThread.setDaemon(true);
+        mThread.setPriority(Thread.MIN_PRIORITY);
+        mThread.start();
+    }
+
+    /**
+     * Stops the background thread and waits for its batch to finish.
+     */
+    public void stop() {
+        Thread thread;
+        synchronized (this) {
+            thread = mThread;
+            mThread = null;
+        }
+        if (thread == null)
+            return;
+        thread.interrupt();
+        if (thread != Thread.currentThread()) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Reads the next batch of values and fixes their drifts, a new sweep
+     * collects the values of the sources again.
+     * 
+     * @return The number of drifts fixed.
+     */
+    public synchronized int runBatch() {
+        if (mCursor >= mValues.size()) {
+            mValues.clear();
+            mCursor = 0;
+            for (IShadowState source : mSources) {
+                source.getShadowValues(mValues);
+            }
+            mSweepCount.incrementAndGet();
+            if (mValues.isEmpty())
+                return 0;
+        }
+        int result = 0;
+        EngineLane.begin(EngineLane.BULK);
+        try {
+            final int end = Math.min(mValues.size(), mCursor + mBatchSize);
+            while (mCursor < end) {
+                if (sample(mValues.get(mCursor++)))
+                    result++;
+            }
+        } finally {
+            EngineLane.end();
+        }
+        return result;
+    }
+
+    /**
+     * Clears the drift counts.
+     */
+    public void resetCounts() {
+        mDrifts.clear();
+        mDriftCount.set(0);
+        mSampleCount.set(0);
+        mSweepCount.set(0);
+    }
+
+    //--------------------------------------------------------------------------
+    //
+    // Private :: Methods
+    //
+    //--------------------------------------------------------------------------
+
+    private boolean sample(ShadowValue value) {
+        final String address = value.getAddress();
+        final int bucket = toBucket(address);
+        final long writes = mWrites.get(bucket);
+        final float model = value.getValue();
+        final float engine;
+        try {
+            engine = mEngine.sendMessage(address);
+        } catch (RuntimeException e) {
+            // the value is gone with its machine, the next sweep drops it
+            mMismatches.remove(address);
+            return false;
+        }
+        mSampleCount.incrementAndGet();
+        if (Float.isNaN(engine) || Math.abs(engine - model) <= mTolerance) {
+            mMismatches.remove(address);
+            return false;
+        }
+
+        // a send of the model may still be on its way, only a mismatch seen
+        // twice with the model untouched is a drift
+        Mismatch last = mMismatches.get(address);
+        if (last == null || last.model != model || last.engine != engine
+                || last.writes != writes) {
+            mMismatches.put(address, new Mismatch(model, engine, writes));
+            return false;
+        }
+        // written since sampling, the write wins
+        if (mWrites.get(bucket) != writes || value.getValue() != model) {
+            mMismatches.remove(address);
+            return false;
+        }
+        mMismatches.remove(address);
+        value.setValue(engine);
+        QueryCacheEngine cache = mQueryCache;
+        if (cache != null)
+            cache.evict(address);
+        mDriftCount.incrementAndGet();
+        String family = InstrumentedEngine.toFamily(address);
+        AtomicLong count = mDrifts.get(family);
+        if (count == null) {
+            AtomicLong created = new AtomicLong();
+            count = mDrifts.putIfAbsent(family, created);
+            if (count == null)
+                count = created;
+        }
+        count.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Returns the write bucket of a message's address, the hash of the
+     * characters before the first space.
+     */
+    private static int toBucket(String message) {
+        int hash = 0;
+        final int length = message.length();
+        for (int i = 0; i < length; i++) {
+            final char c = message.charAt(i);
+            if (c == ' ')
+                break;
+            hash = 31 * hash + c;
+        }
+        return (hash ^ (hash >>> 16)) & (WRITE_BUCKETS - 1);
+    }
+
+    private static final class Mismatch {
+
+        final float model;
+
+        final float engine;
+
+        final long writes;
+
+        Mismatch(float model, float engine, long writes) {
+            this.model = model;
+            this.engine = engine;
+            this.writes = writes;
+        }
+    }
+}
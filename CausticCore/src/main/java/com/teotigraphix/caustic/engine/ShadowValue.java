@@ -0,0 +1,73 @@
+////////////////////////////////////////////////////////////////////////////////
+// Copyright 2013 Michael Schmalle - Teoti Graphix, LLC
+// 
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+// 
+// http://www.apache.org/licenses/LICENSE-2.0 
+// 
+// Unless required by applicable law or agreed to in writing, software 
+// distributed under the License is distributed on an "AS IS" BASIS, 
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and 
+// limitations under the License
+// 
+// Author: Michael Schmalle, Principal Architect
+// mschmalle at teotigraphix dot com
+////////////////////////////////////////////////////////////////////////////////
+
+package com.teotigraphix.caustic.engine;
+
+import java.util.List;
+
+/**
+ * A value the Java model caches from the engine, the shadow the
+ * {@link ShadowReconciler} compares with the engine's value.
+ * <p>
+ * {@link #setValue(float)} only updates the cache, it never sends; the engine
+ * already holds the value. Booleans and enums are shadowed as their float
+ * form.
+ * 
+ * @author Michael Schmalle
+ * @copyright Teoti Graphix, LLC
+ * @since 1.0
+ */
+public abstract class ShadowValue {
+
+    /**
+     * Returns the address that reads the engine's value, resolved when
+     * called, eg <code>/caustic/3/filter_cutoff</code>.
+     */
+    public abstract String getAddress();
+
+    /**
+     * Returns the model's cached value.
+     */
+    public abstract float getValue();
+
+    /**
+     * Sets the model's cached value without sending it to the engine.
+     * 
+     * @param value The engine's value.
+     */
+    public abstract void setValue(float value);
+
+    /**
+     * Adds the shadow values of a source when it is an {@link IShadowState},
+     * for parents that hold their components by interface.
+     * 
+     * @param source The possible {@link IShadowState}, may be
+     *            <code>null</code>.
+     * @param values The list to add to.
+     */
+    public static void collect(Object source, List<ShadowValue> values) {
+        if (source instanceof IShadowState)
+            ((IShadowState)source).getShadowValues(values);
+    }
+
+    @Override
+    public String toString() {
+        return getAddress() + " " + getValue();
+    }
+}
@@ -22,7 +22,9 @@ package com.teotigraphix.caustic.internal.effect;
 import com.teotigraphix.caustic.device.IDevice;
 import com.teotigraphix.caustic.effect.IEffect;
 import com.teotigraphix.caustic.machine.IMachine;
+import com.teotigraphix.caustic.osc.BoundMessage;
 import com.teotigraphix.caustic.osc.EffectRackMessage;
+import com.teotigraphix.caustic.osc.MessageBindings;
 
 /**
  * Default implementation of the {@link IEffect} API.
@@ -45,6 +47,8 @@ public abstract class Effect extends EffectComponent implements IEffect {
 
     private int mIndex;
 
+    private final MessageBindings mBindings = new MessageBindings();
+
     @Override
     public int getIndex() {
         return mIndex;
@@ -114,7 +118,7 @@ public abstract class Effect extends EffectComponent implements IEffect {
      * @return
      */
     protected final float get(String control) {
-        return EffectRackMessage.GET.query(getEngine(), getDeviceIndex(), getIndex(), control);
+        return bind(control).query(getEngine());
     }
 
     /**
@@ -124,11 +128,27 @@ public abstract class Effect extends EffectComponent implements IEffect {
      * @param value
      */
     protected final void set(String control, float value) {
-        EffectRackMessage.SET.send(getEngine(), getDeviceIndex(), getIndex(), control, value);
+        bind(control).send(getEngine(), value);
     }
 
     protected final void set(String control, int value) {
-        EffectRackMessage.SET.send(getEngine(), getDeviceIndex(), getIndex(), control, value);
+        bind(control).send(getEngine(), value);
+    }
+
+    /**
+     * Returns the effect's handle of a control, bound to the machine index and
+     * slot; the handles are bound again when either changes.
+     * 
+     * @param control The control name.
+     */
+    protected final BoundMessage bind(String control) {
+        final int machineIndex = getDeviceIndex();
+        final int stamp = machineIndex << 8 | getIndex();
+        BoundMessage result = mBindings.get(control, stamp);
+        if (result == null)
+            result = mBindings.put(control, stamp,
+                    EffectRackMessage.SET.bind(machineIndex, getIndex(), control));
+        return result;
     }
 
     @Override
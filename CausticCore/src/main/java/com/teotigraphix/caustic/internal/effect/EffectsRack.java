@@ -6,6 +6,7 @@ import java.util.Map;
 import java.util.Map.Entry;
 
 import com.teotigraphix.caustic.core.IMemento;
+import com.teotigraphix.caustic.core.MessageBatch;
 import com.teotigraphix.caustic.effect.IEffect;
 import com.teotigraphix.caustic.effect.IEffect.EffectType;
 import com.teotigraphix.caustic.effect.IEffectsRack;
@@ -89,11 +90,16 @@ public class EffectsRack extends Device implements IEffectsRack {
     @Override
     public void paste(IMemento memento) {
         IMemento[] machines = memento.getChildren("channel");
-        for (IMemento child : machines) {
-            // create the effect and pass the effect, save state
-            // as with the mixer, the machine has to exist here
-            EffectData info = mEffectDataMap.get(child.getInteger("index"));
-            info.paste(child);
+        MessageBatch.begin(getEngine());
+        try {
+            for (IMemento child : machines) {
+                // create the effect and pass the effect, save state
+                // as with the mixer, the machine has to exist here
+                EffectData info = mEffectDataMap.get(child.getInteger("index"));
+                info.paste(child);
+            }
+        } finally {
+            MessageBatch.end();
         }
     }
 
@@ -189,7 +195,12 @@ public class EffectsRack extends Device implements IEffectsRack {
     @Override
     public void pasteChannel(IMachine machine, IMemento memento) {
         EffectData data = mEffectDataMap.get(machine.getIndex());
-        data.paste(memento);
+        MessageBatch.begin(getEngine());
+        try {
+            data.paste(memento);
+        } finally {
+            MessageBatch.end();
+        }
     }
 
     @Override
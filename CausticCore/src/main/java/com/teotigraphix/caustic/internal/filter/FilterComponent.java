@@ -19,7 +19,11 @@
 
 package com.teotigraphix.caustic.internal.filter;
 
+import java.util.List;
+
 import com.teotigraphix.caustic.core.IMemento;
+import com.teotigraphix.caustic.engine.IShadowState;
+import com.teotigraphix.caustic.engine.ShadowValue;
 import com.teotigraphix.caustic.filter.IFilterComponent;
 import com.teotigraphix.caustic.internal.machine.MachineComponent;
 import com.teotigraphix.caustic.machine.IMachine;
@@ -32,7 +36,7 @@ import com.teotigraphix.caustic.osc.FilterMessage;
  * @copyright Teoti Graphix, LLC
  * @since 1.0
  */
-public class FilterComponent extends MachineComponent implements IFilterComponent {
+public class FilterComponent extends MachineComponent implements IFilterComponent, IShadowState {
 
     //--------------------------------------------------------------------------
     //
@@ -52,7 +56,7 @@ public class FilterComponent extends MachineComponent implements IFilterComponen
     }
 
     public float getCutoff(boolean restore) {
-        return FilterMessage.FILTER_CUTOFF.query(getEngine(), getMachineIndex());
+        return bind(FilterMessage.FILTER_CUTOFF).query(getEngine());
     }
 
     @Override
@@ -62,7 +66,7 @@ public class FilterComponent extends MachineComponent implements IFilterComponen
         if (value < 0 || value > 1f)
             throw newRangeException(FilterMessage.FILTER_CUTOFF.toString(), "0..1", value);
         mCutoff = value;
-        FilterMessage.FILTER_CUTOFF.send(getEngine(), getMachineIndex(), mCutoff);
+        bind(FilterMessage.FILTER_CUTOFF).send(getEngine(), mCutoff);
     }
 
     //----------------------------------
@@ -77,7 +81,7 @@ public class FilterComponent extends MachineComponent implements IFilterComponen
     }
 
     public float getResonance(boolean restore) {
-        return FilterMessage.FILTER_RESONANCE.query(getEngine(), getMachineIndex());
+        return bind(FilterMessage.FILTER_RESONANCE).query(getEngine());
     }
 
     @Override
@@ -87,7 +91,7 @@ public class FilterComponent extends MachineComponent implements IFilterComponen
         if (value < 0 || value > 1f)
             throw newRangeException(FilterMessage.FILTER_RESONANCE.toString(), "0..1", value);
         mResonance = value;
-        FilterMessage.FILTER_RESONANCE.send(getEngine(), getMachineIndex(), mResonance);
+        bind(FilterMessage.FILTER_RESONANCE).send(getEngine(), mResonance);
     }
 
     //--------------------------------------------------------------------------
@@ -126,4 +130,36 @@ public class FilterComponent extends MachineComponent implements IFilterComponen
         setCutoff(getCutoff(true));
         setResonance(getResonance(true));
     }
+
+    //--------------------------------------------------------------------------
+    //
+    // IShadowState API :: Methods
+    //
+    //--------------------------------------------------------------------------
+
+    @Override
+    public void getShadowValues(List<ShadowValue> values) {
+        values.add(new MessageShadowValue(FilterMessage.FILTER_CUTOFF) {
+            @Override
+            public float getValue() {
+                return mCutoff;
+            }
+
+            @Override
+            public void setValue(float value) {
+                mCutoff = value;
+            }
+        });
+        values.add(new MessageShadowValue(FilterMessage.FILTER_RESONANCE) {
+            @Override
+            public float getValue() {
+                return mResonance;
+            }
+
+            @Override
+            public void setValue(float value) {
+                mResonance = value;
+            }
+        });
+    }
 }
@@ -19,7 +19,10 @@
 
 package com.teotigraphix.caustic.internal.filter;
 
+import java.util.List;
+
 import com.teotigraphix.caustic.core.IMemento;
+import com.teotigraphix.caustic.engine.ShadowValue;
 import com.teotigraphix.caustic.filter.IFilter;
 import com.teotigraphix.caustic.machine.IMachine;
 import com.teotigraphix.caustic.osc.FilterMessage;
@@ -51,7 +54,7 @@ public class SynthFilter extends FilterComponent implements IFilter {
     }
 
     public float getAttack(boolean restore) {
-        return FilterMessage.FILTER_ATTACK.query(getEngine(), getMachineIndex());
+        return bind(FilterMessage.FILTER_ATTACK).query(getEngine());
     }
 
     @Override
@@ -61,7 +64,7 @@ public class SynthFilter extends FilterComponent implements IFilter {
         if (value < 0 || value > 3.0625f)
             throw newRangeException(FilterMessage.FILTER_ATTACK.toString(), "0..3.0625", value);
         mAttack = value;
-        FilterMessage.FILTER_ATTACK.send(getEngine(), getMachineIndex(), mAttack);
+        bind(FilterMessage.FILTER_ATTACK).send(getEngine(), mAttack);
     }
 
     //----------------------------------
@@ -76,7 +79,7 @@ public class SynthFilter extends FilterComponent implements IFilter {
     }
 
     public float getDecay(boolean restore) {
-        return FilterMessage.FILTER_DECAY.query(getEngine(), getMachineIndex());
+        return bind(FilterMessage.FILTER_DECAY).query(getEngine());
     }
 
     @Override
@@ -86,7 +89,7 @@ public class SynthFilter extends FilterComponent implements IFilter {
         if (value < 0 || value > 3.0625f)
             throw newRangeException(FilterMessage.FILTER_DECAY.toString(), "0..3.0625", value);
         mDecay = value;
-        FilterMessage.FILTER_DECAY.send(getEngine(), getMachineIndex(), mDecay);
+        bind(FilterMessage.FILTER_DECAY).send(getEngine(), mDecay);
     }
 
     //----------------------------------
@@ -101,7 +104,7 @@ public class SynthFilter extends FilterComponent implements IFilter {
     }
 
     public float getRelease(boolean restore) {
-        return FilterMessage.FILTER_RELEASE.query(getEngine(), getMachineIndex());
+        return bind(FilterMessage.FILTER_RELEASE).query(getEngine());
     }
 
     @Override
@@ -111,7 +114,7 @@ public class SynthFilter extends FilterComponent implements IFilter {
         if (value < 0 || value > 3.0625f)
             throw newRangeException(FilterMessage.FILTER_RELEASE.toString(), "0..3.0625", value);
         mRelease = value;
-        FilterMessage.FILTER_RELEASE.send(getEngine(), getMachineIndex(), mRelease);
+        bind(FilterMessage.FILTER_RELEASE).send(getEngine(), mRelease);
     }
 
     //----------------------------------
@@ -126,7 +129,7 @@ public class SynthFilter extends FilterComponent implements IFilter {
     }
 
     public float getSustain(boolean restore) {
-        return FilterMessage.FILTER_SUSTAIN.query(getEngine(), getMachineIndex());
+        return bind(FilterMessage.FILTER_SUSTAIN).query(getEngine());
     }
 
     @Override
@@ -136,7 +139,7 @@ public class SynthFilter extends FilterComponent implements IFilter {
         if (value < 0 || value > 1.0f)
             throw newRangeException(FilterMessage.FILTER_SUSTAIN.toString(), "0..1.0", value);
         mSustain = value;
-        FilterMessage.FILTER_SUSTAIN.send(getEngine(), getMachineIndex(), mSustain);
+        bind(FilterMessage.FILTER_SUSTAIN).send(getEngine(), mSustain);
     }
 
     //----------------------------------
@@ -151,7 +154,7 @@ public class SynthFilter extends FilterComponent implements IFilter {
     }
 
     public float getTrack(boolean restore) {
-        return FilterMessage.FILTER_KBTRACK.query(getEngine(), getMachineIndex());
+        return bind(FilterMessage.FILTER_KBTRACK).query(getEngine());
     }
 
     @Override
@@ -161,7 +164,7 @@ public class SynthFilter extends FilterComponent implements IFilter {
         if (value < 0 || value > 1.0f)
             throw newRangeException(FilterMessage.FILTER_KBTRACK.toString(), "0..1.0", value);
         mTrack = value;
-        FilterMessage.FILTER_KBTRACK.send(getEngine(), getMachineIndex(), mTrack);
+        bind(FilterMessage.FILTER_KBTRACK).send(getEngine(), mTrack);
     }
 
     //----------------------------------
@@ -176,7 +179,7 @@ public class SynthFilter extends FilterComponent implements IFilter {
     }
 
     public FilterType getType(boolean restore) {
-        return FilterType.toType(FilterMessage.FILTER_TYPE.query(getEngine(), getMachineIndex()));
+        return FilterType.toType(bind(FilterMessage.FILTER_TYPE).query(getEngine()));
     }
 
     @Override
@@ -184,7 +187,7 @@ public class SynthFilter extends FilterComponent implements IFilter {
         if (value == mFilterType)
             return;
         mFilterType = value;
-        FilterMessage.FILTER_TYPE.send(getEngine(), getMachineIndex(), mFilterType.getValue());
+        bind(FilterMessage.FILTER_TYPE).send(getEngine(), mFilterType.getValue());
     }
 
     //--------------------------------------------------------------------------
@@ -253,4 +256,70 @@ public class SynthFilter extends FilterComponent implements IFilter {
 
         setType(getType(true));
     }
+
+    //--------------------------------------------------------------------------
+    //
+    // IShadowState API :: Methods
+    //
+    //--------------------------------------------------------------------------
+
+    @Override
+    public void getShadowValues(List<ShadowValue> values) {
+        super.getShadowValues(values);
+        values.add(new MessageShadowValue(FilterMessage.FILTER_ATTACK) {
+            @Override
+            public float getValue() {
+                return mAttack;
+            }
+
+            @Override
+            public void setValue(float value) {
+                mAttack = value;
+            }
+        });
+        values.add(new MessageShadowValue(FilterMessage.FILTER_DECAY) {
+            @Override
+            public float getValue() {
+                return mDecay;
+            }
+
+            @Override
+            public void setValue(float value) {
+                mDecay = value;
+            }
+        });
+        values.add(new MessageShadowValue(FilterMessage.FILTER_RELEASE) {
+            @Override
+            public float getValue() {
+                return mRelease;
+            }
+
+            @Override
+            public void setValue(float value) {
+                mRelease = value;
+            }
+        });
+        values.add(new MessageShadowValue(FilterMessage.FILTER_SUSTAIN) {
+            @Override
+            public float getValue() {
+                return mSustain;
+            }
+
+            @Override
+            public void setValue(float value) {
+                mSustain = value;
+            }
+        });
+        values.add(new MessageShadowValue(FilterMessage.FILTER_TYPE) {
+            @Override
+            public float getValue() {
+                return mFilterType.getValue();
+            }
+
+            @Override
+            public void setValue(float value) {
+                mFilterType = FilterType.toType(value);
+            }
+        });
+    }
 }
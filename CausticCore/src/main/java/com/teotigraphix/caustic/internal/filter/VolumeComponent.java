@@ -19,7 +19,11 @@
 
 package com.teotigraphix.caustic.internal.filter;
 
+import java.util.List;
+
 import com.teotigraphix.caustic.core.IMemento;
+import com.teotigraphix.caustic.engine.IShadowState;
+import com.teotigraphix.caustic.engine.ShadowValue;
 import com.teotigraphix.caustic.filter.IVolumeComponent;
 import com.teotigraphix.caustic.internal.machine.MachineComponent;
 import com.teotigraphix.caustic.machine.IMachine;
@@ -33,7 +37,7 @@ import com.teotigraphix.caustic.osc.VolumeMessage;
  * @copyright Teoti Graphix, LLC
  * @since 1.0
  */
-public class VolumeComponent extends MachineComponent implements IVolumeComponent {
+public class VolumeComponent extends MachineComponent implements IVolumeComponent, IShadowState {
 
     //--------------------------------------------------------------------------
     //
@@ -53,7 +57,7 @@ public class VolumeComponent extends MachineComponent implements IVolumeComponen
     }
 
     public float getOut(boolean restore) {
-        return VolumeMessage.VOLUME_OUT.query(getEngine(), getMachineIndex());
+        return bind(VolumeMessage.VOLUME_OUT).query(getEngine());
     }
 
     @Override
@@ -68,7 +72,7 @@ public class VolumeComponent extends MachineComponent implements IVolumeComponen
                 throw newRangeException(VolumeMessage.VOLUME_OUT.toString(), "0..2.0", value);
         }
         mOut = value;
-        VolumeMessage.VOLUME_OUT.send(getEngine(), getMachineIndex(), value);
+        bind(VolumeMessage.VOLUME_OUT).send(getEngine(), value);
     }
 
     //--------------------------------------------------------------------------
@@ -104,4 +108,25 @@ public class VolumeComponent extends MachineComponent implements IVolumeComponen
     public void restore() {
         setOut(getOut(true));
     }
+
+    //--------------------------------------------------------------------------
+    //
+    // IShadowState API :: Methods
+    //
+    //--------------------------------------------------------------------------
+
+    @Override
+    public void getShadowValues(List<ShadowValue> values) {
+        values.add(new MessageShadowValue(VolumeMessage.VOLUME_OUT) {
+            @Override
+            public float getValue() {
+                return mOut;
+            }
+
+            @Override
+            public void setValue(float value) {
+                mOut = value;
+            }
+        });
+    }
 }
@@ -19,7 +19,10 @@
 
 package com.teotigraphix.caustic.internal.filter;
 
+import java.util.List;
+
 import com.teotigraphix.caustic.core.IMemento;
+import com.teotigraphix.caustic.engine.ShadowValue;
 import com.teotigraphix.caustic.filter.IVolumeEnvelope;
 import com.teotigraphix.caustic.machine.IMachine;
 import com.teotigraphix.caustic.osc.VolumeMessage;
@@ -51,7 +54,7 @@ public class VolumeEnvelope extends VolumeComponent implements IVolumeEnvelope {
     }
 
     public float getAttack(boolean restore) {
-        return VolumeMessage.VOLUME_ATTACK.query(getEngine(), getMachineIndex());
+        return bind(VolumeMessage.VOLUME_ATTACK).query(getEngine());
     }
 
     @Override
@@ -61,7 +64,7 @@ public class VolumeEnvelope extends VolumeComponent implements IVolumeEnvelope {
         if (value < 0 || value > 3.0625f)
             throw newRangeException(VolumeMessage.VOLUME_ATTACK.toString(), "0..3.0625", value);
         mAttack = value;
-        VolumeMessage.VOLUME_ATTACK.send(getEngine(), getMachineIndex(), mAttack);
+        bind(VolumeMessage.VOLUME_ATTACK).send(getEngine(), mAttack);
     }
 
     //----------------------------------
@@ -76,7 +79,7 @@ public class VolumeEnvelope extends VolumeComponent implements IVolumeEnvelope {
     }
 
     public float getDecay(boolean restore) {
-        return VolumeMessage.VOLUME_DECAY.query(getEngine(), getMachineIndex());
+        return bind(VolumeMessage.VOLUME_DECAY).query(getEngine());
     }
 
     @Override
@@ -86,7 +89,7 @@ public class VolumeEnvelope extends VolumeComponent implements IVolumeEnvelope {
         if (value < 0 || value > 3.0625f)
             throw newRangeException(VolumeMessage.VOLUME_DECAY.toString(), "0..3.0625", value);
         mDecay = value;
-        VolumeMessage.VOLUME_DECAY.send(getEngine(), getMachineIndex(), mDecay);
+        bind(VolumeMessage.VOLUME_DECAY).send(getEngine(), mDecay);
     }
 
     //----------------------------------
@@ -101,7 +104,7 @@ public class VolumeEnvelope extends VolumeComponent implements IVolumeEnvelope {
     }
 
     public float getSustain(boolean restore) {
-        return VolumeMessage.VOLUME_SUSTAIN.query(getEngine(), getMachineIndex());
+        return bind(VolumeMessage.VOLUME_SUSTAIN).query(getEngine());
     }
 
     @Override
@@ -111,7 +114,7 @@ public class VolumeEnvelope extends VolumeComponent implements IVolumeEnvelope {
         if (value < 0 || value > 1.0f)
             throw newRangeException(VolumeMessage.VOLUME_SUSTAIN.toString(), "0..1.0", value);
         mSustain = value;
-        VolumeMessage.VOLUME_SUSTAIN.send(getEngine(), getMachineIndex(), mSustain);
+        bind(VolumeMessage.VOLUME_SUSTAIN).send(getEngine(), mSustain);
     }
 
     //----------------------------------
@@ -126,7 +129,7 @@ public class VolumeEnvelope extends VolumeComponent implements IVolumeEnvelope {
     }
 
     public float getRelease(boolean restore) {
-        return VolumeMessage.VOLUME_RELEASE.query(getEngine(), getMachineIndex());
+        return bind(VolumeMessage.VOLUME_RELEASE).query(getEngine());
     }
 
     @Override
@@ -136,7 +139,7 @@ public class VolumeEnvelope extends VolumeComponent implements IVolumeEnvelope {
         if (value < 0 || value > 3.0625f)
             throw newRangeException(VolumeMessage.VOLUME_RELEASE.toString(), "0..3.0625", value);
         mRelease = value;
-        VolumeMessage.VOLUME_RELEASE.send(getEngine(), getMachineIndex(), mRelease);
+        bind(VolumeMessage.VOLUME_RELEASE).send(getEngine(), mRelease);
     }
 
     //--------------------------------------------------------------------------
@@ -184,4 +187,59 @@ public class VolumeEnvelope extends VolumeComponent implements IVolumeEnvelope {
         setRelease(getRelease(true));
         setSustain(getSustain(true));
     }
+
+    //--------------------------------------------------------------------------
+    //
+    // IShadowState API :: Methods
+    //
+    //--------------------------------------------------------------------------
+
+    @Override
+    public void getShadowValues(List<ShadowValue> values) {
+        super.getShadowValues(values);
+        values.add(new MessageShadowValue(VolumeMessage.VOLUME_ATTACK) {
+            @Override
+            public float getValue() {
+                return mAttack;
+            }
+
+            @Override
+            public void setValue(float value) {
+                mAttack = value;
+            }
+        });
+        values.add(new MessageShadowValue(VolumeMessage.VOLUME_DECAY) {
+            @Override
+            public float getValue() {
+                return mDecay;
+            }
+
+            @Override
+            public void setValue(float value) {
+                mDecay = value;
+            }
+        });
+        values.add(new MessageShadowValue(VolumeMessage.VOLUME_RELEASE) {
+            @Override
+            public float getValue() {
+                return mRelease;
+            }
+
+            @Override
+            public void setValue(float value) {
+                mRelease = value;
+            }
+        });
+        values.add(new MessageShadowValue(VolumeMessage.VOLUME_SUSTAIN) {
+            @Override
+            public float getValue() {
+                return mSustain;
+            }
+
+            @Override
+            public void setValue(float value) {
+                mSustain = value;
+            }
+        });
+    }
 }
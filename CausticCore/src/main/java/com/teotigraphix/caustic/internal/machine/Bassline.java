@@ -19,8 +19,11 @@
 
 package com.teotigraphix.caustic.internal.machine;
 
+import java.util.List;
+
 import com.teotigraphix.caustic.core.IMemento;
 import com.teotigraphix.caustic.effect.IBasslineDistortionUnit;
+import com.teotigraphix.caustic.engine.ShadowValue;
 import com.teotigraphix.caustic.filter.IBasslineFilter;
 import com.teotigraphix.caustic.filter.IBasslineLFO1;
 import com.teotigraphix.caustic.filter.IBasslineOSC1;
@@ -180,4 +183,10 @@ public class Bassline extends Synth implements IBassline {
         getDistortion().restore();
     }
 
+    @Override
+    public void getShadowValues(List<ShadowValue> values) {
+        ShadowValue.collect(getVolume(), values);
+        ShadowValue.collect(getFilter(), values);
+    }
+
 }
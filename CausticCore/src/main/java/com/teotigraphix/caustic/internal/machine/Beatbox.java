@@ -19,6 +19,9 @@
 
 package com.teotigraphix.caustic.internal.machine;
 
+import java.util.List;
+
+import com.teotigraphix.caustic.engine.ShadowValue;
 import com.teotigraphix.caustic.filter.IVolumeComponent;
 import com.teotigraphix.caustic.internal.filter.VolumeComponent;
 import com.teotigraphix.caustic.internal.sampler.BeatboxSampler;
@@ -103,4 +106,9 @@ public class Beatbox extends Synth implements IBeatbox {
         getSampler().restore();
     }
 
+    @Override
+    public void getShadowValues(List<ShadowValue> values) {
+        ShadowValue.collect(getVolume(), values);
+    }
+
 }
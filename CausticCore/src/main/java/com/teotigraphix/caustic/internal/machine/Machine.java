@@ -19,9 +19,13 @@
 
 package com.teotigraphix.caustic.internal.machine;
 
+import java.util.List;
+
 import com.teotigraphix.caustic.core.ICausticEngine;
 import com.teotigraphix.caustic.core.IMemento;
 import com.teotigraphix.caustic.device.IDeviceFactory;
+import com.teotigraphix.caustic.engine.IShadowState;
+import com.teotigraphix.caustic.engine.ShadowValue;
 import com.teotigraphix.caustic.internal.device.Device;
 import com.teotigraphix.caustic.internal.sequencer.PatternSequencerFacade;
 import com.teotigraphix.caustic.machine.IMachine;
@@ -37,7 +41,7 @@ import com.teotigraphix.caustic.sequencer.IPatternSequencer2;
  * @copyright Teoti Graphix, LLC
  * @since 1.0
  */
-public abstract class Machine extends Device implements IMachine {
+public abstract class Machine extends Device implements IMachine, IShadowState {
 
     private String mAbsolutePresetPath;
 
@@ -187,6 +191,14 @@ public abstract class Machine extends Device implements IMachine {
         mSequencer.restore();
     }
 
+    /**
+     * Adds the shadow values of the machine's components, subclasses add the
+     * components they own.
+     */
+    @Override
+    public void getShadowValues(List<ShadowValue> values) {
+    }
+
     //--------------------------------------------------------------------------
     //
     // Overridden Public :: Methods
@@ -21,9 +21,13 @@ package com.teotigraphix.caustic.internal.machine;
 
 import com.teotigraphix.caustic.core.ICausticEngine;
 import com.teotigraphix.caustic.device.IDevice;
+import com.teotigraphix.caustic.engine.ShadowValue;
 import com.teotigraphix.caustic.internal.utils.ExceptionUtils;
 import com.teotigraphix.caustic.machine.IMachine;
 import com.teotigraphix.caustic.machine.IMachineComponent;
+import com.teotigraphix.caustic.osc.BoundMessage;
+import com.teotigraphix.caustic.osc.CausticMessage;
+import com.teotigraphix.caustic.osc.MessageBindings;
 
 /**
  * The default implementation of the IMachineComponent interface.
@@ -50,6 +54,8 @@ public abstract class MachineComponent implements IMachineComponent {
 
     private ICausticEngine mEngine;
 
+    private final MessageBindings mBindings = new MessageBindings();
+
     @Override
     public IDevice getDevice() {
         return mDevice;
@@ -95,6 +101,41 @@ public abstract class MachineComponent implements IMachineComponent {
         setDevice(machine);
     }
 
+    /**
+     * Returns the component's handle of a machine message, bound to the
+     * machine's index; the handles are bound again when the index changes.
+     * 
+     * @param message The message, its first argument is the machine index and
+     *            its last the value.
+     */
+    protected final BoundMessage bind(CausticMessage message) {
+        return mBindings.bind(message, getMachineIndex());
+    }
+
+    /**
+     * A shadow value read by a message of the component's machine, its address
+     * follows the machine's index.
+     */
+    protected abstract class MessageShadowValue extends ShadowValue {
+
+        private final CausticMessage mMessage;
+
+        /**
+         * Constructor.
+         * 
+         * @param message The message, its first argument is the machine index
+         *            and its last the value.
+         */
+        protected MessageShadowValue(CausticMessage message) {
+            mMessage = message;
+        }
+
+        @Override
+        public String getAddress() {
+            return bind(mMessage).getAddress();
+        }
+    }
+
     /**
      * Returns a new {@link IllegalArgumentException} for an error in OSC range.
      * 
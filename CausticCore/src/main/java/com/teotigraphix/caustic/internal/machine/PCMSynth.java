@@ -19,7 +19,10 @@
 
 package com.teotigraphix.caustic.internal.machine;
 
+import java.util.List;
+
 import com.teotigraphix.caustic.core.IMemento;
+import com.teotigraphix.caustic.engine.ShadowValue;
 import com.teotigraphix.caustic.filter.IFilter;
 import com.teotigraphix.caustic.filter.IPCMSynthLFO1;
 import com.teotigraphix.caustic.filter.IPitchTuner;
@@ -188,4 +191,10 @@ public class PCMSynth extends Synth implements IPCMSynth {
         getSampler().restore();
     }
 
+    @Override
+    public void getShadowValues(List<ShadowValue> values) {
+        ShadowValue.collect(getVolume(), values);
+        ShadowValue.collect(getFilter(), values);
+    }
+
 }
@@ -19,7 +19,10 @@
 
 package com.teotigraphix.caustic.internal.machine;
 
+import java.util.List;
+
 import com.teotigraphix.caustic.core.IMemento;
+import com.teotigraphix.caustic.engine.ShadowValue;
 import com.teotigraphix.caustic.filter.IFilter;
 import com.teotigraphix.caustic.filter.ISubSynthLFO1;
 import com.teotigraphix.caustic.filter.ISubSynthLFO2;
@@ -203,4 +206,10 @@ public class SubSynth extends Synth implements ISubSynth {
         getLFO1().restore();
         getLFO2().restore();
     }
+
+    @Override
+    public void getShadowValues(List<ShadowValue> values) {
+        ShadowValue.collect(getVolume(), values);
+        ShadowValue.collect(getFilter(), values);
+    }
 }
@@ -25,6 +25,7 @@ import com.teotigraphix.caustic.core.IRestore;
 import com.teotigraphix.caustic.device.IDevice;
 import com.teotigraphix.caustic.internal.utils.MementoUtil;
 import com.teotigraphix.caustic.mixer.IMixerPanel;
+import com.teotigraphix.caustic.osc.MessageBindings;
 
 /**
  * @author Michael Schmalle
@@ -57,6 +58,8 @@ public class MixerData implements IPersist, IRestore {
 
     MixerPanel mPanel;
 
+    final MessageBindings mBindings = new MessageBindings();
+
     MixerData(MixerPanel panel) {
         mPanel = panel;
     }
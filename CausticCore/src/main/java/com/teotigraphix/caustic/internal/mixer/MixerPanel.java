@@ -19,21 +19,25 @@
 
 package com.teotigraphix.caustic.internal.mixer;
 
-import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.teotigraphix.caustic.core.ICausticEngine;
 import com.teotigraphix.caustic.core.IMemento;
 import com.teotigraphix.caustic.core.IPersist;
 import com.teotigraphix.caustic.device.IDevice;
+import com.teotigraphix.caustic.engine.IShadowState;
+import com.teotigraphix.caustic.engine.ShadowValue;
 import com.teotigraphix.caustic.internal.device.Device;
 import com.teotigraphix.caustic.internal.utils.MementoUtil;
 import com.teotigraphix.caustic.machine.IMachine;
 import com.teotigraphix.caustic.mixer.IMixerDelay;
 import com.teotigraphix.caustic.mixer.IMixerPanel;
 import com.teotigraphix.caustic.mixer.IMixerReverb;
+import com.teotigraphix.caustic.osc.BoundMessage;
 import com.teotigraphix.caustic.osc.MixerMessage;
 
 /**
@@ -43,7 +47,7 @@ import com.teotigraphix.caustic.osc.MixerMessage;
  * @copyright Teoti Graphix, LLC
  * @since 1.0
  */
-public class MixerPanel extends Device implements IMixerPanel {
+public class MixerPanel extends Device implements IMixerPanel, IShadowState {
 
     private static final String MASTER = "master";
 
@@ -69,7 +73,9 @@ public class MixerPanel extends Device implements IMixerPanel {
         return mMasterData;
     }
 
-    private final Map<Integer, MixerData> mMixerInfoMap = new HashMap<Integer, MixerData>();
+    // concurrent, the shadow reconciler walks the channels on its own thread
+    private final Map<Integer, MixerData> mMixerInfoMap =
+            new ConcurrentHashMap<Integer, MixerData>();
 
     //--------------------------------------------------------------------------
     //
@@ -129,7 +135,7 @@ public class MixerPanel extends Device implements IMixerPanel {
         if (value < -1f || value > 1f)
             throw newRangeException(BASS, "-1.0..1.0", value);
         mMasterData.bass = value;
-        MixerMessage.EQ_BASS.send(getEngine(), MASTER, value);
+        bindMaster(MixerMessage.EQ_BASS).send(getEngine(), value);
     }
 
     @Override
@@ -148,7 +154,7 @@ public class MixerPanel extends Device implements IMixerPanel {
         if (value < -1f || value > 1f)
             throw newRangeException(MID, "-1.0..1.0", value);
         mMasterData.mid = value;
-        MixerMessage.EQ_MID.send(getEngine(), MASTER, value);
+        bindMaster(MixerMessage.EQ_MID).send(getEngine(), value);
     }
 
     @Override
@@ -167,7 +173,7 @@ public class MixerPanel extends Device implements IMixerPanel {
         if (value < -1f || value > 1f)
             throw newRangeException(HIGH, "-1.0..1.0", value);
         mMasterData.high = value;
-        MixerMessage.EQ_HIGH.send(getEngine(), MASTER, value);
+        bindMaster(MixerMessage.EQ_HIGH).send(getEngine(), value);
     }
 
     @Override
@@ -186,7 +192,7 @@ public class MixerPanel extends Device implements IMixerPanel {
         if (value < 0f || value > 2f)
             throw newRangeException(VOLUME, "0.0..2.0", value);
         mMasterData.volume = value;
-        MixerMessage.VOLUME.send(getEngine(), MASTER, value);
+        bindMaster(MixerMessage.VOLUME).send(getEngine(), value);
     }
 
     //----------------------------------
@@ -213,7 +219,7 @@ public class MixerPanel extends Device implements IMixerPanel {
         if (value < -1f || value > 1f)
             throw newRangeException(BASS, "-1.0..1.0", value);
         info.bass = value;
-        MixerMessage.EQ_BASS.send(getEngine(), index, value);
+        bind(info, MixerMessage.EQ_BASS, index).send(getEngine(), value);
     }
 
     //----------------------------------
@@ -240,7 +246,7 @@ public class MixerPanel extends Device implements IMixerPanel {
         if (value < -1f || value > 1f)
             throw newRangeException(MID, "-1.0..1.0", value);
         info.mid = value;
-        MixerMessage.EQ_MID.send(getEngine(), index, value);
+        bind(info, MixerMessage.EQ_MID, index).send(getEngine(), value);
     }
 
     //----------------------------------
@@ -267,7 +273,7 @@ public class MixerPanel extends Device implements IMixerPanel {
         if (value < -1f || value > 1f)
             throw newRangeException(HIGH, "-1.0..1.0", value);
         info.high = value;
-        MixerMessage.EQ_HIGH.send(getEngine(), index, value);
+        bind(info, MixerMessage.EQ_HIGH, index).send(getEngine(), value);
     }
 
     //----------------------------------
@@ -294,7 +300,7 @@ public class MixerPanel extends Device implements IMixerPanel {
         if (value < 0f || value > 1f)
             throw newRangeException(DELAY_SEND, "0.0..1.0", value);
         info.delay = value;
-        MixerMessage.DELAY_SEND.send(getEngine(), index, value);
+        bind(info, MixerMessage.DELAY_SEND, index).send(getEngine(), value);
     }
 
     //----------------------------------
@@ -321,7 +327,7 @@ public class MixerPanel extends Device implements IMixerPanel {
         if (value < 0f || value > 1f)
             throw newRangeException(REVERB_SEND, "0.0..1.0", value);
         info.reverb = value;
-        MixerMessage.REVERB_SEND.send(getEngine(), index, value);
+        bind(info, MixerMessage.REVERB_SEND, index).send(getEngine(), value);
     }
 
     //----------------------------------
@@ -348,7 +354,7 @@ public class MixerPanel extends Device implements IMixerPanel {
         if (value < -1f || value > 1f)
             throw newRangeException(PAN, "-1.0..1.0", value);
         info.pan = value;
-        MixerMessage.PAN.send(getEngine(), index, value);
+        bind(info, MixerMessage.PAN, index).send(getEngine(), value);
     }
 
     //----------------------------------
@@ -375,7 +381,7 @@ public class MixerPanel extends Device implements IMixerPanel {
         if (value < 0f || value > 1f)
             throw newRangeException(STEREO_WIDTH, "0.0..1.0", value);
         info.stereoWidth = value;
-        MixerMessage.STEREO_WIDTH.send(getEngine(), index, value);
+        bind(info, MixerMessage.STEREO_WIDTH, index).send(getEngine(), value);
     }
 
     //----------------------------------
@@ -400,7 +406,7 @@ public class MixerPanel extends Device implements IMixerPanel {
         if (info == null || info.mute == muted)
             return;
         info.mute = muted;
-        MixerMessage.MUTE.send(getEngine(), index, MementoUtil.booleanToInt(muted));
+        bind(info, MixerMessage.MUTE, index).send(getEngine(), MementoUtil.booleanToInt(muted));
     }
 
     //----------------------------------
@@ -425,7 +431,7 @@ public class MixerPanel extends Device implements IMixerPanel {
         if (info == null || info.solo == soloed)
             return;
         info.solo = soloed;
-        MixerMessage.SOLO.send(getEngine(), index, MementoUtil.booleanToInt(soloed));
+        bind(info, MixerMessage.SOLO, index).send(getEngine(), MementoUtil.booleanToInt(soloed));
     }
 
     //----------------------------------
@@ -452,7 +458,7 @@ public class MixerPanel extends Device implements IMixerPanel {
         if (value < 0f || value > 2f)
             throw newRangeException(VOLUME, "0.0..2.0", value);
         info.volume = value;
-        MixerMessage.VOLUME.send(getEngine(), index, value);
+        bind(info, MixerMessage.VOLUME, index).send(getEngine(), value);
     }
 
     //--------------------------------------------------------------------------
@@ -544,6 +550,63 @@ public class MixerPanel extends Device implements IMixerPanel {
         }
     }
 
+    //--------------------------------------------------------------------------
+    //
+    // IShadowState API :: Methods
+    //
+    //--------------------------------------------------------------------------
+
+    @Override
+    public void getShadowValues(List<ShadowValue> values) {
+        values.add(new ChannelValue(mMasterData, MixerMessage.EQ_BASS) {
+            @Override
+            public float getValue() {
+                return info.bass;
+            }
+
+            @Override
+            public void setValue(float value) {
+                info.bass = value;
+            }
+        });
+        values.add(new ChannelValue(mMasterData, MixerMessage.EQ_MID) {
+            @Override
+            public float getValue() {
+                return info.mid;
+            }
+
+            @Override
+            public void setValue(float value) {
+                info.mid = value;
+            }
+        });
+        values.add(new ChannelValue(mMasterData, MixerMessage.EQ_HIGH) {
+            @Override
+            public float getValue() {
+                return info.high;
+            }
+
+            @Override
+            public void setValue(float value) {
+                info.high = value;
+            }
+        });
+        values.add(new ChannelValue(mMasterData, MixerMessage.VOLUME) {
+            @Override
+            public float getValue() {
+                return info.volume;
+            }
+
+            @Override
+            public void setValue(float value) {
+                info.volume = value;
+            }
+        });
+        for (MixerData info : mMixerInfoMap.values()) {
+            addChannelValues(info, values);
+        }
+    }
+
     //--------------------------------------------------------------------------
     //
     // Overridden Protected :: Methods
@@ -580,6 +643,157 @@ public class MixerPanel extends Device implements IMixerPanel {
         mMixerInfoMap.put(machine.getIndex(), info);
     }
 
+    /**
+     * Returns the channel's handle of a mixer message, bound to the channel
+     * index.
+     */
+    private static BoundMessage bind(MixerData info, MixerMessage message, int index) {
+        return info.mBindings.bind(message, index);
+    }
+
+    private BoundMessage bindMaster(MixerMessage message) {
+        BoundMessage result = mMasterData.mBindings.get(message, -1);
+        if (result == null)
+            result = mMasterData.mBindings.put(message, -1, message.bind(MASTER));
+        return result;
+    }
+
+    private void addChannelValues(MixerData info, List<ShadowValue> values) {
+        values.add(new ChannelValue(info, MixerMessage.EQ_BASS) {
+            @Override
+            public float getValue() {
+                return info.bass;
+            }
+
+            @Override
+            public void setValue(float value) {
+                info.bass = value;
+            }
+        });
+        values.add(new ChannelValue(info, MixerMessage.EQ_MID) {
+            @Override
+            public float getValue() {
+                return info.mid;
+            }
+
+            @Override
+            public void setValue(float value) {
+                info.mid = value;
+            }
+        });
+        values.add(new ChannelValue(info, MixerMessage.EQ_HIGH) {
+            @Override
+            public float getValue() {
+                return info.high;
+            }
+
+            @Override
+            public void setValue(float value) {
+                info.high = value;
+            }
+        });
+        values.add(new ChannelValue(info, MixerMessage.DELAY_SEND) {
+            @Override
+            public float getValue() {
+                return info.delay;
+            }
+
+            @Override
+            public void setValue(float value) {
+                info.delay = value;
+            }
+        });
+        values.add(new ChannelValue(info, MixerMessage.REVERB_SEND) {
+            @Override
+            public float getValue() {
+                return info.reverb;
+            }
+
+            @Override
+            public void setValue(float value) {
+                info.reverb = value;
+            }
+        });
+        values.add(new ChannelValue(info, MixerMessage.PAN) {
+            @Override
+            public float getValue() {
+                return info.pan;
+            }
+
+            @Override
+            public void setValue(float value) {
+                info.pan = value;
+            }
+        });
+        values.add(new ChannelValue(info, MixerMessage.STEREO_WIDTH) {
+            @Override
+            public float getValue() {
+                return info.stereoWidth;
+            }
+
+            @Override
+            public void setValue(float value) {
+                info.stereoWidth = value;
+            }
+        });
+        values.add(new ChannelValue(info, MixerMessage.MUTE) {
+            @Override
+            public float getValue() {
+                return MementoUtil.booleanToInt(info.mute);
+            }
+
+            @Override
+            public void setValue(float value) {
+                info.mute = value != 0f;
+            }
+        });
+        values.add(new ChannelValue(info, MixerMessage.SOLO) {
+            @Override
+            public float getValue() {
+                return MementoUtil.booleanToInt(info.solo);
+            }
+
+            @Override
+            public void setValue(float value) {
+                info.solo = value != 0f;
+            }
+        });
+        values.add(new ChannelValue(info, MixerMessage.VOLUME) {
+            @Override
+            public float getValue() {
+                return info.volume;
+            }
+
+            @Override
+            public void setValue(float value) {
+                info.volume = value;
+            }
+        });
+    }
+
+    /**
+     * A channel value shadowed for the reconciler, the master channel's
+     * address is bound to <code>master</code>.
+     */
+    private abstract class ChannelValue extends ShadowValue {
+
+        final MixerData info;
+
+        private final MixerMessage mMessage;
+
+        ChannelValue(MixerData info, MixerMessage message) {
+            this.info = info;
+            mMessage = message;
+        }
+
+        @Override
+        public String getAddress() {
+            if (info == mMasterData)
+                return bindMaster(mMessage).getAddress();
+            return bind(info, mMessage, info.index).getAddress();
+        }
+    }
+
     final MixerData _getMixerInfo(IDevice device) {
         return getMixerInfo(device.getIndex());
     }
@@ -611,7 +825,7 @@ public class MixerPanel extends Device implements IMixerPanel {
     }
 
     public void pasteMasterChannel(IMemento memento) {
-        mMasterData.paste(memento);
+        ((MixerPanelState)mPersistable).loadMasterChannel(memento);
     }
 
 }
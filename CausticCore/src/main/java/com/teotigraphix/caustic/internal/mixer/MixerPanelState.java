@@ -23,6 +23,7 @@ import java.util.Map.Entry;
 
 import com.teotigraphix.caustic.core.IMemento;
 import com.teotigraphix.caustic.core.IPersist;
+import com.teotigraphix.caustic.core.MessageBatch;
 import com.teotigraphix.caustic.machine.IMachine;
 
 /**
@@ -53,19 +54,29 @@ public class MixerPanelState implements IPersist {
         saveChannel(mMixerPanel.getMasterData(), memento);
     }
 
-    private void loadMasterChannel(IMemento memento) {
-        loadChannel(mMixerPanel.getMasterData(), memento);
+    void loadMasterChannel(IMemento memento) {
+        MessageBatch.begin(mMixerPanel.getEngine());
+        try {
+            loadChannel(mMixerPanel.getMasterData(), memento);
+        } finally {
+            MessageBatch.end();
+        }
     }
 
     @Override
     public void paste(IMemento memento) {
-        loadMasterChannel(memento.getChild("master"));
-        // !!! The rack or client needs to call addMachine() on the mixer
-        // BEFORE the state is loaded.
-        loadChannels(memento.getChild(MixerPanelConstants.TAG_CHANNELS));
-        // load effects
-        loadDelay(memento.getChild("delay"));
-        loadReverb(memento.getChild("reverb"));
+        MessageBatch.begin(mMixerPanel.getEngine());
+        try {
+            loadMasterChannel(memento.getChild("master"));
+            // !!! The rack or client needs to call addMachine() on the mixer
+            // BEFORE the state is loaded.
+            loadChannels(memento.getChild(MixerPanelConstants.TAG_CHANNELS));
+            // load effects
+            loadDelay(memento.getChild("delay"));
+            loadReverb(memento.getChild("reverb"));
+        } finally {
+            MessageBatch.end();
+        }
     }
 
     public void copyChannel(IMachine machine, IMemento memento) {
@@ -75,7 +86,12 @@ public class MixerPanelState implements IPersist {
 
     public void pasteChannel(IMachine machine, IMemento memento) {
         MixerData data = mMixerPanel.getMixerInfo(machine.getIndex());
-        loadChannel(data, memento);
+        MessageBatch.begin(mMixerPanel.getEngine());
+        try {
+            loadChannel(data, memento);
+        } finally {
+            MessageBatch.end();
+        }
     }
 
     protected void saveChannels(IMemento memento) {
@@ -26,6 +26,7 @@ import java.util.Map;
 import java.util.TreeMap;
 
 import com.teotigraphix.caustic.device.IDevice;
+import com.teotigraphix.caustic.engine.EngineLane;
 import com.teotigraphix.caustic.internal.device.DeviceComponent;
 import com.teotigraphix.caustic.internal.utils.PatternUtils;
 import com.teotigraphix.caustic.machine.ISubSynth;
@@ -391,7 +392,16 @@ public class PatternSequencer extends DeviceComponent implements IPatternSequenc
 
     @Override
     public void restore() {
+        // the restore queries every pattern, live notes go ahead of it
+        EngineLane.begin(EngineLane.BULK);
+        try {
+            restorePatterns();
+        } finally {
+            EngineLane.end();
+        }
+    }
 
+    private void restorePatterns() {
         final int oldBank = getSelectedBank(true);
         final int oldPattern = getSelectedPattern(true);
 
@@ -3,6 +3,7 @@ package com.teotigraphix.caustic.internal.sequencer;
 
 import java.util.Map;
 
+import com.teotigraphix.caustic.core.MessageBatch;
 import com.teotigraphix.caustic.sequencer.IPatternSequencer;
 import com.teotigraphix.caustic.sequencer.IPatternSequencer2;
 import com.teotigraphix.caustic.sequencer.IStepPhrase;
@@ -83,19 +84,25 @@ public class PatternSequencerUtils {
     public static void applyNoteData(IPatternSequencer2 sequencer, String noteData) {
         // push the notes into the machines sequencer
         String[] notes = noteData.split("\\|");
-        for (String note : notes) {
-            String[] split = note.split(" ");
-
-            float start = Float.valueOf(split[0]);
-            int pitch = Float.valueOf(split[1]).intValue();
-            float velocity = Float.valueOf(split[2]);
-            float end = Float.valueOf(split[3]);
-            //float gate = end - start;
-            int flags = Float.valueOf(split[4]).intValue();
-            //int step = Resolution.toStep(start, getResolution());
-
-            //triggerOn(step, pitch, gate, velocity, flags);
-            sequencer.addNote(pitch, start, end, velocity, flags);
+        // all note_data messages go to the core in one batch
+        MessageBatch.begin(sequencer.getDevice().getEngine());
+        try {
+            for (String note : notes) {
+                String[] split = note.split(" ");
+
+                float start = Float.valueOf(split[0]);
+                int pitch = Float.valueOf(split[1]).intValue();
+                float velocity = Float.valueOf(split[2]);
+                float end = Float.valueOf(split[3]);
+                //float gate = end - start;
+                int flags = Float.valueOf(split[4]).intValue();
+                //int step = Resolution.toStep(start, getResolution());
+
+                //triggerOn(step, pitch, gate, velocity, flags);
+                sequencer.addNote(pitch, start, end, velocity, flags);
+            }
+        } finally {
+            MessageBatch.end();
         }
     }
 
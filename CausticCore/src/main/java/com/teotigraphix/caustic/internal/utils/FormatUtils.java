@@ -0,0 +1,161 @@
+////////////////////////////////////////////////////////////////////////////////
+// Copyright 2013 Michael Schmalle - Teoti Graphix, LLC
+// 
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+// 
+// http://www.apache.org/licenses/LICENSE-2.0 
+// 
+// Unless required by applicable law or agreed to in writing, software 
+// distributed under the License is distributed on an "AS IS" BASIS, 
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and 
+// limitations under the License
+// 
+// Author: Michael Schmalle, Principal Architect
+// mschmalle at teotigraphix dot com
+////////////////////////////////////////////////////////////////////////////////
+
+package com.teotigraphix.caustic.internal.utils;
+
+/**
+ * Allocation free number formatting for OSC message arguments.
+ * <p>
+ * Floats are written in plain decimal notation without an exponent, only
+ * magnitudes too large for any Caustic control fall back to
+ * {@link Float#toString(float)}. The shortest decimal of at most
+ * {@link #PRECISION} fraction digits that reads back as the same float is
+ * written; when no such decimal exists the value is rounded to the precision,
+ * so <code>0.100000024</code> is written as <code>0.1</code> and
+ * <code>1.1920929E-7</code> as <code>0</code>. Trailing zeros and a zero
+ * fraction are not written, <code>1.0</code> is written as <code>1</code>.
+ * <p>
+ * The rounding is lossy, it is meant for the messages sent to the engine
+ * only; persisted values such as memento attributes keep
+ * {@link Float#toString(float)}.
+ * 
+ * @author Michael Schmalle
+ * @copyright Teoti Graphix, LLC
+ * @since 1.0
+ */
+public class FormatUtils {
+
+    /**
+     * The maximum number of fraction digits written to a message.
+     */
+    public static final int PRECISION = 6;
+
+    /**
+     * The largest precision supported.
+     */
+    public static final int MAX_PRECISION = 9;
+
+    private static final double[] POWERS = {
+            1d, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9
+    };
+
+    private static final long[] LONG_POWERS = {
+            1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L, 10000000L, 100000000L,
+            1000000000L
+    };
+
+    /**
+     * Values at or above this are appended with the default float notation,
+     * the scaled value would no longer fit a long.
+     */
+    private static final double MAX_SCALED = 9e18;
+
+    //--------------------------------------------------------------------------
+    //
+    // Public Static :: Methods
+    //
+    //--------------------------------------------------------------------------
+
+    /**
+     * Appends the float with {@link #PRECISION} fraction digits at most.
+     * 
+     * @param buffer The buffer to append to.
+     * @param value The float value.
+     * @return The buffer passed.
+     */
+    public static StringBuilder appendFloat(StringBuilder buffer, float value) {
+        return appendFloat(buffer, value, PRECISION);
+    }
+
+    /**
+     * Appends the float in plain decimal notation with at most
+     * <code>precision</code> fraction digits.
+     * 
+     * @param buffer The buffer to append to.
+     * @param value The float value.
+     * @param precision The maximum number of fraction digits.
+     * @return The buffer passed.
+     * @throws IllegalArgumentException the precision is negative or above
+     *         {@link #MAX_PRECISION}.
+     */
+    public static StringBuilder appendFloat(StringBuilder buffer, float value, int precision) {
+        if (precision < 0 || precision > MAX_PRECISION)
+            throw new IllegalArgumentException("precision not in [0, " + MAX_PRECISION + "]: "
+                    + precision);
+        if (Float.isNaN(value) || Float.isInfinite(value)) {
+            return buffer.append(value);
+        }
+
+        final float magnitude = Math.abs(value);
+        if (magnitude * POWERS[precision] >= MAX_SCALED) {
+            return buffer.append(value);
+        }
+
+        // the fewest fraction digits that read back as the same float
+        int digits = 0;
+        long scaled = Math.round(magnitude * POWERS[0]);
+        while (digits < precision && (float)(scaled / POWERS[digits]) != magnitude) {
+            digits++;
+            scaled = Math.round(magnitude * POWERS[digits]);
+        }
+
+        if (scaled == 0) {
+            return buffer.append('0');
+        }
+
+        // trailing zeros of a rounded value
+        while (digits > 0 && scaled % 10 == 0) {
+            scaled /= 10;
+            digits--;
+        }
+
+        if (value < 0)
+            buffer.append('-');
+
+        final long power = LONG_POWERS[digits];
+        buffer.append(scaled / power);
+        if (digits > 0) {
+            long fraction = scaled % power;
+            buffer.append('.');
+            for (long p = power / 10; p > fraction && p > 1; p /= 10) {
+                buffer.append('0');
+            }
+            buffer.append(fraction);
+        }
+        return buffer;
+    }
+
+    /**
+     * Appends a message argument, floats and doubles are formatted with
+     * {@link #appendFloat(StringBuilder, float)}, integers are appended as
+     * digits.
+     * 
+     * @param buffer The buffer to append to.
+     * @param value The argument value.
+     * @return The buffer passed.
+     */
+    public static StringBuilder appendNumber(StringBuilder buffer, Number value) {
+        if (value instanceof Float || value instanceof Double)
+            return appendFloat(buffer, value.floatValue());
+        if (value instanceof Integer || value instanceof Long || value instanceof Short
+                || value instanceof Byte)
+            return buffer.append(value.longValue());
+        return buffer.append(value);
+    }
+}
@@ -0,0 +1,115 @@
+////////////////////////////////////////////////////////////////////////////////
+// Copyright 2013 Michael Schmalle - Teoti Graphix, LLC
+// 
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+// 
+// http://www.apache.org/licenses/LICENSE-2.0 
+// 
+// Unless required by applicable law or agreed to in writing, software 
+// distributed under the License is distributed on an "AS IS" BASIS, 
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and 
+// limitations under the License
+// 
+// Author: Michael Schmalle, Principal Architect
+// mschmalle at teotigraphix dot com
+////////////////////////////////////////////////////////////////////////////////
+
+package com.teotigraphix.caustic.osc;
+
+import com.teotigraphix.caustic.core.ICausticEngine;
+import com.teotigraphix.caustic.core.MessageBatch;
+import com.teotigraphix.caustic.internal.utils.FormatUtils;
+
+/**
+ * A {@link CausticMessage} with all its arguments but the value rendered, made
+ * by {@link CausticMessage#bind(Object...)}.
+ * <p>
+ * A send appends the value to the rendered prefix, the message String handed
+ * to the engine is the only object created. Reads send the rendered address
+ * as is.
+ * 
+ * @author Michael Schmalle
+ * @copyright Teoti Graphix, LLC
+ * @since 1.0
+ */
+public final class BoundMessage {
+
+    private final String mPrefix;
+
+    private final String mSuffix;
+
+    private final String mAddress;
+
+    /**
+     * Returns the message's address rendered with the bound arguments, eg
+     * <code>/caustic/3/filter_cutoff</code>.
+     */
+    public String getAddress() {
+        return mAddress;
+    }
+
+    BoundMessage(String prefix, String suffix, String address) {
+        mPrefix = prefix;
+        mSuffix = suffix;
+        mAddress = address;
+    }
+
+    /**
+     * Sends the message with a float value.
+     * <p>
+     * If a {@link MessageBatch} is open on the calling thread for the engine
+     * the message is added to the batch and <code>NaN</code> is returned.
+     * 
+     * @param engine The core engine.
+     * @param value The value.
+     * @return A float value if the CausticCore returned
+     * @see CausticMessage#send(ICausticEngine, Object...)
+     */
+    public float send(ICausticEngine engine, float value) {
+        StringBuilder buffer = CausticMessage.getBuffer().append(mPrefix);
+        FormatUtils.appendFloat(buffer, value);
+        return send(engine, buffer.append(mSuffix).toString());
+    }
+
+    /**
+     * Sends the message with an int value.
+     * <p>
+     * If a {@link MessageBatch} is open on the calling thread for the engine
+     * the message is added to the batch and <code>NaN</code> is returned.
+     * 
+     * @param engine The core engine.
+     * @param value The value.
+     * @return A float value if the CausticCore returned
+     * @see CausticMessage#send(ICausticEngine, Object...)
+     */
+    public float send(ICausticEngine engine, int value) {
+        StringBuilder buffer = CausticMessage.getBuffer().append(mPrefix);
+        return send(engine, buffer.append(value).append(mSuffix).toString());
+    }
+
+    /**
+     * Reads the message's value.
+     * 
+     * @param engine The core engine.
+     * @return The value the CausticCore returned.
+     * @see CausticMessage#query(ICausticEngine, Object...)
+     */
+    public float query(ICausticEngine engine) {
+        MessageBatch.flush();
+        return engine.sendMessage(mAddress);
+    }
+
+    @Override
+    public String toString() {
+        return mPrefix + "${value}" + mSuffix;
+    }
+
+    private static float send(ICausticEngine engine, String message) {
+        if (MessageBatch.capture(engine, message))
+            return Float.NaN;
+        return engine.sendMessage(message);
+    }
+}
@@ -20,6 +20,7 @@
 package com.teotigraphix.caustic.osc;
 
 import com.teotigraphix.caustic.core.ICausticEngine;
+import com.teotigraphix.caustic.core.MessageBatch;
 
 /**
  * The base class for CausticCore messages.
@@ -33,22 +34,33 @@ import com.teotigraphix.caustic.core.ICausticEngine;
  */
 public class CausticMessage {
 
-    private static final String MESSAGE_POSTFIX = "}";
-
-    private static final String MESSAGE_PREFIX = "${";
+    private static final ThreadLocal<StringBuilder> BUFFER = new ThreadLocal<StringBuilder>() {
+        @Override
+        protected StringBuilder initialValue() {
+            return new StringBuilder(128);
+        }
+    };
 
     private String mMessage;
 
-    private String mMessageHead;
+    private MessageTemplate mTemplate;
+
+    private MessageTemplate mHeadTemplate;
 
     public CausticMessage(String message) {
         mMessage = message;
-        mMessageHead = mMessage.split(" ")[0];
+        mTemplate = new MessageTemplate(mMessage);
+        mHeadTemplate = new MessageTemplate(mMessage.split(" ")[0]);
     }
 
     /**
      * Sends a message to the CausticCore using the args passed to be replaced
      * in the message.
+     * <p>
+     * If a {@link MessageBatch} is open on the calling thread for the engine
+     * and the message has arguments, the message is added to the batch and
+     * <code>NaN</code> is returned. Address only messages are always sent so
+     * their value can be read.
      * 
      * @param engine The core engine.
      * @param args The arguments to be replaced with in the message.
@@ -56,16 +68,9 @@ public class CausticMessage {
      * @see ICausticEngine#sendMessage(String)
      */
     public final float send(ICausticEngine engine, Object... args) {
-        StringBuffer sb = new StringBuffer();
-        String message = mMessage;
-        int i = 0;
-        for (Object arg : args) {
-            sb.append(MESSAGE_PREFIX);
-            sb.append(i++);
-            sb.append(MESSAGE_POSTFIX);
-            message = message.replace(sb.toString(), arg.toString());
-            sb.setLength(0);
-        }
+        String message = render(mTemplate, args);
+        if (MessageBatch.capture(engine, message))
+            return Float.NaN;
         return engine.sendMessage(message);
     }
 
@@ -79,17 +84,8 @@ public class CausticMessage {
      * @see ICausticEngine#sendMessage(String)
      */
     public final float query(ICausticEngine engine, Object... args) {
-        StringBuffer sb = new StringBuffer();
-        String message = mMessageHead;
-        int i = 0;
-        for (Object arg : args) {
-            sb.append(MESSAGE_PREFIX);
-            sb.append(i++);
-            sb.append(MESSAGE_POSTFIX);
-            message = message.replace(sb.toString(), arg.toString());
-            sb.setLength(0);
-        }
-        return engine.sendMessage(message);
+        MessageBatch.flush();
+        return engine.sendMessage(render(mHeadTemplate, args));
     }
 
     /**
@@ -102,21 +98,64 @@ public class CausticMessage {
      * @see ICausticEngine#queryMessage(String)
      */
     public final String queryString(ICausticEngine engine, Object... args) {
-        StringBuffer sb = new StringBuffer();
-        String message = mMessage;
-        int i = 0;
-        for (Object arg : args) {
-            sb.append(MESSAGE_PREFIX);
-            sb.append(i++);
-            sb.append(MESSAGE_POSTFIX);
-            message = message.replace(sb.toString(), arg.toString());
-            sb.setLength(0);
-        }
-        return engine.queryMessage(message);
+        MessageBatch.flush();
+        return engine.queryMessage(render(mTemplate, args));
+    }
+
+    /**
+     * Returns a handle with the message rendered up to its value, the last
+     * argument, so sends only append the value.
+     * <p>
+     * Bind once per component and argument set, eg a machine index, and keep
+     * the handle; {@link MessageBindings} holds handles until their arguments
+     * change.
+     * 
+     * @param args The arguments before the value.
+     * @throws IllegalArgumentException the message's last slot is not its
+     *             value
+     * @see BoundMessage#send(ICausticEngine, float)
+     */
+    public final BoundMessage bind(Object... args) {
+        StringBuilder buffer = getBuffer();
+        String suffix = mTemplate.renderPrefix(buffer, args);
+        String prefix = buffer.toString();
+        return new BoundMessage(prefix, suffix, render(mHeadTemplate, args));
+    }
+
+    /**
+     * Returns whether the address of a resolved message was rendered from this
+     * message's template.
+     * <p>
+     * Only the address is compared, <code>/caustic/mixer/3/volume 0.5</code>
+     * and <code>/caustic/mixer/3/volume</code> both match
+     * {@link MixerMessage#VOLUME}.
+     * 
+     * @param message The resolved String OSC message.
+     */
+    public final boolean matches(String message) {
+        int end = message.indexOf(' ');
+        return mHeadTemplate.matches(message, end == -1 ? message.length() : end);
     }
 
     @Override
     public String toString() {
         return mMessage;
     }
+
+    /**
+     * Returns the calling thread's cleared message buffer.
+     */
+    static StringBuilder getBuffer() {
+        StringBuilder buffer = BUFFER.get();
+        buffer.setLength(0);
+        return buffer;
+    }
+
+    /**
+     * Renders the compiled template into the calling thread's buffer, the only
+     * String created is the message handed to the engine.
+     */
+    private static String render(MessageTemplate template, Object[] args) {
+        return template.render(getBuffer(), args).toString();
+    }
 }
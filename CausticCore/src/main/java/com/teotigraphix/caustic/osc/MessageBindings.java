@@ -0,0 +1,119 @@
+////////////////////////////////////////////////////////////////////////////////
+// Copyright 2013 Michael Schmalle - Teoti Graphix, LLC
+// 
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+// 
+// http://www.apache.org/licenses/LICENSE-2.0 
+// 
+// Unless required by applicable law or agreed to in writing, software 
+// distributed under the License is distributed on an "AS IS" BASIS, 
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and 
+// limitations under the License
+// 
+// Author: Michael Schmalle, Principal Architect
+// mschmalle at teotigraphix dot com
+////////////////////////////////////////////////////////////////////////////////
+
+package com.teotigraphix.caustic.osc;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The {@link BoundMessage} handles of one component, all bound for the same
+ * stamp, usually the component's machine index.
+ * <p>
+ * When the stamp asked for changes, eg after <code>Machine.setIndex()</code>,
+ * all handles are dropped and are bound again on their next use. Lookups take
+ * no lock, binding copies the small table.
+ * 
+ * <pre>
+ * mBindings.bind(FilterMessage.FILTER_CUTOFF, getMachineIndex()).send(getEngine(), value);
+ * </pre>
+ * 
+ * @author Michael Schmalle
+ * @copyright Teoti Graphix, LLC
+ * @since 1.0
+ */
+public final class MessageBindings {
+
+    private static final Table EMPTY = new Table(Integer.MIN_VALUE,
+            new HashMap<Object, BoundMessage>());
+
+    private volatile Table mTable = EMPTY;
+
+    /**
+     * Constructor.
+     */
+    public MessageBindings() {
+    }
+
+    /**
+     * Returns the handle of a message whose only argument before the value is
+     * the index, bound on first use for the index as the stamp.
+     * 
+     * @param message The message, eg <code>/caustic/${0}/filter_cutoff ${1}</code>.
+     * @param index The index argument, eg the machine index.
+     */
+    public BoundMessage bind(CausticMessage message, int index) {
+        BoundMessage result = get(message, index);
+        if (result == null)
+            result = put(message, index, message.bind(index));
+        return result;
+    }
+
+    /**
+     * Returns the handle bound for the key and stamp, <code>null</code> when
+     * it has not been bound or was bound for another stamp.
+     * 
+     * @param key The handle's key, the message or a control name.
+     * @param stamp The stamp the handle must be bound for.
+     */
+    public BoundMessage get(Object key, int stamp) {
+        Table table = mTable;
+        if (table.stamp != stamp)
+            return null;
+        return table.handles.get(key);
+    }
+
+    /**
+     * Keeps a handle bound for the stamp, the handles of other stamps are
+     * dropped.
+     * 
+     * @param key The handle's key, the message or a control name.
+     * @param stamp The stamp the handle is bound for.
+     * @param handle The handle.
+     * @return The handle passed.
+     */
+    public synchronized BoundMessage put(Object key, int stamp, BoundMessage handle) {
+        Table table = mTable;
+        Map<Object, BoundMessage> handles = new HashMap<Object, BoundMessage>();
+        if (table.stamp == stamp)
+            handles.putAll(table.handles);
+        handles.put(key, handle);
+        mTable = new Table(stamp, handles);
+        return handle;
+    }
+
+    /**
+     * Drops all handles.
+     */
+    public synchronized void clear() {
+        mTable = EMPTY;
+    }
+
+    private static final class Table {
+
+        final int stamp;
+
+        final Map<Object, BoundMessage> handles;
+
+        Table(int stamp, Map<Object, BoundMessage> handles) {
+            this.stamp = stamp;
+            this.handles = handles;
+        }
+    }
+}
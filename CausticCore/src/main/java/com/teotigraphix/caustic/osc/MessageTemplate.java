@@ -0,0 +1,248 @@
+////////////////////////////////////////////////////////////////////////////////
+// Copyright 2013 Michael Schmalle - Teoti Graphix, LLC
+// 
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+// 
+// http://www.apache.org/licenses/LICENSE-2.0 
+// 
+// Unless required by applicable law or agreed to in writing, software 
+// distributed under the License is distributed on an "AS IS" BASIS, 
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and 
+// limitations under the License
+// 
+// Author: Michael Schmalle, Principal Architect
+// mschmalle at teotigraphix dot com
+////////////////////////////////////////////////////////////////////////////////
+
+package com.teotigraphix.caustic.osc;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.teotigraphix.caustic.internal.utils.FormatUtils;
+
+/**
+ * A {@link CausticMessage} template compiled once into literal and argument
+ * slot segments.
+ * <p>
+ * A template such as <code>/caustic/mixer/${0}/volume ${1}</code> is split
+ * into the literals <code>/caustic/mixer/</code>, <code>/volume </code> and
+ * the slots <code>0</code>, <code>1</code>. Rendering is then a single pass
+ * appending literals and arguments to a buffer, no intermediate Strings are
+ * created.
+ * <p>
+ * A slot that has no matching argument is rendered back as its
+ * <code>${n}</code> token, the same as the old replace implementation.
+ * 
+ * @author Michael Schmalle
+ * @copyright Teoti Graphix, LLC
+ * @since 1.0
+ */
+final class MessageTemplate {
+
+    private static final String SLOT_PREFIX = "${";
+
+    private static final String SLOT_POSTFIX = "}";
+
+    /**
+     * The literal segments, one more than the number of slots; a literal may be
+     * empty.
+     */
+    private final String[] mLiterals;
+
+    /**
+     * The argument index of each slot, between the literals.
+     */
+    private final int[] mSlots;
+
+    private final String mSource;
+
+    /**
+     * Returns the number of argument slots in the template.
+     */
+    int getSlotCount() {
+        return mSlots.length;
+    }
+
+    /**
+     * Returns the argument index rendered at the slot position.
+     * 
+     * @param slot The slot position.
+     */
+    int getSlot(int slot) {
+        return mSlots[slot];
+    }
+
+    /**
+     * Returns the literal segment at the position, the literal at
+     * <code>n</code> precedes slot <code>n</code>.
+     * 
+     * @param index The literal position.
+     */
+    String getLiteral(int index) {
+        return mLiterals[index];
+    }
+
+    /**
+     * Constructor, compiles the template.
+     * 
+     * @param source The message template containing <code>${n}</code> slots.
+     */
+    MessageTemplate(String source) {
+        mSource = source;
+
+        List<String> literals = new ArrayList<String>();
+        List<Integer> slots = new ArrayList<Integer>();
+
+        int start = 0;
+        int position = 0;
+        while ((position = source.indexOf(SLOT_PREFIX, position)) != -1) {
+            int end = source.indexOf(SLOT_POSTFIX, position);
+            int slot = end == -1 ? -1 : parseSlot(source, position + SLOT_PREFIX.length(), end);
+            if (slot == -1) {
+                // not a slot token, keep it as part of the literal
+                position += SLOT_PREFIX.length();
+                continue;
+            }
+            literals.add(source.substring(start, position));
+            slots.add(slot);
+            start = end + SLOT_POSTFIX.length();
+            position = start;
+        }
+        literals.add(source.substring(start));
+
+        mLiterals = literals.toArray(new String[literals.size()]);
+        mSlots = new int[slots.size()];
+        for (int i = 0; i < mSlots.length; i++)
+            mSlots[i] = slots.get(i);
+    }
+
+    //--------------------------------------------------------------------------
+    //
+    // Methods
+    //
+    //--------------------------------------------------------------------------
+
+    /**
+     * Renders the template into the buffer using the arguments.
+     * 
+     * @param buffer The buffer to append the rendered message to.
+     * @param args The arguments to fill the slots with.
+     * @return The buffer passed.
+     */
+    StringBuilder render(StringBuilder buffer, Object[] args) {
+        final int count = mSlots.length;
+        for (int i = 0; i < count; i++) {
+            buffer.append(mLiterals[i]);
+            int slot = mSlots[i];
+            if (args != null && slot < args.length)
+                appendArgument(buffer, args[slot]);
+            else
+                buffer.append(SLOT_PREFIX).append(slot).append(SLOT_POSTFIX);
+        }
+        buffer.append(mLiterals[count]);
+        return buffer;
+    }
+
+    /**
+     * Renders the template up to its last slot, which is left open for the
+     * value of a {@link BoundMessage}.
+     * 
+     * @param buffer The buffer to append the rendered prefix to.
+     * @param args The arguments to fill the other slots with.
+     * @return The literal that follows the value slot.
+     * @throws IllegalArgumentException the last slot is not the one after
+     *             the arguments, or a slot has no argument
+     */
+    String renderPrefix(StringBuilder buffer, Object[] args) {
+        final int last = mSlots.length - 1;
+        if (last < 0 || mSlots[last] != args.length)
+            throw new IllegalArgumentException("Template '" + mSource
+                    + "' has no value slot ${" + args.length + "} at its end");
+        for (int i = 0; i < last; i++) {
+            if (mSlots[i] >= args.length)
+                throw new IllegalArgumentException("Template '" + mSource
+                        + "' has no argument for slot ${" + mSlots[i] + "}");
+            buffer.append(mLiterals[i]);
+            appendArgument(buffer, args[mSlots[i]]);
+        }
+        buffer.append(mLiterals[last]);
+        return mLiterals[last + 1];
+    }
+
+    /**
+     * Appends a single argument, primitives wrappers are appended without
+     * creating their String form first.
+     * <p>
+     * Floats are written in plain decimal notation by
+     * {@link FormatUtils#appendFloat(StringBuilder, float)}, the core's parser
+     * does not read exponents.
+     */
+    static void appendArgument(StringBuilder buffer, Object arg) {
+        if (arg instanceof Integer)
+            buffer.append(((Integer)arg).intValue());
+        else if (arg instanceof Float)
+            FormatUtils.appendFloat(buffer, ((Float)arg).floatValue());
+        else if (arg instanceof String)
+            buffer.append((String)arg);
+        else if (arg instanceof Number)
+            FormatUtils.appendNumber(buffer, (Number)arg);
+        else
+            buffer.append(arg);
+    }
+
+    /**
+     * Returns whether the characters of the message from <code>0</code> to
+     * <code>end</code> are a rendering of this template.
+     * <p>
+     * A slot matches one or more characters that are not a <code>/</code> or
+     * a space.
+     * 
+     * @param message The resolved message.
+     * @param end The end index (exclusive) of the part of the message to
+     *            match, usually the end of the address.
+     */
+    boolean matches(String message, int end) {
+        if (!message.startsWith(mLiterals[0]))
+            return false;
+        int position = mLiterals[0].length();
+        final int count = mSlots.length;
+        for (int i = 0; i < count; i++) {
+            int start = position;
+            while (position < end) {
+                char c = message.charAt(position);
+                if (c == '/' || c == ' ')
+                    break;
+                position++;
+            }
+            if (position == start)
+                return false;
+            String literal = mLiterals[i + 1];
+            if (!message.startsWith(literal, position))
+                return false;
+            position += literal.length();
+        }
+        return position == end;
+    }
+
+    @Override
+    public String toString() {
+        return mSource;
+    }
+
+    private static int parseSlot(String source, int start, int end) {
+        if (start == end)
+            return -1;
+        int result = 0;
+        for (int i = start; i < end; i++) {
+            char c = source.charAt(i);
+            if (c < '0' || c > '9')
+                return -1;
+            result = result * 10 + (c - '0');
+        }
+        return result;
+    }
+}
@@ -1,9 +1,18 @@
 
 package org.androidtransfuse.event;
 
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.WeakHashMap;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
@@ -18,6 +27,36 @@ public class EventManager {
 
     private final ConcurrentMap<Class, Set<EventObserver>> observers = new ConcurrentHashMap<Class, java.util.Set<EventObserver>>();
 
+    private static final EventObserver[] NO_OBSERVERS = new EventObserver[0];
+
+    /**
+     * The observers of each triggered event class and its supertypes, resolved
+     * on the first trigger and cleared on register and unregister.
+     */
+    private final ConcurrentMap<Class, EventObserver[]> dispatchTables =
+            new ConcurrentHashMap<Class, EventObserver[]>();
+
+    /**
+     * The event types of each registered observer, so unregistering visits
+     * only the observer's own types. Guarded by the write lock.
+     */
+    private final Map<EventObserver, Set<Class>> registrations =
+            new HashMap<EventObserver, Set<Class>>();
+
+    /**
+     * The weak registration of each weakly held observer, keyed weakly too.
+     * Guarded by the write lock.
+     */
+    private final Map<EventObserver, WeakObserver> weakObservers =
+            new WeakHashMap<EventObserver, WeakObserver>();
+
+    /**
+     * Weak registrations whose observer was collected, purged on the next
+     * register or unregister.
+     */
+    private final ReferenceQueue<EventObserver> collected =
+            new ReferenceQueue<EventObserver>();
+
     private final ThreadLocal<ConcurrentLinkedQueue<EventExecution>> executionQueue = new ExecutionQueueThreadLocal();
 
     private final ThreadLocal<Boolean> executing = new BooleanThreadLocal();
@@ -33,11 +72,7 @@ public class EventManager {
         }
 
         public void trigger() {
-            try {
-                observer.trigger(event);
-            } catch (Exception e) {
-                throw new RuntimeException("Exception caught during event trigger", e);
-            }
+            EventManager.trigger(observer, event);
         }
     }
 
@@ -58,12 +93,55 @@ public class EventManager {
         }
         observersLock.writeLock().lock();
         try {
-            nullSafeGet(event).add(observer);
+            purgeCollected();
+            add(event, observer);
+        } finally {
+            observersLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Register the given observer to be triggered if the given event type is
+     * triggered, without keeping it from being garbage collected. The
+     * registration ends when the observer is collected, so the owner of the
+     * observer must hold it.
+     * 
+     * @param event type
+     * @param observer event observer
+     * @param <T> relating type
+     */
+    public <T> void registerWeak(Class<T> event, EventObserver<T> observer) {
+        if (event == null) {
+            throw new IllegalArgumentException("Null Event type passed to register");
+        }
+        if (observer == null) {
+            throw new IllegalArgumentException("Null observer passed to register");
+        }
+        observersLock.writeLock().lock();
+        try {
+            purgeCollected();
+            WeakObserver weakObserver = weakObservers.get(observer);
+            if (weakObserver == null) {
+                weakObserver = new WeakObserver(observer, collected);
+                weakObservers.put(observer, weakObserver);
+            }
+            add(event, weakObserver);
         } finally {
             observersLock.writeLock().unlock();
         }
     }
 
+    private void add(Class<?> event, EventObserver observer) {
+        nullSafeGet(event).add(observer);
+        Set<Class> types = registrations.get(observer);
+        if (types == null) {
+            types = new HashSet<Class>();
+            registrations.put(observer, types);
+        }
+        types.add(event);
+        dispatchTables.clear();
+    }
+
     private Set<EventObserver> nullSafeGet(Class<?> clazz) {
         Set<EventObserver> result = observers.get(clazz);
         if (result == null) {
@@ -79,52 +157,90 @@ public class EventManager {
     /**
      * Triggers an event through the EventManager. This will call the registered
      * EventObservers with the provided event.
+     * <p>
+     * A trigger from outside an observer calls the observers directly; a
+     * trigger from inside an observer is queued and runs after the observers
+     * of the outer event, so events are observed in the order triggered.
      * 
      * @param event object
      */
     @SuppressWarnings("unchecked")
     public void trigger(Object event) {
+        EventObserver[] eventObservers = getDispatchTable(event.getClass());
 
-        Set<Class> eventTypes = getAllInheritedClasses(event.getClass());
-
-        observersLock.readLock().lock();
-        try {
-            for (Class eventType : eventTypes) {
-                if (observers.containsKey(eventType)) {
-                    for (EventObserver eventObserver : observers.get(eventType)) {
-                        executionQueue.get().add(new EventExecution(event, eventObserver));
-                    }
+        //avoid reentrant events
+        if (executing.get()) {
+            if (eventObservers.length > 0) {
+                ConcurrentLinkedQueue<EventExecution> queue = executionQueue.get();
+                for (EventObserver eventObserver : eventObservers) {
+                    queue.add(new EventExecution(event, eventObserver));
                 }
             }
+            return;
+        }
+
+        executing.set(true);
 
+        try {
+            for (EventObserver eventObserver : eventObservers) {
+                trigger(eventObserver, event);
+            }
             triggerQueue();
         } finally {
-            observersLock.readLock().unlock();
+            executing.set(false);
         }
     }
 
     private void triggerQueue() {
+        ConcurrentLinkedQueue<EventExecution> queue = executionQueue.get();
+        EventExecution execution = queue.poll();
+        while (execution != null) {
+            execution.trigger();
+            execution = queue.poll();
+        }
+    }
 
-        //avoid reentrant events
-        if (executing.get()) {
-            return;
+    @SuppressWarnings("unchecked")
+    private static void trigger(EventObserver observer, Object event) {
+        try {
+            observer.trigger(event);
+        } catch (Exception e) {
+            throw new RuntimeException("Exception caught during event trigger", e);
         }
+    }
 
-        executing.set(true);
+    /**
+     * Returns the observers of the event class and its supertypes, the table
+     * is shared and must not be changed.
+     */
+    private EventObserver[] getDispatchTable(Class type) {
+        EventObserver[] result = dispatchTables.get(type);
+        if (result != null) {
+            return result;
+        }
 
+        // resolved under the read lock, so a register or unregister clears
+        // the tables only before or after a table is put
+        observersLock.readLock().lock();
         try {
-            EventExecution execution = executionQueue.get().poll();
-            while (execution != null) {
-                execution.trigger();
-                execution = executionQueue.get().poll();
+            List<EventObserver> eventObservers = new ArrayList<EventObserver>();
+            for (Class eventType : getAllInheritedClasses(type)) {
+                Set<EventObserver> registered = observers.get(eventType);
+                if (registered != null) {
+                    eventObservers.addAll(registered);
+                }
             }
+            result = eventObservers.isEmpty() ? NO_OBSERVERS : eventObservers
+                    .toArray(new EventObserver[eventObservers.size()]);
+            dispatchTables.put(type, result);
         } finally {
-            executing.set(false);
+            observersLock.readLock().unlock();
         }
+        return result;
     }
 
     private Set<Class> getAllInheritedClasses(Class type) {
-        Set<Class> inheritedClasses = new HashSet<Class>();
+        Set<Class> inheritedClasses = new LinkedHashSet<Class>();
 
         addAllInheritedClasses(inheritedClasses, type);
 
@@ -144,20 +260,144 @@ public class EventManager {
     }
 
     /**
-     * Unregisters an EventObserver by equality.
+     * Unregisters an EventObserver by equality, from every event type it was
+     * registered for, weakly or not.
      * 
      * @param observer Event Observer
      */
     public void unregister(EventObserver<?> observer) {
         observersLock.writeLock().lock();
         try {
+            purgeCollected();
+            removeAll(observer);
+            WeakObserver weakObserver = weakObservers.remove(observer);
+            if (weakObserver != null) {
+                removeAll(weakObserver);
+                weakObserver.clear();
+            }
+            dispatchTables.clear();
+        } finally {
+            observersLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Unregisters an EventObserver by equality from one event type, weakly or
+     * not.
+     * 
+     * @param event type
+     * @param observer Event Observer
+     */
+    public void unregister(Class<?> event, EventObserver<?> observer) {
+        observersLock.writeLock().lock();
+        try {
+            purgeCollected();
+            remove(event, observer);
+            WeakObserver weakObserver = weakObservers.get(observer);
+            if (weakObserver != null && remove(event, weakObserver)
+                    && !registrations.containsKey(weakObserver)) {
+                weakObservers.remove(observer);
+                weakObserver.clear();
+            }
+            dispatchTables.clear();
+        } finally {
+            observersLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns a snapshot of the live observers of each event type, weakly
+     * held ones that were collected are left out.
+     */
+    public Map<Class<?>, List<EventObserver<?>>> getObservers() {
+        Map<Class<?>, List<EventObserver<?>>> result =
+                new LinkedHashMap<Class<?>, List<EventObserver<?>>>();
+        observersLock.writeLock().lock();
+        try {
+            purgeCollected();
             for (Map.Entry<Class, Set<EventObserver>> entry : observers.entrySet()) {
-                entry.getValue().remove(observer);
+                List<EventObserver<?>> live = new ArrayList<EventObserver<?>>();
+                for (EventObserver observer : entry.getValue()) {
+                    if (observer instanceof WeakObserver) {
+                        observer = ((WeakObserver)observer).get();
+                    }
+                    if (observer != null) {
+                        live.add(observer);
+                    }
+                }
+                if (!live.isEmpty()) {
+                    result.put(entry.getKey(), live);
+                }
             }
         } finally {
             observersLock.writeLock().unlock();
         }
+        return result;
+    }
+
+    private boolean remove(Class<?> event, EventObserver observer) {
+        Set<Class> types = registrations.get(observer);
+        if (types == null || !types.remove(event)) {
+            return false;
+        }
+        if (types.isEmpty()) {
+            registrations.remove(observer);
+        }
+        removeObserver(event, observer);
+        return true;
+    }
+
+    private void removeAll(EventObserver observer) {
+        Set<Class> types = registrations.remove(observer);
+        if (types != null) {
+            for (Class type : types) {
+                removeObserver(type, observer);
+            }
+        }
+    }
+
+    private void removeObserver(Class type, EventObserver observer) {
+        Set<EventObserver> typeObservers = observers.get(type);
+        typeObservers.remove(observer);
+        if (typeObservers.isEmpty()) {
+            observers.remove(type);
+        }
+    }
 
+    /**
+     * Removes the weak registrations of collected observers, under the write
+     * lock.
+     */
+    private void purgeCollected() {
+        Reference<? extends EventObserver> reference = collected.poll();
+        if (reference == null) {
+            return;
+        }
+        while (reference != null) {
+            removeAll((WeakObserver)reference);
+            reference = collected.poll();
+        }
+        dispatchTables.clear();
+    }
+
+    /**
+     * A registration that does not keep its observer from being collected.
+     */
+    private static final class WeakObserver extends WeakReference<EventObserver> implements
+            EventObserver<Object> {
+
+        WeakObserver(EventObserver observer, ReferenceQueue<EventObserver> queue) {
+            super(observer, queue);
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public void trigger(Object event) {
+            EventObserver observer = get();
+            if (observer != null) {
+                observer.trigger(event);
+            }
+        }
     }
 
     private static class BooleanThreadLocal extends ThreadLocal<Boolean> {
@@ -21,12 +21,26 @@ package com.teotigraphix.caustk.controller;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import com.teotigraphix.caustic.core.Dispatcher;
+import com.teotigraphix.caustic.core.ICausticEngine;
 import com.teotigraphix.caustic.core.IDispatcher;
+import com.teotigraphix.caustic.core.MessageBatch;
 import com.teotigraphix.caustic.device.IDeviceFactory;
+import com.teotigraphix.caustic.engine.CoalescingEngine;
+import com.teotigraphix.caustic.engine.EngineExecutor;
+import com.teotigraphix.caustic.engine.EngineFuture;
+import com.teotigraphix.caustic.engine.EngineStatistic;
+import com.teotigraphix.caustic.engine.IShadowState;
+import com.teotigraphix.caustic.engine.InstrumentedEngine;
+import com.teotigraphix.caustic.engine.JournalEngine;
+import com.teotigraphix.caustic.engine.QueryCacheEngine;
+import com.teotigraphix.caustic.engine.ShadowReconciler;
+import com.teotigraphix.caustic.engine.ShadowValue;
 import com.teotigraphix.caustk.application.ICaustkApplication;
 import com.teotigraphix.caustk.application.ICaustkConfiguration;
 import com.teotigraphix.caustk.controller.command.CommandManager;
@@ -47,6 +61,7 @@ import com.teotigraphix.caustk.sound.ICaustkSoundGenerator;
 import com.teotigraphix.caustk.sound.ICaustkSoundMixer;
 import com.teotigraphix.caustk.sound.ICaustkSoundSource;
 import com.teotigraphix.caustk.sound.SoundMixer;
+import com.teotigraphix.caustk.tone.Tone;
 
 /**
  * @author Michael Schmalle
@@ -179,6 +194,11 @@ public class CaustkController implements ICaustkController {
         commandManager.execute(message, args);
     }
 
+    @Override
+    public EngineFuture<Void> executeAsync(String message, Object... args) {
+        return commandManager.executeAsync(message, args);
+    }
+
     @Override
     public void undo() {
         commandManager.undo();
@@ -200,6 +220,117 @@ public class CaustkController implements ICaustkController {
         return soundGenerator;
     }
 
+    //----------------------------------
+    // engine
+    //----------------------------------
+
+    private ICausticEngine engine;
+
+    @Override
+    public ICausticEngine getEngine() {
+        return engine;
+    }
+
+    @Override
+    public void setEngine(ICausticEngine value) {
+        engine = value;
+        if (shadowReconciler != null) {
+            shadowReconciler.setEngine(findReadEngine(value));
+            shadowReconciler.setQueryCache(findQueryCache(value));
+        }
+    }
+
+    //----------------------------------
+    // engineInstrumented
+    //----------------------------------
+
+    private InstrumentedEngine instrumentedEngine;
+
+    @Override
+    public boolean isEngineInstrumented() {
+        return instrumentedEngine != null;
+    }
+
+    @Override
+    public void setEngineInstrumented(boolean value) {
+        if (value == isEngineInstrumented())
+            return;
+        if (value) {
+            instrumentedEngine = new InstrumentedEngine(engine);
+            engine = instrumentedEngine;
+        } else {
+            if (engine != instrumentedEngine)
+                throw new IllegalStateException("The instrumented engine is decorated");
+            engine = instrumentedEngine.getEngine();
+            instrumentedEngine = null;
+        }
+    }
+
+    /**
+     * Returns the query cache in a decorator chain, <code>null</code> when
+     * none.
+     */
+    private static QueryCacheEngine findQueryCache(ICausticEngine engine) {
+        while (engine != null) {
+            if (engine instanceof QueryCacheEngine)
+                return (QueryCacheEngine)engine;
+            else if (engine instanceof InstrumentedEngine)
+                engine = ((InstrumentedEngine)engine).getEngine();
+            else if (engine instanceof CoalescingEngine)
+                engine = ((CoalescingEngine)engine).getEngine();
+            else if (engine instanceof JournalEngine)
+                engine = ((JournalEngine)engine).getEngine();
+            else if (engine instanceof EngineExecutor)
+                engine = ((EngineExecutor)engine).getEngine();
+            else
+                return null;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the innermost executor in a decorator chain, the sound generator
+     * when none, so background reads never enter the native engine from a
+     * second thread.
+     */
+    private ICausticEngine findReadEngine(ICausticEngine engine) {
+        ICausticEngine result = soundGenerator;
+        while (engine != null) {
+            if (engine instanceof EngineExecutor) {
+                result = engine;
+                engine = ((EngineExecutor)engine).getEngine();
+            } else if (engine instanceof QueryCacheEngine)
+                engine = ((QueryCacheEngine)engine).getEngine();
+            else if (engine instanceof InstrumentedEngine)
+                engine = ((InstrumentedEngine)engine).getEngine();
+            else if (engine instanceof CoalescingEngine)
+                engine = ((CoalescingEngine)engine).getEngine();
+            else if (engine instanceof JournalEngine)
+                engine = ((JournalEngine)engine).getEngine();
+            else
+                break;
+        }
+        return result;
+    }
+
+    @Override
+    public List<EngineStatistic> getEngineStatistics() {
+        if (instrumentedEngine == null)
+            return Collections.emptyList();
+        return instrumentedEngine.getStatistics();
+    }
+
+    //----------------------------------
+    // shadowReconciler
+    //----------------------------------
+
+    private ShadowReconciler shadowReconciler;
+
+    @Override
+    public ShadowReconciler getShadowReconciler() {
+        return shadowReconciler;
+    }
+
     //----------------------------------
     // soundSource
     //----------------------------------
@@ -259,12 +390,21 @@ public class CaustkController implements ICaustkController {
     // we proxy the actual OSC impl so we can stop, or reroute
     @Override
     public float sendMessage(String message) {
-        return soundGenerator.sendMessage(message);
+        if (shadowReconciler != null)
+            shadowReconciler.noteSend(message);
+        return engine.sendMessage(message);
     }
 
     @Override
     public String queryMessage(String message) {
-        return soundGenerator.queryMessage(message);
+        return engine.queryMessage(message);
+    }
+
+    @Override
+    public void sendMessages(MessageBatch batch) {
+        if (shadowReconciler != null)
+            shadowReconciler.noteSends(batch);
+        engine.sendMessages(batch);
     }
 
     //--------------------------------------------------------------------------
@@ -285,9 +425,22 @@ public class CaustkController implements ICaustkController {
         commandManager = new CommandManager(this);
 
         soundGenerator = getConfiguration().createSoundGenerator(this);
+        engine = soundGenerator;
+        // reads the sound generator itself until setEngine() finds an executor
+        shadowReconciler = new ShadowReconciler(soundGenerator);
         soundSource = new CaustkSoundSource(this);
         soundMixer = new SoundMixer(this);
         systemSequencer = new SystemSequencer(this);
+
+        shadowReconciler.addSource(new IShadowState() {
+            @Override
+            public void getShadowValues(List<ShadowValue> values) {
+                for (Tone tone : soundSource.getTones()) {
+                    ShadowValue.collect(tone.getMachine(), values);
+                }
+                ShadowValue.collect(soundMixer.getMixerPanel(), values);
+            }
+        });
     }
 
     @Override
@@ -303,6 +456,8 @@ public class CaustkController implements ICaustkController {
     @Override
     public void close() {
         getDispatcher().trigger(new OnControllerSave());
+        shadowReconciler.stop();
+        systemSequencer.dispose();
         soundGenerator.close();
     }
 
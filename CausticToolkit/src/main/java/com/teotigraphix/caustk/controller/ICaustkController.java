@@ -20,10 +20,15 @@
 package com.teotigraphix.caustk.controller;
 
 import java.io.IOException;
+import java.util.List;
 
 import com.teotigraphix.caustic.core.ICausticEngine;
 import com.teotigraphix.caustic.core.IDispatcher;
 import com.teotigraphix.caustic.device.IDeviceFactory;
+import com.teotigraphix.caustic.engine.EngineFuture;
+import com.teotigraphix.caustic.engine.EngineStatistic;
+import com.teotigraphix.caustic.engine.InstrumentedEngine;
+import com.teotigraphix.caustic.engine.ShadowReconciler;
 import com.teotigraphix.caustk.application.ICaustkApplication;
 import com.teotigraphix.caustk.application.ICaustkConfiguration;
 import com.teotigraphix.caustk.controller.command.ICommandManager;
@@ -75,6 +80,63 @@ public interface ICaustkController extends ICausticEngine {
 
     ICaustkSoundGenerator getSoundGenerator();
 
+    /**
+     * Returns the engine the controller's {@link ICausticEngine} API proxies
+     * to.
+     * <p>
+     * This is the {@link #getSoundGenerator()} unless decorators have been
+     * installed with {@link #setEngine(ICausticEngine)}.
+     */
+    ICausticEngine getEngine();
+
+    /**
+     * Sets the engine the controller proxies all messages to.
+     * <p>
+     * Used to install decorators around the sound generator;
+     * 
+     * <pre>
+     * controller.setEngine(new CoalescingEngine(controller.getEngine()));
+     * </pre>
+     * 
+     * @param value The engine, usually decorating {@link #getEngine()}.
+     */
+    void setEngine(ICausticEngine value);
+
+    /**
+     * Returns whether an {@link InstrumentedEngine} times the engine calls.
+     */
+    boolean isEngineInstrumented();
+
+    /**
+     * Installs or removes an {@link InstrumentedEngine} around the current
+     * {@link #getEngine()}.
+     * <p>
+     * The instrumentation can only be removed while no other decorator has
+     * been installed around it.
+     * 
+     * @param value Whether to time the engine calls.
+     * @throws IllegalStateException another decorator wraps the
+     *             instrumentation
+     */
+    void setEngineInstrumented(boolean value);
+
+    /**
+     * Returns a snapshot of the engine call counts and latencies per address
+     * family, empty when the engine is not instrumented.
+     * 
+     * @see #setEngineInstrumented(boolean)
+     */
+    List<EngineStatistic> getEngineStatistics();
+
+    /**
+     * Returns the reconciler that keeps the tones' and mixer's cached values
+     * true to the engine, created stopped by {@link #initialize()}.
+     * <p>
+     * Applications that change the engine outside the model, eg loading
+     * songs natively, call {@link ShadowReconciler#start()}.
+     */
+    ShadowReconciler getShadowReconciler();
+
     ICaustkSoundSource getSoundSource();
 
     ICaustkSoundMixer getSoundMixer();
@@ -85,6 +147,14 @@ public interface ICaustkController extends ICausticEngine {
 
     void execute(String message, Object... args);
 
+    /**
+     * Executes a command on a worker thread, commands for the same device
+     * keep their order.
+     * 
+     * @see ICommandManager#executeAsync(String, Object...)
+     */
+    EngineFuture<Void> executeAsync(String message, Object... args);
+
     void undo();
 
     void redo();
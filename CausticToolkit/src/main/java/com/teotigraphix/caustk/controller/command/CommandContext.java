@@ -31,7 +31,7 @@ public class CommandContext {
         return controller.api(clazz);
     }
 
-    private final OSCMessage message;
+    private OSCMessage message;
 
     public OSCMessage getMessage() {
         return message;
@@ -46,4 +46,12 @@ public class CommandContext {
         this.message = message;
     }
 
+    /**
+     * Points a pooled context at the next message, contexts of commands kept
+     * by the history are never reused.
+     */
+    void setMessage(OSCMessage value) {
+        message = value;
+    }
+
 }
@@ -0,0 +1,129 @@
+////////////////////////////////////////////////////////////////////////////////
+// Copyright 2013 Michael Schmalle - Teoti Graphix, LLC
+// 
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+// 
+// http://www.apache.org/licenses/LICENSE-2.0 
+// 
+// Unless required by applicable law or agreed to in writing, software 
+// distributed under the License is distributed on an "AS IS" BASIS, 
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and 
+// limitations under the License
+// 
+// Author: Michael Schmalle, Principal Architect
+// mschmalle at teotigraphix dot com
+////////////////////////////////////////////////////////////////////////////////
+
+
+package com.teotigraphix.caustk.controller.command;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs asynchronous commands on a worker pool, in order per device.
+ * <p>
+ * Every device key has a serial lane; a lane runs its tasks one at a time on
+ * whichever worker is free, lanes of different devices run concurrently. A
+ * busy lane gives its worker back after {@link #LANE_BURST} tasks so one
+ * device cannot hold a worker.
+ * 
+ * @author Michael Schmalle
+ * @copyright Teoti Graphix, LLC
+ * @since 1.0
+ */
+final class CommandExecutor {
+
+    /**
+     * The number of tasks a lane runs before rescheduling itself.
+     */
+    static final int LANE_BURST = 16;
+
+    private final ExecutorService pool;
+
+    private final ConcurrentMap<String, Lane> lanes = new ConcurrentHashMap<String, Lane>();
+
+    /**
+     * Creates the pool, its threads are daemons.
+     * 
+     * @param threads The number of workers.
+     */
+    CommandExecutor(int threads) {
+        final AtomicInteger count = new AtomicInteger();
+        pool = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "CommandWorker-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Runs a task after the tasks submitted before it for the same device.
+     * 
+     * @param device The device key, eg <code>sound_mixer</code>.
+     * @param task The task.
+     */
+    void execute(String device, Runnable task) {
+        Lane lane = lanes.get(device);
+        if (lane == null) {
+            Lane created = new Lane();
+            lane = lanes.putIfAbsent(device, created);
+            if (lane == null)
+                lane = created;
+        }
+        lane.submit(task);
+    }
+
+    /**
+     * Stops the workers, queued tasks are dropped.
+     */
+    void shutdown() {
+        pool.shutdownNow();
+    }
+
+    private final class Lane implements Runnable {
+
+        private final Queue<Runnable> tasks = new ArrayDeque<Runnable>();
+
+        private boolean scheduled;
+
+        void submit(Runnable task) {
+            synchronized (this) {
+                tasks.add(task);
+                if (scheduled)
+                    return;
+                scheduled = true;
+            }
+            pool.execute(this);
+        }
+
+        @Override
+        public void run() {
+            for (int i = 0; i < LANE_BURST; i++) {
+                Runnable task;
+                synchronized (this) {
+                    task = tasks.poll();
+                    if (task == null) {
+                        scheduled = false;
+                        return;
+                    }
+                }
+                task.run();
+            }
+            // still scheduled, the lane goes to the back of the pool queue
+            pool.execute(this);
+        }
+    }
+}
@@ -17,29 +17,242 @@
 // mschmalle at teotigraphix dot com
 ////////////////////////////////////////////////////////////////////////////////
 
+
 package com.teotigraphix.caustk.controller.command;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.io.IOException;
 
 import com.teotigraphix.caustic.core.IDispatcher;
 
 /**
+ * The undo history, a ring of commands bounded by a count and by the bytes
+ * the commands retain.
+ * <p>
+ * Pushing a command past either limit evicts the oldest commands with an
+ * {@link OnHistoryEvicted}. With a {@link CommandSpillLog} set, evicted
+ * {@link ISpillableCommand}s are written to disk and stay undoable; an
+ * evicted command that cannot spill ends the history there.
+ * <p>
+ * The history is synchronized, commands executed from several threads enter
+ * it one at a time.
+ * 
  * @author Michael Schmalle
  * @copyright Teoti Graphix, LLC
  * @since 1.0
  */
 public class CommandHistory implements ICommandHistory {
 
+    /**
+     * The default largest number of commands kept in memory.
+     */
+    public static final int DEFAULT_MAX_COUNT = 500;
+
+    /**
+     * The default largest number of bytes retained by the commands in memory.
+     */
+    public static final long DEFAULT_MAX_BYTES = 4 * 1024 * 1024;
+
+    /**
+     * The default milliseconds within which a command is merged into the
+     * previous one.
+     */
+    public static final long DEFAULT_MERGE_WINDOW = 500;
+
+    /**
+     * The size of a command that does not report one.
+     */
+    public static final int DEFAULT_COMMAND_SIZE = 256;
+
     private IDispatcher dispatcher;
 
     private int mCursor;
 
-    public int getCursor() {
+    public synchronized int getCursor() {
         return mCursor;
     }
 
-    private List<IUndoCommand> mCommands;
+    /**
+     * The number of commands at the bottom of the history executed before
+     * the last {@link #mark()}, the journal after the mark holds no record of
+     * them.
+     */
+    private int mMarked;
+
+    /**
+     * The commands in memory, oldest at {@link #mHead}.
+     */
+    private IUndoCommand[] mCommands = new IUndoCommand[16];
+
+    private int[] mSizes = new int[16];
+
+    private int mHead;
+
+    private int mCount;
+
+    //----------------------------------
+    // maxCount
+    //----------------------------------
+
+    private int mMaxCount = DEFAULT_MAX_COUNT;
+
+    @Override
+    public synchronized int getMaxCount() {
+        return mMaxCount;
+    }
+
+    @Override
+    public synchronized void setMaxCount(int value) {
+        if (value < 1)
+            throw new IllegalArgumentException("maxCount < 1");
+        mMaxCount = value;
+        trim();
+    }
+
+    //----------------------------------
+    // maxBytes
+    //----------------------------------
+
+    private long mMaxBytes = DEFAULT_MAX_BYTES;
+
+    @Override
+    public synchronized long getMaxBytes() {
+        return mMaxBytes;
+    }
+
+    @Override
+    public synchronized void setMaxBytes(long value) {
+        if (value < 1)
+            throw new IllegalArgumentException("maxBytes < 1");
+        mMaxBytes = value;
+        trim();
+    }
+
+    //----------------------------------
+    // retainedBytes
+    //----------------------------------
+
+    private long mRetainedBytes;
+
+    @Override
+    public synchronized long getRetainedBytes() {
+        return mRetainedBytes;
+    }
+
+    //----------------------------------
+    // evictedCount
+    //----------------------------------
+
+    private long mEvictedCount;
+
+    @Override
+    public synchronized long getEvictedCount() {
+        return mEvictedCount;
+    }
+
+    //----------------------------------
+    // mergeWindow
+    //----------------------------------
+
+    private long mMergeWindow = DEFAULT_MERGE_WINDOW;
+
+    /**
+     * The nanoTime the head command was pushed or last merged into, merges
+     * stop after an undo or redo.
+     */
+    private long mHeadTime;
+
+    private boolean mHeadMergeable;
+
+    private boolean mLastMerged;
+
+    /**
+     * Merges a command that arrives within the merge window.
+     */
+    static final int MERGE_WINDOW = 0;
+
+    /**
+     * Merges a command whenever the head accepts it.
+     */
+    static final int MERGE_ALWAYS = 1;
+
+    /**
+     * Never merges, the command is pushed.
+     */
+    static final int MERGE_NEVER = 2;
+
+    /**
+     * Marks every command in the history as executed before the journal's
+     * mark, nothing merges into the head from now on.
+     * <p>
+     * Called when the journal is truncated on a save, the undo or redo of a
+     * marked command is journaled as its messages.
+     * 
+     * @see #getMarked(int)
+     */
+    synchronized void mark() {
+        mHeadMergeable = false;
+        mMarked = size();
+    }
+
+    /**
+     * Returns the command at a cursor position if it was executed before the
+     * last {@link #mark()}, <code>null</code> if the journal holds its record
+     * or there is none.
+     * 
+     * @param cursor The command's position.
+     */
+    synchronized IUndoCommand getMarked(int cursor) {
+        if (cursor < 0 || cursor >= mMarked)
+            return null;
+        return get(cursor);
+    }
+
+    /**
+     * Returns whether the last executed command was merged into the head.
+     */
+    synchronized boolean isLastMerged() {
+        return mLastMerged;
+    }
+
+    @Override
+    public synchronized long getMergeWindow() {
+        return mMergeWindow;
+    }
+
+    @Override
+    public synchronized void setMergeWindow(long value) {
+        if (value < 0)
+            throw new IllegalArgumentException("mergeWindow < 0");
+        mMergeWindow = value;
+    }
+
+    //----------------------------------
+    // spillLog
+    //----------------------------------
+
+    private CommandSpillLog mSpillLog;
+
+    /**
+     * Returns the log evicted commands spill to, <code>null</code> when they
+     * are dropped.
+     */
+    public synchronized CommandSpillLog getSpillLog() {
+        return mSpillLog;
+    }
+
+    /**
+     * Sets the log evicted commands spill to, the current log is closed.
+     * 
+     * @param value The log, <code>null</code> drops evicted commands.
+     */
+    public synchronized void setSpillLog(CommandSpillLog value) {
+        if (mSpillLog != null) {
+            mMarked -= Math.min(mMarked, mSpillLog.size());
+            mCursor -= Math.min(mCursor, mSpillLog.size());
+            mSpillLog.close();
+        }
+        mSpillLog = value;
+    }
 
     /**
      * Total number of items in history, irrespective of their undone/redone
@@ -48,8 +261,8 @@ public class CommandHistory implements ICommandHistory {
      * @return total number of items in history
      */
     @Override
-    public int size() {
-        return mCommands.size();
+    public synchronized int size() {
+        return getSpilledCount() + mCount;
     }
 
     /**
@@ -63,23 +276,26 @@ public class CommandHistory implements ICommandHistory {
      * @see numberOfHistoryItems
      */
     @Override
-    public IUndoCommand getCurrent() {
-        if (mCommands.size() == 0 || mCursor == 0) {
+    public synchronized IUndoCommand getCurrent() {
+        if (size() == 0 || mCursor == 0) {
             return null;
         }
-        return mCommands.get(mCursor - 1);
+        return get(mCursor - 1);
     }
 
     public CommandHistory(IDispatcher dispatcher) {
         this.dispatcher = dispatcher;
-        mCommands = new ArrayList<IUndoCommand>();
         mCursor = 0;
     }
 
     @Override
-    public void clear() {
-        mCommands.clear();
+    public synchronized void clear() {
+        mHeadMergeable = false;
+        clearMemory(0);
+        if (mSpillLog != null)
+            truncateSpill(0);
         mCursor = 0;
+        mMarked = 0;
         dispatcher.trigger(new OnClearComplete());
     }
 
@@ -110,7 +326,7 @@ public class CommandHistory implements ICommandHistory {
         if (!hasNext())
             return mCursor;
 
-        mCommands.get(mCursor).execute();
+        get(mCursor).execute();
         mCursor++;
 
         dispatcher.trigger(new OnNextComplete(getCurrent()));
@@ -122,17 +338,10 @@ public class CommandHistory implements ICommandHistory {
         if (!hasPrevious())
             return 0;
 
-        mCommands.get(mCursor - 1).undo();
-
         // If there's no undone command, 
         // dispatch null as the historyevent command
-        IUndoCommand undoneCommand;
-        if (mCommands.size() > 0 && mCursor != 0) {
-            //the undone command
-            undoneCommand = mCommands.get(mCursor - 1);
-        } else {
-            undoneCommand = null;
-        }
+        IUndoCommand undoneCommand = get(mCursor - 1);
+        undoneCommand.undo();
 
         mCursor--;
 
@@ -142,12 +351,13 @@ public class CommandHistory implements ICommandHistory {
     }
 
     @Override
-    public int rewind() throws Exception {
+    public synchronized int rewind() throws Exception {
         return rewind(0);
     }
 
     @Override
-    public int rewind(int cursor) throws Exception {
+    public synchronized int rewind(int cursor) throws Exception {
+        mHeadMergeable = false;
         int newCurosr;
 
         if (cursor == 0) {
@@ -171,12 +381,13 @@ public class CommandHistory implements ICommandHistory {
     }
 
     @Override
-    public int forward() {
+    public synchronized int forward() {
         return forward(0);
     }
 
     @Override
-    public int forward(int cursor) {
+    public synchronized int forward(int cursor) {
+        mHeadMergeable = false;
         int newCursor;
 
         if (cursor == 0) {
@@ -195,38 +406,229 @@ public class CommandHistory implements ICommandHistory {
     }
 
     @Override
-    public boolean contains(IUndoCommand command) {
-        return mCommands.contains(command);
+    public synchronized boolean contains(IUndoCommand command) {
+        for (int i = 0; i < mCount; i++) {
+            if (mCommands[index(i)] == command)
+                return true;
+        }
+        return false;
     }
 
     @Override
-    public int execute(IUndoCommand command) {
+    public synchronized int execute(IUndoCommand command) {
+        return execute(command, MERGE_WINDOW);
+    }
+
+    /**
+     * Executes a command with a merge mode, journal replay repeats the merges
+     * of the recorded session whatever the timing.
+     * 
+     * @param command The command.
+     * @param mergeMode {@link #MERGE_WINDOW}, {@link #MERGE_ALWAYS} or
+     *            {@link #MERGE_NEVER}.
+     */
+    synchronized int execute(IUndoCommand command, int mergeMode) {
+        mLastMerged = merge(command, mergeMode);
+        if (mLastMerged)
+            return mCursor;
+
         // this will happen when there is a rewind half way through
         // and then a new command is pushed which wipes the head
         // of the stack out down to the currentPosition
-        if (mCursor != size()) {
-            mCommands = mCommands.subList(0, mCursor);
-        }
+        clearRedo();
 
-        mCommands.add(command);
+        push(command);
 
         // Execute the command & move pointer forward
         // if there is an Exception throw, the cursor has not been
         // touched yet so bailing right now is safe
-        next();
+        try {
+            next();
+        } catch (RuntimeException e) {
+            clearMemory(mCount - 1);
+            throw e;
+        }
+
+        // sized after execute, the undo state is saved then
+        final int last = index(mCount - 1);
+        mSizes[last] = sizeOf(command);
+        mRetainedBytes += mSizes[last];
+        trim();
+
+        mHeadTime = System.nanoTime();
+        mHeadMergeable = command instanceof IMergeableCommand;
 
         return mCursor;
     }
 
     @Override
-    public String toString() {
-        String output = "";
-        int count = 0;
-        for (IUndoCommand command : mCommands) {
-            output += count + "" + command + "\n";
-            count++;
+    public synchronized String toString() {
+        StringBuilder output = new StringBuilder();
+        final int spilled = getSpilledCount();
+        if (spilled > 0)
+            output.append("[").append(spilled).append(" spilled]\n");
+        for (int i = 0; i < mCount; i++) {
+            output.append(spilled + i).append(mCommands[index(i)]).append("\n");
         }
-        return output;
+        return output.toString();
+    }
+
+    //--------------------------------------------------------------------------
+    // Private Methods
+    //--------------------------------------------------------------------------
+
+    /**
+     * Executes a command into the head entry when it continues the head's
+     * gesture, the head keeps its undo state and takes the new redo state.
+     */
+    private boolean merge(IUndoCommand command, int mergeMode) {
+        final long now = System.nanoTime();
+        if (mergeMode == MERGE_NEVER || !mHeadMergeable || mCount == 0 || mCursor != size())
+            return false;
+        if (mergeMode == MERGE_WINDOW && now - mHeadTime > mMergeWindow * 1000000L)
+            return false;
+        final int last = index(mCount - 1);
+        final IMergeableCommand head = (IMergeableCommand)mCommands[last];
+        if (!head.canMerge(command))
+            return false;
+
+        command.execute();
+        head.merge(command);
+        mRetainedBytes -= mSizes[last];
+        mSizes[last] = sizeOf(head);
+        mRetainedBytes += mSizes[last];
+        mHeadTime = now;
+
+        dispatcher.trigger(new OnNextComplete(head));
+        return true;
+    }
+
+    private int getSpilledCount() {
+        return mSpillLog != null ? mSpillLog.size() : 0;
+    }
+
+    private int index(int i) {
+        return (mHead + i) % mCommands.length;
+    }
+
+    private IUndoCommand get(int cursor) {
+        final int spilled = getSpilledCount();
+        if (cursor >= spilled)
+            return mCommands[index(cursor - spilled)];
+        try {
+            return mSpillLog.get(cursor);
+        } catch (IOException e) {
+            throw new CommandExecutionException("Spilled command " + cursor
+                    + " could not be read", e);
+        }
+    }
+
+    private void push(IUndoCommand command) {
+        if (mCount == mCommands.length) {
+            IUndoCommand[] commands = new IUndoCommand[mCommands.length * 2];
+            int[] sizes = new int[commands.length];
+            for (int i = 0; i < mCount; i++) {
+                commands[i] = mCommands[index(i)];
+                sizes[i] = mSizes[index(i)];
+            }
+            mCommands = commands;
+            mSizes = sizes;
+            mHead = 0;
+        }
+        final int last = index(mCount);
+        mCommands[last] = command;
+        mSizes[last] = 0;
+        mCount++;
+    }
+
+    /**
+     * Drops the commands after the cursor.
+     */
+    private void clearRedo() {
+        if (mCursor == size())
+            return;
+        // the commands pushed from here on are journaled
+        mMarked = Math.min(mMarked, mCursor);
+        final int spilled = getSpilledCount();
+        if (mCursor < spilled) {
+            clearMemory(0);
+            truncateSpill(mCursor);
+        } else {
+            clearMemory(mCursor - spilled);
+        }
+    }
+
+    /**
+     * Drops the commands in memory from a position on, newest first.
+     */
+    private void clearMemory(int from) {
+        while (mCount > from) {
+            final int last = index(mCount - 1);
+            mRetainedBytes -= mSizes[last];
+            mCommands[last] = null;
+            mSizes[last] = 0;
+            mCount--;
+        }
+        if (mCount == 0)
+            mHead = 0;
+    }
+
+    /**
+     * Evicts the oldest executed commands until both limits hold, the
+     * newest command is always kept.
+     * <p>
+     * The oldest command in memory is at the spilled count, which every
+     * eviction changes; it is evicted only while it is below the cursor, a
+     * command that can be redone is never evicted.
+     */
+    private void trim() {
+        while (mCount > 1 && mCursor > getSpilledCount()
+                && (mCount > mMaxCount || mRetainedBytes > mMaxBytes)) {
+            evictOldest();
+        }
+    }
+
+    private void evictOldest() {
+        final IUndoCommand command = mCommands[mHead];
+        mRetainedBytes -= mSizes[mHead];
+        mCommands[mHead] = null;
+        mSizes[mHead] = 0;
+        mHead = (mHead + 1) % mCommands.length;
+        mCount--;
+        mEvictedCount++;
+
+        boolean spilled = false;
+        if (mSpillLog != null && command instanceof ISpillableCommand) {
+            try {
+                mSpillLog.push((ISpillableCommand)command);
+                spilled = true;
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        if (!spilled) {
+            // older spilled commands can no longer be reached in order
+            final int lost = getSpilledCount();
+            if (lost > 0)
+                truncateSpill(0);
+            mMarked -= Math.min(mMarked, lost + 1);
+            mCursor -= lost + 1;
+        }
+        dispatcher.trigger(new OnHistoryEvicted(command, spilled));
+    }
+
+    private void truncateSpill(int from) {
+        try {
+            mSpillLog.truncate(from);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static int sizeOf(IUndoCommand command) {
+        if (command instanceof ISizedCommand)
+            return ((ISizedCommand)command).getRetainedSize();
+        return DEFAULT_COMMAND_SIZE;
     }
 
 }
@@ -0,0 +1,460 @@
+////////////////////////////////////////////////////////////////////////////////
+// Copyright 2013 Michael Schmalle - Teoti Graphix, LLC
+// 
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+// 
+// http://www.apache.org/licenses/LICENSE-2.0 
+// 
+// Unless required by applicable law or agreed to in writing, software 
+// distributed under the License is distributed on an "AS IS" BASIS, 
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and 
+// limitations under the License
+// 
+// Author: Michael Schmalle, Principal Architect
+// mschmalle at teotigraphix dot com
+////////////////////////////////////////////////////////////////////////////////
+
+
+package com.teotigraphix.caustk.controller.command;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only journal of the commands executed since the project was last
+ * saved, replayed on top of the saved project after a crash.
+ * <p>
+ * Records are appended to memory and made durable by a committer thread that
+ * writes and forces everything appended since its last pass in one group;
+ * a crash loses at most the records of one commit interval. Every record
+ * carries its length and CRC32, a torn record at the end of the file stops
+ * the replay and is cut off when the journal is opened.
+ * <p>
+ * A save marks the journal with {@link #mark()} before it serializes the
+ * project and truncates to the mark once the file is on disk, so records
+ * appended while it serialized survive. When records follow the mark, a
+ * {@link #CHECKPOINT} is appended instead of rewriting the file. An undo or
+ * redo of a command from before the mark is journaled as the command's
+ * messages, {@link #APPLY}, so the history stays whole across saves.
+ * 
+ * @author Michael Schmalle
+ * @copyright Teoti Graphix, LLC
+ * @since 1.0
+ * @see ICommandManager#setJournal(File)
+ */
+public class CommandJournal {
+
+    /**
+     * A command pushed on the history, the message is its OSC form.
+     */
+    public static final byte EXECUTE = 'E';
+
+    /**
+     * A command merged into the history's head, the message is its OSC form.
+     */
+    public static final byte MERGE = 'M';
+
+    /**
+     * One undo.
+     */
+    public static final byte UNDO = 'U';
+
+    /**
+     * One redo.
+     */
+    public static final byte REDO = 'R';
+
+    /**
+     * A message that undoes or redoes a command the saved project holds,
+     * executed without recording it; the history replayed from the journal
+     * does not hold the command.
+     */
+    public static final byte APPLY = 'A';
+
+    /**
+     * The start of a committed transaction, its commands follow as
+     * {@link #EXECUTE} records.
+     */
+    public static final byte BEGIN = 'B';
+
+    /**
+     * The end of a committed transaction.
+     */
+    public static final byte COMMIT = 'C';
+
+    /**
+     * The records from the start of the file up to a mark are in the saved
+     * project, the message is their number; never returned as an entry.
+     */
+    public static final byte CHECKPOINT = 'K';
+
+    /**
+     * The default milliseconds between two group commits.
+     */
+    public static final long DEFAULT_COMMIT_INTERVAL = 20;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * Length and CRC32 ints before each record.
+     */
+    private static final int RECORD_HEADER = 8;
+
+    private final File file;
+
+    private final RandomAccessFile output;
+
+    private final FileChannel channel;
+
+    private final List<Entry> entries;
+
+    /**
+     * Guards the pending records and sequence numbers.
+     */
+    private final Object lock = new Object();
+
+    /**
+     * Guards the file, held by the committer while it writes and forces.
+     */
+    private final Object io = new Object();
+
+    private ByteArrayOutputStream pending = new ByteArrayOutputStream();
+
+    private long appended;
+
+    private long durable;
+
+    /**
+     * The sequence of the first record in the file, records read on open
+     * have negative sequences.
+     */
+    private long first;
+
+    private volatile boolean running = true;
+
+    private final Thread committer;
+
+    private final CRC32 crc = new CRC32();
+
+    //----------------------------------
+    // commitInterval
+    //----------------------------------
+
+    private volatile long commitInterval = DEFAULT_COMMIT_INTERVAL;
+
+    /**
+     * Returns the milliseconds between two group commits.
+     */
+    public long getCommitInterval() {
+        return commitInterval;
+    }
+
+    /**
+     * Sets the milliseconds between two group commits, the longest time a
+     * record stays in memory only.
+     */
+    public void setCommitInterval(long value) {
+        if (value <= 0)
+            throw new IllegalArgumentException("commitInterval <= 0");
+        commitInterval = value;
+    }
+
+    /**
+     * Returns the file.
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Returns the records found in the file when it was opened, in order.
+     */
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    /**
+     * Opens or creates a journal, existing records are read and a torn tail
+     * is cut off.
+     * 
+     * @param file The journal file.
+     * @throws IOException the file could not be opened
+     */
+    public CommandJournal(File file) throws IOException {
+        this.file = file;
+        output = new RandomAccessFile(file, "rw");
+        channel = output.getChannel();
+        List<Entry> read = new ArrayList<Entry>();
+        long end = read(read);
+        channel.truncate(end);
+        channel.position(end);
+        first = -read.size();
+        entries = Collections.unmodifiableList(checkpoint(read));
+
+        committer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                commitLoop();
+            }
+        }, "CommandJournal");
+        committer.setDaemon(true);
+        committer.start();
+    }
+
+    //--------------------------------------------------------------------------
+    // Public Methods
+    //--------------------------------------------------------------------------
+
+    /**
+     * Appends a record, durable after the next group commit.
+     * 
+     * @param type The record type, eg {@link #EXECUTE}.
+     * @param message The command message, <code>null</code> for markers.
+     */
+    public void append(byte type, String message) {
+        byte[] payload = message != null ? message.getBytes(UTF_8) : new byte[0];
+        synchronized (lock) {
+            if (!running)
+                throw new IllegalStateException("CommandJournal is closed");
+            crc.reset();
+            crc.update(type);
+            crc.update(payload);
+            DataOutputStream out = new DataOutputStream(pending);
+            try {
+                out.writeInt(payload.length + 1);
+                out.writeInt((int)crc.getValue());
+                out.writeByte(type);
+                out.write(payload);
+            } catch (IOException e) {
+                // not thrown by a byte array
+                throw new IllegalStateException(e);
+            }
+            appended++;
+        }
+    }
+
+    /**
+     * Waits until every record appended before the call is durable.
+     * 
+     * @throws IOException the journal was closed before
+     */
+    public void sync() throws IOException {
+        synchronized (lock) {
+            final long target = appended;
+            lock.notifyAll();
+            while (durable < target) {
+                if (!running)
+                    throw new IOException("CommandJournal closed");
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted");
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the position after the records appended so far, taken before a
+     * save serializes the project.
+     */
+    public long mark() {
+        synchronized (lock) {
+            return appended;
+        }
+    }
+
+    /**
+     * Drops the records appended before a mark, called once the save that
+     * took the mark is on disk. The file is emptied when nothing follows the
+     * mark, else a {@link #CHECKPOINT} hides the dropped records.
+     * 
+     * @param mark The position returned by {@link #mark()}.
+     * @throws IOException the file could not be cut
+     */
+    public void truncate(long mark) throws IOException {
+        synchronized (io) {
+            synchronized (lock) {
+                if (mark <= first)
+                    return;
+                if (mark < appended) {
+                    append(CHECKPOINT, String.valueOf(mark - first));
+                    return;
+                }
+                pending.reset();
+                durable = appended;
+                first = appended;
+                lock.notifyAll();
+            }
+            channel.truncate(0);
+            channel.position(0);
+            channel.force(true);
+        }
+    }
+
+    /**
+     * Commits the pending records and closes the file.
+     */
+    public void close() {
+        synchronized (lock) {
+            if (!running)
+                return;
+            running = false;
+            lock.notifyAll();
+        }
+        try {
+            committer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            commit();
+            output.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    //--------------------------------------------------------------------------
+    // Private Methods
+    //--------------------------------------------------------------------------
+
+    private void commitLoop() {
+        while (running) {
+            synchronized (lock) {
+                if (pending.size() == 0) {
+                    try {
+                        lock.wait(commitInterval);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }
+            try {
+                commit();
+                Thread.sleep(commitInterval);
+            } catch (IOException e) {
+                e.printStackTrace();
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Writes and forces everything appended so far as one group.
+     */
+    private void commit() throws IOException {
+        synchronized (io) {
+            final byte[] group;
+            final long sequence;
+            synchronized (lock) {
+                if (pending.size() == 0)
+                    return;
+                group = pending.toByteArray();
+                pending.reset();
+                sequence = appended;
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(group);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+            synchronized (lock) {
+                durable = Math.max(durable, sequence);
+                lock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Reads the valid records, returns the offset after the last one.
+     */
+    private long read(List<Entry> result) throws IOException {
+        final long length = output.length();
+        long offset = 0;
+        CRC32 check = new CRC32();
+        while (offset + RECORD_HEADER < length) {
+            output.seek(offset);
+            final int size = output.readInt();
+            final int sum = output.readInt();
+            if (size < 1 || offset + RECORD_HEADER + size > length)
+                break;
+            byte[] record = new byte[size];
+            output.readFully(record);
+            check.reset();
+            check.update(record);
+            if ((int)check.getValue() != sum)
+                break;
+            String message = size > 1 ? new String(record, 1, size - 1, UTF_8) : null;
+            result.add(new Entry(record[0], message));
+            offset += RECORD_HEADER + size;
+        }
+        return offset;
+    }
+
+    /**
+     * Returns the records after the last checkpoint, without checkpoints.
+     */
+    private static List<Entry> checkpoint(List<Entry> records) {
+        int from = 0;
+        for (Entry entry : records) {
+            if (entry.type == CHECKPOINT)
+                from = Math.max(from, Integer.parseInt(entry.message));
+        }
+        List<Entry> result = new ArrayList<Entry>();
+        for (int i = from; i < records.size(); i++) {
+            if (records.get(i).type != CHECKPOINT)
+                result.add(records.get(i));
+        }
+        return result;
+    }
+
+    /**
+     * A journal record.
+     */
+    public static final class Entry {
+
+        private final byte type;
+
+        private final String message;
+
+        /**
+         * Returns the record type, eg {@link CommandJournal#EXECUTE}.
+         */
+        public byte getType() {
+            return type;
+        }
+
+        /**
+         * Returns the command message, <code>null</code> for markers.
+         */
+        public String getMessage() {
+            return message;
+        }
+
+        Entry(byte type, String message) {
+            this.type = type;
+            this.message = message;
+        }
+
+        @Override
+        public String toString() {
+            return (char)type + (message != null ? " " + message : "");
+        }
+    }
+}
@@ -19,12 +19,16 @@
 
 package com.teotigraphix.caustk.controller.command;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 import com.teotigraphix.caustic.core.CausticException;
 import com.teotigraphix.caustic.core.Dispatcher;
 import com.teotigraphix.caustic.core.IDispatcher;
+import com.teotigraphix.caustic.core.MessageBatch;
+import com.teotigraphix.caustic.engine.EngineFuture;
 import com.teotigraphix.caustk.controller.ICaustkController;
 import com.teotigraphix.caustk.controller.command.ICommandHistory.OnClearComplete;
 import com.teotigraphix.caustk.controller.command.ICommandHistory.OnFastForwardComplete;
@@ -36,10 +40,36 @@ public class CommandManager implements ICommandManager {
 
     private CommandHistory commandHistory;
 
-    private Map<String, Class<?>> commands = new HashMap<String, Class<?>>();
+    private final CommandRouter router = new CommandRouter();
+
+    /**
+     * Contexts of commands that are not kept by the history, reused.
+     */
+    private final List<CommandContext> contexts = new ArrayList<CommandContext>();
 
     private String applicationId;
 
+    /**
+     * Runs {@link #executeAsync(String, Object...)}, created when first used.
+     */
+    private CommandExecutor executor;
+
+    /**
+     * The transaction open on each thread.
+     */
+    private final ThreadLocal<Transaction> transaction = new ThreadLocal<Transaction>();
+
+    /**
+     * The crash journal, <code>null</code> when not journaling.
+     */
+    private volatile CommandJournal journal;
+
+    /**
+     * Whether the journal is being replayed, replayed records are already in
+     * the journal.
+     */
+    private volatile boolean replaying;
+
     //----------------------------------
     // dispatcher
     //----------------------------------
@@ -58,6 +88,224 @@ public class CommandManager implements ICommandManager {
 
     }
 
+    @Override
+    public ICommandHistory getHistory() {
+        return commandHistory;
+    }
+
+    /**
+     * Spills undo commands evicted from the history's memory to a log file,
+     * <code>null</code> drops them.
+     * 
+     * @param file The log file, emptied and deleted when replaced.
+     * @see ISpillableCommand
+     */
+    @Override
+    public void setHistorySpill(File file) {
+        if (file == null) {
+            commandHistory.setSpillLog(null);
+            return;
+        }
+        commandHistory.setSpillLog(new CommandSpillLog(file, new CommandSpillLog.IReplayer() {
+            @Override
+            public void replay(String message) {
+                OSCMessage result = OSCMessage.obtain(message);
+                replayCommand(result);
+                result.recycle();
+            }
+        }));
+    }
+
+    /**
+     * Journals the undo commands entering the history, undos, redos and
+     * committed transactions to a file, so the session can be replayed on top
+     * of the saved project after a crash; see {@link #replayJournal()}.
+     * Commands that are not {@link IUndoCommand}s are not journaled.
+     * 
+     * @param file The journal file, its records are kept for
+     *            {@link #replayJournal()}; <code>null</code> closes the
+     *            journal.
+     * @throws IOException the file could not be opened
+     */
+    @Override
+    public void setJournal(File file) throws IOException {
+        CommandJournal old = journal;
+        journal = file != null ? new CommandJournal(file) : null;
+        if (old != null)
+            old.close();
+    }
+
+    /**
+     * Replays the records the journal file held when it was set, in order.
+     * Merges are repeated as recorded and a transaction torn by the crash is
+     * rolled back. Call once the saved project is loaded.
+     * 
+     * @return The number of records replayed, <code>0</code> without a
+     *         journal.
+     */
+    @Override
+    public int replayJournal() {
+        CommandJournal current = journal;
+        if (current == null)
+            return 0;
+        int result = 0;
+        replaying = true;
+        try {
+            for (CommandJournal.Entry entry : current.getEntries()) {
+                replayEntry(entry);
+                result++;
+            }
+        } finally {
+            rollback();
+            replaying = false;
+        }
+        return result;
+    }
+
+    /**
+     * Marks the journal before a save serializes the project.
+     * <p>
+     * The history is kept whole. The journal after the mark holds no record
+     * of the commands in the history now, so their later undos and redos are
+     * journaled as the messages of an {@link ISpillableCommand}, which replay
+     * without the command.
+     * 
+     * @return The mark, <code>-1</code> without a journal.
+     */
+    @Override
+    public long markJournal() {
+        CommandJournal current = journal;
+        if (current == null)
+            return -1;
+        // the history lock orders the mark with the journaled commands
+        synchronized (commandHistory) {
+            commandHistory.mark();
+            return current.mark();
+        }
+    }
+
+    /**
+     * Drops the records before a mark, the saved project holds them; records
+     * journaled while the project was serialized are kept.
+     * 
+     * @param mark The mark returned by {@link #markJournal()}.
+     */
+    @Override
+    public void truncateJournal(long mark) {
+        CommandJournal current = journal;
+        if (current == null || mark < 0)
+            return;
+        try {
+            current.truncate(mark);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Opens a transaction on the calling thread, or joins the open one.
+     * <p>
+     * Undo commands executed until the outermost {@link #commit()} are
+     * recorded as one {@link CompositeUndoCommand}, and every engine message
+     * sent on the thread is held in one {@link MessageBatch} sent on commit.
+     * A query or address only read made inside the transaction, by a command
+     * or the caller, first sends the messages held so far so it reads their
+     * effect; the transaction then reaches the engine in several batches.
+     * <p>
+     * A command failing inside the transaction does not throw, its failure
+     * is kept and the outermost {@link #commit()} rolls the transaction back
+     * and throws it, so no partial composite is recorded.
+     * 
+     * <pre>
+     * manager.beginTransaction();
+     * try {
+     *     // execute commands
+     *     manager.commit();
+     * } catch (RuntimeException e) {
+     *     manager.rollback();
+     *     throw e;
+     * }
+     * </pre>
+     */
+    @Override
+    public void beginTransaction() {
+        Transaction current = transaction.get();
+        if (current == null) {
+            current = new Transaction(new CompositeUndoCommand(controller));
+            transaction.set(current);
+            MessageBatch.begin(controller);
+        }
+        current.depth++;
+    }
+
+    /**
+     * Closes the transaction level opened last, the outermost records the
+     * composite in the history and sends the batch.
+     * 
+     * @throws IllegalStateException no transaction is open
+     * @throws CommandExecutionException a command of the transaction failed,
+     *             the transaction was rolled back
+     */
+    @Override
+    public void commit() {
+        Transaction current = transaction.get();
+        if (current == null)
+            throw new IllegalStateException("commit() called without beginTransaction()");
+        current.depth--;
+        if (current.depth > 0)
+            return;
+        transaction.remove();
+        if (current.failure != null) {
+            try {
+                current.composite.undo();
+            } finally {
+                MessageBatch.end();
+            }
+            throw new CommandExecutionException(current.failure);
+        }
+        try {
+            if (current.composite.size() > 0) {
+                synchronized (commandHistory) {
+                    commandHistory.execute(current.composite);
+                    // journaled whole on commit, a rollback leaves no record
+                    if (current.messages != null) {
+                        journal(CommandJournal.BEGIN, null);
+                        for (String message : current.messages) {
+                            journal(CommandJournal.EXECUTE, message);
+                        }
+                        journal(CommandJournal.COMMIT, null);
+                    }
+                }
+            }
+        } finally {
+            MessageBatch.end();
+        }
+    }
+
+    /**
+     * Undoes the commands of the open transaction in reverse and closes it at
+     * every level, nothing is recorded. Does nothing when no transaction is
+     * open, so nested failure handlers can all call it.
+     */
+    @Override
+    public void rollback() {
+        Transaction current = transaction.get();
+        if (current == null)
+            return;
+        transaction.remove();
+        try {
+            current.composite.undo();
+        } finally {
+            // the undo messages follow the held ones in the same batch
+            MessageBatch.end();
+        }
+    }
+
+    @Override
+    public boolean isInTransaction() {
+        return transaction.get() != null;
+    }
+
     /**
      * Clears the {@link CommandHistory}.
      * 
@@ -76,7 +324,14 @@ public class CommandManager implements ICommandManager {
     @Override
     public int undo() {
         try {
-            return commandHistory.rewind(1);
+            synchronized (commandHistory) {
+                final int cursor = commandHistory.getCursor();
+                final IUndoCommand marked = commandHistory.getMarked(cursor - 1);
+                final int result = commandHistory.rewind(1);
+                if (commandHistory.getCursor() != cursor)
+                    journalStep(CommandJournal.UNDO, marked);
+                return result;
+            }
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -91,7 +346,14 @@ public class CommandManager implements ICommandManager {
     @Override
     public int redo() {
         try {
-            return commandHistory.forward(1);
+            synchronized (commandHistory) {
+                final int cursor = commandHistory.getCursor();
+                final IUndoCommand marked = commandHistory.getMarked(cursor);
+                final int result = commandHistory.forward(1);
+                if (commandHistory.getCursor() != cursor)
+                    journalStep(CommandJournal.REDO, marked);
+                return result;
+            }
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -102,24 +364,44 @@ public class CommandManager implements ICommandManager {
      * Adds a {@link ICommand} to the manager.
      * <p>
      * The <code>message</code> does not contain the controller head, the
-     * controller/applicationId will automatically be appended.
+     * controller/applicationId will automatically be appended. Segments may
+     * use OSC address pattern wildcards, see {@link CommandRouter}.
+     * 
+     * @param message The message key that links to the {@link ICommand}.
+     * @param factory The factory that creates the command for every
+     *            execution.
+     */
+    @Override
+    public void put(String message, ICommandFactory factory) {
+        router.add(returnControllerMessage(message), factory);
+    }
+
+    /**
+     * Adds a {@link ICommand} class to the manager, it is instantiated
+     * reflectively on every execution; prefer
+     * {@link #put(String, ICommandFactory)}.
      * 
      * @param message The message key that links to the {@link ICommand}.
      * @param command The Class that will be instantiated.
      */
     @Override
-    public void put(String message, Class<?> command) {
-        final String controllerMessage = returnControllerMessage(message);
-        if (commands.containsKey(controllerMessage))
-            return;
-        commands.put(controllerMessage, command);
+    public void put(String message, final Class<?> command) {
+        put(message, new ICommandFactory() {
+            @Override
+            public ICommand create() {
+                try {
+                    return (ICommand)command.newInstance();
+                } catch (IllegalAccessException e) {
+                    throw new CommandExecutionException(e);
+                } catch (InstantiationException e) {
+                    throw new CommandExecutionException(e);
+                }
+            }
+        });
     }
 
     public void remove(String message) {
-        final String controllerMessage = returnControllerMessage(message);
-        if (commands.containsKey(controllerMessage)) {
-            commands.remove(controllerMessage);
-        }
+        router.remove(returnControllerMessage(message));
     }
 
     /**
@@ -133,24 +415,74 @@ public class CommandManager implements ICommandManager {
     @Override
     public void execute(String message, Object... args) {
         try {
-            OSCMessage result = OSCMessage.initialize(returnControllerMessage(message));
-            for (Object value : args) {
-                result.add(value);
-            }
-            sendOSCCommand(result);
-        } catch (CausticException e) {
+            OSCMessage result = OSCMessage.obtain(returnControllerMessage(message), args);
+            boolean kept = exectueCommand(result);
+            report(result);
+            if (!kept)
+                result.recycle();
+        } catch (IllegalArgumentException e) {
             e.printStackTrace();
         }
     }
 
+    /**
+     * Executes an {@link ICommand} against a registered message on a worker
+     * thread.
+     * <p>
+     * Commands for the same device, the second address segment such as
+     * <code>sound_mixer</code> or <code>system_sequencer</code>, run in the
+     * order they were submitted; commands for different devices run
+     * concurrently. Undo commands enter the history in the order they finish.
+     * A transaction open on the calling thread does not include them.
+     * 
+     * @param message The message without the controller/applicationId.
+     * @param args Arguments to pass to the created {@link OSCMessage}.
+     * @return The future completed when the command has run, failed with the
+     *         command's exception or with a {@link CommandExecutionException}
+     *         when no command is registered.
+     */
+    @Override
+    public EngineFuture<Void> executeAsync(String message, Object... args) {
+        final EngineFuture<Void> result = new EngineFuture<Void>();
+        final OSCMessage command;
+        try {
+            command = OSCMessage.obtain(returnControllerMessage(message), args);
+        } catch (IllegalArgumentException e) {
+            result.fail(e);
+            return result;
+        }
+        getExecutor().execute(command.getDevice(), new Runnable() {
+            @Override
+            public void run() {
+                boolean kept = false;
+                try {
+                    kept = exectueCommand(command);
+                    if (command.hasException())
+                        result.fail(command.getException());
+                    else
+                        result.complete(null);
+                } catch (RuntimeException e) {
+                    result.fail(e);
+                } finally {
+                    if (!kept)
+                        command.recycle();
+                }
+            }
+        });
+        return result;
+    }
+
     /**
      * Capable of sending inter-application messages.
      * <p>
      * Not for use within the same app API.
      */
     public void sendOSCCommand(String message) throws CausticException {
-        OSCMessage result = OSCMessage.initialize(message);
-        sendOSCCommand(result);
+        OSCMessage result = OSCMessage.obtain(message);
+        boolean kept = exectueCommand(result);
+        report(result);
+        if (!kept)
+            result.recycle();
     }
 
     /**
@@ -168,59 +500,265 @@ public class CommandManager implements ICommandManager {
         // this will overwrite anything that is passed in
         //message.setController(applicationId);
         exectueCommand(message);
+        report(message);
     }
 
-    private void exectueCommand(OSCMessage message) {
-        System.err.println("  OSC[" + message.toString() + "]");
-        String commandString = message.toCommandString();
-        Class<?> command = getCommand(commandString);
-        // TODO should log these commands that cannot be found
-        if (command == null)
-            return;
+    /**
+     * Returns whether the message is kept by an {@link IUndoCommand} in the
+     * history, pooled messages that are not kept are recycled by the caller.
+     * Failures are set on the message, see {@link OSCMessage#getException()}.
+     */
+    private boolean exectueCommand(OSCMessage message) {
+        return exectueCommand(message, CommandHistory.MERGE_WINDOW);
+    }
+
+    private boolean exectueCommand(OSCMessage message, int mergeMode) {
+        ICommandFactory factory = router.route(message);
+        if (factory == null) {
+            fail(message, new CommandExecutionException("No command registered for "
+                    + message.toCommandString()));
+            return false;
+        }
 
         ICommand instance = null;
 
         try {
-            instance = (ICommand)command.newInstance();
-        } catch (IllegalAccessException e) {
-            message.setException(e);
-            e.printStackTrace();
-        } catch (InstantiationException e) {
-            message.setException(e);
-            e.printStackTrace();
+            instance = factory.create();
+        } catch (RuntimeException e) {
+            fail(message, e);
         }
 
         // Exception thrown during instantiation (constructor)
         if (instance == null)
-            return;
+            return false;
 
-        if (instance instanceof CommandBase)
-            ((CommandBase)instance).setContext(new CommandContext(controller, message));
+        final boolean undoable = instance instanceof IUndoCommand;
+        CommandContext context = null;
+        if (instance instanceof CommandBase) {
+            // undo commands read their context again on redo
+            context = undoable ? new CommandContext(controller, message)
+                    : obtainContext(message);
+            ((CommandBase)instance).setContext(context);
+        }
 
         try {
-            if (instance instanceof IUndoCommand) {
+            Transaction current = transaction.get();
+            if (undoable && current != null) {
+                // recorded with the transaction on commit
+                instance.execute();
+                current.composite.add((IUndoCommand)instance);
+                if (journal != null && !replaying)
+                    current.addMessage(message.toString());
+                return true;
+            } else if (undoable) {
                 // this calls execute and adds to history stack
-                commandHistory.execute((IUndoCommand)instance);
-            } else if (instance instanceof ICommand) {
+                synchronized (commandHistory) {
+                    commandHistory.execute((IUndoCommand)instance, mergeMode);
+                    journal(commandHistory.isLastMerged() ? CommandJournal.MERGE
+                            : CommandJournal.EXECUTE, message.toString());
+                }
+                return true;
+            } else {
                 // normal execute()
                 instance.execute();
             }
         } catch (CommandExecutionException e) {
             // if an undo command reaches here, it has NOT been added to history
-            // TODO Figure out how controller will deal with CommandExecutionException
-            //            Log.e("Controller[" + getControllerName() + "]", e.getMessage() + " Cause:"
-            //                    + e.getCause().toString());
-            e.printStackTrace();
-            message.setException(e);
+            fail(message, e);
+        } finally {
+            if (context != null && !undoable)
+                recycleContext(context);
+        }
+        return false;
+    }
+
+    /**
+     * Sets the failure on the message and fails the calling thread's open
+     * transaction with the first one.
+     */
+    private void fail(OSCMessage message, Exception e) {
+        message.setException(e);
+        Transaction current = transaction.get();
+        if (current != null && current.failure == null)
+            current.failure = e;
+    }
+
+    /**
+     * Logs the failure of a synchronous execution.
+     */
+    private static void report(OSCMessage message) {
+        if (message.hasException())
+            message.getException().printStackTrace();
+    }
+
+    private synchronized CommandExecutor getExecutor() {
+        if (executor == null)
+            executor = new CommandExecutor(Math.max(2, Runtime.getRuntime()
+                    .availableProcessors()));
+        return executor;
+    }
+
+    /**
+     * Executes a spilled undo or redo message without recording it.
+     */
+    private void replayCommand(OSCMessage message) {
+        ICommandFactory factory = router.route(message);
+        if (factory == null)
+            throw new CommandExecutionException("No command for " + message);
+        ICommand instance = factory.create();
+        CommandContext context = obtainContext(message);
+        try {
+            if (instance instanceof CommandBase)
+                ((CommandBase)instance).setContext(context);
+            instance.execute();
+        } finally {
+            recycleContext(context);
         }
     }
 
-    private Class<?> getCommand(String command) {
-        return commands.get(command);
+    /**
+     * Appends a record unless replaying, called in the order of the history.
+     */
+    private void journal(byte type, String message) {
+        CommandJournal current = journal;
+        if (current != null && !replaying)
+            current.append(type, message);
+    }
+
+    /**
+     * Journals an undo or redo, the step of a marked command as the messages
+     * that repeat it; a command without messages is not journaled.
+     */
+    private void journalStep(byte type, IUndoCommand marked) {
+        if (marked == null) {
+            journal(type, null);
+            return;
+        }
+        List<String> messages = new ArrayList<String>();
+        if (!toMessages(marked, type == CommandJournal.UNDO, messages))
+            return;
+        for (String message : messages) {
+            journal(CommandJournal.APPLY, message);
+        }
+    }
+
+    /**
+     * Adds the messages that undo or redo a command, a composite's in the
+     * order its commands are undone or redone.
+     * 
+     * @return <code>false</code> if a command is not an
+     *         {@link ISpillableCommand}.
+     */
+    private static boolean toMessages(IUndoCommand command, boolean undo, List<String> result) {
+        if (command instanceof ISpillableCommand) {
+            ISpillableCommand spillable = (ISpillableCommand)command;
+            result.add(undo ? spillable.getUndoMessage() : spillable.getRedoMessage());
+            return true;
+        }
+        if (!(command instanceof CompositeUndoCommand))
+            return false;
+        CompositeUndoCommand composite = (CompositeUndoCommand)command;
+        final int size = composite.size();
+        for (int i = 0; i < size; i++) {
+            if (!toMessages(composite.get(undo ? size - 1 - i : i), undo, result))
+                return false;
+        }
+        return true;
+    }
+
+    private void replayEntry(CommandJournal.Entry entry) {
+        switch (entry.getType()) {
+            case CommandJournal.EXECUTE:
+            case CommandJournal.MERGE:
+                OSCMessage message = OSCMessage.obtain(entry.getMessage());
+                boolean kept = exectueCommand(message,
+                        entry.getType() == CommandJournal.MERGE ? CommandHistory.MERGE_ALWAYS
+                                : CommandHistory.MERGE_NEVER);
+                report(message);
+                if (!kept)
+                    message.recycle();
+                break;
+            case CommandJournal.UNDO:
+                undo();
+                break;
+            case CommandJournal.APPLY:
+                OSCMessage step = OSCMessage.obtain(entry.getMessage());
+                try {
+                    replayCommand(step);
+                } catch (CommandExecutionException e) {
+                    // the replay goes on like a failed execute
+                    e.printStackTrace();
+                } finally {
+                    step.recycle();
+                }
+                break;
+            case CommandJournal.REDO:
+                redo();
+                break;
+            case CommandJournal.BEGIN:
+                beginTransaction();
+                break;
+            case CommandJournal.COMMIT:
+                try {
+                    commit();
+                } catch (CommandExecutionException e) {
+                    // rolled back, the replay goes on like a failed execute
+                    e.printStackTrace();
+                }
+                break;
+            default:
+                throw new CommandExecutionException("Unknown journal record " + entry);
+        }
+    }
+
+    private CommandContext obtainContext(OSCMessage message) {
+        synchronized (contexts) {
+            if (!contexts.isEmpty()) {
+                CommandContext result = contexts.remove(contexts.size() - 1);
+                result.setMessage(message);
+                return result;
+            }
+        }
+        return new CommandContext(controller, message);
+    }
+
+    private void recycleContext(CommandContext context) {
+        context.setMessage(null);
+        synchronized (contexts) {
+            contexts.add(context);
+        }
     }
 
     private String returnControllerMessage(String message) {
         return "/" + applicationId + "/" + message;
     }
 
+    private static final class Transaction {
+
+        final CompositeUndoCommand composite;
+
+        int depth;
+
+        /**
+         * The first failure of a command, rolls the transaction back on
+         * commit.
+         */
+        Exception failure;
+
+        /**
+         * The messages journaled on commit, created by the first.
+         */
+        List<String> messages;
+
+        Transaction(CompositeUndoCommand composite) {
+            this.composite = composite;
+        }
+
+        void addMessage(String message) {
+            if (messages == null)
+                messages = new ArrayList<String>();
+            messages.add(message);
+        }
+    }
+
 }
@@ -0,0 +1,338 @@
+////////////////////////////////////////////////////////////////////////////////
+// Copyright 2013 Michael Schmalle - Teoti Graphix, LLC
+// 
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+// 
+// http://www.apache.org/licenses/LICENSE-2.0 
+// 
+// Unless required by applicable law or agreed to in writing, software 
+// distributed under the License is distributed on an "AS IS" BASIS, 
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and 
+// limitations under the License
+// 
+// Author: Michael Schmalle, Principal Architect
+// mschmalle at teotigraphix dot com
+////////////////////////////////////////////////////////////////////////////////
+
+
+package com.teotigraphix.caustk.controller.command;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Routes command addresses to their {@link ICommandFactory}, a trie over the
+ * address segments compiled from the registrations.
+ * <p>
+ * A registered address may use OSC address pattern wildcards in a segment;
+ * <code>?</code>, <code>*</code>, <code>[a-z]</code>, <code>[!0-9]</code>
+ * and <code>{play,stop}</code>. Literal segments are tried first, then the
+ * patterns in registration order.
+ * <p>
+ * The trie is rebuilt on every registration and published whole, routing
+ * reads it without locks and without creating objects; segments are hashed
+ * and compared in place in the message text.
+ * 
+ * @author Michael Schmalle
+ * @copyright Teoti Graphix, LLC
+ * @since 1.0
+ */
+final class CommandRouter {
+
+    private final Map<String, ICommandFactory> mRoutes =
+            new LinkedHashMap<String, ICommandFactory>();
+
+    private volatile Node mRoot = new Node();
+
+    /**
+     * Registers a factory, the first registration of an address wins.
+     * 
+     * @param address The address, eg <code>/app/system_sequencer/play</code>.
+     * @param factory The factory.
+     * @return Whether the factory was added.
+     */
+    synchronized boolean add(String address, ICommandFactory factory) {
+        if (mRoutes.containsKey(address))
+            return false;
+        split(address);
+        mRoutes.put(address, factory);
+        compile();
+        return true;
+    }
+
+    /**
+     * Removes the factory of an address.
+     * 
+     * @param address The registered address.
+     * @return Whether a factory was removed.
+     */
+    synchronized boolean remove(String address) {
+        if (mRoutes.remove(address) == null)
+            return false;
+        compile();
+        return true;
+    }
+
+    /**
+     * Returns the factory of the message's controller, device and control,
+     * <code>null</code> when none matches.
+     * 
+     * @param message The parsed message.
+     */
+    ICommandFactory route(OSCMessage message) {
+        return route(mRoot, message, 0);
+    }
+
+    private static ICommandFactory route(Node node, OSCMessage message, int part) {
+        if (part == OSCMessage.ADDRESS_PARTS)
+            return node.factory;
+        final CharSequence text = message.getSource();
+        final int start = message.getPartStart(part);
+        final int end = message.getPartEnd(part);
+
+        Node child = node.getChild(text, start, end);
+        if (child != null) {
+            ICommandFactory result = route(child, message, part + 1);
+            if (result != null)
+                return result;
+        }
+        for (int i = 0; i < node.patterns.length; i++) {
+            if (matches(node.patterns[i], 0, node.patterns[i].length(), text, start, end)) {
+                ICommandFactory result = route(node.patternChildren[i], message, part + 1);
+                if (result != null)
+                    return result;
+            }
+        }
+        return null;
+    }
+
+    private void compile() {
+        Builder root = new Builder();
+        for (Map.Entry<String, ICommandFactory> entry : mRoutes.entrySet()) {
+            Builder builder = root;
+            for (String segment : split(entry.getKey())) {
+                builder = builder.child(segment);
+            }
+            builder.factory = entry.getValue();
+        }
+        mRoot = root.build();
+    }
+
+    private static List<String> split(String address) {
+        List<String> result = new ArrayList<String>();
+        for (String segment : address.split("/")) {
+            if (segment.length() > 0)
+                result.add(segment);
+        }
+        if (result.size() != OSCMessage.ADDRESS_PARTS)
+            throw new IllegalArgumentException("Command address must be "
+                    + "/[controller]/[device]/[control]: " + address);
+        return result;
+    }
+
+    private static boolean isPattern(String segment) {
+        for (int i = 0; i < segment.length(); i++) {
+            switch (segment.charAt(i)) {
+                case '?':
+                case '*':
+                case '[':
+                case '{':
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Matches an OSC address pattern against a segment of the text.
+     */
+    private static boolean matches(String pattern, int p, int pEnd, CharSequence text, int t,
+            int tEnd) {
+        while (p < pEnd) {
+            final char c = pattern.charAt(p);
+            switch (c) {
+                case '*':
+                    // collapse runs, then try every rest of the segment
+                    while (p < pEnd && pattern.charAt(p) == '*') {
+                        p++;
+                    }
+                    if (p == pEnd)
+                        return true;
+                    for (int i = t; i <= tEnd; i++) {
+                        if (matches(pattern, p, pEnd, text, i, tEnd))
+                            return true;
+                    }
+                    return false;
+                case '?':
+                    if (t == tEnd)
+                        return false;
+                    p++;
+                    t++;
+                    break;
+                case '[': {
+                    final int close = pattern.indexOf(']', p + 1);
+                    if (close == -1 || close >= pEnd || t == tEnd)
+                        return false;
+                    if (!matchesSet(pattern, p + 1, close, text.charAt(t)))
+                        return false;
+                    p = close + 1;
+                    t++;
+                    break;
+                }
+                case '{': {
+                    final int close = pattern.indexOf('}', p + 1);
+                    if (close == -1 || close >= pEnd)
+                        return false;
+                    int alternative = p + 1;
+                    while (alternative <= close) {
+                        int comma = pattern.indexOf(',', alternative);
+                        if (comma == -1 || comma > close)
+                            comma = close;
+                        final int length = comma - alternative;
+                        if (regionEquals(pattern, alternative, text, t, length, tEnd)
+                                && matches(pattern, close + 1, pEnd, text, t + length, tEnd))
+                            return true;
+                        alternative = comma + 1;
+                    }
+                    return false;
+                }
+                default:
+                    if (t == tEnd || text.charAt(t) != c)
+                        return false;
+                    p++;
+                    t++;
+            }
+        }
+        return t == tEnd;
+    }
+
+    private static boolean matchesSet(String pattern, int start, int end, char c) {
+        boolean negate = start < end && pattern.charAt(start) == '!';
+        if (negate)
+            start++;
+        boolean found = false;
+        for (int i = start; i < end && !found; i++) {
+            final char first = pattern.charAt(i);
+            if (i + 2 < end && pattern.charAt(i + 1) == '-') {
+                final char last = pattern.charAt(i + 2);
+                found = c >= first && c <= last;
+                i += 2;
+            } else {
+                found = c == first;
+            }
+        }
+        return found != negate;
+    }
+
+    private static boolean regionEquals(String pattern, int p, CharSequence text, int t,
+            int length, int tEnd) {
+        if (t + length > tEnd)
+            return false;
+        for (int i = 0; i < length; i++) {
+            if (pattern.charAt(p + i) != text.charAt(t + i))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * A compiled trie node, never changed once published.
+     */
+    private static final class Node {
+
+        private static final String[] NO_STRINGS = new String[0];
+
+        private static final Node[] NO_NODES = new Node[0];
+
+        /**
+         * Open addressing table of the literal segments.
+         */
+        String[] keys = NO_STRINGS;
+
+        Node[] children = NO_NODES;
+
+        String[] patterns = NO_STRINGS;
+
+        Node[] patternChildren = NO_NODES;
+
+        ICommandFactory factory;
+
+        Node getChild(CharSequence text, int start, int end) {
+            if (keys.length == 0)
+                return null;
+            int hash = 0;
+            for (int i = start; i < end; i++) {
+                hash = 31 * hash + text.charAt(i);
+            }
+            final int mask = keys.length - 1;
+            for (int i = spread(hash) & mask;; i = (i + 1) & mask) {
+                final String key = keys[i];
+                if (key == null)
+                    return null;
+                if (key.hashCode() == hash && key.length() == end - start
+                        && regionEquals(key, 0, text, start, end - start, end))
+                    return children[i];
+            }
+        }
+
+        static int spread(int hash) {
+            return hash ^ (hash >>> 16);
+        }
+    }
+
+    private static final class Builder {
+
+        final Map<String, Builder> literals = new HashMap<String, Builder>();
+
+        final Map<String, Builder> patterns = new LinkedHashMap<String, Builder>();
+
+        ICommandFactory factory;
+
+        Builder child(String segment) {
+            Map<String, Builder> map = isPattern(segment) ? patterns : literals;
+            Builder result = map.get(segment);
+            if (result == null) {
+                result = new Builder();
+                map.put(segment, result);
+            }
+            return result;
+        }
+
+        Node build() {
+            Node result = new Node();
+            result.factory = factory;
+            if (!literals.isEmpty()) {
+                // at most half full so probes stay short and always end
+                int capacity = Integer.highestOneBit(literals.size() * 2) * 2;
+                result.keys = new String[capacity];
+                result.children = new Node[capacity];
+                for (Map.Entry<String, Builder> entry : literals.entrySet()) {
+                    final String key = entry.getKey();
+                    int i = Node.spread(key.hashCode()) & (capacity - 1);
+                    while (result.keys[i] != null) {
+                        i = (i + 1) & (capacity - 1);
+                    }
+                    result.keys[i] = key;
+                    result.children[i] = entry.getValue().build();
+                }
+            }
+            if (!patterns.isEmpty()) {
+                result.patterns = new String[patterns.size()];
+                result.patternChildren = new Node[patterns.size()];
+                int i = 0;
+                for (Map.Entry<String, Builder> entry : patterns.entrySet()) {
+                    result.patterns[i] = entry.getKey();
+                    result.patternChildren[i] = entry.getValue().build();
+                    i++;
+                }
+            }
+            return result;
+        }
+    }
+}
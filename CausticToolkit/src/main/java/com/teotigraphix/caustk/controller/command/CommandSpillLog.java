@@ -0,0 +1,218 @@
+////////////////////////////////////////////////////////////////////////////////
+// Copyright 2013 Michael Schmalle - Teoti Graphix, LLC
+// 
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+// 
+// http://www.apache.org/licenses/LICENSE-2.0 
+// 
+// Unless required by applicable law or agreed to in writing, software 
+// distributed under the License is distributed on an "AS IS" BASIS, 
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and 
+// limitations under the License
+// 
+// Author: Michael Schmalle, Principal Architect
+// mschmalle at teotigraphix dot com
+////////////////////////////////////////////////////////////////////////////////
+
+
+package com.teotigraphix.caustk.controller.command;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * An on-disk stack of spilled undo entries, the redo and undo messages of
+ * {@link ISpillableCommand}s evicted from the {@link CommandHistory}'s
+ * memory.
+ * <p>
+ * Entries are two modified UTF-8 strings each, appended to the file; only
+ * their offsets are kept in memory. Undoing past the entries in memory reads
+ * the newest spilled entry back and executes its undo message through the
+ * {@link IReplayer}.
+ * 
+ * @author Michael Schmalle
+ * @copyright Teoti Graphix, LLC
+ * @since 1.0
+ */
+public class CommandSpillLog {
+
+    private final File file;
+
+    private final IReplayer replayer;
+
+    private RandomAccessFile output;
+
+    private long[] offsets = new long[64];
+
+    private int size;
+
+    /**
+     * Returns the number of spilled entries.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the log file.
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Creates a log, the file is created or emptied when first written.
+     * 
+     * @param file The log file.
+     * @param replayer Executes the spilled messages.
+     */
+    public CommandSpillLog(File file, IReplayer replayer) {
+        this.file = file;
+        this.replayer = replayer;
+    }
+
+    //--------------------------------------------------------------------------
+    // Public Methods
+    //--------------------------------------------------------------------------
+
+    /**
+     * Appends an entry on top of the stack.
+     * 
+     * @param command The evicted command.
+     * @throws IOException the entry could not be written
+     */
+    public void push(ISpillableCommand command) throws IOException {
+        RandomAccessFile out = open();
+        long offset = size == 0 ? 0 : out.length();
+        out.seek(offset);
+        out.writeUTF(command.getRedoMessage());
+        out.writeUTF(command.getUndoMessage());
+        if (size == offsets.length) {
+            long[] grown = new long[offsets.length * 2];
+            System.arraycopy(offsets, 0, grown, 0, size);
+            offsets = grown;
+        }
+        offsets[size++] = offset;
+    }
+
+    /**
+     * Returns the entry at an index as a command that replays its messages.
+     * 
+     * @param index The index, <code>0</code> is the oldest.
+     * @throws IOException the entry could not be read
+     */
+    public IUndoCommand get(int index) throws IOException {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("Spilled entry " + index + " of " + size);
+        RandomAccessFile in = open();
+        in.seek(offsets[index]);
+        return new SpilledCommand(in.readUTF(), in.readUTF());
+    }
+
+    /**
+     * Drops the entries from an index on, the file is cut at the entry.
+     * 
+     * @param index The first index dropped.
+     * @throws IOException the file could not be cut
+     */
+    public void truncate(int index) throws IOException {
+        if (index >= size)
+            return;
+        size = Math.max(0, index);
+        if (output != null)
+            output.setLength(size == 0 ? 0 : offsets[size]);
+    }
+
+    /**
+     * Drops all entries and deletes the file.
+     */
+    public void close() {
+        size = 0;
+        if (output != null) {
+            try {
+                output.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            output = null;
+        }
+        file.delete();
+    }
+
+    //--------------------------------------------------------------------------
+    // Private Methods
+    //--------------------------------------------------------------------------
+
+    private RandomAccessFile open() throws IOException {
+        if (output == null) {
+            output = new RandomAccessFile(file, "rw");
+            output.setLength(0);
+        }
+        return output;
+    }
+
+    /**
+     * Executes spilled command messages without recording them in the
+     * history.
+     */
+    public interface IReplayer {
+
+        /**
+         * @param message The full command message.
+         */
+        void replay(String message);
+    }
+
+    /**
+     * A spilled entry read back, its undo and redo replay the messages.
+     */
+    private final class SpilledCommand implements ISpillableCommand {
+
+        private final String redoMessage;
+
+        private final String undoMessage;
+
+        SpilledCommand(String redoMessage, String undoMessage) {
+            this.redoMessage = redoMessage;
+            this.undoMessage = undoMessage;
+        }
+
+        @Override
+        public String getRedoMessage() {
+            return redoMessage;
+        }
+
+        @Override
+        public String getUndoMessage() {
+            return undoMessage;
+        }
+
+        @Override
+        public CommandContext getContext() {
+            return null;
+        }
+
+        @Override
+        public void execute() {
+            replayer.replay(redoMessage);
+        }
+
+        @Override
+        public void undo() {
+            replayer.replay(undoMessage);
+        }
+
+        @Override
+        public void cancel() {
+        }
+
+        @Override
+        public String toString() {
+            return "Spilled[" + redoMessage + "]";
+        }
+    }
+}
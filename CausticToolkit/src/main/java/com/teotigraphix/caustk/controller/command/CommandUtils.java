@@ -19,24 +19,22 @@
 
 package com.teotigraphix.caustk.controller.command;
 
+/**
+ * Reads the parameters of a command's {@link OSCMessage}, numbers are read in
+ * place from the message text.
+ */
 public class CommandUtils {
 
     public static String getString(CommandContext context, int index) {
-        final OSCMessage message = context.getMessage();
-        String result = message.getParameter(index);
-        return result;
+        return context.getMessage().getParameter(index);
     }
 
-    public static Integer getInteger(CommandContext context, int index) {
-        final OSCMessage message = context.getMessage();
-        int result = Integer.valueOf(message.getParameter(index));
-        return result;
+    public static int getInteger(CommandContext context, int index) {
+        return context.getMessage().getInt(index);
     }
 
-    public static Float getFloat(CommandContext context, int index) {
-        final OSCMessage message = context.getMessage();
-        float result = Float.valueOf(message.getParameter(index));
-        return result;
+    public static float getFloat(CommandContext context, int index) {
+        return context.getMessage().getFloat(index);
     }
 
 }
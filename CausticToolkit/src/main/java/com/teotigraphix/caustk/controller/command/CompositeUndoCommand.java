@@ -0,0 +1,137 @@
+////////////////////////////////////////////////////////////////////////////////
+// Copyright 2013 Michael Schmalle - Teoti Graphix, LLC
+// 
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+// 
+// http://www.apache.org/licenses/LICENSE-2.0 
+// 
+// Unless required by applicable law or agreed to in writing, software 
+// distributed under the License is distributed on an "AS IS" BASIS, 
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and 
+// limitations under the License
+// 
+// Author: Michael Schmalle, Principal Architect
+// mschmalle at teotigraphix dot com
+////////////////////////////////////////////////////////////////////////////////
+
+
+package com.teotigraphix.caustk.controller.command;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.teotigraphix.caustic.core.ICausticEngine;
+import com.teotigraphix.caustic.core.MessageBatch;
+
+/**
+ * The single history entry of a command transaction, its commands are undone
+ * in reverse and redone in order with their engine messages sent as one
+ * batch.
+ * 
+ * @author Michael Schmalle
+ * @copyright Teoti Graphix, LLC
+ * @since 1.0
+ * @see ICommandManager#beginTransaction()
+ */
+public class CompositeUndoCommand implements IUndoCommand, ISizedCommand {
+
+    private final ICausticEngine engine;
+
+    private final List<IUndoCommand> commands = new ArrayList<IUndoCommand>();
+
+    /**
+     * The commands ran in the transaction before the composite is recorded.
+     */
+    private boolean executed = true;
+
+    /**
+     * Returns the number of commands.
+     */
+    public int size() {
+        return commands.size();
+    }
+
+    /**
+     * Returns the command at an index, in execution order.
+     */
+    public IUndoCommand get(int index) {
+        return commands.get(index);
+    }
+
+    /**
+     * Creates an empty composite of commands that already executed.
+     * 
+     * @param engine The engine the batches are sent to.
+     */
+    public CompositeUndoCommand(ICausticEngine engine) {
+        this.engine = engine;
+    }
+
+    //--------------------------------------------------------------------------
+    // Public Methods
+    //--------------------------------------------------------------------------
+
+    /**
+     * Adds a command that executed in the transaction.
+     */
+    void add(IUndoCommand command) {
+        commands.add(command);
+    }
+
+    @Override
+    public CommandContext getContext() {
+        return commands.isEmpty() ? null : commands.get(0).getContext();
+    }
+
+    @Override
+    public void execute() {
+        if (executed)
+            return;
+        MessageBatch.begin(engine);
+        try {
+            for (int i = 0; i < commands.size(); i++) {
+                commands.get(i).execute();
+            }
+        } finally {
+            MessageBatch.end();
+        }
+        executed = true;
+    }
+
+    @Override
+    public void undo() {
+        if (!executed)
+            return;
+        MessageBatch.begin(engine);
+        try {
+            for (int i = commands.size() - 1; i >= 0; i--) {
+                commands.get(i).undo();
+            }
+        } finally {
+            MessageBatch.end();
+        }
+        executed = false;
+    }
+
+    @Override
+    public void cancel() {
+    }
+
+    @Override
+    public int getRetainedSize() {
+        int result = 64;
+        for (IUndoCommand command : commands) {
+            result += command instanceof ISizedCommand ? ((ISizedCommand)command)
+                    .getRetainedSize() : CommandHistory.DEFAULT_COMMAND_SIZE;
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "Composite" + commands;
+    }
+}
@@ -0,0 +1,46 @@
+////////////////////////////////////////////////////////////////////////////////
+// Copyright 2013 Michael Schmalle - Teoti Graphix, LLC
+// 
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+// 
+// http://www.apache.org/licenses/LICENSE-2.0 
+// 
+// Unless required by applicable law or agreed to in writing, software 
+// distributed under the License is distributed on an "AS IS" BASIS, 
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and 
+// limitations under the License
+// 
+// Author: Michael Schmalle, Principal Architect
+// mschmalle at teotigraphix dot com
+////////////////////////////////////////////////////////////////////////////////
+
+
+package com.teotigraphix.caustk.controller.command;
+
+/**
+ * Creates the {@link ICommand} registered for a message, called by the
+ * {@link ICommandManager} for every execution.
+ * 
+ * <pre>
+ * manager.put(COMMAND_STOP, new ICommandFactory() {
+ *     &#064;Override
+ *     public ICommand create() {
+ *         return new SystemSequencerStopCommand();
+ *     }
+ * });
+ * </pre>
+ * 
+ * @author Michael Schmalle
+ * @copyright Teoti Graphix, LLC
+ * @since 1.0
+ */
+public interface ICommandFactory {
+
+    /**
+     * Returns a new command, its context is set by the manager.
+     */
+    ICommand create();
+}
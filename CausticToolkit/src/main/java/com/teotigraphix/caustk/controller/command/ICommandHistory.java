@@ -99,6 +99,57 @@ public interface ICommandHistory {
      */
     int size();
 
+    /**
+     * Returns the largest number of commands kept in memory.
+     */
+    int getMaxCount();
+
+    /**
+     * Sets the largest number of commands kept in memory, the oldest are
+     * evicted past it.
+     * 
+     * @see OnHistoryEvicted
+     */
+    void setMaxCount(int value);
+
+    /**
+     * Returns the largest number of bytes the commands in memory may retain.
+     */
+    long getMaxBytes();
+
+    /**
+     * Sets the largest number of bytes the commands in memory may retain, the
+     * oldest are evicted past it.
+     * 
+     * @see ISizedCommand
+     * @see OnHistoryEvicted
+     */
+    void setMaxBytes(long value);
+
+    /**
+     * Returns the estimated bytes retained by the commands in memory.
+     */
+    long getRetainedBytes();
+
+    /**
+     * Returns the number of commands evicted from memory.
+     */
+    long getEvictedCount();
+
+    /**
+     * Returns the milliseconds within which a command is merged into the
+     * previous one.
+     */
+    long getMergeWindow();
+
+    /**
+     * Sets the milliseconds within which a command is merged into the
+     * previous one, <code>0</code> never merges.
+     * 
+     * @see IMergeableCommand
+     */
+    void setMergeWindow(long value);
+
     public static class HistoryEvent {
 
         private IUndoCommand command;
@@ -148,6 +199,30 @@ public interface ICommandHistory {
         }
     }
 
+    /**
+     * An old command left the history's memory.
+     * 
+     * @see ICommandHistory#setMaxCount(int)
+     * @see ICommandHistory#setMaxBytes(long)
+     */
+    public static class OnHistoryEvicted extends HistoryEvent {
+
+        private boolean spilled;
+
+        /**
+         * Whether the command was written to the spill log and can still be
+         * undone, else the history now starts after it.
+         */
+        public boolean isSpilled() {
+            return spilled;
+        }
+
+        public OnHistoryEvicted(IUndoCommand command, boolean spilled) {
+            super(command);
+            this.spilled = spilled;
+        }
+    }
+
     /**
      * @see CommandHistory#forward()
      */
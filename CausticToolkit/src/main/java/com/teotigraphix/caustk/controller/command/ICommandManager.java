@@ -19,16 +19,96 @@
 
 package com.teotigraphix.caustk.controller.command;
 
+import java.io.File;
+import java.io.IOException;
+
+import com.teotigraphix.caustic.engine.EngineFuture;
+
 public interface ICommandManager {
 
     void execute(String message, Object... args);
 
+    /**
+     * Executes a command on a worker thread, in order with the other commands
+     * of its device.
+     * 
+     * @return The future of the execution, failed with the command's error.
+     */
+    EngineFuture<Void> executeAsync(String message, Object... args);
+
     int undo();
 
     int redo();
 
+    void put(String message, ICommandFactory factory);
+
     void put(String message, Class<?> command);
 
     void clearHistory();
 
+    /**
+     * Opens or joins a transaction on the calling thread, its undo commands
+     * become one history entry and its engine messages one batch.
+     */
+    void beginTransaction();
+
+    /**
+     * Closes a transaction level, the outermost records and sends it, or
+     * rolls it back and throws when one of its commands failed.
+     */
+    void commit();
+
+    /**
+     * Undoes and closes the open transaction at every level.
+     */
+    void rollback();
+
+    /**
+     * Returns whether a transaction is open on the calling thread.
+     */
+    boolean isInTransaction();
+
+    /**
+     * Returns the undo history, its limits are set on it.
+     */
+    ICommandHistory getHistory();
+
+    /**
+     * Spills undo commands evicted from the history's memory to a log file.
+     * 
+     * @param file The log file, <code>null</code> drops evicted commands.
+     */
+    void setHistorySpill(File file);
+
+    /**
+     * Journals executed undo commands, undos, redos and transactions to a
+     * crash-safe file.
+     * 
+     * @param file The journal file, <code>null</code> closes the journal.
+     * @throws IOException the file could not be opened
+     */
+    void setJournal(File file) throws IOException;
+
+    /**
+     * Replays the journal's records on top of the loaded project.
+     * 
+     * @return The number of records replayed.
+     */
+    int replayJournal();
+
+    /**
+     * Marks the journal before a save serializes the project, the history is
+     * kept.
+     * 
+     * @return The mark, <code>-1</code> without a journal.
+     */
+    long markJournal();
+
+    /**
+     * Drops the records before a mark, called once the save is on disk.
+     * 
+     * @param mark The mark returned by {@link #markJournal()}.
+     */
+    void truncateJournal(long mark);
+
 }
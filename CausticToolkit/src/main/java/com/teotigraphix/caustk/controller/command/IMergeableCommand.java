@@ -0,0 +1,52 @@
+////////////////////////////////////////////////////////////////////////////////
+// Copyright 2013 Michael Schmalle - Teoti Graphix, LLC
+// 
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+// 
+// http://www.apache.org/licenses/LICENSE-2.0 
+// 
+// Unless required by applicable law or agreed to in writing, software 
+// distributed under the License is distributed on an "AS IS" BASIS, 
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and 
+// limitations under the License
+// 
+// Author: Michael Schmalle, Principal Architect
+// mschmalle at teotigraphix dot com
+////////////////////////////////////////////////////////////////////////////////
+
+
+package com.teotigraphix.caustk.controller.command;
+
+/**
+ * An undo command that can absorb the next command on the same target, so a
+ * continuous gesture such as a knob drag is one history entry.
+ * <p>
+ * The {@link CommandHistory} offers a new command to the head entry when it
+ * arrives within the merge window of the previous one; the new command is
+ * executed but not pushed.
+ * 
+ * @author Michael Schmalle
+ * @copyright Teoti Graphix, LLC
+ * @since 1.0
+ */
+public interface IMergeableCommand extends IUndoCommand {
+
+    /**
+     * Returns whether the next command changes the same target and can be
+     * merged into this one.
+     * 
+     * @param next The executed command that follows this one.
+     */
+    boolean canMerge(IUndoCommand next);
+
+    /**
+     * Merges the next command, this command keeps its own "before" state and
+     * takes the "after" state of the next.
+     * 
+     * @param next The executed command that follows this one.
+     */
+    void merge(IUndoCommand next);
+}
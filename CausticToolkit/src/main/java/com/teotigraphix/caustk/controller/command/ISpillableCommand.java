@@ -0,0 +1,48 @@
+////////////////////////////////////////////////////////////////////////////////
+// Copyright 2013 Michael Schmalle - Teoti Graphix, LLC
+// 
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+// 
+// http://www.apache.org/licenses/LICENSE-2.0 
+// 
+// Unless required by applicable law or agreed to in writing, software 
+// distributed under the License is distributed on an "AS IS" BASIS, 
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and 
+// limitations under the License
+// 
+// Author: Michael Schmalle, Principal Architect
+// mschmalle at teotigraphix dot com
+////////////////////////////////////////////////////////////////////////////////
+
+
+package com.teotigraphix.caustk.controller.command;
+
+/**
+ * An undo command that can be replaced by two OSC command messages, written
+ * to a {@link CommandSpillLog} when it is evicted from the memory of the
+ * {@link CommandHistory}.
+ * <p>
+ * Both messages are full command messages,
+ * <code>/[controller]/[device]/[control] [...params]</code>, that the
+ * {@link ICommandManager} executes without recording them.
+ * 
+ * @author Michael Schmalle
+ * @copyright Teoti Graphix, LLC
+ * @since 1.0
+ */
+public interface ISpillableCommand extends IUndoCommand {
+
+    /**
+     * Returns the message that performs the command again.
+     */
+    String getRedoMessage();
+
+    /**
+     * Returns the message that reverses the command, built from the state
+     * the command saved when it executed.
+     */
+    String getUndoMessage();
+}
@@ -20,14 +20,23 @@
 package com.teotigraphix.caustk.controller.command;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.StringTokenizer;
 
 /**
  * The OSCMessage contains the data used to contact the Caustic Core with device
  * messaging.
  * <p>
  * [controller]/[device]/[control] [...params]
+ * <p>
+ * A message is a flyweight over its text, parsing records the offsets of the
+ * address parts and parameters and nothing is copied until a String is asked
+ * for. {@link #getInt(int)} and {@link #getFloat(int)} read the parameter
+ * characters in place.
+ * <p>
+ * Messages that are only needed for one call come from a small pool,
+ * {@link #obtain(CharSequence)} and {@link #recycle()}. A recycled message
+ * must not be used again.
  * 
  * @author Michael Schmalle
  * @copyright Teoti Graphix, LLC
@@ -35,7 +44,35 @@ import java.util.StringTokenizer;
  */
 public class OSCMessage {
 
-    private static final String SPACE = " ";
+    /**
+     * The number of address parts; controller, device and control.
+     */
+    static final int ADDRESS_PARTS = 3;
+
+    private static final String DEFAULT_CONTROLLER = "caustic";
+
+    private static final int POOL_SIZE = 16;
+
+    /**
+     * Larger buffers are dropped on recycle instead of being pooled.
+     */
+    private static final int MAX_POOLED_BUFFER = 1024;
+
+    private static final OSCMessage[] POOL = new OSCMessage[POOL_SIZE];
+
+    private static int poolCount;
+
+    /**
+     * Exact float powers of ten, the fast path of {@link #getFloat(int)}.
+     */
+    private static final float[] POW10 = {
+            1f, 1e1f, 1e2f, 1e3f, 1e4f, 1e5f, 1e6f, 1e7f, 1e8f, 1e9f, 1e10f
+    };
+
+    /**
+     * Mantissas up to 2^24 are exact floats.
+     */
+    private static final long MAX_EXACT_MANTISSA = 1L << 24;
 
     //--------------------------------------------------------------------------
     // 
@@ -79,61 +116,134 @@ public class OSCMessage {
         instance = value;
     }
 
+    //----------------------------------
+    //  source
+    //----------------------------------
+
+    /**
+     * The parsed text, a String or the message's own buffer.
+     */
+    private CharSequence mSource;
+
+    /**
+     * The text messages are composed in, kept through recycling.
+     */
+    private StringBuilder mBuffer;
+
+    private int mControllerStart;
+
+    private int mControllerEnd;
+
+    private int mDeviceStart;
+
+    private int mDeviceEnd;
+
+    private int mControlStart;
+
+    private int mControlEnd;
+
+    private int mDataStart;
+
+    private int mDataEnd;
+
+    /**
+     * Start and end offset pairs of the parameters.
+     */
+    private int[] mParameterOffsets = new int[8];
+
+    private int mParameterCount;
+
+    /**
+     * Returns the parsed text, read in place by the {@link CommandRouter}.
+     */
+    final CharSequence getSource() {
+        return mSource;
+    }
+
+    /**
+     * Returns the start offset of an address part in the source.
+     * 
+     * @param part <code>0</code> controller, <code>1</code> device,
+     *            <code>2</code> control.
+     */
+    final int getPartStart(int part) {
+        return part == 0 ? mControllerStart : part == 1 ? mDeviceStart : mControlStart;
+    }
+
+    /**
+     * Returns the end offset of an address part in the source.
+     * 
+     * @param part <code>0</code> controller, <code>1</code> device,
+     *            <code>2</code> control.
+     */
+    final int getPartEnd(int part) {
+        return part == 0 ? mControllerEnd : part == 1 ? mDeviceEnd : mControlEnd;
+    }
+
     //----------------------------------
     //  controller
     //----------------------------------
 
-    String mController;
+    private String mController;
 
     /**
      * The controller name.
      */
     public String getController() {
+        if (mController == null && mSource != null)
+            mController = substring(mControllerStart, mControllerEnd);
         return mController;
     }
 
     public void setController(String value) {
-        mController = value;
+        StringBuilder text = new StringBuilder();
+        text.append('/').append(value).append(mSource, mControllerEnd, mSource.length());
+        parse(text.toString());
     }
 
     //----------------------------------
     //  device
     //----------------------------------
 
-    String device;
+    private String mDevice;
 
     /**
      * The String IDevice name.
      */
     public final String getDevice() {
-        return device;
+        if (mDevice == null && mSource != null)
+            mDevice = substring(mDeviceStart, mDeviceEnd);
+        return mDevice;
     }
 
     //----------------------------------
     //  control
     //----------------------------------
 
-    String control;
+    private String mControl;
 
     /**
      * The IDevice control name.
      */
     public final String getControl() {
-        return control;
+        if (mControl == null && mSource != null)
+            mControl = substring(mControlStart, mControlEnd);
+        return mControl;
     }
 
     //----------------------------------
     //  data
     //----------------------------------
 
-    Object data;
-
     /**
      * The arbitrary data based on the specific device, component and control
-     * involved in the message.
+     * involved in the message, the text of all parameters or
+     * <code>null</code>.
      */
     public final Object getData() {
-        return data;
+        if (mParameterCount == 0)
+            return null;
+        return substring(mDataStart, mDataEnd);
     }
 
     //----------------------------------
@@ -163,18 +273,29 @@ public class OSCMessage {
     //  parameters
     //----------------------------------
 
-    List<String> parameters;
+    private List<String> mParameters;
 
     /**
-     * The parameter list if any.
+     * The parameter list if any, created when first asked for; commands read
+     * parameters with {@link #getInt(int)}, {@link #getFloat(int)} and
+     * {@link #getParameter(int)}.
      */
     public final List<String> getParameters() {
-        // lazy init
-        //		if (mParameters == null && data != null) {
-        //			StrTokenizer st = new StrTokenizer(data.toString(), ' ', '"');
-        //			mParameters = st.getTokenList();
-        //		}
-        return parameters;
+        if (mParameters == null) {
+            List<String> result = new ArrayList<String>(mParameterCount);
+            for (int i = 0; i < mParameterCount; i++) {
+                result.add(getParameter(i));
+            }
+            mParameters = Collections.unmodifiableList(result);
+        }
+        return mParameters;
+    }
+
+    /**
+     * Returns the number of parameters.
+     */
+    public final int getParameterCount() {
+        return mParameterCount;
     }
 
     /**
@@ -186,11 +307,93 @@ public class OSCMessage {
     public String getParameter(int index) {
         if (!hasParameter(index))
             return null;
-        return parameters.get(index);
+        return substring(mParameterOffsets[index * 2], mParameterOffsets[index * 2 + 1]);
     }
 
     public boolean hasParameter(int index) {
-        return index < parameters.size();
+        return index >= 0 && index < mParameterCount;
+    }
+
+    /**
+     * Returns a parameter as an int, read without creating a String.
+     * 
+     * @param index The parameter index.
+     * @throws IndexOutOfBoundsException the parameter does not exist
+     * @throws NumberFormatException the parameter is not an int
+     */
+    public int getInt(int index) {
+        checkParameter(index);
+        final int start = mParameterOffsets[index * 2];
+        final int end = mParameterOffsets[index * 2 + 1];
+        int i = start;
+        boolean negative = false;
+        char c = mSource.charAt(i);
+        if (c == '-' || c == '+') {
+            negative = c == '-';
+            i++;
+        }
+        if (i == end)
+            throw newNumberFormatException(start, end);
+        long value = 0;
+        for (; i < end; i++) {
+            final int digit = mSource.charAt(i) - '0';
+            if (digit < 0 || digit > 9)
+                throw newNumberFormatException(start, end);
+            value = value * 10 + digit;
+            if (value > (long)Integer.MAX_VALUE + 1)
+                throw newNumberFormatException(start, end);
+        }
+        if (negative)
+            value = -value;
+        if (value > Integer.MAX_VALUE)
+            throw newNumberFormatException(start, end);
+        return (int)value;
+    }
+
+    /**
+     * Returns a parameter as a float, plain decimals such as
+     * <code>-12.375</code> are read without creating a String and give the
+     * same value as {@link Float#parseFloat(String)}.
+     * 
+     * @param index The parameter index.
+     * @throws IndexOutOfBoundsException the parameter does not exist
+     * @throws NumberFormatException the parameter is not a float
+     */
+    public float getFloat(int index) {
+        checkParameter(index);
+        final int start = mParameterOffsets[index * 2];
+        final int end = mParameterOffsets[index * 2 + 1];
+        int i = start;
+        boolean negative = false;
+        char c = mSource.charAt(i);
+        if (c == '-' || c == '+') {
+            negative = c == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int fraction = -1;
+        for (; i < end; i++) {
+            c = mSource.charAt(i);
+            if (c == '.' && fraction == -1) {
+                fraction = 0;
+                continue;
+            }
+            final int digit = c - '0';
+            if (digit < 0 || digit > 9 || mantissa > MAX_EXACT_MANTISSA)
+                break;
+            mantissa = mantissa * 10 + digit;
+            digits++;
+            if (fraction != -1)
+                fraction++;
+        }
+        // a correctly rounded division of two exact floats is the parsed value
+        if (i == end && digits > 0 && mantissa <= MAX_EXACT_MANTISSA
+                && fraction < POW10.length) {
+            float value = fraction > 0 ? mantissa / POW10[fraction] : mantissa;
+            return negative ? -value : value;
+        }
+        return Float.parseFloat(substring(start, end));
     }
 
     //--------------------------------------------------------------------------
@@ -208,9 +411,15 @@ public class OSCMessage {
      *            involved in the message.
      */
     public OSCMessage(String device, String control, Object data) {
-        this.device = device;
-        this.control = control;
-        this.data = data;
+        StringBuilder text = new StringBuilder();
+        text.append('/').append(DEFAULT_CONTROLLER);
+        text.append('/').append(device).append('/').append(control);
+        if (data != null)
+            text.append(' ').append(data);
+        parse(text.toString());
+    }
+
+    OSCMessage() {
     }
 
     //--------------------------------------------------------------------------
@@ -226,93 +435,128 @@ public class OSCMessage {
      * @return
      */
     public final OSCMessage add(Object value) {
-        if (parameters == null) {
-            parameters = new ArrayList<String>();
-            data = null;
+        StringBuilder buffer = getBuffer();
+        if (mSource != buffer) {
+            buffer.setLength(0);
+            buffer.append(mSource);
         }
-        parameters.add(value.toString());
-        if (data != null) {
-            StringBuffer sb = new StringBuffer();
-            sb.append(data);
-            sb.append(SPACE);
-            sb.append(value.toString());
-            data = sb.toString();
-        } else {
-            data = value.toString();
+        buffer.append(' ');
+        append(buffer, value);
+        return parse(buffer);
+    }
+
+    /**
+     * Parses a String OSC message into this message, the text is kept and
+     * read in place so it must not change while the message is used.
+     * 
+     * @param message The OSC message,
+     *            <code>/[controller]/[device]/[control] [...params]</code>.
+     * @return This message.
+     * @throws IllegalArgumentException the address has less than three parts
+     */
+    public final OSCMessage parse(CharSequence message) {
+        reset();
+        mSource = message;
+        final int length = message.length();
+
+        int i = skipWhitespace(message, 0, length);
+        int addressStart = i;
+        while (i < length && !Character.isWhitespace(message.charAt(i))) {
+            i++;
         }
+        final int addressEnd = i;
 
+        int part = 0;
+        int j = addressStart;
+        while (j < addressEnd && part < ADDRESS_PARTS) {
+            while (j < addressEnd && message.charAt(j) == '/') {
+                j++;
+            }
+            if (j == addressEnd)
+                break;
+            final int partStart = j;
+            while (j < addressEnd && message.charAt(j) != '/') {
+                j++;
+            }
+            if (part == 0) {
+                mControllerStart = partStart;
+                mControllerEnd = j;
+            } else if (part == 1) {
+                mDeviceStart = partStart;
+                mDeviceEnd = j;
+            } else {
+                mControlStart = partStart;
+                mControlEnd = j;
+            }
+            part++;
+        }
+        if (part < ADDRESS_PARTS) {
+            mSource = null;
+            throw new IllegalArgumentException("Malformed OSC message: " + message);
+        }
+
+        i = skipWhitespace(message, i, length);
+        mDataStart = i;
+        mDataEnd = i;
+        while (i < length) {
+            final int start = i;
+            while (i < length && !Character.isWhitespace(message.charAt(i))) {
+                i++;
+            }
+            addParameter(start, i);
+            mDataEnd = i;
+            i = skipWhitespace(message, i, length);
+        }
         return this;
     }
 
+    /**
+     * Returns this message to the pool, it must not be used after.
+     */
+    public final void recycle() {
+        reset();
+        mSource = null;
+        instance = null;
+        mException = null;
+        mResult = null;
+        result = 0f;
+        if (mBuffer != null && mBuffer.capacity() > MAX_POOLED_BUFFER)
+            mBuffer = null;
+        synchronized (POOL) {
+            if (poolCount < POOL_SIZE)
+                POOL[poolCount++] = this;
+        }
+    }
+
     /**
      * Creates and returns the constructed OSC message for the core.
      */
     @Override
     public String toString() {
-        StringBuffer result = new StringBuffer();
-        result.append("/");
-        result.append(mController != null ? mController : "caustic");
-        result.append("/");
-        result.append(device);
-        result.append("/");
-        result.append(control);
-
-        if (data != null) {
-            result.append(" ");
-            result.append(data);
-        }
-
-        return result.toString();
+        return mSource != null ? substring(0, mDataEnd).trim() : "";
     }
 
     public String toCommandString() {
-        StringBuffer result = new StringBuffer();
-        result.append("/");
-        result.append(getController());
-        result.append("/");
-        result.append(getDevice());
-        result.append("/");
-        result.append(getControl());
+        StringBuilder result = new StringBuilder();
+        result.append('/');
+        result.append(mSource, mControllerStart, mControllerEnd);
+        result.append('/');
+        result.append(mSource, mDeviceStart, mDeviceEnd);
+        result.append('/');
+        result.append(mSource, mControlStart, mControlEnd);
         // no data, just raw command
         return result.toString();
     }
 
     /**
-     * Initializes a string message and returns a new {@link OSCMessage} with
+     * Initializes a string message and returns an {@link OSCMessage} with
      * populated values from the OSC string.
      * 
      * @param message The String OSC message to digest.
-     * @return A new {@link OSCMessage} based on the digested String message.
+     * @return A pooled {@link OSCMessage} based on the digested String message.
      */
     public static OSCMessage initialize(String message) {
-        StringTokenizer t = new StringTokenizer(message + "\n");
-        String command = t.nextToken();
-        String data = null;
-        try {
-            data = t.nextToken("\n").trim();
-        } catch (Exception e) {
-            // TODO: handle exception
-        }
-
-        t = new StringTokenizer(command);
-        String base = t.nextToken("/");
-        String device = t.nextToken("/");
-        String control = t.nextToken("/");
-
-        ArrayList<String> datas = new ArrayList<String>();
-        if (data != null) {
-            t = new StringTokenizer(data);
-            while (t.hasMoreTokens()) {
-                String token = t.nextToken();
-                datas.add(token);
-            }
-        }
-
-        OSCMessage result = OSCMessage.create(device, control, data);
-        result.mController = base;
-        result.parameters = datas;
-
-        return result;
+        return obtain(message);
     }
 
     //--------------------------------------------------------------------------
@@ -321,6 +565,35 @@ public class OSCMessage {
     // 
     //--------------------------------------------------------------------------
 
+    /**
+     * Returns a pooled message parsed from the text, see
+     * {@link #parse(CharSequence)}.
+     * 
+     * @param message The String OSC message.
+     */
+    public static OSCMessage obtain(CharSequence message) {
+        return obtain().parse(message);
+    }
+
+    /**
+     * Returns a pooled message composed in its own buffer from an address and
+     * parameters.
+     * 
+     * @param address The address, <code>/[controller]/[device]/[control]</code>.
+     * @param args The parameters, written with their String form.
+     */
+    public static OSCMessage obtain(String address, Object... args) {
+        OSCMessage result = obtain();
+        StringBuilder buffer = result.getBuffer();
+        buffer.setLength(0);
+        buffer.append(address);
+        for (Object value : args) {
+            buffer.append(' ');
+            append(buffer, value);
+        }
+        return result.parse(buffer);
+    }
+
     /**
      * Creates a new OSCMessage message event.
      * 
@@ -338,4 +611,79 @@ public class OSCMessage {
         return new OSCMessage(device, control, null);
     }
 
+    //--------------------------------------------------------------------------
+    // 
+    //  Private :: Methods
+    // 
+    //--------------------------------------------------------------------------
+
+    private static OSCMessage obtain() {
+        synchronized (POOL) {
+            if (poolCount > 0) {
+                OSCMessage result = POOL[--poolCount];
+                POOL[poolCount] = null;
+                return result;
+            }
+        }
+        return new OSCMessage();
+    }
+
+    private StringBuilder getBuffer() {
+        if (mBuffer == null)
+            mBuffer = new StringBuilder(64);
+        return mBuffer;
+    }
+
+    private void reset() {
+        mController = null;
+        mDevice = null;
+        mControl = null;
+        mParameters = null;
+        mParameterCount = 0;
+        mDataStart = 0;
+        mDataEnd = 0;
+    }
+
+    private void addParameter(int start, int end) {
+        if (mParameterCount * 2 == mParameterOffsets.length) {
+            int[] offsets = new int[mParameterOffsets.length * 2];
+            System.arraycopy(mParameterOffsets, 0, offsets, 0, mParameterOffsets.length);
+            mParameterOffsets = offsets;
+        }
+        mParameterOffsets[mParameterCount * 2] = start;
+        mParameterOffsets[mParameterCount * 2 + 1] = end;
+        mParameterCount++;
+    }
+
+    private void checkParameter(int index) {
+        if (!hasParameter(index))
+            throw new IndexOutOfBoundsException("Parameter " + index + " of "
+                    + mParameterCount);
+    }
+
+    private String substring(int start, int end) {
+        return mSource.subSequence(start, end).toString();
+    }
+
+    private NumberFormatException newNumberFormatException(int start, int end) {
+        return new NumberFormatException("For input string: \"" + substring(start, end)
+                + "\"");
+    }
+
+    private static int skipWhitespace(CharSequence text, int index, int length) {
+        while (index < length && Character.isWhitespace(text.charAt(index))) {
+            index++;
+        }
+        return index;
+    }
+
+    private static void append(StringBuilder buffer, Object value) {
+        if (value instanceof Float)
+            buffer.append(((Float)value).floatValue());
+        else if (value instanceof Integer)
+            buffer.append(((Integer)value).intValue());
+        else
+            buffer.append(value);
+    }
+
 }
@@ -30,7 +30,7 @@ package com.teotigraphix.caustk.controller.command;
  * functions assume the CommandHistory dependency has been provided as the
  * public property 'history'.
  */
-public abstract class UndoCommand extends UndoCommandBase {
+public abstract class UndoCommand extends UndoCommandBase implements IMergeableCommand {
 
     ICommandHistory history;
 
@@ -62,6 +62,66 @@ public abstract class UndoCommand extends UndoCommandBase {
         isCancelled = true;
     }
 
+    /**
+     * Returns <code>false</code>, commands that change a continuous value
+     * return whether the next command has the same target.
+     */
+    @Override
+    public boolean canMerge(IUndoCommand next) {
+        return false;
+    }
+
+    /**
+     * Takes the next command's context; redo reads the "after" value from the
+     * context and undo uses the "before" state this command saved.
+     */
+    @Override
+    public void merge(IUndoCommand next) {
+        setContext(next.getContext());
+    }
+
+    /**
+     * Returns whether the next command is of the same class and its first
+     * parameters equal this command's, the target of a merge.
+     * 
+     * @param next The next command.
+     * @param count The number of parameters that name the target.
+     */
+    protected final boolean isSameTarget(IUndoCommand next, int count) {
+        if (next.getClass() != getClass())
+            return false;
+        OSCMessage message = getContext().getMessage();
+        OSCMessage other = next.getContext().getMessage();
+        for (int i = 0; i < count; i++) {
+            String value = message.getParameter(i);
+            if (value == null || !value.equals(other.getParameter(i)))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns a message to this command's address with other parameters, for
+     * {@link ISpillableCommand#getUndoMessage()}.
+     * 
+     * @param args The parameters.
+     */
+    protected final String toCommandMessage(Object... args) {
+        StringBuilder result = new StringBuilder(getContext().getMessage().toCommandString());
+        for (Object value : args) {
+            result.append(' ').append(value);
+        }
+        return result.toString();
+    }
+
+    /**
+     * Returns the message that executed this command, for
+     * {@link ISpillableCommand#getRedoMessage()}.
+     */
+    protected final String toExecutedMessage() {
+        return getContext().getMessage().toString();
+    }
+
     @Override
     protected abstract void doExecute();
 
@@ -19,7 +19,13 @@
 
 package com.teotigraphix.caustk.controller.command;
 
-public abstract class UndoCommandBase extends CommandBase implements IUndoCommand {
+public abstract class UndoCommandBase extends CommandBase implements IUndoCommand,
+        ISizedCommand {
+
+    /**
+     * The estimated bytes of a command, its context and its undo state.
+     */
+    private static final int BASE_SIZE = 160;
 
     /**
      * Keeps track of whether this command has been executed, to prevent undoing
@@ -65,6 +71,18 @@ public abstract class UndoCommandBase extends CommandBase implements IUndoComman
     public void cancel() {
     }
 
+    /**
+     * Returns an estimate from the message text, commands that keep large
+     * undo state override.
+     */
+    @Override
+    public int getRetainedSize() {
+        OSCMessage message = getContext() != null ? getContext().getMessage() : null;
+        if (message == null || message.getSource() == null)
+            return BASE_SIZE;
+        return BASE_SIZE + 2 * message.getSource().length();
+    }
+
     /**
      * Subclasses must override this function.
      * <p>
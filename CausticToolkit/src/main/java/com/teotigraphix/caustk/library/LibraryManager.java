@@ -34,6 +34,7 @@ import com.teotigraphix.caustic.core.CausticException;
 import com.teotigraphix.caustic.core.IMemento;
 import com.teotigraphix.caustic.core.XMLMemento;
 import com.teotigraphix.caustic.desktop.RuntimeUtils;
+import com.teotigraphix.caustic.engine.EngineLane;
 import com.teotigraphix.caustic.internal.rack.Rack;
 import com.teotigraphix.caustic.internal.utils.PatternUtils;
 import com.teotigraphix.caustic.machine.IMachine;
@@ -112,6 +113,22 @@ public class LibraryManager implements ILibraryManager {
         return registry.getLibraries();
     }
 
+    private final EventObserver<OnProjectManagerChange> projectManagerChangeObserver =
+            new EventObserver<OnProjectManagerChange>() {
+                @Override
+                public void trigger(OnProjectManagerChange object) {
+                    if (object.getKind() == ProjectManagerChangeKind.CREATE) {
+                        //onProjectManagerCreateHandler();
+                    } else if (object.getKind() == ProjectManagerChangeKind.LOAD) {
+                        onProjectManagerLoadHandler();
+                    } else if (object.getKind() == ProjectManagerChangeKind.SAVE) {
+                        onProjectManagerSaveHandler();
+                    } else if (object.getKind() == ProjectManagerChangeKind.EXIT) {
+                        onProjectManagerExitHandler();
+                    }
+                }
+            };
+
     public LibraryManager(ICaustkController controller) {
         this.controller = controller;
 
@@ -125,21 +142,8 @@ public class LibraryManager implements ILibraryManager {
 
         registry = new LibraryRegistry(librariesDirectory);
 
-        controller.getDispatcher().register(OnProjectManagerChange.class,
-                new EventObserver<OnProjectManagerChange>() {
-                    @Override
-                    public void trigger(OnProjectManagerChange object) {
-                        if (object.getKind() == ProjectManagerChangeKind.CREATE) {
-                            //onProjectManagerCreateHandler();
-                        } else if (object.getKind() == ProjectManagerChangeKind.LOAD) {
-                            onProjectManagerLoadHandler();
-                        } else if (object.getKind() == ProjectManagerChangeKind.SAVE) {
-                            onProjectManagerSaveHandler();
-                        } else if (object.getKind() == ProjectManagerChangeKind.EXIT) {
-                            onProjectManagerExitHandler();
-                        }
-                    }
-                });
+        controller.getDispatcher().registerWeak(OnProjectManagerChange.class,
+                projectManagerChangeObserver);
     }
 
     protected void onProjectManagerSaveHandler() {
@@ -278,6 +282,16 @@ public class LibraryManager implements ILibraryManager {
 
     @Override
     public void importSong(Library library, File causticFile) throws IOException {
+        // the import floods the core, live notes go ahead of it
+        EngineLane.begin(EngineLane.BULK);
+        try {
+            importSongFile(library, causticFile);
+        } finally {
+            EngineLane.end();
+        }
+    }
+
+    private void importSongFile(Library library, File causticFile) throws IOException {
         //----------------------------------------------------------------------
         // clear the core rack
         RackMessage.BLANKRACK.send(controller);
@@ -161,6 +161,7 @@ public class ProjectManager implements IProjectManager {
     @Override
     public void exit() throws IOException {
         save();
+        controller.getCommandManager().setJournal(null);
         Project oldProject = project;
         project.close();
         project = null;
@@ -185,8 +186,11 @@ public class ProjectManager implements IProjectManager {
     }
 
     protected void flushProjectFile() throws IOException {
+        // commands journaled while serializing may be missing from the file
+        long mark = controller.getCommandManager().markJournal();
         String data = controller.getSerializeService().toString(project);
         FileUtils.writeStringToFile(project.getFile(), data);
+        controller.getCommandManager().truncateJournal(mark);
 
         saveProjectPreferences();
     }
@@ -206,6 +210,9 @@ public class ProjectManager implements IProjectManager {
         project.open();
         controller.getDispatcher().trigger(
                 new OnProjectManagerChange(project, ProjectManagerChangeKind.LOAD));
+        // the commands of a session that ended without a save
+        controller.getCommandManager().setJournal(toJournalFile(file));
+        controller.getCommandManager().replayJournal();
         return project;
     }
 
@@ -214,6 +221,10 @@ public class ProjectManager implements IProjectManager {
         project = new Project();
         project.setFile(new File(projectDirectory, projectFile.getPath()));
         project.setInfo(createInfo());
+        File journal = toJournalFile(project.getFile());
+        FileUtils.deleteQuietly(journal);
+        journal.getParentFile().mkdirs();
+        controller.getCommandManager().setJournal(journal);
         project.open();
         controller.getDispatcher().trigger(
                 new OnProjectManagerChange(project, ProjectManagerChangeKind.CREATE));
@@ -234,6 +245,13 @@ public class ProjectManager implements IProjectManager {
         return info;
     }
 
+    /**
+     * Returns the command journal beside a project file.
+     */
+    private static File toJournalFile(File projectFile) {
+        return new File(projectFile.getParentFile(), projectFile.getName() + ".journal");
+    }
+
     private File toProjectFile(File file) {
         if (file.isAbsolute())
             return file;
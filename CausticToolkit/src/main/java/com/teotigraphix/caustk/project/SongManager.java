@@ -51,27 +51,30 @@ public class SongManager implements ISongManager {
         return trackSong;
     }
 
+    private final EventObserver<OnProjectManagerChange> projectManagerChangeObserver =
+            new EventObserver<OnProjectManagerChange>() {
+                @Override
+                public void trigger(OnProjectManagerChange object) {
+                    if (object.getKind() == ProjectManagerChangeKind.CREATE) {
+                        onProjectManagerCreateHandler();
+                    } else if (object.getKind() == ProjectManagerChangeKind.LOAD) {
+                        onProjectManagerLoadHandler();
+                    } else if (object.getKind() == ProjectManagerChangeKind.SAVE) {
+                        onProjectManagerSaveHandler();
+                    } else if (object.getKind() == ProjectManagerChangeKind.EXIT) {
+                        onProjectManagerExitHandler();
+                    }
+                }
+            };
+
     public SongManager(ICaustkController controller, File applicationRoot) {
         this.controller = controller;
         this.applicationRoot = applicationRoot;
 
         songDirectory = new File(applicationRoot, "songs");
 
-        controller.getDispatcher().register(OnProjectManagerChange.class,
-                new EventObserver<OnProjectManagerChange>() {
-                    @Override
-                    public void trigger(OnProjectManagerChange object) {
-                        if (object.getKind() == ProjectManagerChangeKind.CREATE) {
-                            onProjectManagerCreateHandler();
-                        } else if (object.getKind() == ProjectManagerChangeKind.LOAD) {
-                            onProjectManagerLoadHandler();
-                        } else if (object.getKind() == ProjectManagerChangeKind.SAVE) {
-                            onProjectManagerSaveHandler();
-                        } else if (object.getKind() == ProjectManagerChangeKind.EXIT) {
-                            onProjectManagerExitHandler();
-                        }
-                    }
-                });
+        controller.getDispatcher().registerWeak(OnProjectManagerChange.class,
+                projectManagerChangeObserver);
     }
 
     protected void onProjectManagerExitHandler() {
@@ -28,6 +28,7 @@ import java.util.Map;
 import org.androidtransfuse.event.EventObserver;
 
 import com.teotigraphix.caustic.core.CausticException;
+import com.teotigraphix.caustic.core.EventScope;
 import com.teotigraphix.caustic.machine.IMachine;
 import com.teotigraphix.caustk.controller.ICaustkController;
 import com.teotigraphix.caustk.controller.ISerialize;
@@ -163,11 +164,17 @@ public class TrackSong extends Song implements ISerialize {
     public void initializeTracks() {
         for (Track track : tracks.values()) {
             track.setDispatcher(getDispatcher());
-            getDispatcher().register(OnTrackPhraseAdd.class, onTrackPhraseHandler);
-            getDispatcher().register(OnTrackPhraseRemove.class, onTrackPhraseRemoveHandler);
         }
+        // the handlers serve every track, registered once per initialize
+        if (trackScope != null)
+            trackScope.close();
+        trackScope = getDispatcher().createScope();
+        trackScope.register(OnTrackPhraseAdd.class, onTrackPhraseHandler);
+        trackScope.register(OnTrackPhraseRemove.class, onTrackPhraseRemoveHandler);
     }
 
+    private transient EventScope trackScope;
+
     private transient EventObserver<OnTrackPhraseAdd> onTrackPhraseHandler = new EventObserver<OnTrackPhraseAdd>() {
         @Override
         public void trigger(OnTrackPhraseAdd object) {
@@ -24,6 +24,8 @@ import java.util.List;
 
 import com.teotigraphix.caustic.core.CausticException;
 import com.teotigraphix.caustic.core.IMemento;
+import com.teotigraphix.caustic.core.MessageBatch;
+import com.teotigraphix.caustic.engine.EngineLane;
 import com.teotigraphix.caustic.internal.sequencer.PatternSequencerUtils;
 import com.teotigraphix.caustic.machine.IMachine;
 import com.teotigraphix.caustic.sequencer.IPatternSequencer2;
@@ -62,42 +64,53 @@ public class TrackUtils {
         MixerPanelInfo mixerInfo = libraryScene.getMixerInfo();
         EffectRackInfo effectRackInfo = libraryScene.getEffectRackInfo();
 
-        // Restore the master channel mixer settings
-        controller.getSoundMixer().pasteMasterChannel(mixerInfo.getMasterMemento());
-
-        // Create the scene Tones
-        List<RackInfoItem> items = rackInfo.getItems();
-
-        trackSong.setNumTracks(6);
-
-        // loop through the Track instances and get the info item for the index
-        for (Track track : trackSong.getTracks()) {
-            int index = track.getIndex();
-            RackInfoItem item = items.get(index);
-
-            // no machine existed in the scene when created
-            if (!item.isActive())
-                continue;
-
-            // 1) Create the Tone for the Track
-            ToneDescriptor descriptor = item.createDescriptor();
-            Tone tone = null;
-            try {
-                tone = controller.getSoundSource().create(descriptor);
-            } catch (CausticException e) {
-                e.printStackTrace();
+        // the whole scene is sent to the core in one bulk batch
+        EngineLane.begin(EngineLane.BULK);
+        MessageBatch.begin(controller);
+        try {
+            // Restore the master channel mixer settings
+            controller.getSoundMixer().pasteMasterChannel(mixerInfo.getMasterMemento());
+
+            // Create the scene Tones
+            List<RackInfoItem> items = rackInfo.getItems();
+
+            trackSong.setNumTracks(6);
+
+            // loop through the Track instances and get the info item for the
+            // index
+            for (Track track : trackSong.getTracks()) {
+                int index = track.getIndex();
+                RackInfoItem item = items.get(index);
+
+                // no machine existed in the scene when created
+                if (!item.isActive())
+                    continue;
+
+                // 1) Create the Tone for the Track
+                ToneDescriptor descriptor = item.createDescriptor();
+                Tone tone = null;
+                try {
+                    tone = controller.getSoundSource().create(descriptor);
+                } catch (CausticException e) {
+                    e.printStackTrace();
+                }
+
+                // 2) Set the mixer settings
+                IMemento[] channels = mixerInfo.getMemento().getChild("channels")
+                        .getChildren("channel");
+                if (channels.length > 0)
+                    controller.getSoundMixer().pasteMixerChannel(tone.getMachine(),
+                            channels[index]);
+
+                // 3) Add the effects
+                IMemento[] children = effectRackInfo.getMemento().getChildren("channel");
+                if (children.length > 0)
+                    controller.getSoundMixer().pasteEffectChannel(tone.getMachine(),
+                            children[index]);
             }
-
-            // 2) Set the mixer settings
-            IMemento[] channels = mixerInfo.getMemento().getChild("channels")
-                    .getChildren("channel");
-            if (channels.length > 0)
-                controller.getSoundMixer().pasteMixerChannel(tone.getMachine(), channels[index]);
-
-            // 3) Add the effects
-            IMemento[] children = effectRackInfo.getMemento().getChildren("channel");
-            if (children.length > 0)
-                controller.getSoundMixer().pasteEffectChannel(tone.getMachine(), children[index]);
+        } finally {
+            MessageBatch.end();
+            EngineLane.end();
         }
     }
 
@@ -0,0 +1,45 @@
+////////////////////////////////////////////////////////////////////////////////
+// Copyright 2013 Michael Schmalle - Teoti Graphix, LLC
+// 
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+// 
+// http://www.apache.org/licenses/LICENSE-2.0 
+// 
+// Unless required by applicable law or agreed to in writing, software 
+// distributed under the License is distributed on an "AS IS" BASIS, 
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and 
+// limitations under the License
+// 
+// Author: Michael Schmalle, Principal Architect
+// mschmalle at teotigraphix dot com
+////////////////////////////////////////////////////////////////////////////////
+
+
+package com.teotigraphix.caustk.sequencer;
+
+/**
+ * Listens to the transport position of the {@link SystemSequencer} without
+ * event objects, for observers of every step such as step lights.
+ * 
+ * @author Michael Schmalle
+ * @copyright Teoti Graphix, LLC
+ * @since 1.0
+ * @see SystemSequencer#addTransportListener(ITransportListener)
+ */
+public interface ITransportListener {
+
+    /**
+     * Called on the transport thread once per step, a beat or measure change
+     * comes with its first step. Must return quickly, every listener is
+     * called before the transport moves on.
+     * 
+     * @param measure The measure the step falls in.
+     * @param beat The beat the step falls in.
+     * @param step The current step in the measure.
+     * @param nanoTime The {@link System#nanoTime()} of the change.
+     */
+    void onTick(int measure, int beat, int step, long nanoTime);
+}
@@ -23,6 +23,8 @@ import com.teotigraphix.caustic.output.IOutputPanel;
 import com.teotigraphix.caustic.output.IOutputPanel.Mode;
 import com.teotigraphix.caustk.controller.ICaustkController;
 import com.teotigraphix.caustk.controller.IControllerAPI;
+import com.teotigraphix.caustk.controller.command.ICommand;
+import com.teotigraphix.caustk.controller.command.ICommandFactory;
 import com.teotigraphix.caustk.sequencer.SystemSequencer.OnSystemSequencerPlay;
 import com.teotigraphix.caustk.sequencer.SystemSequencer.OnSystemSequencerStop;
 import com.teotigraphix.caustk.sequencer.SystemSequencer.SystemSequencerPlayCommand;
@@ -40,11 +42,26 @@ public class SequencerAPI implements IControllerAPI {
 
     private void commitCommands() {
         controller.getCommandManager().put(SystemSequencer.COMMAND_PLAY,
-                SystemSequencerPlayCommand.class);
+                new ICommandFactory() {
+                    @Override
+                    public ICommand create() {
+                        return new SystemSequencerPlayCommand();
+                    }
+                });
         controller.getCommandManager().put(SystemSequencer.COMMAND_STOP,
-                SystemSequencerStopCommand.class);
+                new ICommandFactory() {
+                    @Override
+                    public ICommand create() {
+                        return new SystemSequencerStopCommand();
+                    }
+                });
         controller.getCommandManager().put(SystemSequencer.COMMAND_TEMPO,
-                SystemSequencerTempoCommand.class);
+                new ICommandFactory() {
+                    @Override
+                    public ICommand create() {
+                        return new SystemSequencerTempoCommand();
+                    }
+                });
 
     }
 
@@ -19,78 +19,299 @@
 
 package com.teotigraphix.caustk.sequencer;
 
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
+import com.teotigraphix.caustic.sequencer.IStepPhrase.Resolution;
 import com.teotigraphix.caustk.controller.ICaustkController;
 
+/**
+ * Clocks the steps of the playing measure between the engine's beat
+ * callbacks.
+ * <p>
+ * Steps fire at <code>System.nanoTime()</code> deadlines counted from an
+ * anchor, so rounding never adds up. Every engine beat moves the anchor to the
+ * beat's step; a late clock catches up at once, an early one waits out its
+ * lead, a loop or seek jumps. Tempo and resolution changes keep the phase.
+ * <p>
+ * One daemon thread runs the clock until {@link #dispose()}, it waits while
+ * the sequencer is stopped.
+ */
 public class StepEngine {
-    private int currentStep;
 
-    private TimerTask task;
+    private static final int BEATS_IN_MEASURE = 4;
 
-    private Timer timer;
+    private static final double NANOS_PER_MINUTE = 60000000000d;
 
     private final ICaustkController controller;
 
-    private int tempo;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Condition changed = lock.newCondition();
+
+    private Thread thread;
+
+    private boolean running;
+
+    private boolean disposed;
+
+    private float tempo = 120;
+
+    private Resolution resolution = Resolution.SIXTEENTH;
+
+    private int stepsInMeasure = Resolution.toSteps(Resolution.SIXTEENTH);
+
+    /**
+     * Nanoseconds per step at the tempo and resolution.
+     */
+    private double stepNanos;
+
+    /**
+     * The time of the step at the anchor position, deadlines are counted
+     * from it.
+     */
+    private long anchorNanos;
+
+    private long anchorPosition;
+
+    /**
+     * The steps since the start of the song of the next step to fire.
+     */
+    private long nextPosition;
+
+    private int currentStep;
 
     public StepEngine(ICaustkController systemController) {
         this.controller = systemController;
+        updateStepNanos();
+    }
+
+    //--------------------------------------------------------------------------
+    // Public Property API
+    //--------------------------------------------------------------------------
+
+    /**
+     * Returns the step in the measure fired last.
+     */
+    public int getCurrentStep() {
+        lock.lock();
+        try {
+            return currentStep;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public float getTempo() {
+        lock.lock();
+        try {
+            return tempo;
+        } finally {
+            lock.unlock();
+        }
     }
 
     public void setTempo(float value) {
-        tempo = (int)value;
-        if (timer != null) {
-            stopStepLoop();
-            startStepLoop();
+        if (value <= 0)
+            throw new IllegalArgumentException("tempo <= 0");
+        lock.lock();
+        try {
+            rebase(System.nanoTime());
+            tempo = value;
+            updateStepNanos();
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public Resolution getResolution() {
+        lock.lock();
+        try {
+            return resolution;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Sets the length of a step, finer than {@link Resolution#SIXTEENTH} for
+     * 32nd or 64th note steps; the steps in a measure follow
+     * {@link Resolution#toSteps(Resolution)}.
+     */
+    public void setResolution(Resolution value) {
+        lock.lock();
+        try {
+            rebase(System.nanoTime());
+            int steps = Resolution.toSteps(value);
+            // the next step keeps its time, rounded up to the new grid
+            anchorPosition = (anchorPosition * steps + stepsInMeasure - 1) / stepsInMeasure;
+            nextPosition = anchorPosition;
+            resolution = value;
+            stepsInMeasure = steps;
+            updateStepNanos();
+            changed.signalAll();
+        } finally {
+            lock.unlock();
         }
     }
 
+    //--------------------------------------------------------------------------
+    // Public Method API
+    //--------------------------------------------------------------------------
+
     public void stop() {
-        stopStepLoop();
-        currentStep = 0;
+        lock.lock();
+        try {
+            running = false;
+            currentStep = 0;
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
     }
 
     public void start(final int beat, float tempo) {
         setTempo(tempo);
-        beatChanged(beat);
+        lock.lock();
+        try {
+            if (disposed || !controller.api(SequencerAPI.class).isPlaying())
+                return;
+            nextPosition = toPosition(beat);
+            anchorPosition = nextPosition;
+            anchorNanos = System.nanoTime();
+            running = true;
+            startThread();
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
     }
 
+    /**
+     * Stops the clock and ends its thread, the engine can not be started
+     * again.
+     */
+    public void dispose() {
+        final Thread stopped;
+        lock.lock();
+        try {
+            disposed = true;
+            running = false;
+            stopped = thread;
+            thread = null;
+        } finally {
+            lock.unlock();
+        }
+        if (stopped != null)
+            stopped.interrupt();
+    }
+
+    /**
+     * Locks the clock's phase to an engine beat.
+     */
     public void beatChanged(final int beat) {
-        if (beat == 0 || beat == 4 || beat == 8 || beat == 12 || beat == 16 || beat == 20
-                || beat == 24 || beat == 28) {
-            currentStep = 0;
-            startStepLoop();
+        final long now = System.nanoTime();
+        lock.lock();
+        try {
+            if (!running)
+                return;
+            final long position = toPosition(beat);
+            if (position < 0)
+                return;
+            final long lead = nextPosition - position;
+            if (lead < 0 || lead > stepsInMeasure / BEATS_IN_MEASURE) {
+                // late, or a loop or seek, the beat's step fires now
+                nextPosition = position;
+            }
+            anchorPosition = position;
+            anchorNanos = now;
+            changed.signalAll();
+        } finally {
+            lock.unlock();
         }
     }
 
-    private void startStepLoop() {
-        if (timer != null || !controller.api(SequencerAPI.class).isPlaying())
-            return;
+    //--------------------------------------------------------------------------
+    // Private Method API
+    //--------------------------------------------------------------------------
 
-        task = new TimerTask() {
+    private void startThread() {
+        if (thread != null)
+            return;
+        thread = new Thread(new Runnable() {
             @Override
             public void run() {
-                final int step = currentStep;
-                controller.getSystemSequencer().stepChanged(step);
-                currentStep++;
+                try {
+                    runClock();
+                } catch (InterruptedException e) {
+                    // disposed
+                }
             }
-        };
-
-        timer = new Timer();
-        timer.scheduleAtFixedRate(task, 0, ((60000 / tempo) / 4));
+        }, "StepEngine");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MAX_PRIORITY);
+        thread.start();
     }
 
-    private void stopStepLoop() {
-        //synchronized (timer)
-        //{
-        if (timer != null) {
-            timer.cancel();
-            //timer.purge();
-            timer = null;
+    private void runClock() throws InterruptedException {
+        while (true) {
+            final int step;
+            final int beat;
+            final int measure;
+            lock.lock();
+            try {
+                while (!running) {
+                    changed.await();
+                }
+                final long wait = getDeadline(nextPosition) - System.nanoTime();
+                if (wait > 0) {
+                    // woken early by a beat or tempo change, the deadline moves
+                    changed.awaitNanos(wait);
+                    continue;
+                }
+                step = (int)(nextPosition % stepsInMeasure);
+                beat = (int)(nextPosition * BEATS_IN_MEASURE / stepsInMeasure);
+                measure = (int)(nextPosition / stepsInMeasure);
+                currentStep = step;
+                nextPosition++;
+            } finally {
+                lock.unlock();
+            }
+            controller.getSystemSequencer().stepChanged(step, beat, measure);
         }
-        //}
     }
 
+    private long getDeadline(long position) {
+        return anchorNanos + Math.round((position - anchorPosition) * stepNanos);
+    }
+
+    /**
+     * Moves the anchor to the next step's deadline so a new step length
+     * starts from there.
+     */
+    private void rebase(long now) {
+        if (!running)
+            return;
+        anchorNanos = Math.max(now, getDeadline(nextPosition));
+        anchorPosition = nextPosition;
+    }
+
+    /**
+     * Returns the position of a beat's first step, <code>-1</code> when the
+     * beat does not start a step.
+     */
+    private long toPosition(int beat) {
+        final long steps = (long)beat * stepsInMeasure;
+        return steps % BEATS_IN_MEASURE == 0 ? steps / BEATS_IN_MEASURE : -1;
+    }
+
+    private void updateStepNanos() {
+        stepNanos = NANOS_PER_MINUTE / tempo * BEATS_IN_MEASURE / stepsInMeasure;
+    }
+
+    @Override
+    public String toString() {
+        return "StepEngine[" + tempo + "bpm, " + resolution + ", step " + getCurrentStep() + "]";
+    }
 }
@@ -30,6 +30,8 @@ import com.teotigraphix.caustic.output.IOutputPanel.Mode;
 import com.teotigraphix.caustk.controller.ICaustkController;
 import com.teotigraphix.caustk.controller.command.CommandBase;
 import com.teotigraphix.caustk.controller.command.CommandUtils;
+import com.teotigraphix.caustk.controller.command.ISpillableCommand;
+import com.teotigraphix.caustk.controller.command.IUndoCommand;
 import com.teotigraphix.caustk.controller.command.UndoCommand;
 
 /*
@@ -103,6 +105,13 @@ public class SystemSequencer implements CausticEventListener {
 
     private boolean playing;
 
+    private static final ITransportListener[] NO_LISTENERS = new ITransportListener[0];
+
+    /**
+     * Replaced on add and remove, a tick iterates it without locking.
+     */
+    private volatile ITransportListener[] transportListeners = NO_LISTENERS;
+
     //--------------------------------------------------------------------------
     // Public Property API
     //--------------------------------------------------------------------------
@@ -117,6 +126,32 @@ public class SystemSequencer implements CausticEventListener {
         return dispatcher;
     }
 
+    //----------------------------------
+    // eventBridge
+    //----------------------------------
+
+    private volatile boolean eventBridge = true;
+
+    /**
+     * Returns whether beat, step and measure changes are also triggered as
+     * event objects on the dispatcher.
+     */
+    public boolean isEventBridge() {
+        return eventBridge;
+    }
+
+    /**
+     * Sets whether beat, step and measure changes are also triggered as
+     * {@link OnSystemSequencerBeatChange}, {@link OnSystemSequencerStepChange}
+     * and {@link OnSystemSequencerMeasureChange}; turned off, a tick
+     * allocates nothing.
+     * 
+     * @see #addTransportListener(ITransportListener)
+     */
+    public void setEventBridge(boolean value) {
+        eventBridge = value;
+    }
+
     //----------------------------------
     // tempo
     //----------------------------------
@@ -197,6 +232,53 @@ public class SystemSequencer implements CausticEventListener {
         getDispatcher().trigger(new OnSystemSequencerStop());
     }
 
+    /**
+     * Stops the step clock's thread, called when the controller closes.
+     */
+    public void dispose() {
+        stepEngine.dispose();
+    }
+
+    /**
+     * Adds a listener called on every step, with the measure and beat it falls in.
+     * 
+     * @param listener The listener, added once.
+     */
+    public synchronized void addTransportListener(ITransportListener listener) {
+        if (listener == null)
+            throw new IllegalArgumentException("Null listener");
+        ITransportListener[] current = transportListeners;
+        for (ITransportListener added : current) {
+            if (added == listener)
+                return;
+        }
+        ITransportListener[] result = new ITransportListener[current.length + 1];
+        System.arraycopy(current, 0, result, 0, current.length);
+        result[current.length] = listener;
+        transportListeners = result;
+    }
+
+    /**
+     * Removes a transport listener.
+     * 
+     * @param listener The listener.
+     */
+    public synchronized void removeTransportListener(ITransportListener listener) {
+        ITransportListener[] current = transportListeners;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i] == listener) {
+                ITransportListener[] result = NO_LISTENERS;
+                if (current.length > 1) {
+                    result = new ITransportListener[current.length - 1];
+                    System.arraycopy(current, 0, result, 0, i);
+                    System.arraycopy(current, i + 1, result, i, current.length - i - 1);
+                }
+                transportListeners = result;
+                return;
+            }
+        }
+    }
+
     public void addPattern(IMachine machine, int bank, int pattern, int start, int end) {
         sequencer.addPattern(machine, bank, pattern, start, end);
     }
@@ -274,11 +356,14 @@ public class SystemSequencer implements CausticEventListener {
 
     @Override
     public void OnBeatChanged(int beat) {
+        mCurrentBeat = beat;
+
         stepEngine.beatChanged(beat);
 
         updateMeasure(beat);
 
-        getDispatcher().trigger(new OnSystemSequencerBeatChange(beat));
+        if (eventBridge)
+            getDispatcher().trigger(new OnSystemSequencerBeatChange(beat));
     }
 
     @Override
@@ -289,7 +374,7 @@ public class SystemSequencer implements CausticEventListener {
     // currentMeasure
     //----------------------------------
 
-    private int mCurrentMeasure = 0;
+    private volatile int mCurrentMeasure = 0;
 
     public int getCurrentMeasure() {
         return mCurrentMeasure;
@@ -305,7 +390,8 @@ public class SystemSequencer implements CausticEventListener {
         if (mCurrentMeasure == 0) {
             //controller.getPatternSequencer().playNextPattern();
         }
-        getDispatcher().trigger(new OnSystemSequencerMeasureChange(mCurrentMeasure));
+        if (eventBridge)
+            getDispatcher().trigger(new OnSystemSequencerMeasureChange(mCurrentMeasure));
     }
 
     public int getMeasureBeat() {
@@ -316,12 +402,25 @@ public class SystemSequencer implements CausticEventListener {
     // currentBeat
     //----------------------------------
 
-    private int mCurrentBeat = 0;
+    private volatile int mCurrentBeat = 0;
 
     public int getCurrentBeat() {
         return mCurrentBeat;
     }
 
+    //----------------------------------
+    // currentStep
+    //----------------------------------
+
+    private volatile int currentStep;
+
+    /**
+     * Returns the current step in the measure.
+     */
+    public int getCurrentStep() {
+        return currentStep;
+    }
+
     void setCurrentBeat(int value) {
         setCurrentBeat(value, false);
     }
@@ -387,10 +486,25 @@ public class SystemSequencer implements CausticEventListener {
      * XXX This needs to be removed
      * 
      * @param step
+     * @param beat The beat the step falls in, counted by the step clock.
+     * @param measure The measure the step falls in, counted by the step
+     *            clock.
      */
-    public void stepChanged(final int step) {
+    public void stepChanged(final int step, final int beat, final int measure) {
         /// XXX REMOVED controller.setDebugText(step + "");
-        getDispatcher().trigger(new OnSystemSequencerStepChange(step));
+        currentStep = step;
+        fireTick(System.nanoTime(), measure, beat, step);
+        if (eventBridge)
+            getDispatcher().trigger(new OnSystemSequencerStepChange(step));
+    }
+
+    private void fireTick(long nanoTime, int measure, int beat, int step) {
+        final ITransportListener[] listeners = transportListeners;
+        if (listeners.length == 0)
+            return;
+        for (ITransportListener listener : listeners) {
+            listener.onTick(measure, beat, step, nanoTime);
+        }
     }
 
     // public void seek(int beat);
@@ -417,7 +531,8 @@ public class SystemSequencer implements CausticEventListener {
         }
     }
 
-    public static class SystemSequencerTempoCommand extends UndoCommand {
+    public static class SystemSequencerTempoCommand extends UndoCommand implements
+            ISpillableCommand {
 
         float last;
 
@@ -432,5 +547,21 @@ public class SystemSequencer implements CausticEventListener {
         protected void undoExecute() {
             getContext().api(SequencerAPI.class).setTempo(last);
         }
+
+        // a tempo drag is one entry
+        @Override
+        public boolean canMerge(IUndoCommand next) {
+            return isSameTarget(next, 0);
+        }
+
+        @Override
+        public String getRedoMessage() {
+            return toExecutedMessage();
+        }
+
+        @Override
+        public String getUndoMessage() {
+            return toCommandMessage(last);
+        }
     }
 }
@@ -24,6 +24,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.androidtransfuse.event.EventObserver;
 
@@ -106,14 +107,16 @@ public class CaustkSoundSource implements ICaustkSoundSource {
     }
 
     protected ICausticEngine getEngine() {
-        return controller.getSoundGenerator();
+        // machines send through the controller so engine decorators apply
+        return controller;
     }
 
     //----------------------------------
     // tones
     //----------------------------------
 
-    private static Map<Integer, Tone> tones = new HashMap<Integer, Tone>();
+    // concurrent, the shadow reconciler walks the tones on its own thread
+    private static Map<Integer, Tone> tones = new ConcurrentHashMap<Integer, Tone>();
 
     @Override
     public int getToneCount() {
@@ -147,7 +150,7 @@ public class CaustkSoundSource implements ICaustkSoundSource {
 
         dispatcher = new Dispatcher();
 
-        tones = new HashMap<Integer, Tone>();
+        tones = new ConcurrentHashMap<Integer, Tone>();
         machines = new HashMap<Integer, IMachine>();
 
         getDispatcher().register(OnSoundSourceInitialValue.class,
@@ -0,0 +1,519 @@
+////////////////////////////////////////////////////////////////////////////////
+// Copyright 2013 Michael Schmalle - Teoti Graphix, LLC
+// 
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+// 
+// http://www.apache.org/licenses/LICENSE-2.0 
+// 
+// Unless required by applicable law or agreed to in writing, software 
+// distributed under the License is distributed on an "AS IS" BASIS, 
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and 
+// limitations under the License
+// 
+// Author: Michael Schmalle, Principal Architect
+// mschmalle at teotigraphix dot com
+////////////////////////////////////////////////////////////////////////////////
+
+package com.teotigraphix.caustk.sound;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.teotigraphix.caustic.core.CausticEventListener;
+import com.teotigraphix.caustic.core.MessageBatch;
+import com.teotigraphix.caustic.engine.MessageRegistry;
+import com.teotigraphix.caustic.engine.OSCLoopbackReceiver;
+import com.teotigraphix.caustic.engine.OSCPacket;
+import com.teotigraphix.caustic.osc.CausticMessage;
+import com.teotigraphix.caustic.osc.EffectRackMessage;
+import com.teotigraphix.caustic.osc.MachineMessage;
+import com.teotigraphix.caustic.osc.RackMessage;
+
+/**
+ * A sound generator that drives a remote or out of process Caustic host with
+ * binary OSC packets over UDP.
+ * <p>
+ * Messages are encoded with {@link OSCPacket} and written to a non-blocking
+ * {@link DatagramChannel} connected to the host. A {@link MessageBatch} is
+ * sent as OSC bundles, split to fit the packet size.
+ * <p>
+ * Sends are fire and forget and return <code>NaN</code>, a send the host
+ * rejects is counted by {@link #getSendErrorCount()}. Messages that return a
+ * value, queries, address only parameter reads and the registered reads, are
+ * sent as {@link OSCPacket#READ_ADDRESS} requests; the caller blocks until the
+ * matching reply arrives or the timeout elapses. A timed out float read returns
+ * <code>NaN</code> and a timed out query returns <code>null</code>. Other
+ * address only messages, eg <code>/caustic/blankrack</code>, are sends.
+ * <p>
+ * Name and path arguments of the registered string messages are sent as OSC
+ * strings even when they look like numbers, see
+ * {@link #addStrings(CausticMessage, int...)}.
+ * <p>
+ * Beat and measure events sent by the host are dispatched to the
+ * {@link CausticEventListener}s on the receiving thread.
+ * 
+ * @author Michael Schmalle
+ * @see OSCLoopbackReceiver
+ */
+public class OSCSoundGenerator implements ICaustkSoundGenerator {
+
+    /**
+     * The default maximum size of a sent packet in bytes.
+     */
+    public static final int DEFAULT_PACKET_SIZE = 8192;
+
+    /**
+     * The default read timeout in milliseconds.
+     */
+    public static final long DEFAULT_TIMEOUT = 1000;
+
+    private final InetSocketAddress address;
+
+    private final MessageRegistry reads = new MessageRegistry();
+
+    /**
+     * The parameters whose address only form is a read.
+     */
+    private final MessageRegistry parameters = MessageRegistry.createParameters();
+
+    private final MessageRegistry strings = new MessageRegistry();
+
+    /**
+     * The string argument mask of each registered string message.
+     */
+    private final Map<CausticMessage, Integer> stringMasks = new HashMap<CausticMessage, Integer>();
+
+    private final List<CausticEventListener> listeners =
+            new CopyOnWriteArrayList<CausticEventListener>();
+
+    private final Map<Integer, Request> requests = new ConcurrentHashMap<Integer, Request>();
+
+    private final AtomicInteger nextId = new AtomicInteger();
+
+    private final ByteBuffer sendBuffer;
+
+    private final ByteBuffer receiveBuffer = ByteBuffer.allocateDirect(65536);
+
+    private final OSCPacket packet = new OSCPacket();
+
+    private final OSCPacket.Handler handler = new OSCPacket.Handler() {
+        @Override
+        public void handleMessage(OSCPacket message) {
+            receive(message);
+        }
+    };
+
+    private DatagramChannel channel;
+
+    private Selector selector;
+
+    private Thread receiver;
+
+    //----------------------------------
+    // timeout
+    //----------------------------------
+
+    private volatile long timeout = DEFAULT_TIMEOUT;
+
+    /**
+     * Returns the milliseconds a read waits for its reply.
+     */
+    public long getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * Sets the milliseconds a read waits for its reply.
+     * 
+     * @param value The timeout in milliseconds.
+     */
+    public void setTimeout(long value) {
+        timeout = value;
+    }
+
+    //----------------------------------
+    // timeoutCount
+    //----------------------------------
+
+    private final AtomicLong timeoutCount = new AtomicLong();
+
+    /**
+     * Returns the number of reads that timed out.
+     */
+    public long getTimeoutCount() {
+        return timeoutCount.get();
+    }
+
+    //----------------------------------
+    // sendErrorCount
+    //----------------------------------
+
+    private final AtomicLong sendErrorCount = new AtomicLong();
+
+    private volatile boolean sendFailing;
+
+    /**
+     * Returns the number of packets the channel failed to send, eg while the
+     * host's port is unreachable.
+     */
+    public long getSendErrorCount() {
+        return sendErrorCount.get();
+    }
+
+    //----------------------------------
+    // receiveErrorCount
+    //----------------------------------
+
+    private final AtomicLong receiveErrorCount = new AtomicLong();
+
+    /**
+     * Returns the number of received datagrams that could not be decoded or
+     * handled, eg truncated packets or a listener that threw.
+     */
+    public long getReceiveErrorCount() {
+        return receiveErrorCount.get();
+    }
+
+    //----------------------------------
+    // packetCount
+    //----------------------------------
+
+    private final AtomicLong packetCount = new AtomicLong();
+
+    /**
+     * Returns the number of packets sent.
+     */
+    public long getPacketCount() {
+        return packetCount.get();
+    }
+
+    //--------------------------------------------------------------------------
+    // Constructors
+    //--------------------------------------------------------------------------
+
+    /**
+     * Constructor, packets are at most {@link #DEFAULT_PACKET_SIZE} bytes.
+     * 
+     * @param host The host name or address of the Caustic host.
+     * @param port The UDP port the host receives on.
+     */
+    public OSCSoundGenerator(String host, int port) {
+        this(host, port, DEFAULT_PACKET_SIZE);
+    }
+
+    /**
+     * Constructor.
+     * 
+     * @param host The host name or address of the Caustic host.
+     * @param port The UDP port the host receives on.
+     * @param packetSize The maximum size of a sent packet in bytes.
+     */
+    public OSCSoundGenerator(String host, int port, int packetSize) {
+        address = new InetSocketAddress(host, port);
+        sendBuffer = ByteBuffer.allocateDirect(packetSize);
+        reads.add(EffectRackMessage.TYPE);
+        addStrings(RackMessage.CREATE, 0, 1);
+        addStrings(RackMessage.LOAD_SONG, 0);
+        addStrings(RackMessage.SAVE_SONG, 0);
+        addStrings(MachineMessage.LOAD_PRESET, 0);
+        addStrings(MachineMessage.SAVE_PRESET, 0);
+    }
+
+    //--------------------------------------------------------------------------
+    // Public Methods
+    //--------------------------------------------------------------------------
+
+    /**
+     * Adds a message that returns a value when sent with arguments, its send
+     * waits for the host's reply.
+     * 
+     * @param message The read message.
+     */
+    public void addRead(CausticMessage message) {
+        reads.add(message);
+    }
+
+    /**
+     * Adds a message whose arguments at the indexes are always sent as OSC
+     * strings, such as a machine name <code>808</code>.
+     * 
+     * @param message The message.
+     * @param arguments The argument indexes after the address, from
+     *            <code>0</code>.
+     */
+    public void addStrings(CausticMessage message, int... arguments) {
+        int mask = 0;
+        for (int argument : arguments) {
+            mask |= 1 << argument;
+        }
+        synchronized (stringMasks) {
+            stringMasks.put(message, mask);
+        }
+        strings.add(message);
+    }
+
+    /**
+     * Opens the channel to the host and starts the reply receiver.
+     * 
+     * @throws IOException the channel could not be opened
+     */
+    public synchronized void open() throws IOException {
+        if (channel != null)
+            throw new IllegalStateException("OSCSoundGenerator is already open");
+        channel = DatagramChannel.open();
+        channel.configureBlocking(false);
+        channel.connect(address);
+        selector = Selector.open();
+        channel.register(selector, SelectionKey.OP_READ);
+
+        receiver = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                loop();
+            }
+        }, "OSCSoundGenerator");
+        receiver.setDaemon(true);
+        receiver.start();
+    }
+
+    /**
+     * Returns whether the channel to the host is open.
+     */
+    public synchronized boolean isOpen() {
+        return channel != null;
+    }
+
+    //--------------------------------------------------------------------------
+    // ICaustkSoundGenerator API
+    //--------------------------------------------------------------------------
+
+    @Override
+    public synchronized void close() {
+        if (channel == null)
+            return;
+        try {
+            selector.close();
+            channel.close();
+        } catch (IOException e) {
+            // closing, nothing to recover
+        }
+        channel = null;
+        selector = null;
+        receiver = null;
+
+        // release the callers still waiting for a reply
+        for (Request request : requests.values()) {
+            request.latch.countDown();
+        }
+        requests.clear();
+    }
+
+    @Override
+    public void addEventListener(CausticEventListener l) {
+        listeners.add(l);
+    }
+
+    @Override
+    public float sendMessage(String message) {
+        if (reads.contains(message) || message.indexOf(' ') == -1
+                && parameters.contains(message)) {
+            Request request = read(OSCPacket.READ_FLOAT, message);
+            return request != null ? request.value : Float.NaN;
+        }
+
+        final int mask = getStrings(message);
+        synchronized (sendBuffer) {
+            sendBuffer.clear();
+            try {
+                OSCPacket.encodeMessage(sendBuffer, message, mask);
+            } catch (BufferOverflowException e) {
+                throw new IllegalArgumentException("Message exceeds packet size: " + message);
+            }
+            write();
+        }
+        return Float.NaN;
+    }
+
+    @Override
+    public String queryMessage(String message) {
+        Request request = read(OSCPacket.READ_STRING, message);
+        return request != null ? request.text : null;
+    }
+
+    @Override
+    public void sendMessages(MessageBatch batch) {
+        final int size = batch.size();
+        synchronized (sendBuffer) {
+            int index = 0;
+            while (index < size) {
+                sendBuffer.clear();
+                OSCPacket.beginBundle(sendBuffer, OSCPacket.IMMEDIATELY);
+                final int first = index;
+                while (index < size) {
+                    String message = batch.get(index);
+                    if (sendBuffer.remaining() < OSCPacket.getMaxSize(message) + 4) {
+                        if (index == first)
+                            throw new IllegalArgumentException("Message exceeds packet size: "
+                                    + message);
+                        break;
+                    }
+                    int mark = OSCPacket.beginElement(sendBuffer);
+                    OSCPacket.encodeMessage(sendBuffer, message, getStrings(message));
+                    OSCPacket.endElement(sendBuffer, mark);
+                    index++;
+                }
+                write();
+            }
+        }
+    }
+
+    //--------------------------------------------------------------------------
+    // Private Methods
+    //--------------------------------------------------------------------------
+
+    private int getStrings(String message) {
+        CausticMessage template = strings.find(message);
+        if (template == null)
+            return 0;
+        synchronized (stringMasks) {
+            return stringMasks.get(template);
+        }
+    }
+
+    private Request read(int kind, String message) {
+        Integer id = nextId.incrementAndGet();
+        Request request = new Request();
+        requests.put(id, request);
+        synchronized (sendBuffer) {
+            sendBuffer.clear();
+            try {
+                OSCPacket.encodeRead(sendBuffer, id, kind, message);
+            } catch (BufferOverflowException e) {
+                requests.remove(id);
+                throw new IllegalArgumentException("Message exceeds packet size: " + message);
+            }
+            write();
+        }
+
+        try {
+            if (request.latch.await(timeout, TimeUnit.MILLISECONDS) && request.replied)
+                return request;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        requests.remove(id);
+        timeoutCount.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Writes the send buffer as one datagram, the caller holds the buffer's
+     * lock. A failed write, eg the ICMP port unreachable of an earlier packet,
+     * drops the packet; the first failure after a sent packet is logged.
+     */
+    private void write() {
+        DatagramChannel current = channel;
+        if (current == null)
+            throw new IllegalStateException("OSCSoundGenerator is not open");
+        sendBuffer.flip();
+        try {
+            // a non-blocking datagram write sends all or nothing
+            while (current.write(sendBuffer) == 0) {
+                Thread.yield();
+            }
+        } catch (IOException e) {
+            sendErrorCount.incrementAndGet();
+            if (!sendFailing) {
+                sendFailing = true;
+                e.printStackTrace();
+            }
+            return;
+        }
+        sendFailing = false;
+        packetCount.incrementAndGet();
+    }
+
+    private void loop() {
+        final Selector current = selector;
+        final DatagramChannel source = channel;
+        while (current.isOpen()) {
+            try {
+                current.select();
+                current.selectedKeys().clear();
+                receiveBuffer.clear();
+                while (source.read(receiveBuffer) > 0) {
+                    receiveBuffer.flip();
+                    try {
+                        OSCPacket.decode(receiveBuffer, packet, handler);
+                    } catch (RuntimeException e) {
+                        // a malformed or truncated datagram, a reply of the
+                        // wrong type or a listener that threw; the read
+                        // times out, the next datagram is received
+                        receiveErrorCount.incrementAndGet();
+                    }
+                    receiveBuffer.clear();
+                }
+            } catch (ClosedSelectorException e) {
+                return;
+            } catch (IOException e) {
+                // host unreachable, pending reads time out
+                if (!source.isOpen())
+                    return;
+            }
+        }
+    }
+
+    private void receive(OSCPacket message) {
+        String target = message.getAddress();
+        if (OSCPacket.REPLY_ADDRESS.equals(target)) {
+            Request request = requests.remove(message.getInt(0));
+            if (request == null)
+                return;
+            if (message.getArgumentCount() > 1) {
+                if (message.getType(1) == 's')
+                    request.text = message.getString(1);
+                else
+                    request.value = message.getFloat(1);
+            }
+            request.replied = true;
+            request.latch.countDown();
+        } else if (OSCPacket.BEAT_ADDRESS.equals(target)) {
+            for (CausticEventListener listener : listeners) {
+                listener.OnBeatChanged(message.getInt(0));
+            }
+        } else if (OSCPacket.MEASURE_ADDRESS.equals(target)) {
+            for (CausticEventListener listener : listeners) {
+                listener.OnMeasureChanged(message.getInt(0));
+            }
+        }
+    }
+
+    private static final class Request {
+
+        final CountDownLatch latch = new CountDownLatch(1);
+
+        volatile boolean replied;
+
+        volatile float value = Float.NaN;
+
+        volatile String text;
+    }
+}
@@ -0,0 +1,618 @@
+////////////////////////////////////////////////////////////////////////////////
+// Copyright 2013 Michael Schmalle - Teoti Graphix, LLC
+// 
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+// 
+// http://www.apache.org/licenses/LICENSE-2.0 
+// 
+// Unless required by applicable law or agreed to in writing, software 
+// distributed under the License is distributed on an "AS IS" BASIS, 
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and 
+// limitations under the License
+// 
+// Author: Michael Schmalle, Principal Architect
+// mschmalle at teotigraphix dot com
+////////////////////////////////////////////////////////////////////////////////
+
+package com.teotigraphix.caustk.sound;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.LockSupport;
+
+import com.teotigraphix.caustic.core.CausticEventListener;
+import com.teotigraphix.caustic.core.MessageBatch;
+import com.teotigraphix.caustic.internal.utils.FormatUtils;
+import com.teotigraphix.caustic.internal.utils.PatternUtils;
+
+/**
+ * A pure Java sound generator that simulates the Caustic core in memory, for
+ * benchmarks and tests on hosts without the native library.
+ * <p>
+ * The generator parses the <code>/caustic/...</code> grammar of the
+ * <code>com.teotigraphix.caustic.osc</code> messages and keeps the rack,
+ * machine, pattern and sequencer state:
+ * <ul>
+ * <li><code>create</code>, <code>remove</code>, <code>blankrack</code>,
+ * <code>machine_name</code>, <code>machine_type</code> and the machine
+ * presets.</li>
+ * <li>The pattern sequencer bank, pattern, num_measures and note data of
+ * every pattern, answered by <code>patterns_with_data</code> and
+ * <code>note_data</code>.</li>
+ * <li>The effects rack slots, answered by <code>effects_rack/type</code>.</li>
+ * <li>The song sequencer pattern events, the output panel bpm, play and
+ * mode.</li>
+ * <li>Every other single value message, mixer, effect and synth parameters, is
+ * stored by address and returned when the address is read.</li>
+ * </ul>
+ * Songs are not read from disk, <code>load_song</code> clears the rack.
+ * <p>
+ * Time is virtual, {@link #advance(long)} moves the play position while the
+ * output panel is playing and calls the {@link CausticEventListener}s for
+ * every beat and measure passed. A latency can be set to model a slow device,
+ * each message then waits that long before it is handled.
+ * 
+ * @author Michael Schmalle
+ */
+public class SimulatedSoundGenerator implements ICaustkSoundGenerator {
+
+    /**
+     * The number of machines in the rack.
+     */
+    public static final int NUM_MACHINES = 14;
+
+    private static final int BEATS_PER_MEASURE = 4;
+
+    private static final long NANOS_PER_MINUTE = 60000000000L;
+
+    private final List<CausticEventListener> listeners =
+            new CopyOnWriteArrayList<CausticEventListener>();
+
+    private final Machine[] machines = new Machine[NUM_MACHINES];
+
+    private final int[][] effects = new int[NUM_MACHINES][2];
+
+    /**
+     * Address to the value of every other single value message.
+     */
+    private final Map<String, Float> parameters = new TreeMap<String, Float>();
+
+    /**
+     * The song sequencer pattern events, machine, start, bank, pattern, end.
+     */
+    private final List<int[]> patternEvents = new ArrayList<int[]>();
+
+    private final StringBuilder buffer = new StringBuilder(256);
+
+    private float bpm = 120f;
+
+    private int mode;
+
+    private boolean playing;
+
+    private long position;
+
+    private int beat = -1;
+
+    //----------------------------------
+    // latency
+    //----------------------------------
+
+    private volatile long latency;
+
+    /**
+     * Returns the nanoseconds each message waits before it is handled.
+     */
+    public long getLatency() {
+        return latency;
+    }
+
+    /**
+     * Sets the nanoseconds each message waits before it is handled,
+     * <code>0</code> for none.
+     * 
+     * @param value The latency in nanoseconds.
+     */
+    public void setLatency(long value) {
+        latency = value;
+    }
+
+    //----------------------------------
+    // messageCount
+    //----------------------------------
+
+    private long messageCount;
+
+    /**
+     * Returns the number of messages handled.
+     */
+    public synchronized long getMessageCount() {
+        return messageCount;
+    }
+
+    //----------------------------------
+    // noteCount
+    //----------------------------------
+
+    private long noteCount;
+
+    /**
+     * Returns the number of live and preview notes played.
+     */
+    public synchronized long getNoteCount() {
+        return noteCount;
+    }
+
+    //----------------------------------
+    // beat
+    //----------------------------------
+
+    /**
+     * Returns the beat of the play position, <code>-1</code> when stopped.
+     */
+    public synchronized int getBeat() {
+        return beat;
+    }
+
+    //--------------------------------------------------------------------------
+    // Constructor
+    //--------------------------------------------------------------------------
+
+    /**
+     * Constructor, creates an empty rack.
+     */
+    public SimulatedSoundGenerator() {
+        blankRack();
+    }
+
+    //--------------------------------------------------------------------------
+    // Public Methods
+    //--------------------------------------------------------------------------
+
+    /**
+     * Advances the virtual clock, beat and measure events are sent for every
+     * beat the play position passes while playing.
+     * 
+     * @param nanos The nanoseconds to advance.
+     */
+    public void advance(long nanos) {
+        int first;
+        int last;
+        synchronized (this) {
+            if (!playing)
+                return;
+            position += nanos;
+            first = beat + 1;
+            last = (int)(position * (double)bpm / NANOS_PER_MINUTE);
+            beat = Math.max(beat, last);
+        }
+        for (int i = first; i <= last; i++) {
+            fireBeat(i);
+        }
+    }
+
+    //--------------------------------------------------------------------------
+    // ICaustkSoundGenerator API
+    //--------------------------------------------------------------------------
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            playing = false;
+            beat = -1;
+        }
+    }
+
+    @Override
+    public void addEventListener(CausticEventListener l) {
+        listeners.add(l);
+    }
+
+    @Override
+    public float sendMessage(String message) {
+        waitLatency();
+        boolean started;
+        float result;
+        synchronized (this) {
+            boolean wasPlaying = playing;
+            result = handle(message);
+            started = !wasPlaying && playing;
+        }
+        if (started)
+            fireBeat(0);
+        return result;
+    }
+
+    @Override
+    public String queryMessage(String message) {
+        waitLatency();
+        synchronized (this) {
+            return query(message);
+        }
+    }
+
+    @Override
+    public void sendMessages(MessageBatch batch) {
+        MessageBatch.sendEach(this, batch);
+    }
+
+    //--------------------------------------------------------------------------
+    // Private Methods :: Messages
+    //--------------------------------------------------------------------------
+
+    private float handle(String message) {
+        messageCount++;
+        String[] args = split(message);
+        String address = args[0];
+        final int count = args.length - 1;
+
+        if (address.startsWith("/caustic/outputpanel/"))
+            return handleOutputPanel(address, args, count);
+        if (address.startsWith("/caustic/effects_rack/"))
+            return handleEffectsRack(address, args, count);
+        if (address.startsWith("/caustic/sequencer/"))
+            return handleSequencer(address, args, count);
+
+        if (address.equals("/caustic/blankrack") || address.equals("/caustic/load_song")) {
+            blankRack();
+            return 0f;
+        } else if (address.equals("/caustic/create")) {
+            int index = toInt(args[3]);
+            machines[index] = new Machine(args[1], args[2]);
+            return 0f;
+        } else if (address.equals("/caustic/remove")) {
+            removeMachine(toInt(args[1]));
+            return 0f;
+        } else if (address.equals("/caustic/save_song")) {
+            return 0f;
+        }
+
+        // /caustic/[machine]/...
+        Machine machine = getMachine(address);
+        if (machine != null) {
+            String command = address.substring(address.indexOf('/', 9) + 1);
+            if (command.startsWith("pattern_sequencer/"))
+                return handlePatternSequencer(machine, command.substring(18), args, count);
+            if (command.startsWith("note/")) {
+                noteCount++;
+                return 0f;
+            }
+            if (command.equals("load_preset") || command.equals("save_preset")) {
+                machine.preset = toPresetName(args[1]);
+                return 0f;
+            }
+        }
+
+        return handleParameter(address, args, count);
+    }
+
+    private String query(String message) {
+        messageCount++;
+        String[] args = split(message);
+        String address = args[0];
+
+        if (address.equals("/caustic/machine_name")) {
+            Machine machine = machines[toInt(args[1])];
+            return machine != null ? machine.name : null;
+        } else if (address.equals("/caustic/machine_type")) {
+            Machine machine = machines[toInt(args[1])];
+            return machine != null ? machine.type : null;
+        }
+
+        Machine machine = getMachine(address);
+        if (machine == null)
+            return null;
+        String command = address.substring(address.indexOf('/', 9) + 1);
+        if (command.equals("preset"))
+            return machine.preset;
+        if (command.equals("pattern_sequencer/patterns_with_data"))
+            return machine.getPatternsWithData(buffer);
+        if (command.equals("pattern_sequencer/note_data"))
+            return machine.getPattern().getNoteData(buffer);
+        return null;
+    }
+
+    private float handleOutputPanel(String address, String[] args, int count) {
+        String command = address.substring(21);
+        if (command.equals("bpm")) {
+            if (count == 0)
+                return bpm;
+            bpm = toFloat(args[1]);
+        } else if (command.equals("play")) {
+            if (count == 0)
+                return playing ? 1f : 0f;
+            boolean value = toInt(args[1]) != 0;
+            if (value != playing) {
+                playing = value;
+                position = 0;
+                beat = value ? 0 : -1;
+            }
+        } else if (command.equals("mode")) {
+            if (count == 0)
+                return mode;
+            mode = toInt(args[1]);
+        }
+        return 0f;
+    }
+
+    private float handleEffectsRack(String address, String[] args, int count) {
+        String command = address.substring(22);
+        if (command.equals("create")) {
+            effects[toInt(args[1])][toInt(args[2])] = toInt(args[3]);
+            return 0f;
+        } else if (command.equals("remove")) {
+            effects[toInt(args[1])][toInt(args[2])] = -1;
+            return 0f;
+        } else if (command.equals("type")) {
+            return effects[toInt(args[1])][toInt(args[2])];
+        }
+        return handleParameter(address, args, count);
+    }
+
+    private float handleSequencer(String address, String[] args, int count) {
+        String command = address.substring(19);
+        if (command.equals("pattern_event")) {
+            patternEvents.add(new int[] {
+                    toInt(args[1]), toInt(args[2]), toInt(args[3]), toInt(args[4]),
+                    toInt(args[5])
+            });
+            return 0f;
+        } else if (command.equals("clear_patterns")) {
+            patternEvents.clear();
+            return 0f;
+        } else if (command.equals("export_progress")) {
+            return 100f;
+        } else if (command.equals("export_song") || command.equals("clear_automation")) {
+            return 0f;
+        }
+        return handleParameter(address, args, count);
+    }
+
+    private float handlePatternSequencer(Machine machine, String command, String[] args,
+            int count) {
+        if (command.equals("bank")) {
+            if (count == 0)
+                return machine.bank;
+            machine.bank = toInt(args[1]);
+        } else if (command.equals("pattern")) {
+            if (count == 0)
+                return machine.pattern;
+            machine.pattern = toInt(args[1]);
+        } else if (command.equals("num_measures")) {
+            if (count == 0)
+                return machine.getPattern().numMeasures;
+            machine.getPattern().numMeasures = toInt(args[1]);
+        } else if (command.equals("note_data")) {
+            Pattern pattern = machine.getPattern();
+            float start = toFloat(args[1]);
+            int pitch = (int)toFloat(args[2]);
+            if (count == 4 && toFloat(args[3]) == -1f) {
+                pattern.removeNote(start, pitch);
+            } else {
+                pattern.addNote(start, pitch, toFloat(args[3]), toFloat(args[4]),
+                        count > 4 ? (int)toFloat(args[5]) : 0);
+            }
+        } else if (command.equals("clear_pattern")) {
+            machine.patterns.remove(machine.bank * 16 + toInt(args[1]));
+        } else if (command.equals("clear_bank")) {
+            int bank = toInt(args[1]);
+            for (int i = 0; i < 16; i++) {
+                machine.patterns.remove(bank * 16 + i);
+            }
+        }
+        return 0f;
+    }
+
+    private float handleParameter(String address, String[] args, int count) {
+        if (count == 0) {
+            Float value = parameters.get(address);
+            return value != null ? value : 0f;
+        }
+        if (count == 1) {
+            float value = toFloat(args[1]);
+            parameters.put(address, value);
+            return value;
+        }
+        return 0f;
+    }
+
+    //--------------------------------------------------------------------------
+    // Private Methods :: State
+    //--------------------------------------------------------------------------
+
+    private void blankRack() {
+        for (int i = 0; i < NUM_MACHINES; i++) {
+            machines[i] = null;
+            effects[i][0] = -1;
+            effects[i][1] = -1;
+        }
+        parameters.clear();
+        patternEvents.clear();
+    }
+
+    private void removeMachine(int index) {
+        machines[index] = null;
+        effects[index][0] = -1;
+        effects[index][1] = -1;
+        String machinePrefix = "/caustic/" + index + "/";
+        String mixerPrefix = "/caustic/mixer/" + index + "/";
+        String effectsPrefix = "/caustic/effects_rack/" + index + "/";
+        Iterator<String> i = parameters.keySet().iterator();
+        while (i.hasNext()) {
+            String address = i.next();
+            if (address.startsWith(machinePrefix) || address.startsWith(mixerPrefix)
+                    || address.startsWith(effectsPrefix))
+                i.remove();
+        }
+        Iterator<int[]> events = patternEvents.iterator();
+        while (events.hasNext()) {
+            if (events.next()[0] == index)
+                events.remove();
+        }
+    }
+
+    /**
+     * Returns the machine of a <code>/caustic/[index]/...</code> address,
+     * <code>null</code> if the address has no machine index or the machine
+     * does not exist.
+     */
+    private Machine getMachine(String address) {
+        final int start = 9; // "/caustic/".length()
+        int end = address.indexOf('/', start);
+        if (end == -1 || end == start || end - start > 2)
+            return null;
+        int index = 0;
+        for (int i = start; i < end; i++) {
+            char c = address.charAt(i);
+            if (c < '0' || c > '9')
+                return null;
+            index = index * 10 + (c - '0');
+        }
+        return index < NUM_MACHINES ? machines[index] : null;
+    }
+
+    private void fireBeat(int value) {
+        for (CausticEventListener listener : listeners) {
+            listener.OnBeatChanged(value);
+            if (value % BEATS_PER_MEASURE == 0)
+                listener.OnMeasureChanged(value / BEATS_PER_MEASURE);
+        }
+    }
+
+    private void waitLatency() {
+        final long wait = latency;
+        if (wait <= 0)
+            return;
+        final long deadline = System.nanoTime() + wait;
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > 0) {
+            if (remaining > 100000L)
+                LockSupport.parkNanos(remaining);
+            else
+                Thread.yield();
+        }
+    }
+
+    private static String[] split(String message) {
+        return message.split(" ");
+    }
+
+    private static String toPresetName(String path) {
+        int slash = Math.max(path.lastIndexOf('/'), path.lastIndexOf('\\'));
+        String name = path.substring(slash + 1);
+        int dot = name.lastIndexOf('.');
+        return dot == -1 ? name : name.substring(0, dot);
+    }
+
+    private static int toInt(String value) {
+        return (int)Float.parseFloat(value);
+    }
+
+    private static float toFloat(String value) {
+        return Float.parseFloat(value);
+    }
+
+    //--------------------------------------------------------------------------
+    // Model
+    //--------------------------------------------------------------------------
+
+    private static final class Machine {
+
+        final String type;
+
+        final String name;
+
+        String preset;
+
+        int bank;
+
+        int pattern;
+
+        /**
+         * bank * 16 + pattern to the pattern, sorted for patterns_with_data.
+         */
+        final Map<Integer, Pattern> patterns = new TreeMap<Integer, Pattern>();
+
+        Machine(String type, String name) {
+            this.type = type;
+            this.name = name;
+        }
+
+        Pattern getPattern() {
+            Integer key = bank * 16 + pattern;
+            Pattern result = patterns.get(key);
+            if (result == null) {
+                result = new Pattern();
+                patterns.put(key, result);
+            }
+            return result;
+        }
+
+        String getPatternsWithData(StringBuilder sb) {
+            sb.setLength(0);
+            for (Map.Entry<Integer, Pattern> entry : patterns.entrySet()) {
+                if (entry.getValue().notes.isEmpty())
+                    continue;
+                if (sb.length() > 0)
+                    sb.append(' ');
+                int key = entry.getKey();
+                sb.append(PatternUtils.toString(key / 16, key % 16));
+            }
+            return sb.toString();
+        }
+    }
+
+    private static final class Pattern {
+
+        int numMeasures = 1;
+
+        /**
+         * start, pitch, velocity, end, flags; sorted by start then pitch.
+         */
+        final List<float[]> notes = new ArrayList<float[]>();
+
+        void addNote(float start, int pitch, float velocity, float end, int flags) {
+            removeNote(start, pitch);
+            int index = 0;
+            while (index < notes.size()) {
+                float[] note = notes.get(index);
+                if (note[0] > start || (note[0] == start && note[1] > pitch))
+                    break;
+                index++;
+            }
+            notes.add(index, new float[] {
+                    start, pitch, velocity, end, flags
+            });
+        }
+
+        void removeNote(float start, int pitch) {
+            Iterator<float[]> i = notes.iterator();
+            while (i.hasNext()) {
+                float[] note = i.next();
+                if (note[0] == start && note[1] == pitch)
+                    i.remove();
+            }
+        }
+
+        String getNoteData(StringBuilder sb) {
+            sb.setLength(0);
+            for (float[] note : notes) {
+                if (sb.length() > 0)
+                    sb.append('|');
+                FormatUtils.appendFloat(sb, note[0]).append(' ');
+                sb.append((int)note[1]).append(' ');
+                FormatUtils.appendFloat(sb, note[2]).append(' ');
+                FormatUtils.appendFloat(sb, note[3]).append(' ');
+                sb.append((int)note[4]);
+            }
+            return sb.toString();
+        }
+    }
+}
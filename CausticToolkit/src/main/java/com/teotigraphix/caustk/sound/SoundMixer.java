@@ -33,6 +33,8 @@ import com.teotigraphix.caustic.mixer.MixerEffectType;
 import com.teotigraphix.caustk.controller.ICaustkController;
 import com.teotigraphix.caustk.controller.command.CommandContext;
 import com.teotigraphix.caustk.controller.command.CommandUtils;
+import com.teotigraphix.caustk.controller.command.ISpillableCommand;
+import com.teotigraphix.caustk.controller.command.IUndoCommand;
 import com.teotigraphix.caustk.controller.command.UndoCommand;
 import com.teotigraphix.caustk.sound.CaustkSoundSource.OnSoundSourceClear;
 import com.teotigraphix.caustk.sound.CaustkSoundSource.OnSoundSourceToneAdd;
@@ -205,7 +207,8 @@ public class SoundMixer implements ICaustkSoundMixer {
         }
     };
 
-    public static class SoundMixerSetMasterCommand extends UndoCommand {
+    public static class SoundMixerSetMasterCommand extends UndoCommand implements
+            ISpillableCommand {
 
         private VO last;
 
@@ -221,6 +224,22 @@ public class SoundMixer implements ICaustkSoundMixer {
             update(last);
         }
 
+        // same master control
+        @Override
+        public boolean canMerge(IUndoCommand next) {
+            return isSameTarget(next, 1);
+        }
+
+        @Override
+        public String getRedoMessage() {
+            return toExecutedMessage();
+        }
+
+        @Override
+        public String getUndoMessage() {
+            return toCommandMessage(last.type, last.value);
+        }
+
         private void update(VO vo) {
             if (vo.type.equals("volume"))
                 getContext().api(SoundMixerAPI.class).setMasterVolume(vo.value);
@@ -257,7 +276,8 @@ public class SoundMixer implements ICaustkSoundMixer {
         }
     }
 
-    public static class SoundMixerSetSendCommand extends UndoCommand {
+    public static class SoundMixerSetSendCommand extends UndoCommand implements
+            ISpillableCommand {
 
         private VO last;
 
@@ -273,6 +293,22 @@ public class SoundMixer implements ICaustkSoundMixer {
             update(last);
         }
 
+        // same channel and send
+        @Override
+        public boolean canMerge(IUndoCommand next) {
+            return isSameTarget(next, 2);
+        }
+
+        @Override
+        public String getRedoMessage() {
+            return toExecutedMessage();
+        }
+
+        @Override
+        public String getUndoMessage() {
+            return toCommandMessage(last.index, last.type, last.value);
+        }
+
         private void update(VO vo) {
             if (vo.type.equals("delay"))
                 getContext().api(SoundMixerAPI.class).setDelaySend(vo.index, vo.value);
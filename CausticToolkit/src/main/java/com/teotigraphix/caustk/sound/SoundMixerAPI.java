@@ -21,6 +21,8 @@ package com.teotigraphix.caustk.sound;
 
 import com.teotigraphix.caustk.controller.ICaustkController;
 import com.teotigraphix.caustk.controller.IControllerAPI;
+import com.teotigraphix.caustk.controller.command.ICommand;
+import com.teotigraphix.caustk.controller.command.ICommandFactory;
 import com.teotigraphix.caustk.sound.SoundMixer.SoundMixerSetSendCommand;
 
 public class SoundMixerAPI implements IControllerAPI {
@@ -38,7 +40,12 @@ public class SoundMixerAPI implements IControllerAPI {
 
     private void commitCommands() {
         controller.getCommandManager().put(SoundMixer.COMMAND_SET_SEND,
-                SoundMixerSetSendCommand.class);
+                new ICommandFactory() {
+                    @Override
+                    public ICommand create() {
+                        return new SoundMixerSetSendCommand();
+                    }
+                });
     }
 
     public float getMasterVolume() {